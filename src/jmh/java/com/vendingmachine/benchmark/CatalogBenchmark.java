@@ -0,0 +1,73 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.change.OptimalChangeStrategy;
+import com.vendingmachine.domain.Coins;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.service.PurchaseResult;
+import com.vendingmachine.service.VendingMachine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// startup cost of a site-sized catalog file, and purchases spread over its SKUs through a machine's
+// price overrides
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CatalogBenchmark {
+
+    @Param({"50000"})
+    private int skus;
+
+    private Path file;
+    private VendingMachine vendingMachine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("catalog", ".csv");
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < skus; i++) {
+                writer.write(String.format("sku-%06d,%d%n", i, 50 + i % 200));
+            }
+        }
+        PriceList sitePrices = PriceList.of(Catalog.load(file));
+        vendingMachine = new VendingMachine(sitePrices.overrides(), new OptimalChangeStrategy(Denomination.faceValues()));
+        int[] counts = new int[skus];
+        Arrays.fill(counts, 1_000_000);
+        vendingMachine.loadItems(counts);
+        vendingMachine.loadChange(Map.of(Denomination.TEN_CENTS, 1_000_000_000, Denomination.FIFTY_CENTS, 1_000_000_000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @State(Scope.Thread)
+    public static class Customer {
+
+        private final int[] twoDollars = Coins.toCounts(Map.of(Denomination.ONE_DOLLAR, 2));
+        private final int[] changeToPay = new int[Coins.DENOMINATION_COUNT];
+    }
+
+    @Benchmark
+    public Catalog load() throws IOException {
+        return Catalog.load(file);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public PurchaseResult buyRandomSku(Customer customer) {
+        int id = ThreadLocalRandom.current().nextInt(skus);
+        return vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, id, customer.twoDollars, customer.changeToPay);
+    }
+}
@@ -0,0 +1,48 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.change.ChangeStrategy;
+import com.vendingmachine.change.GreedyChangeStrategy;
+import com.vendingmachine.change.OptimalChangeStrategy;
+import com.vendingmachine.domain.Denomination;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChangeStrategyBenchmark {
+
+    // the float is short of the coins greedy wants, forcing the bounded search
+    @Param({"95", "995", "9995"})
+    private int amount;
+
+    private final int[] available = {0, 1, 2000, 3, 0, 5};
+    private final int[] unconstrained = {1000, 1000, 1000, 1000, 1000, 1000};
+    private final int[] breakdown = new int[Denomination.values().length];
+    private final ChangeStrategy greedy = new GreedyChangeStrategy(Denomination.faceValues());
+    private final ChangeStrategy optimal = new OptimalChangeStrategy(Denomination.faceValues());
+    // 50 is two 25s here but greedy pays 30 + 10 + 10, so there is no greedy fast path to fall back on
+    private final ChangeStrategy nonCanonical = new OptimalChangeStrategy(new int[]{1, 5, 10, 25, 30, 100});
+
+    @Benchmark
+    public boolean greedy() {
+        return greedy.makeChange(amount, available, breakdown);
+    }
+
+    @Benchmark
+    public boolean optimalConstrained() {
+        return optimal.makeChange(amount, available, breakdown);
+    }
+
+    @Benchmark
+    public boolean optimalUnconstrained() {
+        return optimal.makeChange(amount, unconstrained, breakdown);
+    }
+
+    // below the sum of the two largest coins the answer comes from the change table, above it from the bounded search
+    @Benchmark
+    public boolean nonCanonicalUnconstrained() {
+        return nonCanonical.makeChange(amount, unconstrained, breakdown);
+    }
+}
@@ -0,0 +1,144 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.config.Application;
+import com.vendingmachine.edge.EdgeServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts the application in each runtime as a process of its own, from this JVM's classpath, and
+ * reports how long it takes to answer its first request, how much memory it holds, and how many
+ * requests a second it serves to a few clients that restock, buy and list the items in turn. Memory is
+ * read from /proc, so the comparison only runs on Linux.
+ *
+ * <pre>
+ * java ... com.vendingmachine.benchmark.EdgeRuntimeComparison 4 10
+ * </pre>
+ */
+public class EdgeRuntimeComparison {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        compare("servlet", Application.class.getName(), "--spring.main.web-application-type=servlet", clients, seconds);
+        compare("reactive", Application.class.getName(), "--spring.main.web-application-type=reactive", clients, seconds);
+        compare("edge", EdgeServer.class.getName(), null, clients, seconds);
+    }
+
+    private static void compare(String runtime, String mainClass, String mode, int clients, int seconds) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                mainClass, "--server.port=" + port));
+        if (mode != null) {
+            command.add(mode);
+            command.add("--logging.level.root=WARN");
+        }
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.to(new File(System.getProperty("java.io.tmpdir"), "edge-comparison-" + runtime + ".log")))
+                .start();
+        try {
+            HttpClient client = HttpClient.newBuilder().connectTimeout(REQUEST_TIMEOUT).build();
+            double startupMillis = awaitFirstResponse(client, port, start) / 1_000_000.0;
+            long idleRss = memory(process, "VmRSS");
+            double throughput = throughput(port, clients, seconds);
+            System.out.printf("runtime=%s startup=%.0fms idleRss=%dMB loadedRss=%dMB peakRss=%dMB requests/s=%.0f%n",
+                    runtime, startupMillis, idleRss / 1024, memory(process, "VmRSS") / 1024, memory(process, "VmHWM") / 1024, throughput);
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    // from the launch of the process to the first 200 for the item list
+    private static long awaitFirstResponse(HttpClient client, int port, long start) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/items")).timeout(REQUEST_TIMEOUT).build();
+        while (System.nanoTime() - start < STARTUP_TIMEOUT.toNanos()) {
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return System.nanoTime() - start;
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(5);
+        }
+        throw new IllegalStateException("No response within " + STARTUP_TIMEOUT + ".");
+    }
+
+    // each client loops over a restock, a purchase and a read of the item list, so the stock never runs out
+    private static double throughput(int port, int clients, int seconds) throws InterruptedException {
+        String base = "http://localhost:" + port;
+        HttpRequest restock = json(base + "/items", "{\"CRISPS\": 1}");
+        HttpRequest buy = json(base + "/items/CRISPS", "{\"FIFTY_CENTS\": 1}");
+        HttpRequest items = HttpRequest.newBuilder(URI.create(base + "/items")).timeout(REQUEST_TIMEOUT).build();
+        HttpRequest[] cycle = {restock, buy, items};
+
+        AtomicLong completed = new AtomicLong();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                HttpClient client = HttpClient.newBuilder().connectTimeout(REQUEST_TIMEOUT).build();
+                for (int n = 0; System.nanoTime() < deadline; n++) {
+                    try {
+                        if (client.send(cycle[n % cycle.length], HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                            completed.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        // counted as not completed
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }, "client-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return completed.get() / (double) seconds;
+    }
+
+    private static HttpRequest json(String uri, String body) {
+        return HttpRequest.newBuilder(URI.create(uri))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    // in kilobytes, as /proc reports it
+    private static long memory(Process process, String field) throws IOException {
+        for (String line : Files.readAllLines(Paths.get("/proc", Long.toString(process.pid()), "status"))) {
+            if (line.startsWith(field + ":")) {
+                return Long.parseLong(line.substring(field.length() + 1).replace("kB", "").trim());
+            }
+        }
+        throw new IllegalStateException("No " + field + " for process " + process.pid() + ".");
+    }
+}
@@ -0,0 +1,122 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.config.Application;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Floods one registered machine with batches while timing single requests to other machines, which
+ * share its shard when there are fewer shards than machines. Without admission control the flood's
+ * batches pile up in the shard's queue and every machine on the shard waits behind them; with it the
+ * flooded machine is held to a latency target and the rest of its batches are turned away with a 429.
+ *
+ * <pre>
+ * java ... com.vendingmachine.benchmark.HotspotLoadTest true 256 20
+ * java ... com.vendingmachine.benchmark.HotspotLoadTest false 256 20
+ * </pre>
+ */
+public class HotspotLoadTest {
+
+    private static final int COLD_MACHINES = 8;
+    private static final int BATCH_SIZE = 200;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    // the flood runs this long before the probes start, so the JIT has warmed up and the limit has settled
+    private static final Duration WARMUP = Duration.ofSeconds(10);
+
+    public static void main(String[] args) throws Exception {
+        boolean admission = args.length <= 0 || Boolean.parseBoolean(args[0]);
+        int outstanding = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties("server.port=0", "logging.level.root=WARN", "vending.admission.enabled=" + admission)
+                .run()) {
+            String base = "http://localhost:" + context.getEnvironment().getRequiredProperty("local.server.port") + "/machines/";
+            HttpClient client = HttpClient.newBuilder().connectTimeout(REQUEST_TIMEOUT).build();
+            client.send(HttpRequest.newBuilder(URI.create(base + "hot")).PUT(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding());
+            for (int i = 0; i < COLD_MACHINES; i++) {
+                client.send(HttpRequest.newBuilder(URI.create(base + "cold-" + i)).PUT(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding());
+            }
+
+            long deadline = System.nanoTime() + WARMUP.toNanos() + Duration.ofSeconds(seconds).toNanos();
+            AtomicLong accepted = new AtomicLong();
+            AtomicLong rejected = new AtomicLong();
+            Thread flood = new Thread(() -> flood(client, base + "hot/batch", outstanding, deadline, accepted, rejected), "flood");
+            flood.start();
+            Thread.sleep(WARMUP.toMillis());
+            long[] latencies = probe(client, base, deadline);
+            flood.join();
+
+            Arrays.sort(latencies);
+            System.out.printf("admission=%s outstanding=%d hot: accepted=%d rejected=%d cold: probes=%d p50=%.1fms p99=%.1fms max=%.1fms%n",
+                    admission, outstanding, accepted.get(), rejected.get(), latencies.length,
+                    percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0));
+        }
+    }
+
+    // keeps a fixed number of batches in flight against the hot machine, each a restock and then purchases
+    private static void flood(HttpClient client, String uri, int outstanding, long deadline, AtomicLong accepted, AtomicLong rejected) {
+        StringBuilder body = new StringBuilder("[{\"type\": \"LOAD_ITEMS\", \"items\": {\"CRISPS\": " + BATCH_SIZE + "}}");
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            body.append(", {\"type\": \"BUY\", \"item\": \"CRISPS\", \"coins\": {\"FIFTY_CENTS\": 1}}");
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.append(']').toString()))
+                .build();
+        Semaphore inFlight = new Semaphore(outstanding);
+        while (System.nanoTime() < deadline) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+                inFlight.release();
+                if (response != null && response.statusCode() == 429) {
+                    rejected.incrementAndGet();
+                } else if (response != null) {
+                    accepted.incrementAndGet();
+                }
+            });
+        }
+        inFlight.acquireUninterruptibly(outstanding);
+    }
+
+    // times back-to-back reads of the float of each cold machine in turn
+    private static long[] probe(HttpClient client, String base, long deadline) {
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; System.nanoTime() < deadline; i++) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + "cold-" + (i % COLD_MACHINES) + "/change")).timeout(REQUEST_TIMEOUT).build();
+            long start = System.nanoTime();
+            try {
+                client.send(request, HttpResponse.BodyHandlers.discarding());
+                latencies.add(System.nanoTime() - start);
+            } catch (Exception e) {
+                latencies.add(REQUEST_TIMEOUT.toNanos());
+            }
+        }
+        return latencies.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+}
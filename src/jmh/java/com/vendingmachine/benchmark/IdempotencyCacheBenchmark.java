@@ -0,0 +1,116 @@
+package com.vendingmachine.benchmark;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.vendingmachine.exception.IdempotencyKeyConflictException;
+import com.vendingmachine.idempotency.IdempotencyCache;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// new keys past the cache's capacity, so every claim evicts, and retries of keys still held; a Guava
+// cache with the same bounds is the baseline, which allocates an entry per key and evicts through queues
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IdempotencyCacheBenchmark {
+
+    private static final int CAPACITY = 65_536;
+    private static final int KEYS = CAPACITY * 4;
+    private static final String SCOPE = "/";
+    private static final Object REQUEST = "/items/CRISPS";
+    private static final Object RESPONSE = "{\"FIFTY_CENTS\":1}";
+
+    private final String[] keys = new String[KEYS];
+    private IdempotencyCache<Object> idempotencyCache;
+    private Cache<String, Object> guavaCache;
+
+    @Setup
+    public void setUp() throws IdempotencyKeyConflictException {
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "key-" + i;
+        }
+        idempotencyCache = new IdempotencyCache<>(CAPACITY, Duration.ofMinutes(10));
+        guavaCache = CacheBuilder.newBuilder()
+                .maximumSize(CAPACITY)
+                .expireAfterWrite(Duration.ofMinutes(10))
+                .concurrencyLevel(16)
+                .build();
+        for (int i = 0; i < CAPACITY / 2; i++) {
+            idempotencyCache.claim(SCOPE, keys[i], REQUEST);
+            idempotencyCache.complete(SCOPE, keys[i], RESPONSE);
+            guavaCache.put(keys[i], RESPONSE);
+        }
+    }
+
+    // each thread takes every n-th new key, so no two threads claim the same one
+    @State(Scope.Thread)
+    public static class Client {
+
+        private int step;
+        private int next;
+        private int held;
+
+        @Setup
+        public void setUp(ThreadParams threads) {
+            step = threads.getThreadCount();
+            next = CAPACITY + threads.getThreadIndex();
+            held = threads.getThreadIndex();
+        }
+
+        // never one of the keys filled in at setup, which the retries use
+        String newKey(String[] keys) {
+            next += step;
+            if (next >= KEYS) {
+                next -= KEYS - CAPACITY;
+            }
+            return keys[next];
+        }
+
+        String heldKey(String[] keys) {
+            held = held + 1 == CAPACITY / 2 ? 0 : held + 1;
+            return keys[held];
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object claimAndComplete(Client client) throws IdempotencyKeyConflictException {
+        String key = client.newKey(keys);
+        Object stored = idempotencyCache.claim(SCOPE, key, REQUEST);
+        if (stored == null) {
+            idempotencyCache.complete(SCOPE, key, RESPONSE);
+        }
+        return stored;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object guavaPut(Client client) {
+        String key = client.newKey(keys);
+        Object stored = guavaCache.getIfPresent(key);
+        if (stored == null) {
+            guavaCache.put(key, RESPONSE);
+        }
+        return stored;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object replay(Client client) throws IdempotencyKeyConflictException {
+        String key = client.heldKey(keys);
+        Object stored = idempotencyCache.claim(SCOPE, key, REQUEST);
+        if (stored == null) {
+            idempotencyCache.complete(SCOPE, key, RESPONSE);
+        }
+        return stored;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object guavaReplay(Client client) {
+        return guavaCache.getIfPresent(client.heldKey(keys));
+    }
+}
@@ -0,0 +1,128 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.domain.Coins;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientFundsException;
+import com.vendingmachine.exception.ItemNotAvailableException;
+import com.vendingmachine.journal.Journal;
+import com.vendingmachine.journal.MachineState;
+import com.vendingmachine.service.VendingMachine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class JournalBenchmark {
+
+    private static final int STOCK = 1_000_000_000;
+    private static final int RECOVERY_EVENTS = 1_000_000;
+
+    // the same purchase as VendingMachineBenchmark.buyItemWithCounts, but with every event journaled
+    @State(Scope.Benchmark)
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public static class Append {
+
+        private final int[] oneDollar = Coins.toCounts(Map.of(Denomination.ONE_DOLLAR, 1));
+        private final int[] changeToPay = new int[Coins.DENOMINATION_COUNT];
+        private Path directory;
+        private Journal journal;
+        private VendingMachine vendingMachine;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("journal-append");
+            journal = Journal.open(directory);
+            vendingMachine = new VendingMachine(Map.of(), Map.of());
+            vendingMachine.setListener(journal.listenerFor("benchmark"));
+            vendingMachine.loadItems(Arrays.stream(ItemType.values()).collect(Collectors.toMap(Function.identity(), itemType -> STOCK)));
+            vendingMachine.loadChange(Arrays.stream(Denomination.values()).collect(Collectors.toMap(Function.identity(), coin -> STOCK)));
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            journal.close();
+            delete(directory);
+        }
+
+        @Benchmark
+        public int[] journaledPurchase() throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException {
+            vendingMachine.buyItem(ItemType.MARS_BAR, oneDollar, changeToPay);
+            return changeToPay;
+        }
+    }
+
+    // opening a journal whose only segment holds a million events that no snapshot covers yet
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public static class Recovery {
+
+        private Path template;
+        private Path directory;
+
+        @Setup(Level.Trial)
+        public void writeJournal() throws Exception {
+            template = Files.createTempDirectory("journal-recovery");
+            try (Journal journal = Journal.open(template)) {
+                VendingMachine vendingMachine = new VendingMachine(Map.of(), Map.of());
+                vendingMachine.setListener(journal.listenerFor("benchmark"));
+                int[] oneDollar = Coins.toCounts(Map.of(Denomination.ONE_DOLLAR, 1));
+                int[] changeToPay = new int[Coins.DENOMINATION_COUNT];
+                vendingMachine.loadChange(Map.of(Denomination.TWENTY_FIVE_CENTS, RECOVERY_EVENTS));
+                int[] restock = new int[ItemType.values().length];
+                restock[ItemType.MARS_BAR.ordinal()] = 1;
+                // a restock, an insert and a completed purchase per round
+                for (int i = 1; i < RECOVERY_EVENTS; i += 3) {
+                    vendingMachine.loadItems(restock);
+                    vendingMachine.buyItem(ItemType.MARS_BAR, oneDollar, changeToPay);
+                }
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void copyJournal() throws IOException {
+            directory = Files.createTempDirectory("journal-recovery-copy");
+            try (Stream<Path> files = Files.list(template)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.copy(file, directory.resolve(file.getFileName()));
+                }
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void deleteCopy() throws IOException {
+            delete(directory);
+        }
+
+        @TearDown(Level.Trial)
+        public void deleteJournal() throws IOException {
+            delete(template);
+        }
+
+        @Benchmark
+        public Map<String, MachineState> recover() throws IOException {
+            try (Journal journal = Journal.open(directory)) {
+                return journal.recoveredMachines();
+            }
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
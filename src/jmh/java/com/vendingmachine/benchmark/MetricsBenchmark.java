@@ -0,0 +1,74 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.change.ChangeStrategy;
+import com.vendingmachine.change.OptimalChangeStrategy;
+import com.vendingmachine.domain.Coins;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientFundsException;
+import com.vendingmachine.exception.ItemNotAvailableException;
+import com.vendingmachine.exception.TooManySessionsException;
+import com.vendingmachine.metrics.TimedChangeStrategy;
+import com.vendingmachine.metrics.VendingMetrics;
+import com.vendingmachine.service.VendingMachine;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// compare the instrumented=false and instrumented=true scores to see what metrics cost a purchase
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetricsBenchmark {
+
+    private static final int STOCK = 1_000_000_000;
+
+    @Param({"false", "true"})
+    private boolean instrumented;
+
+    private VendingMachine vendingMachine;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        ChangeStrategy changeStrategy = new OptimalChangeStrategy(Denomination.faceValues());
+        PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        if (instrumented) {
+            changeStrategy = new TimedChangeStrategy(changeStrategy, meterRegistry);
+        }
+        vendingMachine = new VendingMachine(
+                Arrays.stream(ItemType.values()).collect(Collectors.toMap(Function.identity(), itemType -> STOCK)),
+                Arrays.stream(Denomination.values()).collect(Collectors.toMap(Function.identity(), coin -> STOCK)),
+                changeStrategy);
+        if (instrumented) {
+            VendingMetrics vendingMetrics = new VendingMetrics(meterRegistry);
+            vendingMachine.setListener(vendingMetrics.bind("benchmark", vendingMachine));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Customer {
+
+        private final int[] oneDollar = Coins.toCounts(Map.of(Denomination.ONE_DOLLAR, 1));
+        private final int[] changeToPay = new int[Coins.DENOMINATION_COUNT];
+    }
+
+    @Benchmark
+    public int[] buyItem(Customer customer) throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException {
+        vendingMachine.buyItem(ItemType.MARS_BAR, customer.oneDollar, customer.changeToPay);
+        return customer.changeToPay;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int[] concurrentBuyItem(Customer customer) throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException, TooManySessionsException {
+        vendingMachine.buyItem(vendingMachine.newSessionToken(), ItemType.MARS_BAR, customer.oneDollar, customer.changeToPay);
+        return customer.changeToPay;
+    }
+}
@@ -0,0 +1,64 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.domain.Coins;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.service.PurchaseResult;
+import com.vendingmachine.service.VendingMachine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// a sold-out rush, where every attempt is turned away; the buy* scores use the exception API and the
+// tryBuy* scores the result API, all in the default session so rejected sessions do not pile up
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RejectedPurchaseBenchmark {
+
+    private VendingMachine vendingMachine;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        vendingMachine = new VendingMachine(Map.of(ItemType.CRISPS, 1_000_000_000), Map.of());
+    }
+
+    @State(Scope.Thread)
+    public static class Customer {
+
+        private final int[] oneDollar = Coins.toCounts(Map.of(Denomination.ONE_DOLLAR, 1));
+        private final int[] tenCents = Coins.toCounts(Map.of(Denomination.TEN_CENTS, 1));
+        private final int[] changeToPay = new int[Coins.DENOMINATION_COUNT];
+    }
+
+    @Benchmark
+    public Object buySoldOutItem(Customer customer) {
+        try {
+            vendingMachine.buyItem(ItemType.MARS_BAR, customer.oneDollar, customer.changeToPay);
+            return customer.changeToPay;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public PurchaseResult tryBuySoldOutItem(Customer customer) {
+        return vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, ItemType.MARS_BAR, customer.oneDollar, customer.changeToPay);
+    }
+
+    @Benchmark
+    public Object buyWithInsufficientFunds(Customer customer) {
+        try {
+            vendingMachine.buyItem(ItemType.CRISPS, customer.tenCents, customer.changeToPay);
+            return customer.changeToPay;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public PurchaseResult tryBuyWithInsufficientFunds(Customer customer) {
+        return vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, ItemType.CRISPS, customer.tenCents, customer.changeToPay);
+    }
+}
@@ -0,0 +1,128 @@
+package com.vendingmachine.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.idempotency.IdempotencyCache;
+import com.vendingmachine.rest.BatchController;
+import com.vendingmachine.rest.RestExceptionHandler;
+import com.vendingmachine.rest.VendingMachineController;
+import com.vendingmachine.service.MachineRegistry;
+import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.wire.CoinFrames;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RestBenchmark {
+
+    private static final String COINS_JSON = "{\"ONE_DOLLAR\": 1, \"TWENTY_FIVE_CENTS\": 2, \"TEN_CENTS\": 3}";
+    // the same coins as a frame: six counts, and then none, none, three dimes, two quarters, none and a dollar
+    private static final byte[] COINS_FRAME = {6, 0, 0, 3, 2, 0, 1};
+    private static final MediaType COIN_FRAMES = MediaType.parseMediaType(CoinFrames.MEDIA_TYPE);
+    private static final int BATCH_SIZE = 1_000;
+    private static final String BATCH_JSON = IntStream.range(0, BATCH_SIZE)
+            .mapToObj(i -> "{\"type\": \"BUY\", \"item\": \"CRISPS\", \"coins\": " + COINS_JSON + "}")
+            .collect(Collectors.joining(", ", "[", "]"));
+    private static final TypeReference<Map<Denomination, Integer>> COINS_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Map<Denomination, Integer> coins;
+    private final int[] counts = new int[Denomination.values().length];
+    private MachineRegistry machineRegistry;
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() throws Exception {
+        coins = objectMapper.readValue(COINS_JSON, COINS_TYPE);
+        VendingMachine vendingMachine = new VendingMachine(
+                Arrays.stream(ItemType.values()).collect(Collectors.toMap(Function.identity(), itemType -> 1_000_000_000)),
+                Arrays.stream(Denomination.values()).collect(Collectors.toMap(Function.identity(), coin -> 1_000_000_000)));
+        // the real DispatcherServlet, argument resolvers and message converters, without a socket
+        machineRegistry = new MachineRegistry(1, machineId -> vendingMachine);
+        mockMvc = MockMvcBuilders.standaloneSetup(new VendingMachineController(vendingMachine, new IdempotencyCache<>(1024, Duration.ofMinutes(10)), "/"), new BatchController(vendingMachine, machineRegistry))
+                .setControllerAdvice(new RestExceptionHandler())
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        machineRegistry.close();
+    }
+
+    @Benchmark
+    public Map<Denomination, Integer> deserializeCoins() throws Exception {
+        return objectMapper.readValue(COINS_JSON, COINS_TYPE);
+    }
+
+    @Benchmark
+    public String serializeCoins() throws Exception {
+        return objectMapper.writeValueAsString(coins);
+    }
+
+    @Benchmark
+    public int[] decodeCoinFrame() {
+        CoinFrames.decode(COINS_FRAME, counts);
+        return counts;
+    }
+
+    @Benchmark
+    public byte[] encodeCoinFrame() {
+        return CoinFrames.encode(counts);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public MvcResult buyItemFrameRequest() throws Exception {
+        return mockMvc.perform(post("/items/CRISPS")
+                        .contentType(COIN_FRAMES)
+                        .accept(COIN_FRAMES)
+                        .content(COINS_FRAME))
+                .andReturn();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public MvcResult buyItemRequest() throws Exception {
+        return mockMvc.perform(post("/items/CRISPS")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(COINS_JSON))
+                .andReturn();
+    }
+
+    // scored per purchase, so it compares directly with buyItemRequest
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public MvcResult batchBuyRequest() throws Exception {
+        MvcResult result = mockMvc.perform(post("/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BATCH_JSON))
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getItemsRequest() throws Exception {
+        return mockMvc.perform(get("/items")).andReturn();
+    }
+}
@@ -0,0 +1,57 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.planning.RestockPlan;
+import com.vendingmachine.planning.RestockPlanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// one restock plan from a thousand recorded purchases, on one thread and on one per core, to show how
+// planning time falls as cores are added
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RestockPlannerBenchmark {
+
+    @Param({"1", "0"})
+    private int parallelism;
+
+    private RestockPlanner planner;
+    private PriceList prices;
+    private int[][] history;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        planner = new RestockPlanner(parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism, 200, 1024);
+        prices = PriceList.of(Catalog.DEFAULT);
+        // each purchase paid with a random handful of coins worth at least its price
+        SplittableRandom random = new SplittableRandom(42);
+        history = new int[1024][];
+        for (int i = 0; i < history.length; i++) {
+            int item = random.nextInt(Catalog.DEFAULT.size());
+            int[] row = new int[1 + Currency.DEFAULT.size()];
+            row[0] = item;
+            int paid = 0;
+            while (paid < prices.price(item)) {
+                int coin = 2 + random.nextInt(Currency.DEFAULT.size() - 2);
+                row[1 + coin]++;
+                paid += Currency.DEFAULT.faceValue(coin);
+            }
+            history[i] = row;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        planner.close();
+    }
+
+    @Benchmark
+    public RestockPlan plan() {
+        return planner.plan(prices, Currency.DEFAULT, history, history.length, 0.01);
+    }
+}
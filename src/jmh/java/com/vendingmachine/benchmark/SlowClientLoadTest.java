@@ -0,0 +1,148 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.config.Application;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds many slow connections open against the application in one execution mode while timing quick
+ * requests from a well-behaved client. Each slow client trickles the body of a restock one byte at a
+ * time, which ties up a request thread in the servlet mode but costs the reactive mode nothing until
+ * the body is complete.
+ *
+ * <pre>
+ * java ... com.vendingmachine.benchmark.SlowClientLoadTest servlet 1000
+ * java ... com.vendingmachine.benchmark.SlowClientLoadTest reactive 1000
+ * </pre>
+ */
+public class SlowClientLoadTest {
+
+    private static final byte[] BODY = "{\"COCA_COLA\": 1}".getBytes(StandardCharsets.US_ASCII);
+    private static final long TRICKLE_INTERVAL_MILLIS = 250;
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(10);
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "servlet";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties("server.port=0", "spring.main.web-application-type=" + mode, "logging.level.root=WARN")
+                .run()) {
+            int port = Integer.parseInt(context.getEnvironment().getRequiredProperty("local.server.port"));
+            List<Socket> slowClients = connect(port, connections);
+
+            Thread trickler = new Thread(() -> trickle(slowClients), "trickler");
+            trickler.start();
+            long[] latencies = probe(port, trickler);
+            trickler.join();
+
+            int completed = completed(slowClients);
+            Arrays.sort(latencies);
+            System.out.printf("mode=%s connections=%d/%d completed=%d probes=%d p50=%.1fms p99=%.1fms max=%.1fms%n",
+                    mode, slowClients.size(), connections, completed, latencies.length,
+                    percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0));
+        }
+    }
+
+    private static List<Socket> connect(int port, int connections) {
+        List<Socket> sockets = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            try {
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress("localhost", port), (int) PROBE_TIMEOUT.toMillis());
+                socket.setSoTimeout((int) PROBE_TIMEOUT.toMillis());
+                socket.getOutputStream().write(("POST /items HTTP/1.1\r\n"
+                        + "Host: localhost\r\n"
+                        + "Content-Type: application/json\r\n"
+                        + "Content-Length: " + BODY.length + "\r\n"
+                        + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                sockets.add(socket);
+            } catch (IOException e) {
+                // reported as the gap between connections attempted and held
+            }
+        }
+        return sockets;
+    }
+
+    // one thread feeds every slow client a byte of its body per tick
+    private static void trickle(List<Socket> sockets) {
+        for (byte b : BODY) {
+            for (Socket socket : sockets) {
+                try {
+                    OutputStream out = socket.getOutputStream();
+                    out.write(b);
+                    out.flush();
+                } catch (IOException ignored) {
+                    // the server gave up on this client, which completed() will report
+                }
+            }
+            try {
+                Thread.sleep(TRICKLE_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // times back-to-back reads of the item list for as long as the slow clients are uploading
+    private static long[] probe(int port, Thread trickler) {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(PROBE_TIMEOUT).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/items"))
+                .timeout(PROBE_TIMEOUT)
+                .build();
+        List<Long> latencies = new ArrayList<>();
+        while (trickler.isAlive()) {
+            long start = System.nanoTime();
+            try {
+                client.send(request, HttpResponse.BodyHandlers.discarding());
+                latencies.add(System.nanoTime() - start);
+            } catch (IOException e) {
+                latencies.add(PROBE_TIMEOUT.toNanos());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return latencies.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static int completed(List<Socket> sockets) {
+        int completed = 0;
+        for (Socket socket : sockets) {
+            try (socket; BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))) {
+                String statusLine = in.readLine();
+                if (statusLine != null && statusLine.startsWith("HTTP/1.1 200")) {
+                    completed++;
+                }
+            } catch (IOException ignored) {
+                // counted as not completed
+            }
+        }
+        return completed;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+}
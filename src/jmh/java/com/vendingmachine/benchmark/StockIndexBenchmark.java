@@ -0,0 +1,78 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.fleet.MachineMatches;
+import com.vendingmachine.fleet.StockIndex;
+import com.vendingmachine.service.VendingMachine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// "where can I buy this" over a fleet of 100,000 machines, from the stock index and, as the baseline, by
+// asking every machine for the items it has in stock; mars bars are rare and coca cola is nearly everywhere
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StockIndexBenchmark {
+
+    private static final int MACHINES = 100_000;
+    private static final int LIMIT = 100;
+
+    private final VendingMachine[] machines = new VendingMachine[MACHINES];
+    private final String[] machineIds = new String[MACHINES];
+    private StockIndex stockIndex;
+    private int marsBar;
+    private int cocaCola;
+
+    @Setup
+    public void setUp() {
+        stockIndex = new StockIndex(Catalog.DEFAULT, 5);
+        marsBar = Catalog.DEFAULT.id(ItemType.MARS_BAR);
+        cocaCola = Catalog.DEFAULT.id(ItemType.COCA_COLA);
+        Random random = new Random(42);
+        for (int i = 0; i < MACHINES; i++) {
+            machineIds[i] = "machine-" + i;
+            machines[i] = new VendingMachine(Map.of(), Map.of());
+            machines[i].setListener(stockIndex.bind(machineIds[i], machines[i]));
+            int[] stock = new int[Catalog.DEFAULT.size()];
+            stock[marsBar] = random.nextInt(100) == 0 ? 5 : 0;
+            stock[cocaCola] = random.nextInt(10) == 0 ? 0 : 5;
+            machines[i].loadItems(stock);
+            int[] change = new int[machines[i].getCurrency().size()];
+            Arrays.fill(change, random.nextInt(10) == 0 ? 2 : 10);
+            machines[i].loadChange(change);
+        }
+    }
+
+    @Benchmark
+    public MachineMatches findRareItem() {
+        return stockIndex.find(marsBar, null, LIMIT);
+    }
+
+    @Benchmark
+    public MachineMatches findCommonItemWithChange() {
+        return stockIndex.find(cocaCola, false, LIMIT);
+    }
+
+    @Benchmark
+    public List<String> scanForRareItem() {
+        List<String> found = new ArrayList<>(LIMIT);
+        int count = 0;
+        for (int i = 0; i < MACHINES; i++) {
+            if (machines[i].availableItems().contains(ItemType.MARS_BAR)) {
+                if (found.size() < LIMIT) {
+                    found.add(machineIds[i]);
+                }
+                count++;
+            }
+        }
+        found.add(Integer.toString(count));
+        return found;
+    }
+}
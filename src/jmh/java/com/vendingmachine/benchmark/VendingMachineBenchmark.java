@@ -0,0 +1,101 @@
+package com.vendingmachine.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import com.vendingmachine.domain.Coins;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientFundsException;
+import com.vendingmachine.exception.ItemNotAvailableException;
+import com.vendingmachine.exception.TooManySessionsException;
+import com.vendingmachine.service.MachineSnapshot;
+import com.vendingmachine.service.VendingMachine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VendingMachineBenchmark {
+
+    private static final int STOCK = 1_000_000_000;
+
+    private static final Map<Denomination, Integer> ONE_DOLLAR = ImmutableMap.of(Denomination.ONE_DOLLAR, 1);
+    private static final Map<Denomination, Integer> ONE_FIFTY = ImmutableMap.of(Denomination.FIFTY_CENTS, 1);
+    private static final Map<ItemType, Integer> LARGE_RESTOCK = Arrays.stream(ItemType.values())
+            .collect(Collectors.toMap(Function.identity(), itemType -> 10_000));
+    private static final Map<ItemType, Integer> LARGE_UNLOAD = Arrays.stream(ItemType.values())
+            .collect(Collectors.toMap(Function.identity(), itemType -> -10_000));
+
+    private VendingMachine vendingMachine;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        vendingMachine = new VendingMachine(
+                Arrays.stream(ItemType.values()).collect(Collectors.toMap(Function.identity(), itemType -> STOCK)),
+                Arrays.stream(Denomination.values()).collect(Collectors.toMap(Function.identity(), coin -> STOCK)));
+    }
+
+    @State(Scope.Thread)
+    public static class Customer {
+
+        private final int[] oneDollar = Coins.toCounts(ONE_DOLLAR);
+        private final int[] oneFifty = Coins.toCounts(ONE_FIFTY);
+        private final int[] changeToPay = new int[Coins.DENOMINATION_COUNT];
+        private long purchases;
+        private long restocks;
+    }
+
+    @Benchmark
+    public Map<Denomination, Integer> buyItem() throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException {
+        return vendingMachine.buyItem(ItemType.MARS_BAR, ONE_DOLLAR);
+    }
+
+    @Benchmark
+    public int[] buyItemWithCounts(Customer customer) throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException {
+        vendingMachine.buyItem(ItemType.MARS_BAR, customer.oneDollar, customer.changeToPay);
+        return customer.changeToPay;
+    }
+
+    // a mix of purchases that need change and exact payments, each thread in its own session
+    @Benchmark
+    @Threads(4)
+    public int[] concurrentPurchaseMix(Customer customer) throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException, TooManySessionsException {
+        long session = vendingMachine.newSessionToken();
+        if ((customer.purchases++ & 1) == 0) {
+            vendingMachine.buyItem(session, ItemType.MARS_BAR, customer.oneDollar, customer.changeToPay);
+        } else {
+            vendingMachine.buyItem(session, ItemType.CRISPS, customer.oneFifty, customer.changeToPay);
+        }
+        return customer.changeToPay;
+    }
+
+    @Benchmark
+    public Set<ItemType> availableItems() {
+        return vendingMachine.availableItems();
+    }
+
+    @Benchmark
+    public int getChange() {
+        return vendingMachine.getChange();
+    }
+
+    // the stock, sales and float read together, consistently, while nothing else is writing
+    @Benchmark
+    public MachineSnapshot snapshot() {
+        return vendingMachine.snapshot();
+    }
+
+    // every other call takes the restock back out, so the stock stays put however many calls an iteration runs
+    @Benchmark
+    public VendingMachine loadLargeRestock(Customer customer) {
+        vendingMachine.loadItems((customer.restocks++ & 1) == 0 ? LARGE_RESTOCK : LARGE_UNLOAD);
+        return vendingMachine;
+    }
+}
@@ -0,0 +1,121 @@
+package com.vendingmachine.admission;
+
+import com.vendingmachine.exception.MachineOverloadedException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A {@link ConcurrencyLimit} per machine, so a flood of requests for one machine is turned away before it
+ * fills the queue that other machines share, and the meters that publish what the limits hold and turn
+ * away. A machine gets its limit when its first request is let in. The fleet's totals are published once,
+ * and only the machines a site picks get meters tagged with their id.
+ */
+public class AdmissionControl {
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final Duration targetLatency;
+    private final Duration retryAfter;
+    private final MeterRegistry meterRegistry;
+    private final Predicate<String> machineMeters;
+    private final LongSupplier nanoClock;
+    private final Map<String, ConcurrencyLimit> limits = new ConcurrentHashMap<>();
+
+    public AdmissionControl(int initialLimit, int minLimit, int maxLimit, Duration targetLatency, Duration retryAfter, MeterRegistry meterRegistry) {
+        this(initialLimit, minLimit, maxLimit, targetLatency, retryAfter, meterRegistry, machineId -> true);
+    }
+
+    // only the machines machineMeters accepts get meters tagged with their id
+    public AdmissionControl(int initialLimit, int minLimit, int maxLimit, Duration targetLatency, Duration retryAfter, MeterRegistry meterRegistry, Predicate<String> machineMeters) {
+        this(initialLimit, minLimit, maxLimit, targetLatency, retryAfter, meterRegistry, machineMeters, System::nanoTime);
+    }
+
+    AdmissionControl(int initialLimit, int minLimit, int maxLimit, Duration targetLatency, Duration retryAfter, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this(initialLimit, minLimit, maxLimit, targetLatency, retryAfter, meterRegistry, machineId -> true, nanoClock);
+    }
+
+    AdmissionControl(int initialLimit, int minLimit, int maxLimit, Duration targetLatency, Duration retryAfter, MeterRegistry meterRegistry, Predicate<String> machineMeters, LongSupplier nanoClock) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Admission limits must satisfy 1 <= min <= initial <= max.");
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatency = targetLatency;
+        this.retryAfter = retryAfter;
+        this.meterRegistry = meterRegistry;
+        this.machineMeters = machineMeters;
+        this.nanoClock = nanoClock;
+        Gauge.builder("vending.fleet.admission.in_flight", this, control -> control.sum(ConcurrencyLimit::inFlight))
+                .description("Requests queued or running across the fleet")
+                .register(meterRegistry);
+        FunctionCounter.builder("vending.fleet.admission.rejected", this, control -> control.sum(ConcurrencyLimit::rejected))
+                .description("Requests turned away because their machine was at its limit, across the fleet")
+                .register(meterRegistry);
+    }
+
+    public ConcurrencyLimit limitFor(String machineId) {
+        ConcurrencyLimit limit = limits.get(machineId);
+        return limit != null ? limit : limits.computeIfAbsent(machineId, this::newLimit);
+    }
+
+    // runs the task if the machine has room for it, and frees the room once the task's future completes
+    public <T> CompletableFuture<T> submit(String machineId, Supplier<CompletableFuture<T>> task) {
+        ConcurrencyLimit limit = limitFor(machineId);
+        long admitted = limit.tryAcquire();
+        if (admitted == ConcurrencyLimit.REJECTED) {
+            return CompletableFuture.failedFuture(new MachineOverloadedException(machineId, retryAfter));
+        }
+        CompletableFuture<T> result;
+        try {
+            result = task.get();
+        } catch (RuntimeException e) {
+            limit.release(admitted);
+            throw e;
+        }
+        return result.whenComplete((value, failure) -> limit.release(admitted));
+    }
+
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+
+    private ConcurrencyLimit newLimit(String machineId) {
+        ConcurrencyLimit limit = new ConcurrencyLimit(initialLimit, minLimit, maxLimit, targetLatency.toNanos(), nanoClock);
+        if (!machineMeters.test(machineId)) {
+            return limit;
+        }
+        Gauge.builder("vending.admission.limit", limit, ConcurrencyLimit::limit)
+                .description("Requests a machine may have queued or running at once")
+                .tag("machine", machineId)
+                .register(meterRegistry);
+        Gauge.builder("vending.admission.in_flight", limit, ConcurrencyLimit::inFlight)
+                .description("Requests a machine has queued or running")
+                .tag("machine", machineId)
+                .register(meterRegistry);
+        FunctionCounter.builder("vending.admission.rejected", limit, ConcurrencyLimit::rejected)
+                .description("Requests turned away because the machine was at its limit")
+                .tag("machine", machineId)
+                .register(meterRegistry);
+        return limit;
+    }
+
+    private double sum(ToDoubleFunction<ConcurrencyLimit> value) {
+        double sum = 0;
+        for (ConcurrencyLimit limit : limits.values()) {
+            sum += value.applyAsDouble(limit);
+        }
+        return sum;
+    }
+}
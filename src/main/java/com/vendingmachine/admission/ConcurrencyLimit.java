@@ -0,0 +1,91 @@
+package com.vendingmachine.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * How many requests one machine may have queued or running at once. The limit adapts to the latency of
+ * the requests it lets in, from admission to completion, so it takes in time spent waiting in the
+ * machine's queue. When a request takes longer than the target, the limit is cut by a tenth, at most
+ * once per target interval so one backlog only counts once. When requests are fast and the limit is at
+ * least half used, it grows by about one per limit's worth of requests. Past the limit, a request is
+ * turned away at once rather than queued.
+ */
+public final class ConcurrencyLimit {
+
+    public static final long REJECTED = Long.MIN_VALUE;
+
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile double limit;
+    // guarded by this
+    private long lastBackoffNanos;
+
+    ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long targetLatencyNanos, LongSupplier nanoClock) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.nanoClock = nanoClock;
+        this.limit = initialLimit;
+        this.lastBackoffNanos = nanoClock.getAsLong() - targetLatencyNanos;
+    }
+
+    // the time the request was let in, to hand back to release, or REJECTED when the machine is at its limit
+    public long tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return REJECTED;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return nanoClock.getAsLong();
+            }
+        }
+    }
+
+    // turns a request away early, before its body is read, if one acquired now would be rejected anyway
+    public boolean rejectIfFull() {
+        if (inFlight.get() >= (int) limit) {
+            rejected.increment();
+            return true;
+        }
+        return false;
+    }
+
+    public void release(long admittedNanos) {
+        long now = nanoClock.getAsLong();
+        int releasedFrom = inFlight.getAndDecrement();
+        adjust(now - admittedNanos, releasedFrom, now);
+    }
+
+    private synchronized void adjust(long latencyNanos, int inFlight, long now) {
+        if (latencyNanos > targetLatencyNanos) {
+            if (now - lastBackoffNanos >= targetLatencyNanos) {
+                limit = Math.max(minLimit, limit * BACKOFF);
+                lastBackoffNanos = now;
+            }
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,50 @@
+package com.vendingmachine.analytics;
+
+/**
+ * Log-spaced bins for basket values in a currency's minor unit. Each bin's upper bound is about 10.5%
+ * above its lower one, and a value is reported as the midpoint of its bin, so a quantile read from the
+ * bins is within 5% of the true one. 128 bins reach about 350,000 minor units; anything above that
+ * lands in the last bin.
+ */
+final class QuantileSketch {
+
+    static final int BINS = 128;
+
+    private static final double GAMMA = 1.05 / 0.95;
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private QuantileSketch() {
+    }
+
+    // bin 0 holds values up to 1
+    static int bin(int value) {
+        if (value <= 1) {
+            return 0;
+        }
+        return Math.min(BINS - 1, (int) Math.ceil(Math.log(value) / LOG_GAMMA));
+    }
+
+    // the value at the given rank, from 0 to 1, of the values counted in bins, or -1 when there are none
+    static int quantile(long[] bins, double rank) {
+        long total = 0;
+        for (long count : bins) {
+            total += count;
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long target = (long) Math.ceil(rank * total);
+        long seen = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            seen += bins[bin];
+            if (seen >= Math.max(1, target)) {
+                return value(bin);
+            }
+        }
+        return value(BINS - 1);
+    }
+
+    private static int value(int bin) {
+        return bin == 0 ? 1 : (int) Math.round(2 * Math.pow(GAMMA, bin) / (GAMMA + 1));
+    }
+}
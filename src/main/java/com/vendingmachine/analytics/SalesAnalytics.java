@@ -0,0 +1,39 @@
+package com.vendingmachine.analytics;
+
+import com.vendingmachine.exception.MachineNotFoundException;
+import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.service.VendingMachineListener;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// the sales windows of every machine, by machine id, all with the same resolution and span
+public class SalesAnalytics {
+
+    private final long resolutionMillis;
+    private final int buckets;
+    private final int itemsPerBucket;
+    private final Map<String, SalesWindows> windows = new ConcurrentHashMap<>();
+
+    public SalesAnalytics(Duration resolution, int buckets, int itemsPerBucket) {
+        this.resolutionMillis = resolution.toMillis();
+        this.buckets = buckets;
+        this.itemsPerBucket = itemsPerBucket;
+    }
+
+    // starts recording the machine's sales and returns the listener that records them
+    public VendingMachineListener bind(String machineId, VendingMachine vendingMachine) {
+        SalesWindows machineWindows = new SalesWindows(vendingMachine, resolutionMillis, buckets, itemsPerBucket);
+        windows.put(machineId, machineWindows);
+        return machineWindows;
+    }
+
+    public SalesWindows get(String machineId) throws MachineNotFoundException {
+        SalesWindows machineWindows = windows.get(machineId);
+        if (machineWindows == null) {
+            throw new MachineNotFoundException(machineId);
+        }
+        return machineWindows;
+    }
+}
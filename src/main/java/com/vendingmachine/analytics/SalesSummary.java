@@ -0,0 +1,70 @@
+package com.vendingmachine.analytics;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.google.common.collect.ImmutableMap;
+import com.vendingmachine.service.PurchaseResult;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The sales in one window of a {@link SalesWindows}, from its start up to but not including its end,
+ * both in epoch milliseconds. Revenue and change are in the machine currency's minor unit. Basket value
+ * quantiles are only kept for a machine as a whole.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SalesSummary {
+
+    private static final PurchaseResult.Status[] STATUSES = PurchaseResult.Status.values();
+
+    private final long from;
+    private final long to;
+    private final long[] totals;
+    private final long[] basketValues;
+
+    SalesSummary(long from, long to, long[] totals, long[] basketValues) {
+        this.from = from;
+        this.to = to;
+        this.totals = totals;
+        this.basketValues = basketValues;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public long getUnits() {
+        return totals[SalesWindows.UNITS];
+    }
+
+    public long getRevenue() {
+        return totals[SalesWindows.REVENUE];
+    }
+
+    public long getChange() {
+        return totals[SalesWindows.CHANGE];
+    }
+
+    // by status, in lower case as the purchase metrics tag them
+    public Map<String, Long> getFailures() {
+        ImmutableMap.Builder<String, Long> failures = ImmutableMap.builder();
+        for (int status = 1; status < STATUSES.length; status++) {
+            failures.put(STATUSES[status].name().toLowerCase(Locale.ROOT), totals[SalesWindows.FAILURES + status - 1]);
+        }
+        return failures.build();
+    }
+
+    public Map<String, Integer> getBasketValue() {
+        if (basketValues == null || getUnits() == 0) {
+            return null;
+        }
+        return ImmutableMap.of(
+                "p50", QuantileSketch.quantile(basketValues, 0.5),
+                "p90", QuantileSketch.quantile(basketValues, 0.9),
+                "p99", QuantileSketch.quantile(basketValues, 0.99));
+    }
+}
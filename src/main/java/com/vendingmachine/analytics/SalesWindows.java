@@ -0,0 +1,280 @@
+package com.vendingmachine.analytics;
+
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.service.PurchaseResult;
+import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.service.VendingMachineListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * One machine's sales in a fixed ring of time buckets, reused as the clock comes back round to them. Each
+ * bucket has counters for the machine as a whole, a small table of counters for the SKUs sold or turned
+ * away in it, and a sketch of basket values. A bucket only has room for as many SKUs as the machine
+ * carried when the bucket was last cleared, up to a fixed limit; once it is full, further SKUs in it are
+ * counted in an overflow row that still adds to the machine's totals. Memory therefore depends on the
+ * configuration and the machine's assortment, not on the catalog or on how long the service has run.
+ * Most machines in a large fleet sell nothing for long stretches, so the ring is only made at a
+ * machine's first sale.
+ *
+ * <p>Recording a purchase is a handful of atomic adds, and the first purchase in a bucket clears it
+ * under a lock. Queries add up the buckets a window covers, and never block purchases.
+ */
+public class SalesWindows implements VendingMachineListener {
+
+    static final int UNITS = 0;
+    static final int REVENUE = 1;
+    static final int CHANGE = 2;
+    // one counter per PurchaseResult.Status after COMPLETED, counted from here
+    static final int FAILURES = 3;
+    static final int FIELDS = FAILURES + PurchaseResult.Status.values().length - 1;
+
+    private static final int EMPTY = 0;
+
+    private final VendingMachine vendingMachine;
+    private final Currency currency;
+    private final LongSupplier clock;
+    private final long resolutionMillis;
+    private final int buckets;
+    private final int itemsPerBucket;
+    // indexed by tick % buckets; null until the first sale
+    private volatile AtomicReferenceArray<Bucket> ring;
+
+    public SalesWindows(VendingMachine vendingMachine, long resolutionMillis, int buckets, int itemsPerBucket) {
+        this(vendingMachine, resolutionMillis, buckets, itemsPerBucket, System::currentTimeMillis);
+    }
+
+    SalesWindows(VendingMachine vendingMachine, long resolutionMillis, int buckets, int itemsPerBucket, LongSupplier clock) {
+        if (resolutionMillis <= 0 || buckets <= 0 || itemsPerBucket <= 0) {
+            throw new IllegalArgumentException("Analytics need a positive resolution, bucket count and items per bucket.");
+        }
+        this.vendingMachine = vendingMachine;
+        this.currency = vendingMachine.getCurrency();
+        this.clock = clock;
+        this.resolutionMillis = resolutionMillis;
+        this.buckets = buckets;
+        this.itemsPerBucket = itemsPerBucket;
+    }
+
+    public long resolutionMillis() {
+        return resolutionMillis;
+    }
+
+    // how far back the ring reaches
+    public long spanMillis() {
+        return resolutionMillis * buckets;
+    }
+
+    @Override
+    public void purchaseCompleted(long sessionToken, int item, int[] coinsPaid, int[] changePaid) {
+        Bucket bucket = bucket();
+        if (bucket == null) {
+            return;
+        }
+        int change = currency.total(changePaid);
+        int basketValue = currency.total(coinsPaid) - change;
+        bucket.add(bucket.itemRow(item), basketValue, change);
+        bucket.add(bucket.machineRow(), basketValue, change);
+        bucket.basketValues.incrementAndGet(QuantileSketch.bin(basketValue));
+    }
+
+    @Override
+    public void purchaseFailed(long sessionToken, int item, int[] coinsOffered, PurchaseResult result) {
+        Bucket bucket = bucket();
+        if (bucket == null) {
+            return;
+        }
+        int field = FAILURES + result.getStatus().ordinal() - 1;
+        if (item >= 0) {
+            bucket.counters.incrementAndGet(bucket.index(bucket.itemRow(item), field));
+        }
+        bucket.counters.incrementAndGet(bucket.index(bucket.machineRow(), field));
+    }
+
+    // the bucket for now, cleared first if it still holds an older tick, or null if it already holds a newer one
+    private Bucket bucket() {
+        long tick = clock.getAsLong() / resolutionMillis;
+        int index = (int) (tick % buckets);
+        AtomicReferenceArray<Bucket> slots = ring;
+        Bucket bucket = slots == null ? null : slots.get(index);
+        if (bucket != null && bucket.tick == tick) {
+            return bucket;
+        }
+        if (bucket != null && bucket.tick > tick) {
+            // a thread that stalled for the whole span, so its purchase is too old to keep
+            return null;
+        }
+        synchronized (this) {
+            slots = ring;
+            if (slots == null) {
+                slots = new AtomicReferenceArray<>(buckets);
+                ring = slots;
+            }
+            bucket = slots.get(index);
+            if (bucket == null || bucket.tick < tick) {
+                // open addressing stays short while the table is at most half full
+                int tableSize = Integer.highestOneBit(Math.max(1, Math.min(itemsPerBucket, vendingMachine.carriedItemCount())) * 2 - 1) << 1;
+                if (bucket == null || bucket.tableSize != tableSize) {
+                    bucket = new Bucket(tableSize);
+                    slots.set(index, bucket);
+                } else {
+                    bucket.clear();
+                }
+                bucket.tick = tick;
+            }
+            return bucket.tick > tick ? null : bucket;
+        }
+    }
+
+    private static int mix(int item) {
+        return item * 0x9E3779B9 >>> 16;
+    }
+
+    /**
+     * The window of the given length that ends with the bucket the clock is in now, for one SKU or, with
+     * an item of -1, for the machine.
+     */
+    public SalesSummary sliding(long windowMillis, int item) {
+        int length = length(windowMillis);
+        long now = clock.getAsLong() / resolutionMillis;
+        return summarize(now - length + 1, now + 1, item);
+    }
+
+    /**
+     * The last {@code count} windows of the given length, oldest first, aligned to multiples of the length
+     * since the epoch. The last one is the window the clock is in now.
+     */
+    public List<SalesSummary> tumbling(long windowMillis, int count, int item) {
+        int length = length(windowMillis);
+        if (count <= 0 || (long) count * length > buckets) {
+            throw new IllegalArgumentException("Only " + buckets / length + " windows of " + windowMillis + " ms are kept.");
+        }
+        long now = clock.getAsLong() / resolutionMillis;
+        long last = now - now % length;
+        List<SalesSummary> windows = new ArrayList<>(count);
+        for (long start = last - (long) (count - 1) * length; start <= last; start += length) {
+            windows.add(summarize(start, start + length, item));
+        }
+        return windows;
+    }
+
+    private int length(long windowMillis) {
+        if (windowMillis <= 0 || windowMillis % resolutionMillis != 0 || windowMillis > spanMillis()) {
+            throw new IllegalArgumentException("Windows must be a multiple of " + resolutionMillis
+                    + " ms and at most " + spanMillis() + " ms.");
+        }
+        return (int) (windowMillis / resolutionMillis);
+    }
+
+    private SalesSummary summarize(long from, long to, int item) {
+        long[] totals = new long[FIELDS];
+        long[] bins = item < 0 ? new long[QuantileSketch.BINS] : null;
+        AtomicReferenceArray<Bucket> slots = ring;
+        for (long tick = from; slots != null && tick < to; tick++) {
+            Bucket bucket = slots.get((int) Math.floorMod(tick, (long) buckets));
+            if (bucket == null || bucket.tick != tick) {
+                continue;
+            }
+            int row = item < 0 ? bucket.machineRow() : bucket.findRow(item);
+            if (row < 0) {
+                continue;
+            }
+            for (int field = 0; field < FIELDS; field++) {
+                totals[field] += bucket.counters.get(bucket.index(row, field));
+            }
+            if (bins != null) {
+                for (int bin = 0; bin < QuantileSketch.BINS; bin++) {
+                    bins[bin] += bucket.basketValues.get(bin);
+                }
+            }
+        }
+        return new SalesSummary(from * resolutionMillis, to * resolutionMillis, totals, bins);
+    }
+
+    // one time bucket's counters, kept and cleared for the next tick that falls in it while the table still fits
+    private static final class Bucket {
+
+        private final int tableSize;
+        // tableSize item rows, then the overflow row, then the machine's row
+        private final int rows;
+        // SKU id + 1 of each item row, or EMPTY
+        private final AtomicIntegerArray keys;
+        private final AtomicIntegerArray counters;
+        private final AtomicIntegerArray basketValues = new AtomicIntegerArray(QuantileSketch.BINS);
+        // the tick this bucket holds, set once it has been cleared for it
+        private volatile long tick = -1;
+
+        private Bucket(int tableSize) {
+            this.tableSize = tableSize;
+            this.rows = tableSize + 2;
+            this.keys = new AtomicIntegerArray(tableSize);
+            this.counters = new AtomicIntegerArray(rows * FIELDS);
+        }
+
+        private void clear() {
+            for (int i = 0; i < keys.length(); i++) {
+                keys.set(i, EMPTY);
+            }
+            for (int i = 0; i < counters.length(); i++) {
+                counters.set(i, 0);
+            }
+            for (int i = 0; i < basketValues.length(); i++) {
+                basketValues.set(i, 0);
+            }
+        }
+
+        private void add(int row, int revenue, int change) {
+            counters.incrementAndGet(index(row, UNITS));
+            counters.addAndGet(index(row, REVENUE), revenue);
+            if (change != 0) {
+                counters.addAndGet(index(row, CHANGE), change);
+            }
+        }
+
+        // the item's row, claiming one if it has none yet, or the overflow row when the table is full
+        private int itemRow(int item) {
+            int key = item + 1;
+            int mask = tableSize - 1;
+            for (int probe = 0, row = mix(item) & mask; probe < tableSize; probe++, row = (row + 1) & mask) {
+                int held = keys.get(row);
+                if (held == key) {
+                    return row;
+                }
+                if (held == EMPTY) {
+                    if (keys.compareAndSet(row, EMPTY, key) || keys.get(row) == key) {
+                        return row;
+                    }
+                }
+            }
+            return tableSize;
+        }
+
+        // the item's row, or -1 when it has none
+        private int findRow(int item) {
+            int key = item + 1;
+            int mask = tableSize - 1;
+            for (int probe = 0, row = mix(item) & mask; probe < tableSize; probe++, row = (row + 1) & mask) {
+                int held = keys.get(row);
+                if (held == key) {
+                    return row;
+                }
+                if (held == EMPTY) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        private int machineRow() {
+            return tableSize + 1;
+        }
+
+        private int index(int row, int field) {
+            return row * FIELDS + field;
+        }
+    }
+}
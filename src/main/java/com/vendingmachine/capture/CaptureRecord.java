@@ -0,0 +1,74 @@
+package com.vendingmachine.capture;
+
+/**
+ * One captured call to a machine route: when it arrived relative to the start of the capture, how long
+ * it took, what was asked and how it was answered. Absent headers are null, and a request without a body
+ * has an empty one.
+ */
+public final class CaptureRecord {
+
+    private final long offsetMicros;
+    private final long latencyMicros;
+    private final String method;
+    private final String path;
+    private final String contentType;
+    private final String idempotencyKey;
+    private final byte[] body;
+    private final int status;
+    private final String sessionToken;
+
+    public CaptureRecord(long offsetMicros, long latencyMicros, String method, String path, String contentType,
+                         String idempotencyKey, byte[] body, int status, String sessionToken) {
+        this.offsetMicros = offsetMicros;
+        this.latencyMicros = latencyMicros;
+        this.method = method;
+        this.path = path;
+        this.contentType = contentType;
+        this.idempotencyKey = idempotencyKey;
+        this.body = body;
+        this.status = status;
+        this.sessionToken = sessionToken;
+    }
+
+    public long getOffsetMicros() {
+        return offsetMicros;
+    }
+
+    public long getLatencyMicros() {
+        return latencyMicros;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    // the Session-Token the response handed out, for the calls that open a session
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + path + " " + status + " at " + offsetMicros + "us";
+    }
+}
@@ -0,0 +1,111 @@
+package com.vendingmachine.capture;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a replay of a capture did: how fast it went, how long its calls took from sending to the last byte
+ * of the answer, how its calls ended, and the statuses it got beside the ones the capture recorded.
+ */
+public final class ReplayReport {
+
+    public enum Outcome {
+        OK,
+        INSUFFICIENT_FUNDS,
+        INSUFFICIENT_CHANGE,
+        ITEM_NOT_AVAILABLE,
+        // any other 4xx but a 429
+        REJECTED,
+        OVERLOADED,
+        SERVER_ERROR,
+        // no answer at all
+        FAILED
+    }
+
+    private final long elapsedNanos;
+    private final long maxLagNanos;
+    // sorted
+    private final long[] latencyNanos;
+    private final long[] outcomes;
+    private final SortedMap<Integer, Long> statuses;
+    private final SortedMap<Integer, Long> capturedStatuses;
+
+    ReplayReport(long elapsedNanos, long maxLagNanos, long[] latencyNanos, long[] outcomes,
+                 Map<Integer, Long> statuses, Map<Integer, Long> capturedStatuses) {
+        this.elapsedNanos = elapsedNanos;
+        this.maxLagNanos = maxLagNanos;
+        this.latencyNanos = latencyNanos.clone();
+        Arrays.sort(this.latencyNanos);
+        this.outcomes = outcomes.clone();
+        this.statuses = new TreeMap<>(statuses);
+        this.capturedStatuses = new TreeMap<>(capturedStatuses);
+    }
+
+    public int getRequests() {
+        return latencyNanos.length;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : getRequests() * 1e9 / elapsedNanos;
+    }
+
+    // how far behind its place in the capture the latest call was sent, which is zero at the maximum speed
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    public long getLatencyNanos(double quantile) {
+        if (latencyNanos.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * latencyNanos.length) - 1;
+        return latencyNanos[Math.max(0, Math.min(latencyNanos.length - 1, rank))];
+    }
+
+    public long getCount(Outcome outcome) {
+        return outcomes[outcome.ordinal()];
+    }
+
+    public SortedMap<Integer, Long> getStatuses() {
+        return statuses;
+    }
+
+    // what the captured calls were answered with, counted once for each machine they were replayed on
+    public SortedMap<Integer, Long> getCapturedStatuses() {
+        return capturedStatuses;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d requests in %.2f s: %.0f req/s, at most %.1f ms behind the capture%n",
+                getRequests(), elapsedNanos / 1e9, getThroughput(), maxLagNanos / 1e6));
+        report.append(String.format("latency ms: p50 %.2f p90 %.2f p99 %.2f p99.9 %.2f max %.2f%n",
+                millis(0.50), millis(0.90), millis(0.99), millis(0.999), millis(1.0)));
+        report.append("outcomes:");
+        for (Outcome outcome : Outcome.values()) {
+            long count = getCount(outcome);
+            if (count != 0) {
+                report.append(String.format(" %s %d (%.1f%%)", outcome.name().toLowerCase().replace('_', ' '), count, 100.0 * count / getRequests()));
+            }
+        }
+        report.append(String.format("%nstatuses (replayed/captured):"));
+        TreeMap<Integer, Long> all = new TreeMap<>(capturedStatuses);
+        all.putAll(statuses);
+        for (Integer status : all.keySet()) {
+            report.append(String.format(" %s %d/%d", status == 0 ? "none" : status.toString(), statuses.getOrDefault(status, 0L), capturedStatuses.getOrDefault(status, 0L)));
+        }
+        return report.toString();
+    }
+
+    private double millis(double quantile) {
+        return getLatencyNanos(quantile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
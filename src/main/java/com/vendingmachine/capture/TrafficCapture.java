@@ -0,0 +1,180 @@
+package com.vendingmachine.capture;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes captured calls to a local file for {@link TrafficReplay}. The file starts with {@link #MAGIC} and
+ * then holds one record per call in the order the calls finished:
+ * [varint offset us][varint latency us][byte method][varint status][path][content type][idempotency key]
+ * [session token][body], where each string and the body is a varint length and then its bytes, and an
+ * absent header is an empty string. A purchase with a short JSON body takes about 60 bytes. Records are
+ * buffered and reach the file when the buffer fills and when the capture is closed, so a capture cut off by
+ * a crash ends at its last whole record and is read up to there.
+ */
+public class TrafficCapture implements AutoCloseable {
+
+    static final byte[] MAGIC = {'V', 'M', 'C', 'A', 'P', 1};
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS"};
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final long startNanos;
+    private boolean closed;
+    // the first write that failed, reported by flush and close since the calls themselves go on regardless
+    private IOException failure;
+
+    private TrafficCapture(OutputStream out) {
+        this.out = out;
+        this.startNanos = System.nanoTime();
+    }
+
+    // starts a new capture, replacing any earlier one in the file
+    public static TrafficCapture open(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+        out.write(MAGIC);
+        return new TrafficCapture(out);
+    }
+
+    /**
+     * Records a call that arrived at {@code startNanos} and was answered at {@code endNanos}, both from
+     * {@link System#nanoTime()}. A capture that can no longer be written to drops the call rather than fail
+     * the request it came from.
+     */
+    public synchronized void record(long startNanos, long endNanos, String method, String path, String contentType,
+                                    String idempotencyKey, byte[] body, int status, String sessionToken) {
+        int methodIndex = methodIndex(method);
+        if (closed || methodIndex < 0) {
+            return;
+        }
+        try {
+            writeVarLong(TimeUnit.NANOSECONDS.toMicros(Math.max(0, startNanos - this.startNanos)));
+            writeVarLong(TimeUnit.NANOSECONDS.toMicros(endNanos - startNanos));
+            out.write(methodIndex);
+            writeVarLong(status);
+            writeString(path);
+            writeString(contentType);
+            writeString(idempotencyKey);
+            writeString(sessionToken);
+            writeVarLong(body.length);
+            out.write(body);
+        } catch (IOException e) {
+            failure = e;
+            closed = true;
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (!closed) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed || failure != null) {
+            closed = true;
+            out.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Reads every whole record of a capture, in the order they arrived rather than the order they finished.
+     */
+    public static List<CaptureRecord> read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        byte[] magic = new byte[MAGIC.length];
+        if (buffer.remaining() >= magic.length) {
+            buffer.get(magic);
+        }
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException(file + " is not a traffic capture.");
+        }
+        List<CaptureRecord> records = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            try {
+                long offsetMicros = readVarLong(buffer);
+                long latencyMicros = readVarLong(buffer);
+                String method = METHODS[buffer.get()];
+                int status = (int) readVarLong(buffer);
+                String path = readString(buffer);
+                String contentType = readString(buffer);
+                String idempotencyKey = readString(buffer);
+                String sessionToken = readString(buffer);
+                byte[] body = new byte[(int) readVarLong(buffer)];
+                buffer.get(body);
+                records.add(new CaptureRecord(offsetMicros, latencyMicros, method, path, contentType, idempotencyKey, body, status, sessionToken));
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                // the tail of a capture whose writer stopped part way through a record
+                break;
+            }
+        }
+        records.sort((a, b) -> Long.compare(a.getOffsetMicros(), b.getOffsetMicros()));
+        return records;
+    }
+
+    // -1 for a method that cannot be captured, which no machine route answers anyway
+    private static int methodIndex(String method) {
+        for (int i = 0; i < METHODS.length; i++) {
+            if (METHODS[i].equals(method)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = (int) readVarLong(buffer);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
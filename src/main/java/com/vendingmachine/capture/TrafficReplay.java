@@ -0,0 +1,276 @@
+package com.vendingmachine.capture;
+
+import com.vendingmachine.config.Application;
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientFundsException;
+import com.vendingmachine.exception.ItemNotAvailableException;
+import com.vendingmachine.rest.VendingMachineController;
+import com.vendingmachine.service.PurchaseResult;
+import com.vendingmachine.wire.CoinFrames;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replays a {@link TrafficCapture} against an application and reports how it coped. Calls are sent at the
+ * offsets they arrived at in the capture, scaled by the speed, or as fast as the connections allow at the
+ * maximum speed. Calls go out without waiting for the ones before them, except that a call adding coins to a
+ * session waits for the call that opened the session, and is sent with the token the replay was given rather
+ * than the captured one. Replayed on N machines, the calls are sent to each of the machines {@code replay-0}
+ * to {@code replay-<N-1>}, registered before the replay starts, so a capture from one machine shows what a
+ * fleet of them would do to the server.
+ *
+ * <p>Settings are given as {@code --name=value} arguments: {@code file}, the capture to replay;
+ * {@code target}, {@code in-process} to start the application in this JVM or the base URL of a running one;
+ * {@code speed}, a multiple of the captured rate or {@code max}; {@code machines}, zero to replay the calls
+ * on the root machine as captured; and {@code connections}, the most calls in flight at once. Any other
+ * setting is an application property for an in-process target, such as {@code vending.admission.enabled}.
+ */
+public final class TrafficReplay {
+
+    public static final String MACHINE_PREFIX = "replay-";
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final Pattern SESSION_COINS = Pattern.compile("/sessions/([^/]+)/coins");
+    // the start of every shortfall message, whatever the amount
+    private static final String FUNDS_PREFIX = InsufficientFundsException.message(0).substring(0, InsufficientFundsException.message(0).indexOf('0'));
+
+    private final HttpClient client;
+    private final URI target;
+    private final int machines;
+    private final int connections;
+    private final Semaphore inFlight;
+    // keyed by machine and captured token, and completed with the token the replay was given
+    private final Map<String, CompletableFuture<String>> sessionTokens = new ConcurrentHashMap<>();
+    private final long[] latencyNanos;
+    private final AtomicLongArray outcomes = new AtomicLongArray(ReplayReport.Outcome.values().length);
+    private final Map<Integer, Long> statuses = new ConcurrentHashMap<>();
+
+    private TrafficReplay(URI target, int machines, int connections, int requests) {
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(REQUEST_TIMEOUT).build();
+        this.target = target;
+        this.machines = machines;
+        this.connections = connections;
+        this.inFlight = new Semaphore(connections);
+        this.latencyNanos = new long[requests];
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> settings = new LinkedHashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg + ".");
+            }
+            settings.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        String file = settings.remove("file");
+        if (file == null) {
+            throw new IllegalArgumentException("Name the capture to replay with --file=<path>.");
+        }
+        String target = settings.getOrDefault("target", "in-process");
+        settings.remove("target");
+        double speed = parseSpeed(settings.getOrDefault("speed", "1"));
+        settings.remove("speed");
+        int machines = Integer.parseInt(settings.getOrDefault("machines", "0"));
+        settings.remove("machines");
+        int connections = Integer.parseInt(settings.getOrDefault("connections", "256"));
+        settings.remove("connections");
+
+        List<CaptureRecord> records = TrafficCapture.read(Paths.get(file));
+        System.out.printf("Replaying %d calls from %s on %s at speed %s%n", records.size(), file,
+                machines == 0 ? "the root machine" : machines + " machines", Double.isInfinite(speed) ? "max" : speed);
+        if (!"in-process".equals(target)) {
+            System.out.println(replay(records, URI.create(target), speed, machines, connections));
+            return;
+        }
+        List<String> properties = new ArrayList<>(List.of("server.port=0", "logging.level.root=WARN"));
+        settings.forEach((name, value) -> properties.add(name + "=" + value));
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties(properties.toArray(new String[0]))
+                .run()) {
+            URI uri = URI.create("http://localhost:" + context.getEnvironment().getRequiredProperty("local.server.port"));
+            System.out.println(replay(records, uri, speed, machines, connections));
+        }
+    }
+
+    /**
+     * Replays the records, which must be in the order they arrived, and returns once every call has been
+     * answered or has failed.
+     */
+    public static ReplayReport replay(List<CaptureRecord> records, URI target, double speed, int machines, int connections) throws IOException, InterruptedException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("The speed must be more than zero.");
+        }
+        if (machines < 0 || connections < 1) {
+            throw new IllegalArgumentException("The machines cannot be negative and there must be a connection.");
+        }
+        int lanes = Math.max(1, machines);
+        TrafficReplay replay = new TrafficReplay(target, machines, connections, Math.multiplyExact(records.size(), lanes));
+        replay.registerMachines();
+        return replay.run(records, speed, lanes);
+    }
+
+    static double parseSpeed(String speed) {
+        return "max".equals(speed) ? Double.POSITIVE_INFINITY : Double.parseDouble(speed);
+    }
+
+    private void registerMachines() throws IOException, InterruptedException {
+        for (int machine = 0; machine < machines; machine++) {
+            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(target.resolve("/machines/" + MACHINE_PREFIX + machine))
+                    .timeout(REQUEST_TIMEOUT)
+                    .PUT(HttpRequest.BodyPublishers.noBody())
+                    .build(), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() / 100 != 2) {
+                throw new IOException("Could not register " + MACHINE_PREFIX + machine + ": " + response.statusCode());
+            }
+        }
+    }
+
+    private ReplayReport run(List<CaptureRecord> records, double speed, int lanes) throws InterruptedException {
+        Map<Integer, Long> capturedStatuses = new HashMap<>();
+        long startNanos = System.nanoTime();
+        long maxLagNanos = 0;
+        int sequence = 0;
+        for (CaptureRecord record : records) {
+            capturedStatuses.merge(record.getStatus(), (long) lanes, Long::sum);
+            long dueNanos = startNanos;
+            if (!Double.isInfinite(speed)) {
+                dueNanos += (long) (TimeUnit.MICROSECONDS.toNanos(record.getOffsetMicros()) / speed);
+                for (long wait = dueNanos - System.nanoTime(); wait > 0; wait = dueNanos - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            for (int lane = 0; lane < lanes; lane++) {
+                inFlight.acquire();
+                if (!Double.isInfinite(speed)) {
+                    maxLagNanos = Math.max(maxLagNanos, System.nanoTime() - dueNanos);
+                }
+                send(record, lane, sequence++);
+            }
+        }
+        // every permit back means every call has been answered
+        inFlight.acquire(connections);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long[] counts = new long[outcomes.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = outcomes.get(i);
+        }
+        return new ReplayReport(elapsedNanos, maxLagNanos, latencyNanos, counts, statuses, capturedStatuses);
+    }
+
+    private void send(CaptureRecord record, int lane, int sequence) {
+        CompletableFuture<String> opened = null;
+        if (record.getSessionToken() != null) {
+            opened = new CompletableFuture<>();
+            sessionTokens.put(lane + ":" + record.getSessionToken(), opened);
+        }
+        CompletableFuture<String> path = CompletableFuture.completedFuture(record.getPath());
+        Matcher matcher = SESSION_COINS.matcher(record.getPath());
+        if (matcher.matches()) {
+            // a session opened before the capture started is sent with its captured token, as it was
+            CompletableFuture<String> token = sessionTokens.get(lane + ":" + matcher.group(1));
+            if (token != null) {
+                path = token.thenApply(replayed -> replayed == null ? record.getPath() : "/sessions/" + replayed + "/coins");
+            }
+        }
+        CompletableFuture<String> session = opened;
+        path.thenCompose(resolved -> {
+            long sentNanos = System.nanoTime();
+            return client.sendAsync(request(record, lane, resolved), HttpResponse.BodyHandlers.ofByteArray())
+                    .whenComplete((response, failure) -> latencyNanos[sequence] = System.nanoTime() - sentNanos);
+        }).whenComplete((response, failure) -> {
+            outcomes.incrementAndGet(classify(response).ordinal());
+            statuses.merge(response == null ? 0 : response.statusCode(), 1L, Long::sum);
+            if (session != null) {
+                session.complete(response == null ? null : response.headers().firstValue(VendingMachineController.SESSION_TOKEN_HEADER).orElse(null));
+            }
+            inFlight.release();
+        });
+    }
+
+    private HttpRequest request(CaptureRecord record, int lane, String path) {
+        String machinePath = machines == 0 ? path : "/machines/" + MACHINE_PREFIX + lane + path;
+        HttpRequest.Builder request = HttpRequest.newBuilder(target.resolve(machinePath))
+                .timeout(REQUEST_TIMEOUT)
+                .method(record.getMethod(), record.getBody().length == 0 ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(record.getBody()));
+        if (record.getContentType() != null) {
+            request.header("Content-Type", record.getContentType());
+        }
+        // idempotency keys are held per machine, so the same key on every machine is still one purchase each
+        if (record.getIdempotencyKey() != null) {
+            request.header(VendingMachineController.IDEMPOTENCY_KEY_HEADER, record.getIdempotencyKey());
+        }
+        return request.build();
+    }
+
+    static ReplayReport.Outcome classify(HttpResponse<byte[]> response) {
+        if (response == null) {
+            return ReplayReport.Outcome.FAILED;
+        }
+        int status = response.statusCode();
+        if (status / 100 == 2) {
+            return ReplayReport.Outcome.OK;
+        }
+        if (status == 429) {
+            return ReplayReport.Outcome.OVERLOADED;
+        }
+        if (status >= 500) {
+            return ReplayReport.Outcome.SERVER_ERROR;
+        }
+        if (status == 400) {
+            boolean frame = response.headers().firstValue("Content-Type").map(type -> type.startsWith(CoinFrames.MEDIA_TYPE)).orElse(false);
+            return rejection(frame, response.body());
+        }
+        return ReplayReport.Outcome.REJECTED;
+    }
+
+    // a purchase turned away is answered with its message, or in a frame with its status first
+    static ReplayReport.Outcome rejection(boolean frame, byte[] body) {
+        if (frame) {
+            int status = body.length == 0 ? -1 : body[0];
+            if (status == PurchaseResult.Status.INSUFFICIENT_FUNDS.ordinal()) {
+                return ReplayReport.Outcome.INSUFFICIENT_FUNDS;
+            }
+            if (status == PurchaseResult.Status.INSUFFICIENT_CHANGE.ordinal()) {
+                return ReplayReport.Outcome.INSUFFICIENT_CHANGE;
+            }
+            if (status == PurchaseResult.Status.ITEM_NOT_AVAILABLE.ordinal()) {
+                return ReplayReport.Outcome.ITEM_NOT_AVAILABLE;
+            }
+            return ReplayReport.Outcome.REJECTED;
+        }
+        String message = new String(body, StandardCharsets.UTF_8);
+        if (message.startsWith(FUNDS_PREFIX)) {
+            return ReplayReport.Outcome.INSUFFICIENT_FUNDS;
+        }
+        if (message.equals(InsufficientChangeException.MESSAGE)) {
+            return ReplayReport.Outcome.INSUFFICIENT_CHANGE;
+        }
+        if (message.equals(ItemNotAvailableException.MESSAGE)) {
+            return ReplayReport.Outcome.ITEM_NOT_AVAILABLE;
+        }
+        return ReplayReport.Outcome.REJECTED;
+    }
+}
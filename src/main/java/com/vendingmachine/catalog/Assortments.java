@@ -0,0 +1,66 @@
+package com.vendingmachine.catalog;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The SKUs each machine is stocked with when it first starts. A machine only carries what it has been
+ * loaded with, so a site whose catalog runs to tens of thousands of SKUs names the few hundred each
+ * machine sells rather than filling every machine with the whole catalog. A machine that is not given an
+ * assortment of its own uses the site's.
+ */
+public final class Assortments {
+
+    // a catalog this small is stocked in full unless the site names an assortment
+    public static final int FULL_CATALOG_LIMIT = 256;
+
+    private final int[] siteAssortment;
+    private final Map<String, int[]> machineAssortments;
+
+    private Assortments(int[] siteAssortment, Map<String, int[]> machineAssortments) {
+        this.siteAssortment = siteAssortment;
+        this.machineAssortments = machineAssortments;
+    }
+
+    /**
+     * Builds the assortments from comma-separated SKU codes. With no site assortment, a catalog of up to
+     * {@link #FULL_CATALOG_LIMIT} SKUs is stocked in full and a larger one leaves machines empty until
+     * they are loaded. Every code must be in the catalog.
+     */
+    public static Assortments load(Catalog catalog, String siteAssortment, Map<String, String> machineAssortments) {
+        int[] site;
+        if (siteAssortment != null) {
+            site = parse(catalog, siteAssortment);
+        } else if (catalog.size() <= FULL_CATALOG_LIMIT) {
+            site = new int[catalog.size()];
+            Arrays.setAll(site, id -> id);
+        } else {
+            site = new int[0];
+        }
+        Map<String, int[]> machines = new HashMap<>();
+        machineAssortments.forEach((machineId, codes) -> machines.put(machineId, parse(catalog, codes)));
+        return new Assortments(site, Map.copyOf(machines));
+    }
+
+    // the ids a machine starts with, in order; callers must not modify them
+    public int[] forMachine(String machineId) {
+        return machineAssortments.getOrDefault(machineId, siteAssortment);
+    }
+
+    private static int[] parse(Catalog catalog, String codes) {
+        return Arrays.stream(codes.split(","))
+                .map(String::trim)
+                .filter(code -> !code.isEmpty())
+                .mapToInt(code -> {
+                    int id = catalog.id(code);
+                    if (id < 0) {
+                        throw new IllegalArgumentException("No SKU " + code + " is in the catalog.");
+                    }
+                    return id;
+                })
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+}
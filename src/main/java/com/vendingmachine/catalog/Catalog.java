@@ -0,0 +1,202 @@
+package com.vendingmachine.catalog;
+
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.exception.ItemNotFoundException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The products a site can stock. Each SKU code is given a dense id, its position in the catalog, which
+ * indexes the primitive arrays that hold stock and prices, so the purchase path never looks up or boxes
+ * a code. Ids are only stable while the catalog file is appended to, since journals record them.
+ *
+ * <p>A catalog file has one {@code code,price} line per SKU, with the price in cents. Blank lines and
+ * lines starting with {@code #} are skipped. Codes are letters, digits, {@code _}, {@code -} and
+ * {@code .}, so they can go into URLs and JSON as they are.
+ */
+public final class Catalog {
+
+    // the three built-in items, with ids matching their ordinals
+    public static final Catalog DEFAULT = defaultCatalog();
+
+    private final String[] codes;
+    private final int[] prices;
+    private final Map<String, Integer> ids;
+    private final ItemType[] itemTypes;
+    private final int[] itemTypeIds;
+
+    private Catalog(String[] codes, int[] prices) {
+        this.codes = codes;
+        this.prices = prices;
+        this.ids = new HashMap<>(codes.length * 2);
+        for (int id = 0; id < codes.length; id++) {
+            if (ids.putIfAbsent(codes[id], id) != null) {
+                throw new IllegalArgumentException("Duplicate SKU code " + codes[id] + ".");
+            }
+        }
+        this.itemTypes = new ItemType[codes.length];
+        this.itemTypeIds = new int[ItemType.values().length];
+        for (ItemType itemType : ItemType.values()) {
+            int id = id(itemType.name());
+            itemTypeIds[itemType.ordinal()] = id;
+            if (id >= 0) {
+                itemTypes[id] = itemType;
+            }
+        }
+    }
+
+    public static Catalog of(Map<String, Integer> pricesByCode) {
+        String[] codes = new String[pricesByCode.size()];
+        int[] prices = new int[codes.length];
+        int id = 0;
+        for (Map.Entry<String, Integer> entry : pricesByCode.entrySet()) {
+            codes[id] = checkCode(entry.getKey());
+            prices[id] = checkPrice(entry.getValue(), entry.getKey());
+            id++;
+        }
+        return new Catalog(codes, prices);
+    }
+
+    public static Catalog load(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        String[] codes = new String[1024];
+        int[] prices = new int[1024];
+        int size = 0;
+        int lineNumber = 0;
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            lineNumber++;
+            int lineEnd = end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+            if (lineEnd > start && bytes[start] != '#') {
+                int comma = start;
+                while (comma < lineEnd && bytes[comma] != ',') {
+                    comma++;
+                }
+                if (comma == lineEnd) {
+                    throw new IOException(file + ":" + lineNumber + ": expected code,price");
+                }
+                if (size == codes.length) {
+                    codes = Arrays.copyOf(codes, size * 2);
+                    prices = Arrays.copyOf(prices, size * 2);
+                }
+                try {
+                    codes[size] = checkCode(new String(bytes, start, comma - start, StandardCharsets.US_ASCII));
+                    prices[size] = checkPrice(parsePrice(bytes, comma + 1, lineEnd), codes[size]);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+                size++;
+            }
+            start = end + 1;
+        }
+        try {
+            return new Catalog(Arrays.copyOf(codes, size), Arrays.copyOf(prices, size));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    // the id for a code, or -1 when the catalog has no such SKU
+    public int id(String code) {
+        Integer id = ids.get(code);
+        return id == null ? -1 : id;
+    }
+
+    public int require(String code) throws ItemNotFoundException {
+        int id = id(code);
+        if (id < 0) {
+            throw new ItemNotFoundException(code);
+        }
+        return id;
+    }
+
+    // the id of a built-in item, or -1 when this catalog does not carry it
+    public int id(ItemType itemType) {
+        return itemTypeIds[itemType.ordinal()];
+    }
+
+    public String code(int id) {
+        return codes[id];
+    }
+
+    // the built-in item with this id, or null for a SKU that is only in the catalog
+    public ItemType itemType(int id) {
+        return itemTypes[id];
+    }
+
+    public int price(int id) {
+        return prices[id];
+    }
+
+    int[] prices() {
+        return prices.clone();
+    }
+
+    public int[] toCounts(Map<String, Integer> items) throws ItemNotFoundException {
+        int[] counts = new int[codes.length];
+        for (Map.Entry<String, Integer> entry : items.entrySet()) {
+            counts[require(entry.getKey())] += entry.getValue();
+        }
+        return counts;
+    }
+
+    private static Catalog defaultCatalog() {
+        ItemType[] itemTypes = ItemType.values();
+        String[] codes = new String[itemTypes.length];
+        int[] prices = new int[itemTypes.length];
+        for (ItemType itemType : itemTypes) {
+            codes[itemType.ordinal()] = itemType.name();
+            prices[itemType.ordinal()] = itemType.price;
+        }
+        return new Catalog(codes, prices);
+    }
+
+    private static String checkCode(String code) {
+        if (code.isEmpty()) {
+            throw new IllegalArgumentException("Empty SKU code.");
+        }
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '_' || c == '-' || c == '.')) {
+                throw new IllegalArgumentException("Invalid SKU code " + code + ".");
+            }
+        }
+        return code;
+    }
+
+    static int checkPrice(Integer price, String code) {
+        if (price == null || price < 0) {
+            throw new IllegalArgumentException("Invalid price " + price + " for " + code + ".");
+        }
+        return price;
+    }
+
+    private static int parsePrice(byte[] bytes, int start, int end) {
+        if (start == end || end - start > 9) {
+            throw new IllegalArgumentException("Invalid price " + new String(bytes, start, end - start, StandardCharsets.US_ASCII) + ".");
+        }
+        int price = 0;
+        for (int i = start; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Invalid price " + new String(bytes, start, end - start, StandardCharsets.US_ASCII) + ".");
+            }
+            price = price * 10 + digit;
+        }
+        return price;
+    }
+}
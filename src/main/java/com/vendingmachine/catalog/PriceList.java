@@ -0,0 +1,68 @@
+package com.vendingmachine.catalog;
+
+import com.vendingmachine.exception.ItemNotFoundException;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Prices for every SKU in a catalog, held in an int array indexed by id. Changes copy the array and
+ * publish the copy in one write, so a purchase always sees a whole price list, either the old one or
+ * the new one. A list made with {@link #overrides()} only holds the prices set on it and takes every
+ * other price from its parent, which is how one machine can differ from the rest of its site. Every
+ * machine has one, so it shares an empty array until its first override, and then only reaches as far as
+ * the highest id it overrides.
+ */
+public final class PriceList {
+
+    private static final int INHERITED = -1;
+    private static final int[] NO_OVERRIDES = new int[0];
+
+    private final Catalog catalog;
+    private final PriceList parent;
+    private volatile int[] prices;
+
+    private PriceList(Catalog catalog, PriceList parent, int[] prices) {
+        this.catalog = catalog;
+        this.parent = parent;
+        this.prices = prices;
+    }
+
+    public static PriceList of(Catalog catalog) {
+        return new PriceList(catalog, null, catalog.prices());
+    }
+
+    public PriceList overrides() {
+        return new PriceList(catalog, this, NO_OVERRIDES);
+    }
+
+    public Catalog catalog() {
+        return catalog;
+    }
+
+    public int price(int id) {
+        int[] current = prices;
+        int price = id < current.length ? current[id] : INHERITED;
+        return price == INHERITED ? parent.price(id) : price;
+    }
+
+    /**
+     * Applies price changes keyed by SKU code all at once. In an override list, a null price drops the
+     * override so the SKU goes back to its parent's price.
+     */
+    public synchronized void update(Map<String, Integer> changes) throws ItemNotFoundException {
+        int[] updated = prices.clone();
+        for (Map.Entry<String, Integer> change : changes.entrySet()) {
+            int id = catalog.require(change.getKey());
+            if (id >= updated.length) {
+                int length = updated.length;
+                updated = Arrays.copyOf(updated, id + 1);
+                Arrays.fill(updated, length, updated.length, INHERITED);
+            }
+            updated[id] = change.getValue() == null && parent != null
+                    ? INHERITED
+                    : Catalog.checkPrice(change.getValue(), change.getKey());
+        }
+        prices = updated;
+    }
+}
@@ -0,0 +1,14 @@
+package com.vendingmachine.change;
+
+/**
+ * Works out which coins to pay out for a given amount. Coins are identified by their index into the
+ * face values the strategy was created with, which must be in ascending order.
+ */
+public interface ChangeStrategy {
+
+    /**
+     * Fills {@code breakdown} with how many of each coin to pay out, never using more than {@code available}
+     * of a coin. Returns false, leaving {@code breakdown} undefined, when the amount cannot be made.
+     */
+    boolean makeChange(int amount, int[] available, int[] breakdown);
+}
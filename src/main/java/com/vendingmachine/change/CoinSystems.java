@@ -0,0 +1,105 @@
+package com.vendingmachine.change;
+
+import java.util.Arrays;
+
+final class CoinSystems {
+
+    private CoinSystems() {
+    }
+
+    static int[] checkAscending(int[] faceValues) {
+        if (faceValues.length == 0 || faceValues[0] <= 0) {
+            throw new IllegalArgumentException("Face values must be positive: " + Arrays.toString(faceValues));
+        }
+        for (int i = 1; i < faceValues.length; i++) {
+            if (faceValues[i] <= faceValues[i - 1]) {
+                throw new IllegalArgumentException("Face values must be strictly ascending: " + Arrays.toString(faceValues));
+            }
+        }
+        return faceValues.clone();
+    }
+
+    // greedy is optimal for every amount iff it is optimal for every amount below the sum of the two
+    // largest coins (Kozen and Zaks), so an unbounded comparison over that range settles it
+    static boolean isCanonical(int[] faceValues) {
+        if (faceValues[0] != 1) {
+            return false;
+        }
+        int n = faceValues.length;
+        if (n < 3) {
+            return true;
+        }
+        int limit = faceValues[n - 1] + faceValues[n - 2];
+        int[] fewest = new int[limit];
+        for (int amount = 1; amount < limit; amount++) {
+            int best = Integer.MAX_VALUE;
+            for (int faceValue : faceValues) {
+                if (faceValue <= amount && fewest[amount - faceValue] + 1 < best) {
+                    best = fewest[amount - faceValue] + 1;
+                }
+            }
+            fewest[amount] = best;
+            if (greedyCount(faceValues, amount) != best) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // amounts below this are covered by the change table: any change left once the price is reached with
+    // one more coin, or after overpaying with the two largest coins
+    static int tableLimit(int[] faceValues) {
+        int n = faceValues.length;
+        return n == 1 ? faceValues[0] : faceValues[n - 1] + faceValues[n - 2];
+    }
+
+    /**
+     * The fewest-coin breakdown of every amount below {@code limit} from an unlimited supply, flattened so
+     * that the counts for amount {@code a} start at {@code a * faceValues.length}. Canonical systems get
+     * greedy's breakdown. Otherwise ties go to the larger coins, and an amount that cannot be made at all
+     * is marked with -1 in its first count.
+     */
+    static int[] changeTable(int[] faceValues, int limit, boolean canonical) {
+        int n = faceValues.length;
+        int[] table = new int[limit * n];
+        if (canonical) {
+            for (int amount = 0; amount < limit; amount++) {
+                int remaining = amount;
+                for (int i = n - 1; i >= 0; i--) {
+                    table[amount * n + i] = remaining / faceValues[i];
+                    remaining %= faceValues[i];
+                }
+            }
+            return table;
+        }
+        int[] fewest = new int[limit];
+        int[] lastCoin = new int[limit];
+        for (int amount = 1; amount < limit; amount++) {
+            fewest[amount] = Integer.MAX_VALUE;
+            for (int i = n - 1; i >= 0; i--) {
+                int rest = amount - faceValues[i];
+                if (rest >= 0 && fewest[rest] != Integer.MAX_VALUE && fewest[rest] + 1 < fewest[amount]) {
+                    fewest[amount] = fewest[rest] + 1;
+                    lastCoin[amount] = i;
+                }
+            }
+            if (fewest[amount] == Integer.MAX_VALUE) {
+                table[amount * n] = -1;
+                continue;
+            }
+            int previous = amount - faceValues[lastCoin[amount]];
+            System.arraycopy(table, previous * n, table, amount * n, n);
+            table[amount * n + lastCoin[amount]]++;
+        }
+        return table;
+    }
+
+    private static int greedyCount(int[] faceValues, int amount) {
+        int count = 0;
+        for (int i = faceValues.length - 1; i >= 0; i--) {
+            count += amount / faceValues[i];
+            amount %= faceValues[i];
+        }
+        return count;
+    }
+}
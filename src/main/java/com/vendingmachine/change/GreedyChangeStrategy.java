@@ -0,0 +1,21 @@
+package com.vendingmachine.change;
+
+public class GreedyChangeStrategy implements ChangeStrategy {
+
+    private final int[] faceValues;
+
+    public GreedyChangeStrategy(int[] faceValues) {
+        this.faceValues = CoinSystems.checkAscending(faceValues);
+    }
+
+    @Override
+    public boolean makeChange(int amount, int[] available, int[] breakdown) {
+        int remaining = amount;
+        for (int i = faceValues.length - 1; i >= 0; i--) {
+            int count = Math.min(available[i], remaining / faceValues[i]);
+            breakdown[i] = count;
+            remaining -= count * faceValues[i];
+        }
+        return remaining == 0;
+    }
+}
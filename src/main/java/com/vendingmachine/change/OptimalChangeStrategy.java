@@ -0,0 +1,188 @@
+package com.vendingmachine.change;
+
+import java.util.Arrays;
+
+/**
+ * Pays out the fewest coins possible from a limited supply. The best breakdown of every amount a
+ * purchase usually leaves as change is worked out up front, so while the float has the coins for it,
+ * change is a table lookup even in a coin system where greedy is wrong. Larger amounts in a canonical
+ * system are served by greedy, and whenever the supply gets in the way a bounded-coin dynamic program
+ * runs over per-thread scratch tables that are reused between calls. The amount comes from whatever a
+ * customer chose to pay, so the program only runs for amounts the float could cover and no larger than
+ * a ceiling, and tables too big to be worth keeping are dropped once the call is done.
+ */
+public class OptimalChangeStrategy implements ChangeStrategy {
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+    // in the currency's minor unit, so $655.36 in US coins
+    public static final int DEFAULT_MAX_SEARCH_AMOUNT = 1 << 16;
+    // each thread keeps tables for amounts below this between calls, about 75 KB with six coins
+    private static final int RETAINED_SIZE = 2048;
+
+    private final int[] faceValues;
+    private final int maxSearchAmount;
+    private final boolean canonical;
+    private final int tableLimit;
+    private final int[] table;
+    private final ThreadLocal<Scratch> scratch;
+
+    public OptimalChangeStrategy(int[] faceValues) {
+        this(faceValues, DEFAULT_MAX_SEARCH_AMOUNT);
+    }
+
+    // change above maxSearchAmount is only ever paid from the table or by greedy
+    public OptimalChangeStrategy(int[] faceValues, int maxSearchAmount) {
+        if (maxSearchAmount < 0) {
+            throw new IllegalArgumentException("The search ceiling cannot be negative.");
+        }
+        this.faceValues = CoinSystems.checkAscending(faceValues);
+        this.maxSearchAmount = maxSearchAmount;
+        this.canonical = CoinSystems.isCanonical(this.faceValues);
+        this.tableLimit = CoinSystems.tableLimit(this.faceValues);
+        this.table = CoinSystems.changeTable(this.faceValues, tableLimit, canonical);
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(this.faceValues.length));
+    }
+
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    @Override
+    public boolean makeChange(int amount, int[] available, int[] breakdown) {
+        if (amount < tableLimit) {
+            int start = amount * faceValues.length;
+            if (table[start] < 0) {
+                // not even an unlimited supply can make this amount
+                return false;
+            }
+            if (fromTable(start, available, breakdown)) {
+                return true;
+            }
+        } else if (canonical && unconstrainedGreedy(amount, available, breakdown)) {
+            return true;
+        }
+        return boundedFewestCoins(amount, available, breakdown);
+    }
+
+    private boolean fromTable(int start, int[] available, int[] breakdown) {
+        for (int i = 0; i < faceValues.length; i++) {
+            if (table[start + i] > available[i]) {
+                return false;
+            }
+        }
+        System.arraycopy(table, start, breakdown, 0, faceValues.length);
+        return true;
+    }
+
+    private boolean unconstrainedGreedy(int amount, int[] available, int[] breakdown) {
+        int remaining = amount;
+        for (int i = faceValues.length - 1; i >= 0; i--) {
+            int count = remaining / faceValues[i];
+            if (count > available[i]) {
+                return false;
+            }
+            breakdown[i] = count;
+            remaining -= count * faceValues[i];
+        }
+        return remaining == 0;
+    }
+
+    // fewest[a] after coin i is min over k <= limit of fewest[a - k * v] + k; within one residue class
+    // modulo v that is a sliding window minimum of (fewest[r + k * v] - k), kept in a monotonic deque
+    private boolean boundedFewestCoins(int amount, int[] available, int[] breakdown) {
+        if (amount > maxSearchAmount || amount > value(available)) {
+            return false;
+        }
+        Scratch tables = amount < RETAINED_SIZE ? scratch.get() : new Scratch(faceValues.length);
+        tables.ensureCapacity(amount + 1);
+        int[] previous = tables.previous;
+        int[] current = tables.current;
+        int[] window = tables.window;
+        Arrays.fill(previous, 0, amount + 1, UNREACHABLE);
+        previous[0] = 0;
+
+        for (int i = 0; i < faceValues.length; i++) {
+            int faceValue = faceValues[i];
+            int limit = Math.min(available[i], amount / faceValue);
+            int[] taken = tables.taken[i];
+            if (limit == 0) {
+                Arrays.fill(taken, 0, amount + 1, 0);
+                continue;
+            }
+            for (int residue = 0; residue < faceValue && residue <= amount; residue++) {
+                int head = 0;
+                int tail = 0;
+                for (int j = 0, a = residue; a <= amount; j++, a += faceValue) {
+                    if (previous[a] != UNREACHABLE) {
+                        int key = previous[a] - j;
+                        while (tail > head && previous[residue + window[tail - 1] * faceValue] - window[tail - 1] >= key) {
+                            tail--;
+                        }
+                        window[tail++] = j;
+                    }
+                    while (tail > head && window[head] < j - limit) {
+                        head++;
+                    }
+                    if (tail == head) {
+                        current[a] = UNREACHABLE;
+                        taken[a] = 0;
+                    } else {
+                        int k = window[head];
+                        current[a] = previous[residue + k * faceValue] + j - k;
+                        taken[a] = j - k;
+                    }
+                }
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        tables.previous = previous;
+        tables.current = current;
+
+        if (previous[amount] == UNREACHABLE) {
+            return false;
+        }
+        int remaining = amount;
+        for (int i = faceValues.length - 1; i >= 0; i--) {
+            int count = tables.taken[i][remaining];
+            breakdown[i] = count;
+            remaining -= count * faceValues[i];
+        }
+        return true;
+    }
+
+    private long value(int[] available) {
+        long value = 0;
+        for (int i = 0; i < faceValues.length; i++) {
+            value += (long) available[i] * faceValues[i];
+        }
+        return value;
+    }
+
+    private static class Scratch {
+
+        private int[] previous = new int[0];
+        private int[] current = new int[0];
+        private int[] window = new int[0];
+        private final int[][] taken;
+
+        private Scratch(int coins) {
+            this.taken = new int[coins][0];
+        }
+
+        private void ensureCapacity(int size) {
+            if (previous.length >= size) {
+                return;
+            }
+            // a retained table doubles up to RETAINED_SIZE, and one made for a single call is sized exactly
+            int capacity = Math.max(size, Math.min(previous.length * 2, RETAINED_SIZE));
+            previous = new int[capacity];
+            current = new int[capacity];
+            window = new int[capacity];
+            for (int i = 0; i < taken.length; i++) {
+                taken[i] = new int[capacity];
+            }
+        }
+    }
+}
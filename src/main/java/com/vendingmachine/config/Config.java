@@ -1,34 +1,319 @@
 package com.vendingmachine.config;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
-import com.vendingmachine.domain.Denomination;
-import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.admission.AdmissionControl;
+import com.vendingmachine.analytics.SalesAnalytics;
+import com.vendingmachine.catalog.Assortments;
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.capture.TrafficCapture;
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.change.ChangeStrategy;
+import com.vendingmachine.currency.Currencies;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.events.ChangeFeeds;
+import com.vendingmachine.fleet.StockIndex;
+import com.vendingmachine.idempotency.IdempotencyCache;
+import com.vendingmachine.journal.Journal;
+import com.vendingmachine.journal.MachineState;
+import com.vendingmachine.metrics.TimedChangeStrategy;
+import com.vendingmachine.metrics.VendingMetrics;
+import com.vendingmachine.planning.RestockPlanner;
+import com.vendingmachine.rest.AdmissionInterceptor;
+import com.vendingmachine.rest.AnalyticsController;
+import com.vendingmachine.rest.AuditController;
+import com.vendingmachine.rest.BatchController;
+import com.vendingmachine.rest.CaptureFilter;
+import com.vendingmachine.rest.CatalogController;
+import com.vendingmachine.rest.EventStreamController;
+import com.vendingmachine.rest.FleetController;
+import com.vendingmachine.rest.MachineRegistryController;
+import com.vendingmachine.rest.ReactiveBatchController;
+import com.vendingmachine.rest.RestExceptionHandler;
+import com.vendingmachine.rest.RestockController;
 import com.vendingmachine.rest.VendingMachineController;
+import com.vendingmachine.service.MachineRegistry;
 import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.service.VendingMachineListener;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 @Configuration
 public class Config {
 
-    private static final Map<ItemType, Integer> INITIAL_INVENTORY = Arrays.stream(ItemType.values())
-            .collect(Collectors.toMap(Function.identity(), item -> 10));
-    private static final Map<Denomination, Integer> INITIAL_CHANGE = Arrays.stream(Denomination.values())
-            .collect(Collectors.toMap(Function.identity(), coin -> 10));
+    // journaled under an id that no /machines/{machineId} path can produce
+    public static final String ROOT_MACHINE_ID = "/";
 
+    // compile-time constants, so the edge runtime can share them without loading this class or Spring
+    public static final int INITIAL_STOCK = 10;
+    public static final int INITIAL_CHANGE = 10;
+
+    // the built-in three items unless vending.catalog.file names a catalog to load
+    @Bean
+    public Catalog catalog(@Value("${vending.catalog.file:}") String file) throws IOException {
+        return file.isEmpty() ? Catalog.DEFAULT : Catalog.load(Paths.get(file));
+    }
+
+    // the site's prices, which every machine's own overrides fall back on
     @Bean
-    public VendingMachine vendingMachine(){
-        return new VendingMachine(INITIAL_INVENTORY, INITIAL_CHANGE);
+    public PriceList sitePrices(Catalog catalog) {
+        return PriceList.of(catalog);
     }
 
+    // what a machine is stocked with when it first starts: the SKU codes in vending.assortment, or in
+    // vending.machine-assortments.<machineId> for a machine of its own, and otherwise the whole catalog
+    // while it is small
     @Bean
-    public VendingMachineController vendingMachineController(VendingMachine vendingMachine) {
-        return new VendingMachineController(vendingMachine);
+    public Assortments assortments(Catalog catalog, Environment environment) {
+        return Assortments.load(catalog,
+                environment.getProperty("vending.assortment"),
+                Binder.get(environment).bind("vending.machine-assortments", Bindable.mapOf(String.class, String.class)).orElse(Map.of()));
+    }
+
+    // US dollars unless vending.currency names one of the vending.currencies.<code> definitions, and
+    // vending.machine-currencies.<machineId> binds a machine to a currency of its own
+    @Bean
+    public Currencies currencies(Environment environment) {
+        Binder binder = Binder.get(environment);
+        Bindable<Map<String, String>> byKey = Bindable.mapOf(String.class, String.class);
+        return Currencies.load(
+                binder.bind("vending.currencies", byKey).orElse(Map.of()),
+                environment.getProperty("vending.currency", Currency.DEFAULT.code()),
+                binder.bind("vending.machine-currencies", byKey).orElse(Map.of()));
+    }
+
+    // fleet totals for every machine, and meters tagged with a machine's id only for the machines listed in
+    // vending.metrics.machines, the root machine by default
+    @Bean
+    public VendingMetrics vendingMetrics(MeterRegistry meterRegistry, Catalog catalog, @Value("${vending.metrics.machines:" + ROOT_MACHINE_ID + "}") String[] meteredMachines) {
+        return new VendingMetrics(meterRegistry, catalog, Set.copyOf(Arrays.asList(meteredMachines))::contains);
+    }
+
+    // subscribers are sent what changed at most once per vending.events.interval
+    @Bean
+    public ChangeFeeds changeFeeds(@Value("${vending.events.interval:250ms}") Duration interval) {
+        return new ChangeFeeds(interval);
+    }
+
+    // the responses to the last vending.idempotency.capacity purchase-path requests sent with an
+    // Idempotency-Key, across all machines, each kept for vending.idempotency.ttl
+    @Bean
+    public IdempotencyCache<ResponseEntity<Object>> idempotencyCache(@Value("${vending.idempotency.capacity:65536}") int capacity,
+                                                                     @Value("${vending.idempotency.ttl:10m}") Duration timeToLive) {
+        return new IdempotencyCache<>(capacity, timeToLive);
+    }
+
+    // each machine may have vending.admission.initial-limit requests queued or running to begin with,
+    // adapting between the min and max limits to keep them under vending.admission.target-latency;
+    // requests past the limit get a 429 with a Retry-After of vending.admission.retry-after
+    @Bean
+    @ConditionalOnProperty(value = "vending.admission.enabled", matchIfMissing = true)
+    public AdmissionControl admissionControl(@Value("${vending.admission.initial-limit:64}") int initialLimit,
+                                             @Value("${vending.admission.min-limit:4}") int minLimit,
+                                             @Value("${vending.admission.max-limit:1024}") int maxLimit,
+                                             @Value("${vending.admission.target-latency:50ms}") Duration targetLatency,
+                                             @Value("${vending.admission.retry-after:1s}") Duration retryAfter,
+                                             @Value("${vending.metrics.machines:" + ROOT_MACHINE_ID + "}") String[] meteredMachines,
+                                             MeterRegistry meterRegistry) {
+        return new AdmissionControl(initialLimit, minLimit, maxLimit, targetLatency, retryAfter, meterRegistry, Set.copyOf(Arrays.asList(meteredMachines))::contains);
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public WebMvcConfigurer admissionInterceptorConfigurer(ObjectProvider<AdmissionControl> admissionControl, MachineRegistry machineRegistry) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                admissionControl.ifAvailable(control -> registry.addInterceptor(new AdmissionInterceptor(control, machineRegistry, ROOT_MACHINE_ID)));
+            }
+        };
+    }
+
+    // each machine keeps vending.analytics.buckets windows of vending.analytics.resolution, an hour of
+    // minutes by default, with room for vending.analytics.items-per-bucket SKUs in each
+    @Bean
+    public SalesAnalytics salesAnalytics(@Value("${vending.analytics.resolution:1m}") Duration resolution,
+                                         @Value("${vending.analytics.buckets:60}") int buckets,
+                                         @Value("${vending.analytics.items-per-bucket:64}") int itemsPerBucket) {
+        return new SalesAnalytics(resolution, buckets, itemsPerBucket);
+    }
+
+    // plans simulate vending.planning.trials restock periods per candidate, drawn from each machine's
+    // last vending.planning.history purchases, on a pool with a thread per core
+    @Bean
+    public RestockPlanner restockPlanner(@Value("${vending.planning.trials:1000}") int trials,
+                                         @Value("${vending.planning.history:1024}") int history) {
+        return new RestockPlanner(Runtime.getRuntime().availableProcessors(), trials, history);
+    }
+
+    // the registered machines with each SKU in stock, and those with fewer than vending.fleet.min-coins of any coin
+    @Bean
+    public StockIndex stockIndex(Catalog catalog, @Value("${vending.fleet.min-coins:5}") int minCoins) {
+        return new StockIndex(catalog, minCoins);
+    }
+
+    @Bean
+    @ConditionalOnProperty("vending.journal.directory")
+    public Journal journal(@Value("${vending.journal.directory}") String directory, MeterRegistry meterRegistry) throws IOException {
+        Journal journal = Journal.open(Paths.get(directory));
+        FunctionCounter.builder("vending.journal.compaction.failures", journal, Journal::compactionFailures)
+                .description("Times sealed journal segments could not be folded into a snapshot")
+                .register(meterRegistry);
+        return journal;
+    }
+
+    // closed with the context, which writes out the last of the capture
+    @Bean
+    @ConditionalOnProperty("vending.capture.file")
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public TrafficCapture trafficCapture(@Value("${vending.capture.file}") String file) throws IOException {
+        return TrafficCapture.open(Paths.get(file));
+    }
+
+    @Bean
+    @ConditionalOnProperty("vending.capture.file")
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public CaptureFilter captureFilter(TrafficCapture trafficCapture) {
+        return new CaptureFilter(trafficCapture);
+    }
+
+    // a purchase session left alone for vending.sessions.idle-timeout hands its coins back, and a machine
+    // keeps at most vending.sessions.max-open of them, making way for a new one by ending the longest idle
+    @Bean
+    public VendingMachine vendingMachine(PriceList sitePrices, Assortments assortments, Currencies currencies, MeterRegistry meterRegistry, ObjectProvider<Journal> journal, VendingMetrics vendingMetrics, ChangeFeeds changeFeeds, SalesAnalytics salesAnalytics, RestockPlanner restockPlanner,
+                                         @Value("${vending.sessions.idle-timeout:5m}") Duration sessionIdleTimeout,
+                                         @Value("${vending.sessions.max-open:1024}") int maxSessions) {
+        VendingMachine vendingMachine = newVendingMachine(ROOT_MACHINE_ID, sitePrices, assortments, currencies, meterRegistry, journal.getIfAvailable(), vendingMetrics, changeFeeds, salesAnalytics, restockPlanner, null);
+        vendingMachine.setSessionLimits(sessionIdleTimeout, maxSessions);
+        return vendingMachine;
+    }
+
+    @Bean
+    public MachineRegistry machineRegistry(PriceList sitePrices, Assortments assortments, Currencies currencies, MeterRegistry meterRegistry, ObjectProvider<Journal> journalProvider, VendingMetrics vendingMetrics, ChangeFeeds changeFeeds, SalesAnalytics salesAnalytics, RestockPlanner restockPlanner, StockIndex stockIndex, ObjectProvider<AdmissionControl> admissionControl,
+                                           @Value("${vending.sessions.idle-timeout:5m}") Duration sessionIdleTimeout,
+                                           @Value("${vending.sessions.max-open:1024}") int maxSessions) {
+        Journal journal = journalProvider.getIfAvailable();
+        MachineRegistry machineRegistry = new MachineRegistry(Runtime.getRuntime().availableProcessors(),
+                machineId -> {
+                    VendingMachine vendingMachine = newVendingMachine(machineId, sitePrices, assortments, currencies, meterRegistry, journal, vendingMetrics, changeFeeds, salesAnalytics, restockPlanner, stockIndex);
+                    vendingMachine.setSessionLimits(sessionIdleTimeout, maxSessions);
+                    return vendingMachine;
+                },
+                admissionControl.getIfAvailable());
+        if (journal != null) {
+            journal.recoveredMachines().keySet().stream()
+                    .filter(machineId -> !ROOT_MACHINE_ID.equals(machineId))
+                    .forEach(machineRegistry::register);
+        }
+        return machineRegistry;
+    }
+
+    @Bean
+    public VendingMachineController vendingMachineController(VendingMachine vendingMachine, IdempotencyCache<ResponseEntity<Object>> idempotencyCache) {
+        return new VendingMachineController(vendingMachine, idempotencyCache, ROOT_MACHINE_ID);
+    }
+
+    @Bean
+    public CatalogController catalogController(PriceList sitePrices) {
+        return new CatalogController(sitePrices);
+    }
+
+    @Bean
+    public MachineRegistryController machineRegistryController(MachineRegistry machineRegistry, IdempotencyCache<ResponseEntity<Object>> idempotencyCache) {
+        return new MachineRegistryController(machineRegistry, idempotencyCache);
+    }
+
+    @Bean
+    public FleetController fleetController(StockIndex stockIndex, Catalog catalog) {
+        return new FleetController(stockIndex, catalog);
+    }
+
+    @Bean
+    public AuditController auditController(VendingMachine vendingMachine, MachineRegistry machineRegistry) {
+        return new AuditController(vendingMachine, machineRegistry, ROOT_MACHINE_ID);
+    }
+
+    @Bean
+    public AnalyticsController analyticsController(SalesAnalytics salesAnalytics, Catalog catalog) {
+        return new AnalyticsController(salesAnalytics, catalog, ROOT_MACHINE_ID);
+    }
+
+    @Bean
+    public RestockController restockController(RestockPlanner restockPlanner) {
+        return new RestockController(restockPlanner, ROOT_MACHINE_ID);
+    }
+
+    @Bean
+    public EventStreamController eventStreamController(ChangeFeeds changeFeeds) {
+        return new EventStreamController(changeFeeds, ROOT_MACHINE_ID);
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public BatchController batchController(VendingMachine vendingMachine, MachineRegistry machineRegistry) {
+        return new BatchController(vendingMachine, machineRegistry);
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public ReactiveBatchController reactiveBatchController(VendingMachine vendingMachine, MachineRegistry machineRegistry) {
+        return new ReactiveBatchController(vendingMachine, machineRegistry);
+    }
+
+    @Bean
+    public RestExceptionHandler restExceptionHandler() {
+        return new RestExceptionHandler();
+    }
+
+    private static VendingMachine newVendingMachine(String machineId, PriceList sitePrices, Assortments assortments, Currencies currencies, MeterRegistry meterRegistry, Journal journal, VendingMetrics vendingMetrics, ChangeFeeds changeFeeds, SalesAnalytics salesAnalytics, RestockPlanner restockPlanner, StockIndex stockIndex) {
+        Currency currency = currencies.forMachine(machineId);
+        ChangeStrategy changeStrategy = new TimedChangeStrategy(currency.changeStrategy(), meterRegistry);
+        VendingMachine vendingMachine = new VendingMachine(sitePrices.overrides(), currency, changeStrategy);
+        MachineState recovered = journal == null ? null : journal.recoveredMachines().get(machineId);
+        if (recovered != null) {
+            // restored before the listener is attached so recovery does not journal the state a second time
+            recovered.restoreInto(vendingMachine);
+        }
+        VendingMachineListener listener = vendingMetrics.bind(machineId, vendingMachine)
+                .andThen(changeFeeds.bind(machineId, vendingMachine))
+                .andThen(salesAnalytics.bind(machineId, vendingMachine))
+                .andThen(restockPlanner.bind(machineId, vendingMachine));
+        if (stockIndex != null) {
+            // only registered machines are indexed, so the root machine is never among the answers
+            listener = listener.andThen(stockIndex.bind(machineId, vendingMachine));
+        }
+        vendingMachine.setListener(journal == null ? listener : journal.listenerFor(machineId).andThen(listener));
+        if (recovered == null) {
+            int[] assortment = assortments.forMachine(machineId);
+            if (assortment.length > 0) {
+                // only as long as the highest id, which a machine's assortment usually is well short of
+                int[] initialStock = new int[assortment[assortment.length - 1] + 1];
+                for (int id : assortment) {
+                    initialStock[id] = INITIAL_STOCK;
+                }
+                vendingMachine.loadItems(initialStock);
+            }
+            int[] initialChange = new int[currency.size()];
+            Arrays.fill(initialChange, INITIAL_CHANGE);
+            vendingMachine.loadChange(initialChange);
+        }
+        return vendingMachine;
     }
 }
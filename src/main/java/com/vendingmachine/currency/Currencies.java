@@ -0,0 +1,59 @@
+package com.vendingmachine.currency;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The currencies a site has defined, and which of them each machine works in. A machine that is not
+ * bound to a currency of its own uses the site's.
+ */
+public final class Currencies {
+
+    private final Map<String, Currency> byCode;
+    private final Currency siteCurrency;
+    private final Map<String, Currency> machineCurrencies;
+
+    private Currencies(Map<String, Currency> byCode, Currency siteCurrency, Map<String, Currency> machineCurrencies) {
+        this.byCode = byCode;
+        this.siteCurrency = siteCurrency;
+        this.machineCurrencies = machineCurrencies;
+    }
+
+    public static Currencies of(Currency siteCurrency) {
+        return new Currencies(Map.of(siteCurrency.code(), siteCurrency), siteCurrency, Map.of());
+    }
+
+    /**
+     * Builds the site's currencies from their definitions, keyed by currency code, on top of the built-in
+     * {@link Currency#DEFAULT}. The site currency and every machine binding must name one of them.
+     */
+    public static Currencies load(Map<String, String> definitions, String siteCurrency, Map<String, String> machineCurrencies) {
+        Map<String, Currency> byCode = new HashMap<>();
+        byCode.put(Currency.DEFAULT.code(), Currency.DEFAULT);
+        definitions.forEach((code, definition) -> byCode.put(code, Currency.parse(code, definition)));
+        Map<String, Currency> machines = new HashMap<>();
+        machineCurrencies.forEach((machineId, code) -> machines.put(machineId, require(byCode, code)));
+        return new Currencies(Map.copyOf(byCode), require(byCode, siteCurrency), Map.copyOf(machines));
+    }
+
+    public Currency siteCurrency() {
+        return siteCurrency;
+    }
+
+    // null when no currency has this code
+    public Currency get(String code) {
+        return byCode.get(code);
+    }
+
+    public Currency forMachine(String machineId) {
+        return machineCurrencies.getOrDefault(machineId, siteCurrency);
+    }
+
+    private static Currency require(Map<String, Currency> byCode, String code) {
+        Currency currency = byCode.get(code);
+        if (currency == null) {
+            throw new IllegalArgumentException("No currency " + code + " is defined.");
+        }
+        return currency;
+    }
+}
@@ -0,0 +1,158 @@
+package com.vendingmachine.currency;
+
+import com.google.common.collect.ImmutableMap;
+import com.vendingmachine.change.OptimalChangeStrategy;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.exception.UnknownCoinException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The coins a machine takes and pays out. Coins are sorted by face value once, when the currency is
+ * defined, and each coin's position in that order is the index used by every coin count array of a
+ * machine in this currency. The change strategy is built with the currency too, so its change table is
+ * worked out once rather than per machine or per purchase.
+ *
+ * <p>A definition is a list of {@code name:value} pairs, with values in the currency's minor unit, for
+ * example {@code CENT:1,TWO_CENTS:2,FIVE_CENTS:5}.
+ */
+public final class Currency {
+
+    // the US coins of Denomination, with indexes matching their ordinals
+    public static final Currency DEFAULT = defaultCurrency();
+
+    private final String code;
+    private final String[] coins;
+    private final int[] faceValues;
+    private final Map<String, Integer> indexes;
+    private final OptimalChangeStrategy changeStrategy;
+
+    private Currency(String code, String[] coins, int[] faceValues) {
+        this.code = code;
+        this.coins = coins;
+        this.faceValues = faceValues;
+        this.indexes = new HashMap<>(coins.length * 2);
+        for (int i = 0; i < coins.length; i++) {
+            if (indexes.putIfAbsent(coins[i], i) != null) {
+                throw new IllegalArgumentException("Duplicate coin " + coins[i] + " in " + code + ".");
+            }
+        }
+        // rejects empty, non-positive and repeated face values
+        this.changeStrategy = new OptimalChangeStrategy(faceValues);
+    }
+
+    public static Currency of(String code, Map<String, Integer> faceValuesByCoin) {
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(faceValuesByCoin.entrySet());
+        for (Map.Entry<String, Integer> coin : sorted) {
+            if (coin.getValue() == null) {
+                throw new IllegalArgumentException("Missing face value for " + coin.getKey() + " in " + code + ".");
+            }
+        }
+        sorted.sort(Map.Entry.comparingByValue());
+        String[] coins = new String[sorted.size()];
+        int[] faceValues = new int[sorted.size()];
+        for (int i = 0; i < coins.length; i++) {
+            coins[i] = sorted.get(i).getKey();
+            faceValues[i] = sorted.get(i).getValue();
+        }
+        return new Currency(code, coins, faceValues);
+    }
+
+    public static Currency parse(String code, String definition) {
+        Map<String, Integer> faceValuesByCoin = new LinkedHashMap<>();
+        for (String coin : definition.split(",")) {
+            String[] parts = coin.trim().split(":");
+            if (parts.length != 2 || parts[0].isEmpty()) {
+                throw new IllegalArgumentException("Expected name:value but got " + coin.trim() + " in " + code + ".");
+            }
+            try {
+                if (faceValuesByCoin.put(parts[0], Integer.parseInt(parts[1])) != null) {
+                    throw new IllegalArgumentException("Duplicate coin " + parts[0] + " in " + code + ".");
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid face value " + parts[1] + " for " + parts[0] + " in " + code + ".", e);
+            }
+        }
+        return of(code, faceValuesByCoin);
+    }
+
+    public String code() {
+        return code;
+    }
+
+    public int size() {
+        return coins.length;
+    }
+
+    public String coin(int index) {
+        return coins[index];
+    }
+
+    public int faceValue(int index) {
+        return faceValues[index];
+    }
+
+    // ascending, as the change strategy expects
+    public int[] faceValues() {
+        return faceValues.clone();
+    }
+
+    // the index of a coin, or -1 when this currency has no such coin
+    public int index(String coin) {
+        Integer index = indexes.get(coin);
+        return index == null ? -1 : index;
+    }
+
+    public OptimalChangeStrategy changeStrategy() {
+        return changeStrategy;
+    }
+
+    public int[] toCounts(Map<String, Integer> coinsByName) throws UnknownCoinException {
+        int[] counts = new int[coins.length];
+        for (Map.Entry<String, Integer> entry : coinsByName.entrySet()) {
+            int index = index(entry.getKey());
+            if (index < 0) {
+                throw new UnknownCoinException(code, entry.getKey());
+            }
+            counts[index] += entry.getValue();
+        }
+        return counts;
+    }
+
+    public Map<String, Integer> toMap(int[] counts) {
+        ImmutableMap.Builder<String, Integer> coinsByName = ImmutableMap.builder();
+        for (int i = 0; i < coins.length; i++) {
+            if (counts[i] != 0) {
+                coinsByName.put(coins[i], counts[i]);
+            }
+        }
+        return coinsByName.build();
+    }
+
+    public int total(int[] counts) {
+        int total = 0;
+        for (int i = 0; i < coins.length; i++) {
+            total += counts[i] * faceValues[i];
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return code + Arrays.toString(coins);
+    }
+
+    private static Currency defaultCurrency() {
+        Denomination[] denominations = Denomination.values();
+        String[] coins = new String[denominations.length];
+        for (Denomination denomination : denominations) {
+            coins[denomination.ordinal()] = denomination.name();
+        }
+        return new Currency("USD", coins, Denomination.faceValues());
+    }
+}
@@ -0,0 +1,40 @@
+package com.vendingmachine.domain;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+// converts between the map form used at the API edges and counts indexed by Denomination.ordinal()
+public final class Coins {
+
+    public static final int DENOMINATION_COUNT = Denomination.values().length;
+
+    private static final Denomination[] DENOMINATIONS = Denomination.values();
+
+    private Coins() {
+    }
+
+    public static int[] toCounts(Map<Denomination, Integer> coins) {
+        int[] counts = new int[DENOMINATION_COUNT];
+        coins.forEach((denomination, count) -> counts[denomination.ordinal()] += count);
+        return counts;
+    }
+
+    public static Map<Denomination, Integer> toMap(int[] counts) {
+        ImmutableMap.Builder<Denomination, Integer> coins = ImmutableMap.builder();
+        for (int i = 0; i < DENOMINATION_COUNT; i++) {
+            if (counts[i] != 0) {
+                coins.put(DENOMINATIONS[i], counts[i]);
+            }
+        }
+        return coins.build();
+    }
+
+    public static int total(int[] counts) {
+        int total = 0;
+        for (int i = 0; i < DENOMINATION_COUNT; i++) {
+            total += counts[i] * DENOMINATIONS[i].totalCents;
+        }
+        return total;
+    }
+}
@@ -1,11 +1,8 @@
 package com.vendingmachine.domain;
 
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
-import java.util.stream.Collectors;
 
+// the US coins, which make up the default currency
 public enum Denomination {
 
     ONE_CENT(1),
@@ -21,9 +18,8 @@ public enum Denomination {
         this.totalCents = totalCents;
     }
 
-    public static List<Denomination> ordered() {
-        return Arrays.stream(values())
-                .sorted(Comparator.comparing((Denomination denomination) -> denomination.totalCents).reversed())
-                .collect(Collectors.toList());
+    // declaration order is ascending, so indexes into this line up with ordinal()
+    public static int[] faceValues() {
+        return Arrays.stream(values()).mapToInt(denomination -> denomination.totalCents).toArray();
     }
 }
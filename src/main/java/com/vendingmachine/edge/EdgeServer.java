@@ -0,0 +1,168 @@
+package com.vendingmachine.edge;
+
+import com.sun.net.httpserver.HttpServer;
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.config.Config;
+import com.vendingmachine.currency.Currencies;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.idempotency.IdempotencyCache;
+import com.vendingmachine.journal.Journal;
+import com.vendingmachine.journal.MachineState;
+import com.vendingmachine.service.VendingMachine;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the single-machine routes of {@code VendingMachineController} from the JDK's built-in HTTP
+ * server, without Spring, for controllers that are short of memory or restart often. It runs the same
+ * {@link VendingMachine} core with the same catalog, currency and journal settings. There are no
+ * metrics, machine registry, batches, event streams, analytics or restock plans.
+ *
+ * <p>Settings are given as {@code --name=value} arguments with the same names as the application
+ * properties: {@code server.port}, {@code server.threads}, {@code vending.catalog.file},
+ * {@code vending.currency}, {@code vending.currencies.<code>}, {@code vending.journal.directory},
+ * {@code vending.sessions.idle-timeout}, {@code vending.sessions.max-open},
+ * {@code vending.idempotency.capacity} and {@code vending.idempotency.ttl}.
+ */
+public final class EdgeServer implements AutoCloseable {
+
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final VendingMachine vendingMachine;
+    private final Journal journal;
+
+    private EdgeServer(HttpServer server, ExecutorService executor, VendingMachine vendingMachine, Journal journal) {
+        this.server = server;
+        this.executor = executor;
+        this.vendingMachine = vendingMachine;
+        this.journal = journal;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> settings = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg + ".");
+            }
+            settings.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        EdgeServer edgeServer = start(settings);
+        Runtime.getRuntime().addShutdownHook(new Thread(edgeServer::close, "edge-server-shutdown"));
+        System.out.printf("Started EdgeServer on port %d in %d ms%n", edgeServer.port(),
+                System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    public static EdgeServer start(Map<String, String> settings) throws IOException {
+        String catalogFile = settings.getOrDefault("vending.catalog.file", "");
+        Catalog catalog = catalogFile.isEmpty() ? Catalog.DEFAULT : Catalog.load(Paths.get(catalogFile));
+        Map<String, String> definitions = new HashMap<>();
+        settings.forEach((name, value) -> {
+            if (name.startsWith("vending.currencies.")) {
+                definitions.put(name.substring("vending.currencies.".length()), value);
+            }
+        });
+        Currency currency = Currencies.load(definitions, settings.getOrDefault("vending.currency", Currency.DEFAULT.code()), Map.of())
+                .siteCurrency();
+        String journalDirectory = settings.get("vending.journal.directory");
+        Journal journal = journalDirectory == null ? null : Journal.open(Paths.get(journalDirectory));
+
+        VendingMachine vendingMachine = new VendingMachine(PriceList.of(catalog).overrides(), currency, currency.changeStrategy());
+        vendingMachine.setSessionLimits(duration(settings.getOrDefault("vending.sessions.idle-timeout", "5m")),
+                Integer.parseInt(settings.getOrDefault("vending.sessions.max-open", "1024")));
+        MachineState recovered = journal == null ? null : journal.recoveredMachines().get(Config.ROOT_MACHINE_ID);
+        if (recovered != null) {
+            // restored before the listener is attached so recovery does not journal the state a second time
+            recovered.restoreInto(vendingMachine);
+        }
+        if (journal != null) {
+            vendingMachine.setListener(journal.listenerFor(Config.ROOT_MACHINE_ID));
+        }
+        if (recovered == null) {
+            int[] initialStock = new int[catalog.size()];
+            Arrays.fill(initialStock, Config.INITIAL_STOCK);
+            vendingMachine.loadItems(initialStock);
+            int[] initialChange = new int[currency.size()];
+            Arrays.fill(initialChange, Config.INITIAL_CHANGE);
+            vendingMachine.loadChange(initialChange);
+        }
+
+        // the server writes a response's headers and body separately, and with Nagle's algorithm on the body
+        // waits for the client's delayed acknowledgement of the headers; read once, when the server first loads
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+        int threads = Integer.parseInt(settings.getOrDefault("server.threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        HttpServer server = HttpServer.create(new InetSocketAddress(Integer.parseInt(settings.getOrDefault("server.port", "8080"))), 0);
+        IdempotencyCache<VendingMachineHandler.Reply> idempotencyCache = new IdempotencyCache<>(
+                Integer.parseInt(settings.getOrDefault("vending.idempotency.capacity", "65536")),
+                duration(settings.getOrDefault("vending.idempotency.ttl", "10m")));
+        server.createContext("/", new VendingMachineHandler(vendingMachine, idempotencyCache));
+        server.setExecutor(executor);
+        server.start();
+        return new EdgeServer(server, executor, vendingMachine, journal);
+    }
+
+    // an ISO-8601 duration, or a number and one of the units ms, s, m, h or d, as Spring Boot reads them
+    static Duration duration(String value) {
+        if (value.startsWith("P") || value.startsWith("-P")) {
+            return Duration.parse(value);
+        }
+        int unitStart = value.length();
+        while (unitStart > 0 && Character.isLetter(value.charAt(unitStart - 1))) {
+            unitStart--;
+        }
+        long amount = Long.parseLong(value.substring(0, unitStart));
+        switch (value.substring(unitStart)) {
+            case "":
+            case "ms":
+                return Duration.ofMillis(amount);
+            case "s":
+                return Duration.ofSeconds(amount);
+            case "m":
+                return Duration.ofMinutes(amount);
+            case "h":
+                return Duration.ofHours(amount);
+            case "d":
+                return Duration.ofDays(amount);
+            default:
+                throw new IllegalArgumentException("Unknown unit in duration " + value + ".");
+        }
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public VendingMachine vendingMachine() {
+        return vendingMachine;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
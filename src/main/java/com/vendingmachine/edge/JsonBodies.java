@@ -0,0 +1,89 @@
+package com.vendingmachine.edge;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// the only JSON the routes read or write: flat objects of names to counts, and the error document Spring
+// Boot sends for requests it cannot route or read
+final class JsonBodies {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSxxx");
+
+    private JsonBodies() {
+    }
+
+    // null values are kept, since they clear price overrides
+    static Map<String, Integer> readCounts(byte[] body) throws MalformedBodyException {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        try (JsonParser json = JSON.createParser(body)) {
+            if (json.nextToken() != JsonToken.START_OBJECT) {
+                throw new MalformedBodyException();
+            }
+            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                String name = json.getCurrentName();
+                JsonToken value = json.nextToken();
+                if (value == JsonToken.VALUE_NUMBER_INT) {
+                    counts.put(name, json.getIntValue());
+                } else if (value == JsonToken.VALUE_NULL) {
+                    counts.put(name, null);
+                } else {
+                    throw new MalformedBodyException();
+                }
+            }
+            if (json.currentToken() != JsonToken.END_OBJECT || json.nextToken() != null) {
+                throw new MalformedBodyException();
+            }
+        } catch (IOException e) {
+            throw new MalformedBodyException();
+        }
+        return counts;
+    }
+
+    static byte[] writeCounts(Map<String, Integer> counts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + counts.size() * 24);
+        try (JsonGenerator json = JSON.createGenerator(out)) {
+            json.writeStartObject();
+            for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                json.writeNumberField(count.getKey(), count.getValue());
+            }
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] writeError(int status, String error, String path) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try (JsonGenerator json = JSON.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("timestamp", TIMESTAMP.format(OffsetDateTime.now(ZoneOffset.UTC)));
+            json.writeNumberField("status", status);
+            json.writeStringField("error", error);
+            json.writeStringField("path", path);
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // a body that is not a flat object of integers; carries no stack trace, since clients can send any number of them
+    static final class MalformedBodyException extends Exception {
+
+        MalformedBodyException() {
+            super("Malformed request body.", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.vendingmachine.edge;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.vendingmachine.config.Config;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.exception.IdempotencyKeyConflictException;
+import com.vendingmachine.exception.ItemNotFoundException;
+import com.vendingmachine.exception.TooManySessionsException;
+import com.vendingmachine.exception.UnknownCoinException;
+import com.vendingmachine.idempotency.IdempotencyCache;
+import com.vendingmachine.service.PurchaseResult;
+import com.vendingmachine.service.VendingMachine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The routes of {@code VendingMachineController} on the JDK's HTTP server, with the same statuses,
+ * headers and bodies. Paths are matched by splitting them on slashes rather than by pattern, since
+ * there are only a dozen of them.
+ */
+final class VendingMachineHandler implements HttpHandler {
+
+    static final String SESSION_TOKEN_HEADER = "Session-Token";
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final String GET = "GET";
+    private static final String POST = "POST";
+    private static final String PUT = "PUT";
+    private static final String DELETE = "DELETE";
+    private static final String JSON = "application/json";
+    private static final String TEXT = "text/plain;charset=UTF-8";
+
+    private final VendingMachine vendingMachine;
+    private final Currency currency;
+    private final IdempotencyCache<Reply> idempotencyCache;
+
+    VendingMachineHandler(VendingMachine vendingMachine, IdempotencyCache<Reply> idempotencyCache) {
+        this.vendingMachine = vendingMachine;
+        this.currency = vendingMachine.getCurrency();
+        this.idempotencyCache = idempotencyCache;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            try {
+                route(exchange, exchange.getRequestMethod(), path, path.length() > 1 ? path.substring(1).split("/") : new String[0]);
+            } catch (ItemNotFoundException | UnknownCoinException e) {
+                int status = e instanceof ItemNotFoundException ? 404 : 400;
+                send(exchange, status, TEXT, e.getMessage().getBytes(StandardCharsets.UTF_8));
+            } catch (TooManySessionsException e) {
+                send(exchange, 503, TEXT, e.getMessage().getBytes(StandardCharsets.UTF_8));
+            } catch (JsonBodies.MalformedBodyException | NumberFormatException e) {
+                sendError(exchange, 400, "Bad Request", path);
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, "Internal Server Error", path);
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange, String method, String path, String[] segments) throws IOException, ItemNotFoundException, UnknownCoinException, TooManySessionsException, JsonBodies.MalformedBodyException {
+        switch (segments.length == 0 ? "" : segments[0]) {
+            case "items":
+                if (segments.length == 1) {
+                    if (GET.equals(method)) {
+                        send(exchange, 200, JSON, vendingMachine.inStock().json());
+                    } else if (POST.equals(method)) {
+                        vendingMachine.loadItems(vendingMachine.getCatalog().toCounts(body(exchange)));
+                        send(exchange, 200, null, null);
+                    } else {
+                        methodNotAllowed(exchange, path);
+                    }
+                    return;
+                }
+                if (segments.length == 3 && "price".equals(segments[2])) {
+                    if (GET.equals(method)) {
+                        sendInt(exchange, vendingMachine.getPrice(vendingMachine.getCatalog().require(segments[1])));
+                    } else {
+                        methodNotAllowed(exchange, path);
+                    }
+                    return;
+                }
+                if (segments.length == 2) {
+                    if (POST.equals(method)) {
+                        int id = vendingMachine.getCatalog().require(segments[1]);
+                        Map<String, Integer> coins = body(exchange);
+                        idempotent(exchange, path, coins, () -> buy(VendingMachine.DEFAULT_SESSION, id, currency.toCounts(coins)));
+                    } else {
+                        methodNotAllowed(exchange, path);
+                    }
+                    return;
+                }
+                break;
+            case "coins":
+                if (segments.length == 1) {
+                    coins(exchange, method, path, VendingMachine.DEFAULT_SESSION);
+                    return;
+                }
+                break;
+            case "sessions":
+                if (segments.length == 3 && "items".equals(segments[1])) {
+                    if (POST.equals(method)) {
+                        int id = vendingMachine.getCatalog().require(segments[2]);
+                        Map<String, Integer> coins = body(exchange);
+                        idempotent(exchange, path, coins, () -> {
+                            int[] counts = currency.toCounts(coins);
+                            // the token goes out with a rejection too, because the customer needs it to add coins or get them back
+                            long sessionToken = vendingMachine.newSessionToken();
+                            return buy(sessionToken, id, counts).withSessionToken(sessionToken);
+                        });
+                    } else {
+                        methodNotAllowed(exchange, path);
+                    }
+                    return;
+                }
+                if (segments.length == 3 && "coins".equals(segments[2])) {
+                    coins(exchange, method, path, Long.parseLong(segments[1]));
+                    return;
+                }
+                break;
+            case "change":
+                if (segments.length == 1) {
+                    if (GET.equals(method)) {
+                        sendInt(exchange, vendingMachine.getChange());
+                    } else if (POST.equals(method)) {
+                        vendingMachine.loadChange(currency.toCounts(body(exchange)));
+                        send(exchange, 200, null, null);
+                    } else {
+                        methodNotAllowed(exchange, path);
+                    }
+                    return;
+                }
+                break;
+            case "prices":
+                if (segments.length == 1) {
+                    if (PUT.equals(method)) {
+                        // this machine's own prices; a null price drops the override and the site's price applies again
+                        vendingMachine.getPrices().update(body(exchange));
+                        send(exchange, 200, null, null);
+                    } else {
+                        methodNotAllowed(exchange, path);
+                    }
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        sendError(exchange, 404, "Not Found", path);
+    }
+
+    private void coins(HttpExchange exchange, String method, String path, long sessionToken) throws IOException, UnknownCoinException, TooManySessionsException, JsonBodies.MalformedBodyException {
+        if (POST.equals(method)) {
+            Map<String, Integer> coins = body(exchange);
+            idempotent(exchange, path, coins, () -> {
+                int[] changeToPay = new int[currency.size()];
+                return purchaseReply(vendingMachine.tryAddCoins(sessionToken, currency.toCounts(coins), changeToPay), changeToPay);
+            });
+        } else if (DELETE.equals(method)) {
+            int[] returnedCoins = new int[currency.size()];
+            vendingMachine.returnCoins(sessionToken, returnedCoins);
+            send(exchange, 200, JSON, JsonBodies.writeCounts(currency.toMap(returnedCoins)));
+        } else {
+            methodNotAllowed(exchange, path);
+        }
+    }
+
+    private Reply buy(long sessionToken, int id, int[] coins) {
+        int[] changeToPay = new int[currency.size()];
+        return purchaseReply(vendingMachine.tryBuyItem(sessionToken, id, coins, changeToPay), changeToPay);
+    }
+
+    // rejections are a 400 with the result's message as a plain text body, as the Spring routes send them
+    private Reply purchaseReply(PurchaseResult result, int[] changeToPay) {
+        if (result.isCompleted()) {
+            return new Reply(200, JSON, JsonBodies.writeCounts(currency.toMap(changeToPay)));
+        }
+        return new Reply(400, TEXT, result.getMessage().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // a retry with the key of an earlier request gets that request's reply, as VendingMachineController does
+    private void idempotent(HttpExchange exchange, String path, Map<String, Integer> coins, Purchase purchase) throws IOException, UnknownCoinException, TooManySessionsException {
+        String idempotencyKey = exchange.getRequestHeaders().getFirst(IDEMPOTENCY_KEY_HEADER);
+        if (idempotencyKey == null) {
+            sendReply(exchange, purchase.run());
+            return;
+        }
+        Reply stored;
+        try {
+            stored = idempotencyCache.claim(Config.ROOT_MACHINE_ID, idempotencyKey, List.of(path, coins));
+        } catch (IdempotencyKeyConflictException e) {
+            send(exchange, 409, TEXT, e.getMessage().getBytes(StandardCharsets.UTF_8));
+            return;
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, "Bad Request", path);
+            return;
+        }
+        if (stored != null) {
+            exchange.getResponseHeaders().set(IDEMPOTENT_REPLAYED_HEADER, "true");
+            sendReply(exchange, stored);
+            return;
+        }
+        Reply reply = null;
+        try {
+            reply = purchase.run();
+        } finally {
+            if (reply == null) {
+                idempotencyCache.release(Config.ROOT_MACHINE_ID, idempotencyKey);
+            } else {
+                idempotencyCache.complete(Config.ROOT_MACHINE_ID, idempotencyKey, reply);
+            }
+        }
+        sendReply(exchange, reply);
+    }
+
+    private static void sendReply(HttpExchange exchange, Reply reply) throws IOException {
+        if (reply.sessionToken != null) {
+            exchange.getResponseHeaders().set(SESSION_TOKEN_HEADER, reply.sessionToken);
+        }
+        send(exchange, reply.status, reply.contentType, reply.body);
+    }
+
+    private static Map<String, Integer> body(HttpExchange exchange) throws IOException, JsonBodies.MalformedBodyException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return JsonBodies.readCounts(in.readAllBytes());
+        }
+    }
+
+    private static void sendInt(HttpExchange exchange, int value) throws IOException {
+        send(exchange, 200, JSON, Integer.toString(value).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void methodNotAllowed(HttpExchange exchange, String path) throws IOException {
+        sendError(exchange, 405, "Method Not Allowed", path);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String error, String path) throws IOException {
+        send(exchange, status, JSON, JsonBodies.writeError(status, error, path));
+    }
+
+    // a null body is sent as an empty one with no content type, as Spring does for void routes
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Purchase {
+
+        Reply run() throws UnknownCoinException, TooManySessionsException;
+    }
+
+    // a purchase's response, kept whole so a retry can be sent the same one
+    static final class Reply {
+
+        private final int status;
+        private final String contentType;
+        private final byte[] body;
+        private final String sessionToken;
+
+        Reply(int status, String contentType, byte[] body) {
+            this(status, contentType, body, null);
+        }
+
+        private Reply(int status, String contentType, byte[] body, String sessionToken) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+            this.sessionToken = sessionToken;
+        }
+
+        Reply withSessionToken(long sessionToken) {
+            return new Reply(status, contentType, body, Long.toString(sessionToken));
+        }
+    }
+}
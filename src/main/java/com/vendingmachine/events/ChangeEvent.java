@@ -0,0 +1,50 @@
+package com.vendingmachine.events;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+
+// one message of a change stream: either the whole of a machine's stock and float, or the parts of them
+// that changed since the subscriber's last message, covering the machine's changes up to the sequence
+// number; it is rendered once, when it is taken, and written out as that JSON
+@JsonSerialize(using = ChangeEvent.Serializer.class)
+public final class ChangeEvent {
+
+    public enum Type {
+        SNAPSHOT,
+        DELTA
+    }
+
+    private final Type type;
+    private final long sequence;
+    private final String json;
+
+    ChangeEvent(Type type, long sequence, String json) {
+        this.type = type;
+        this.sequence = sequence;
+        this.json = json;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getJson() {
+        return json;
+    }
+
+    static final class Serializer extends JsonSerializer<ChangeEvent> {
+
+        @Override
+        public void serialize(ChangeEvent event, JsonGenerator json, SerializerProvider serializers) throws IOException {
+            json.writeRawValue(event.json);
+        }
+    }
+}
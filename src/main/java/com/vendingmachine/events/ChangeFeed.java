@@ -0,0 +1,220 @@
+package com.vendingmachine.events;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.service.MachineSnapshot;
+import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.service.VendingMachineListener;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Streams one machine's stock and float to any number of subscribers. The machine only writes down which
+ * SKU or the float changed, as a sequence number and a key packed into one slot of a fixed ring, so a
+ * purchase costs two slot writes however many subscribers there are and never waits for one of them.
+ *
+ * <p>Each subscriber keeps the last sequence number it was sent and, on every tick it has asked for, reads
+ * the slots since then and sends the current value of each key once. A subscriber that is slow to read
+ * simply skips ticks, and its next message covers everything it missed. One that falls a whole ring
+ * behind is sent a fresh snapshot instead. Memory per subscriber therefore stays the same whatever the
+ * rate of change.
+ *
+ * <p>Most machines in a large fleet are never watched, so the ring is only made when the first subscriber
+ * arrives, and until then nothing is written down. The first snapshot covers everything before it.
+ */
+public final class ChangeFeed implements VendingMachineListener {
+
+    static final int CAPACITY = 1 << 12;
+
+    private static final int MASK = CAPACITY - 1;
+    private static final int KEY_BITS = 24;
+    private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+    private static final int FLOAT = (int) KEY_MASK;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final VendingMachine vendingMachine;
+    private final Catalog catalog;
+    private final Currency currency;
+    private final AtomicLong sequence = new AtomicLong();
+    // slot s & MASK holds s << KEY_BITS | key once change s is written down; null until the first subscriber
+    private volatile AtomicLongArray ring;
+
+    public ChangeFeed(VendingMachine vendingMachine) {
+        this.vendingMachine = vendingMachine;
+        this.catalog = vendingMachine.getCatalog();
+        this.currency = vendingMachine.getCurrency();
+        if (catalog.size() >= FLOAT) {
+            throw new IllegalArgumentException("Cannot stream a catalog of " + catalog.size() + " SKUs.");
+        }
+    }
+
+    @Override
+    public void itemsLoaded(int[] items) {
+        if (ring == null) {
+            return;
+        }
+        for (int id = 0; id < items.length; id++) {
+            if (items[id] != 0) {
+                record(id);
+            }
+        }
+    }
+
+    @Override
+    public void changeLoaded(int[] coins) {
+        record(FLOAT);
+    }
+
+    @Override
+    public void purchaseCompleted(long sessionToken, int item, int[] coinsPaid, int[] changePaid) {
+        record(item);
+        record(FLOAT);
+    }
+
+    // a change that finds no ring has already happened by the time the first subscriber's snapshot is taken
+    private void record(int key) {
+        AtomicLongArray slots = ring;
+        if (slots == null) {
+            return;
+        }
+        long written = sequence.incrementAndGet();
+        slots.set((int) written & MASK, written << KEY_BITS | key);
+    }
+
+    private AtomicLongArray watch() {
+        AtomicLongArray slots = ring;
+        if (slots == null) {
+            synchronized (this) {
+                slots = ring;
+                if (slots == null) {
+                    slots = new AtomicLongArray(CAPACITY);
+                    ring = slots;
+                }
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * A snapshot followed by a delta on each tick that has anything in it. Ticks the subscriber has not
+     * asked for yet are dropped rather than queued.
+     */
+    public Flux<ChangeEvent> events(Duration interval) {
+        return Flux.defer(() -> {
+            Cursor cursor = new Cursor();
+            Flux<ChangeEvent> deltas = Flux.interval(interval)
+                    .onBackpressureDrop()
+                    .handle((tick, sink) -> {
+                        ChangeEvent delta = cursor.poll();
+                        if (delta != null) {
+                            sink.next(delta);
+                        }
+                    });
+            return Flux.concat(Mono.fromSupplier(cursor::snapshot), deltas);
+        });
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    // one subscriber's position in the ring; only used by one thread at a time
+    final class Cursor {
+
+        private final AtomicLongArray ring = watch();
+        private long position;
+
+        ChangeEvent snapshot() {
+            // taken before the values are read, so they are at least as new as the position
+            position = sequence.get();
+            MachineSnapshot state = vendingMachine.snapshot();
+            int[] ids = new int[state.getItemCount()];
+            int count = 0;
+            for (int index = 0; index < ids.length; index++) {
+                if (state.getStockAt(index) != 0) {
+                    ids[count++] = state.getItemId(index);
+                }
+            }
+            return render(ChangeEvent.Type.SNAPSHOT, state, ids, count, true);
+        }
+
+        // the keys changed since the last event, or null when there are none yet
+        ChangeEvent poll() {
+            long end = sequence.get();
+            if (end == position) {
+                return null;
+            }
+            if (end - position > CAPACITY) {
+                return snapshot();
+            }
+            int[] keys = new int[(int) (end - position)];
+            int count = 0;
+            long next = position + 1;
+            for (; next <= end; next++) {
+                long slot = ring.get((int) next & MASK);
+                long written = slot >>> KEY_BITS;
+                if (written < next) {
+                    // claimed but not written yet, so it and everything after wait for the next tick
+                    break;
+                }
+                if (written > next) {
+                    // a writer a whole ring ahead has overwritten it
+                    return snapshot();
+                }
+                keys[count++] = (int) (slot & KEY_MASK);
+            }
+            if (count == 0) {
+                return null;
+            }
+            position = next - 1;
+            Arrays.sort(keys, 0, count);
+            boolean floatChanged = keys[count - 1] == FLOAT;
+            int items = 0;
+            for (int i = 0; i < count; i++) {
+                if (keys[i] != FLOAT && (items == 0 || keys[items - 1] != keys[i])) {
+                    keys[items++] = keys[i];
+                }
+            }
+            return render(ChangeEvent.Type.DELTA, vendingMachine.snapshot(), keys, items, floatChanged);
+        }
+
+        // every value in an event comes from one snapshot, so its stock and float agree on which purchases have happened
+        private ChangeEvent render(ChangeEvent.Type type, MachineSnapshot state, int[] ids, int count, boolean withFloat) {
+            StringWriter out = new StringWriter(64 + count * 24);
+            try (JsonGenerator json = JSON.createGenerator(out)) {
+                json.writeStartObject();
+                json.writeStringField("type", type == ChangeEvent.Type.SNAPSHOT ? "snapshot" : "delta");
+                json.writeNumberField("seq", position);
+                if (count > 0) {
+                    json.writeObjectFieldStart("items");
+                    for (int i = 0; i < count; i++) {
+                        json.writeNumberField(catalog.code(ids[i]), state.getStock(ids[i]));
+                    }
+                    json.writeEndObject();
+                }
+                if (withFloat) {
+                    json.writeObjectFieldStart("coins");
+                    for (int coin = 0; coin < currency.size(); coin++) {
+                        json.writeNumberField(currency.coin(coin), state.getCoinCount(coin));
+                    }
+                    json.writeEndObject();
+                    json.writeNumberField("float", state.getChange());
+                }
+                json.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new ChangeEvent(type, position, out.toString());
+        }
+    }
+}
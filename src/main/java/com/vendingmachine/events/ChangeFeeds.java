@@ -0,0 +1,36 @@
+package com.vendingmachine.events;
+
+import com.vendingmachine.exception.MachineNotFoundException;
+import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.service.VendingMachineListener;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// the change feed of every machine, by machine id, and how often their subscribers are sent what changed
+public class ChangeFeeds {
+
+    private final Duration interval;
+    private final Map<String, ChangeFeed> feeds = new ConcurrentHashMap<>();
+
+    public ChangeFeeds(Duration interval) {
+        this.interval = interval;
+    }
+
+    // starts a feed for the machine and returns it as the listener the machine writes its changes to
+    public VendingMachineListener bind(String machineId, VendingMachine vendingMachine) {
+        ChangeFeed feed = new ChangeFeed(vendingMachine);
+        feeds.put(machineId, feed);
+        return feed;
+    }
+
+    public Flux<ChangeEvent> events(String machineId) throws MachineNotFoundException {
+        ChangeFeed feed = feeds.get(machineId);
+        if (feed == null) {
+            throw new MachineNotFoundException(machineId);
+        }
+        return feed.events(interval);
+    }
+}
@@ -0,0 +1,8 @@
+package com.vendingmachine.exception;
+
+public class IdempotencyKeyConflictException extends Exception {
+
+    public IdempotencyKeyConflictException(String message) {
+        super(message);
+    }
+}
@@ -2,7 +2,9 @@ package com.vendingmachine.exception;
 
 public class InsufficientChangeException extends Exception {
 
+    public static final String MESSAGE = "Not enough change available. Returning coins.";
+
     public InsufficientChangeException() {
-        super("Not enough change available. Returning coins.");
+        super(MESSAGE, null, false, false);
     }
 }
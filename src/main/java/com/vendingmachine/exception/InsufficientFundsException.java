@@ -2,7 +2,24 @@ package com.vendingmachine.exception;
 
 public class InsufficientFundsException extends Exception {
 
+    private final int deficit;
+
     public InsufficientFundsException(int deficit) {
-        super(String.format("Please insert %d more cents or cancel transaction.", deficit));
+        super(null, null, false, false);
+        this.deficit = deficit;
+    }
+
+    public static String message(int deficit) {
+        return String.format("Please insert %d more cents or cancel transaction.", deficit);
+    }
+
+    public int getDeficit() {
+        return deficit;
+    }
+
+    // formatted on demand, since most rejections are counted and answered without anyone reading it
+    @Override
+    public String getMessage() {
+        return message(deficit);
     }
 }
@@ -2,7 +2,9 @@ package com.vendingmachine.exception;
 
 public class ItemNotAvailableException extends Exception {
 
+    public static final String MESSAGE = "Item not available. Returning coins.";
+
     public ItemNotAvailableException() {
-        super("Item not available. Returning coins.");
+        super(MESSAGE, null, false, false);
     }
 }
@@ -0,0 +1,12 @@
+package com.vendingmachine.exception;
+
+public class ItemNotFoundException extends Exception {
+
+    public ItemNotFoundException(String code) {
+        super(message(code));
+    }
+
+    public static String message(String code) {
+        return String.format("No item with code %s in the catalog.", code);
+    }
+}
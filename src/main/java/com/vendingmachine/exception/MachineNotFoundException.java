@@ -0,0 +1,8 @@
+package com.vendingmachine.exception;
+
+public class MachineNotFoundException extends Exception {
+
+    public MachineNotFoundException(String machineId) {
+        super(String.format("No vending machine registered with id %s.", machineId));
+    }
+}
@@ -0,0 +1,18 @@
+package com.vendingmachine.exception;
+
+import java.time.Duration;
+
+public class MachineOverloadedException extends Exception {
+
+    private final Duration retryAfter;
+
+    public MachineOverloadedException(String machineId, Duration retryAfter) {
+        // no stack trace, since a machine under a flood turns away any number of requests
+        super(String.format("Vending machine %s is too busy, try again later.", machineId), null, false, false);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,11 @@
+package com.vendingmachine.exception;
+
+public class TooManySessionsException extends Exception {
+
+    public static final String MESSAGE = "Too many purchases are open on this machine, try again later.";
+
+    public TooManySessionsException() {
+        // no stack trace, since a flood of new sessions turns away any number of them
+        super(MESSAGE, null, false, false);
+    }
+}
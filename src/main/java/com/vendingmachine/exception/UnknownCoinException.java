@@ -0,0 +1,12 @@
+package com.vendingmachine.exception;
+
+public class UnknownCoinException extends Exception {
+
+    public UnknownCoinException(String currency, String coin) {
+        super(message(currency, coin));
+    }
+
+    public static String message(String currency, String coin) {
+        return String.format("%s has no coin called %s.", currency, coin);
+    }
+}
@@ -0,0 +1,70 @@
+package com.vendingmachine.fleet;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of machine slots, bit slot % 64 of word slot / 64, kept in pages of 65,536 slots that are only
+ * allocated once one of their bits is set. A SKU that only a few machines stock, or that none do, costs
+ * next to nothing. Bits are set and cleared with compare-and-set, and the page table is only copied
+ * when it grows, so readers never lock.
+ */
+final class MachineBitmap {
+
+    static final int PAGE_SHIFT = 10;
+    static final int PAGE_WORDS = 1 << PAGE_SHIFT;
+
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[0];
+
+    boolean get(int slot) {
+        return (word(slot / Long.SIZE) & 1L << slot) != 0;
+    }
+
+    // returns whether the bit changed
+    boolean set(int slot, boolean value) {
+        int word = slot / Long.SIZE;
+        AtomicLongArray page = value ? pageForWrite(word >>> PAGE_SHIFT) : page(word >>> PAGE_SHIFT);
+        if (page == null) {
+            return false;
+        }
+        long bit = 1L << slot;
+        int index = word & PAGE_WORDS - 1;
+        while (true) {
+            long bits = page.get(index);
+            long updated = value ? bits | bit : bits & ~bit;
+            if (updated == bits) {
+                return false;
+            }
+            if (page.compareAndSet(index, bits, updated)) {
+                return true;
+            }
+        }
+    }
+
+    long word(int word) {
+        AtomicLongArray page = page(word >>> PAGE_SHIFT);
+        return page == null ? 0 : page.get(word & PAGE_WORDS - 1);
+    }
+
+    // null until a bit in the page is set
+    AtomicLongArray page(int index) {
+        AtomicLongArray[] pages = this.pages;
+        return index < pages.length ? pages[index] : null;
+    }
+
+    private AtomicLongArray pageForWrite(int index) {
+        AtomicLongArray page = page(index);
+        return page != null ? page : newPage(index);
+    }
+
+    private synchronized AtomicLongArray newPage(int index) {
+        AtomicLongArray[] pages = this.pages;
+        if (index < pages.length && pages[index] != null) {
+            return pages[index];
+        }
+        AtomicLongArray[] grown = index < pages.length ? pages.clone() : Arrays.copyOf(pages, index + 1);
+        grown[index] = new AtomicLongArray(PAGE_WORDS);
+        this.pages = grown;
+        return grown[index];
+    }
+}
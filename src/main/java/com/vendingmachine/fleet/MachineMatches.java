@@ -0,0 +1,23 @@
+package com.vendingmachine.fleet;
+
+import java.util.List;
+
+// how many machines matched a fleet query, and the ids of the first of them in the order they were registered
+public class MachineMatches {
+
+    private final int count;
+    private final List<String> machines;
+
+    MachineMatches(int count, List<String> machines) {
+        this.count = count;
+        this.machines = machines;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public List<String> getMachines() {
+        return machines;
+    }
+}
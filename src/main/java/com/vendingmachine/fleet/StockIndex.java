@@ -0,0 +1,188 @@
+package com.vendingmachine.fleet;
+
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.service.VendingMachineListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Which machines have each SKU in stock, and which are low on change, so "where can I buy this" is
+ * answered from one bitmap per SKU rather than by asking every machine. Each bound machine gets a slot,
+ * the next one free, and a bit in the bitmap of every SKU it stocks. Its listener checks a SKU's stock
+ * after each load and purchase of it, and only writes the bit when the stock has crossed zero, so a
+ * purchase that leaves some stock behind costs two reads. A machine is low on change while it has fewer
+ * than the minimum of any of its coins.
+ */
+public class StockIndex {
+
+    private final Catalog catalog;
+    private final int minCoins;
+    // indexed by SKU id and filled in when a machine first stocks the SKU
+    private final AtomicReferenceArray<MachineBitmap> inStock;
+    private final MachineBitmap lowOnChange = new MachineBitmap();
+    // indexed by slot, and only ever appended to; slots up to size are filled in
+    private volatile String[] machineIds = new String[16];
+    private volatile int size;
+
+    public StockIndex(Catalog catalog, int minCoins) {
+        this.catalog = catalog;
+        this.minCoins = minCoins;
+        this.inStock = new AtomicReferenceArray<>(catalog.size());
+    }
+
+    /**
+     * Gives the machine a slot, indexes its stock and float as they are now, and returns the listener that
+     * keeps them up to date. A machine restored from the journal is indexed before it serves a request.
+     */
+    public VendingMachineListener bind(String machineId, VendingMachine vendingMachine) {
+        MachineEntry entry = new MachineEntry(addSlot(machineId), vendingMachine);
+        for (int id : vendingMachine.carriedItems()) {
+            entry.refreshStock(id);
+        }
+        entry.refreshChange();
+        return entry;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The machines with the SKU in stock, or all of them if {@code id} is negative, narrowed to those
+     * that are or are not low on change unless {@code lowOnChange} is null, up to {@code limit} of them.
+     * The count is of every match.
+     */
+    public MachineMatches find(int id, Boolean lowOnChange, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit cannot be negative.");
+        }
+        MachineBitmap stock = id < 0 ? null : inStock.get(id);
+        if (id >= 0 && stock == null) {
+            return new MachineMatches(0, List.of());
+        }
+        // read before the bitmaps, so every slot counted has a machine id
+        int slots = size;
+        String[] machineIds = this.machineIds;
+        int words = (slots + Long.SIZE - 1) / Long.SIZE;
+        int count = 0;
+        List<String> machines = new ArrayList<>(Math.min(limit, 64));
+        AtomicLongArray stockPage = null;
+        AtomicLongArray lowPage = null;
+        for (int word = 0; word < words; word++) {
+            int index = word & MachineBitmap.PAGE_WORDS - 1;
+            if (index == 0) {
+                stockPage = stock == null ? null : stock.page(word >>> MachineBitmap.PAGE_SHIFT);
+                lowPage = this.lowOnChange.page(word >>> MachineBitmap.PAGE_SHIFT);
+                if (stock != null && stockPage == null) {
+                    // no machine in this page has ever stocked the SKU
+                    word += MachineBitmap.PAGE_WORDS - 1;
+                    continue;
+                }
+            }
+            long bits = word == words - 1 && slots % Long.SIZE != 0 ? (1L << slots) - 1 : -1L;
+            if (stockPage != null) {
+                bits &= stockPage.get(index);
+            }
+            if (lowOnChange != null) {
+                long low = lowPage == null ? 0 : lowPage.get(index);
+                bits &= lowOnChange ? low : ~low;
+            }
+            count += Long.bitCount(bits);
+            while (bits != 0 && machines.size() < limit) {
+                machines.add(machineIds[word * Long.SIZE + Long.numberOfTrailingZeros(bits)]);
+                bits &= bits - 1;
+            }
+        }
+        return new MachineMatches(count, machines);
+    }
+
+    private synchronized int addSlot(String machineId) {
+        int slot = size;
+        if (slot == machineIds.length) {
+            machineIds = Arrays.copyOf(machineIds, slot * 2);
+        }
+        machineIds[slot] = machineId;
+        // published after the id, so a query that sees the slot sees its id
+        size = slot + 1;
+        return slot;
+    }
+
+    private MachineBitmap inStock(int id) {
+        MachineBitmap bitmap = inStock.get(id);
+        if (bitmap == null) {
+            inStock.compareAndSet(id, null, new MachineBitmap());
+            bitmap = inStock.get(id);
+        }
+        return bitmap;
+    }
+
+    private final class MachineEntry implements VendingMachineListener {
+
+        private final int slot;
+        private final VendingMachine vendingMachine;
+
+        private MachineEntry(int slot, VendingMachine vendingMachine) {
+            this.slot = slot;
+            this.vendingMachine = vendingMachine;
+        }
+
+        @Override
+        public void itemsLoaded(int[] items) {
+            for (int id = 0; id < items.length && id < catalog.size(); id++) {
+                if (items[id] != 0) {
+                    refreshStock(id);
+                }
+            }
+        }
+
+        @Override
+        public void changeLoaded(int[] coins) {
+            refreshChange();
+        }
+
+        @Override
+        public void purchaseCompleted(long sessionToken, int item, int[] coinsPaid, int[] changePaid) {
+            refreshStock(item);
+            refreshChange();
+        }
+
+        // written only when the stock has crossed zero since the bit was last set, and read again after
+        // writing in case the machine was loaded or bought from in between
+        private void refreshStock(int id) {
+            boolean available;
+            do {
+                available = vendingMachine.getStock(id) > 0;
+                MachineBitmap bitmap = available ? inStock(id) : inStock.get(id);
+                if (bitmap == null || bitmap.get(slot) == available) {
+                    return;
+                }
+                bitmap.set(slot, available);
+            } while (vendingMachine.getStock(id) > 0 != available);
+        }
+
+        private void refreshChange() {
+            boolean low;
+            do {
+                low = isLowOnChange();
+                if (lowOnChange.get(slot) == low) {
+                    return;
+                }
+                lowOnChange.set(slot, low);
+            } while (isLowOnChange() != low);
+        }
+
+        private boolean isLowOnChange() {
+            for (int coin = 0; coin < vendingMachine.getCurrency().size(); coin++) {
+                if (vendingMachine.getCoinCount(coin) < minCoins) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.vendingmachine.idempotency;
+
+import com.vendingmachine.exception.IdempotencyKeyConflictException;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * The responses to requests sent with an idempotency key, so that a retry with the same key gets the
+ * first response back instead of being run again. A key is claimed before its request runs, so a retry
+ * that arrives while the first attempt is still running is turned away rather than run alongside it.
+ *
+ * <p>Keys are scoped, to a machine for instance, and spread over stripes that each hold a fixed share
+ * of the capacity in preallocated arrays: a ring of entries in the order they were claimed, and an
+ * open-addressed table of positions in the ring. A claim past capacity takes over the oldest entry, and
+ * a response is dropped after the time to live, so both bounds are kept in constant time without a
+ * sweep and without allocating anything per entry. An entry whose request is still running is only
+ * taken over once its whole stripe has been claimed again since, and a retry after that runs again.
+ */
+public class IdempotencyCache<V> {
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private static final int STRIPES = 16;
+    private static final byte EMPTY = 0;
+    private static final byte RUNNING = 1;
+    private static final byte DONE = 2;
+
+    private final Stripe[] stripes;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoClock;
+
+    public IdempotencyCache(int capacity, Duration timeToLive) {
+        this(capacity, timeToLive, STRIPES, System::nanoTime);
+    }
+
+    IdempotencyCache(int capacity, Duration timeToLive, int stripeCount, LongSupplier nanoClock) {
+        if (capacity < stripeCount) {
+            throw new IllegalArgumentException("The idempotency cache needs room for at least " + stripeCount + " keys.");
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe((capacity + stripeCount - 1) / stripeCount);
+        }
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Returns the response stored for the key, or claims the key and returns null when there is none, in
+     * which case the caller runs the request and then either completes or releases the key. A key is
+     * refused while its first request is running, or when it was first sent with a different request.
+     */
+    @SuppressWarnings("unchecked")
+    public V claim(String scope, String key, Object request) throws IdempotencyKeyConflictException {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("An idempotency key must have between 1 and " + MAX_KEY_LENGTH + " characters.");
+        }
+        int hash = hash(scope, key);
+        Stripe stripe = stripeFor(hash);
+        synchronized (stripe) {
+            long now = nanoClock.getAsLong();
+            int position = stripe.find(hash, scope, key);
+            if (position >= 0) {
+                int slot = stripe.index[position] - 1;
+                if (stripe.states[slot] == DONE && now - stripe.stamps[slot] > timeToLiveNanos) {
+                    stripe.remove(position);
+                } else if (!stripe.requests[slot].equals(request)) {
+                    throw new IdempotencyKeyConflictException("Idempotency key " + key + " was first sent with a different request.");
+                } else if (stripe.states[slot] == RUNNING) {
+                    throw new IdempotencyKeyConflictException("A request with idempotency key " + key + " is still in progress.");
+                } else {
+                    return (V) stripe.responses[slot];
+                }
+            }
+            stripe.add(hash, scope, key, request, now);
+            return null;
+        }
+    }
+
+    // stores the response to a claimed key, unless the key has since been taken over
+    public void complete(String scope, String key, V response) {
+        int hash = hash(scope, key);
+        Stripe stripe = stripeFor(hash);
+        synchronized (stripe) {
+            int position = stripe.find(hash, scope, key);
+            if (position >= 0) {
+                int slot = stripe.index[position] - 1;
+                if (stripe.states[slot] == RUNNING) {
+                    stripe.responses[slot] = response;
+                    stripe.states[slot] = DONE;
+                    stripe.stamps[slot] = nanoClock.getAsLong();
+                }
+            }
+        }
+    }
+
+    // gives up a claimed key whose request failed before it had a response, so a retry runs it again
+    public void release(String scope, String key) {
+        int hash = hash(scope, key);
+        Stripe stripe = stripeFor(hash);
+        synchronized (stripe) {
+            int position = stripe.find(hash, scope, key);
+            if (position >= 0 && stripe.states[stripe.index[position] - 1] == RUNNING) {
+                stripe.remove(position);
+            }
+        }
+    }
+
+    // String hashes of similar keys differ mostly in their low bits, so they are mixed into the high ones
+    private static int hash(String scope, String key) {
+        int hash = (scope.hashCode() * 31 + key.hashCode()) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    // stripes are picked by the high bits and table positions by the low ones
+    private Stripe stripeFor(int hash) {
+        return stripes[Math.floorMod(hash >>> 20, stripes.length)];
+    }
+
+    private static final class Stripe {
+
+        private final String[] scopes;
+        private final String[] keys;
+        private final Object[] requests;
+        private final Object[] responses;
+        private final long[] stamps;
+        private final int[] hashes;
+        private final byte[] states;
+        // ring slot + 1 by hash, 0 for none, probed linearly and never more than half full
+        private final int[] index;
+        private final int mask;
+        private int hand;
+
+        Stripe(int slots) {
+            this.scopes = new String[slots];
+            this.keys = new String[slots];
+            this.requests = new Object[slots];
+            this.responses = new Object[slots];
+            this.stamps = new long[slots];
+            this.hashes = new int[slots];
+            this.states = new byte[slots];
+            this.index = new int[Integer.highestOneBit(Math.max(1, slots * 2 - 1)) << 1];
+            this.mask = index.length - 1;
+        }
+
+        // the table position of the key, or -1 if it is not there
+        int find(int hash, String scope, String key) {
+            for (int position = hash & mask; index[position] != 0; position = (position + 1) & mask) {
+                int slot = index[position] - 1;
+                if (hashes[slot] == hash && keys[slot].equals(key) && scopes[slot].equals(scope)) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        // takes over the oldest slot in the ring
+        void add(int hash, String scope, String key, Object request, long now) {
+            int slot = hand;
+            hand = hand + 1 == keys.length ? 0 : hand + 1;
+            if (states[slot] != EMPTY) {
+                remove(find(hashes[slot], scopes[slot], keys[slot]));
+            }
+            scopes[slot] = scope;
+            keys[slot] = key;
+            requests[slot] = request;
+            hashes[slot] = hash;
+            stamps[slot] = now;
+            states[slot] = RUNNING;
+            int position = hash & mask;
+            while (index[position] != 0) {
+                position = (position + 1) & mask;
+            }
+            index[position] = slot + 1;
+        }
+
+        // empties the slot at the table position, and shifts back later entries of the probe run so none is cut off from its home
+        void remove(int position) {
+            int slot = index[position] - 1;
+            scopes[slot] = null;
+            keys[slot] = null;
+            requests[slot] = null;
+            responses[slot] = null;
+            states[slot] = EMPTY;
+            index[position] = 0;
+            for (int next = (position + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+                int home = hashes[index[next] - 1] & mask;
+                if (((next - home) & mask) >= ((next - position) & mask)) {
+                    index[position] = index[next];
+                    index[next] = 0;
+                    position = next;
+                }
+            }
+        }
+    }
+}
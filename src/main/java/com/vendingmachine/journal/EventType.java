@@ -0,0 +1,16 @@
+package com.vendingmachine.journal;
+
+enum EventType {
+
+    ITEMS_LOADED,
+    CHANGE_LOADED,
+    COINS_INSERTED,
+    PURCHASE_COMPLETED,
+    COINS_RETURNED;
+
+    private static final EventType[] VALUES = values();
+
+    static EventType of(int code) {
+        return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+    }
+}
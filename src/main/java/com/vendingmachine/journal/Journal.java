@@ -0,0 +1,237 @@
+package com.vendingmachine.journal;
+
+import com.vendingmachine.service.VendingMachineListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only record of every change to every machine's stock and float. Records go into memory-mapped
+ * segments and a background thread forces them to disk every few milliseconds, so a purchase never waits
+ * for the disk. When a segment fills up it is sealed and folded into a snapshot in the background, so
+ * recovery only ever replays the records written since the last snapshot.
+ */
+public class Journal implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 2;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Map<String, MachineState> recoveredMachines;
+    private final ThreadLocal<RecordEncoder> encoders = ThreadLocal.withInitial(RecordEncoder::new);
+    private final ScheduledExecutorService flusher;
+    private final ExecutorService compactor;
+    // only touched by the compactor thread once recovery is done, and replaced whole once a snapshot of the
+    // next state has been written, so a compaction that fails part way leaves it as it was
+    private Map<String, MachineState> compactedMachines;
+    // sealed segments that are not in a snapshot yet, oldest first, only touched by the compactor thread
+    private final List<Path> uncompacted = new ArrayList<>();
+    private final AtomicLong compactionFailures = new AtomicLong();
+
+    private JournalSegment segment;
+    private long lastSequence;
+    private boolean closed;
+
+    private Journal(Path directory, int segmentSize, long flushIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.compactedMachines = new HashMap<>();
+        this.lastSequence = recover(compactedMachines);
+        this.recoveredMachines = copyOf(compactedMachines);
+        this.segment = JournalSegment.create(directory, lastSequence + 1, segmentSize);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(daemon("journal-flusher"));
+        this.compactor = Executors.newSingleThreadExecutor(daemon("journal-compactor"));
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static Journal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public static Journal open(Path directory, int segmentSize, long flushIntervalMillis) throws IOException {
+        return new Journal(directory, segmentSize, flushIntervalMillis);
+    }
+
+    // the machines as they were when the journal was opened, keyed by machine id
+    public Map<String, MachineState> recoveredMachines() {
+        return recoveredMachines;
+    }
+
+    public VendingMachineListener listenerFor(String machineId) {
+        return new MachineJournal(this, machineId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    // how many times sealed segments could not be folded into a snapshot; they are tried again with the next one
+    public long compactionFailures() {
+        return compactionFailures.get();
+    }
+
+    RecordEncoder encoder() {
+        return encoders.get();
+    }
+
+    void append(RecordEncoder record) {
+        JournalSegment sealed = null;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            if (buffer.remaining() < record.length()) {
+                if (record.length() > segmentSize) {
+                    throw new IllegalArgumentException("Record of " + record.length() + " bytes does not fit in a segment");
+                }
+                sealed = segment;
+                segment = newSegment(lastSequence + 1);
+                buffer = segment.buffer;
+            }
+            record.seal(++lastSequence);
+            buffer.put(record.buffer(), 0, record.length());
+        }
+        if (sealed != null) {
+            seal(sealed);
+        }
+    }
+
+    // forces everything appended so far to disk
+    public void sync() {
+        flush();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flusher.shutdown();
+        compactor.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            segment.force(segment.buffer.position());
+        }
+    }
+
+    private void flush() {
+        JournalSegment current;
+        int position;
+        synchronized (this) {
+            current = segment;
+            position = current.buffer.position();
+        }
+        // the disk write happens outside the lock so appends carry on while it runs
+        current.force(position);
+    }
+
+    private void seal(JournalSegment sealed) {
+        // nothing is appended to a sealed segment, so its position is final
+        sealed.force(sealed.buffer.position());
+        compactor.execute(() -> compact(sealed.path));
+    }
+
+    // a segment that cannot be folded in stays on disk, and every segment sealed after it is held back with
+    // it, so no snapshot is written past a segment missing from it and recovery replays all of them
+    private void compact(Path sealedPath) {
+        uncompacted.add(sealedPath);
+        Map<String, MachineState> machines = copyOf(compactedMachines);
+        try {
+            long sequence = 0;
+            for (Path path : uncompacted) {
+                sequence = replay(path, machines, 0);
+            }
+            Snapshots.write(directory, sequence, machines);
+        } catch (IOException | RuntimeException e) {
+            compactionFailures.incrementAndGet();
+            return;
+        }
+        compactedMachines = machines;
+        try {
+            for (Path path : uncompacted) {
+                // recovery skips whatever the snapshot already holds, so one left behind does no harm
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            compactionFailures.incrementAndGet();
+        } finally {
+            uncompacted.clear();
+        }
+    }
+
+    private long recover(Map<String, MachineState> machines) throws IOException {
+        long snapshotSequence = Snapshots.readLatest(directory, machines);
+        long sequence = snapshotSequence;
+        List<Path> segments = JournalSegment.list(directory);
+        for (Path path : segments) {
+            sequence = Math.max(sequence, replay(path, machines, snapshotSequence));
+        }
+        if (!segments.isEmpty()) {
+            // fold the replayed tail into a fresh snapshot so the next recovery starts from here
+            Snapshots.write(directory, sequence, machines);
+            for (Path path : segments) {
+                Files.deleteIfExists(path);
+            }
+        }
+        return sequence;
+    }
+
+    private static long replay(Path path, Map<String, MachineState> machines, long after) throws IOException {
+        RecordDecoder record = new RecordDecoder(JournalSegment.readOnly(path));
+        long sequence = after;
+        while (record.next()) {
+            if (record.sequence() > after) {
+                JournalReplay.apply(record, machines);
+                sequence = record.sequence();
+            }
+        }
+        return sequence;
+    }
+
+    private JournalSegment newSegment(long firstSequence) {
+        try {
+            return JournalSegment.create(directory, firstSequence, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, MachineState> copyOf(Map<String, MachineState> machines) {
+        Map<String, MachineState> copy = new HashMap<>(machines.size() * 2);
+        machines.forEach((machineId, state) -> copy.put(machineId, state.copy()));
+        return copy;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package com.vendingmachine.journal;
+
+import java.util.Map;
+
+// folds journal records into machine states; inserted and returned coins are recorded for audit only,
+// because a customer's coins do not join the float until their purchase completes
+final class JournalReplay {
+
+    private JournalReplay() {
+    }
+
+    static void apply(RecordDecoder record, Map<String, MachineState> machines) {
+        MachineState state = machines.computeIfAbsent(record.machineId(), id -> new MachineState());
+        switch (record.type()) {
+            case ITEMS_LOADED: {
+                int items = record.readCount();
+                for (int i = 0; i < items; i++) {
+                    state.loadItems(i, record.readZigZag());
+                }
+                break;
+            }
+            case CHANGE_LOADED: {
+                int coins = record.readCount();
+                for (int i = 0; i < coins; i++) {
+                    state.loadChange(i, record.readZigZag());
+                }
+                break;
+            }
+            case PURCHASE_COMPLETED: {
+                record.readVarLong();
+                state.loadItems(record.readVarInt(), -1);
+                int paid = record.readCount();
+                for (int i = 0; i < paid; i++) {
+                    state.loadChange(i, record.readZigZag());
+                }
+                int paidOut = record.readCount();
+                for (int i = 0; i < paidOut; i++) {
+                    state.loadChange(i, -record.readZigZag());
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+}
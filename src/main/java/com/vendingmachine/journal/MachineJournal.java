@@ -0,0 +1,56 @@
+package com.vendingmachine.journal;
+
+import com.vendingmachine.service.VendingMachineListener;
+
+// encodes one machine's events into the calling thread's record buffer and appends them to the journal
+final class MachineJournal implements VendingMachineListener {
+
+    private final Journal journal;
+    private final byte[] machineId;
+
+    MachineJournal(Journal journal, byte[] machineId) {
+        this.journal = journal;
+        this.machineId = machineId;
+    }
+
+    @Override
+    public void itemsLoaded(int[] items) {
+        journal.append(journal.encoder()
+                .begin(EventType.ITEMS_LOADED, machineId)
+                .writeCounts(items));
+    }
+
+    @Override
+    public void changeLoaded(int[] coins) {
+        journal.append(journal.encoder()
+                .begin(EventType.CHANGE_LOADED, machineId)
+                .writeCounts(coins));
+    }
+
+    @Override
+    public void coinsInserted(long sessionToken, int item, int[] coins) {
+        journal.append(journal.encoder()
+                .begin(EventType.COINS_INSERTED, machineId)
+                .writeVarLong(sessionToken)
+                .writeVarInt(item)
+                .writeCounts(coins));
+    }
+
+    @Override
+    public void purchaseCompleted(long sessionToken, int item, int[] coinsPaid, int[] changePaid) {
+        journal.append(journal.encoder()
+                .begin(EventType.PURCHASE_COMPLETED, machineId)
+                .writeVarLong(sessionToken)
+                .writeVarInt(item)
+                .writeCounts(coinsPaid)
+                .writeCounts(changePaid));
+    }
+
+    @Override
+    public void coinsReturned(long sessionToken, int[] coins) {
+        journal.append(journal.encoder()
+                .begin(EventType.COINS_RETURNED, machineId)
+                .writeVarLong(sessionToken)
+                .writeCounts(coins));
+    }
+}
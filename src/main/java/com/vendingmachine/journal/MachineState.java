@@ -0,0 +1,91 @@
+package com.vendingmachine.journal;
+
+import com.vendingmachine.service.VendingMachine;
+
+import java.util.Arrays;
+
+// the durable part of a machine: stock indexed by SKU id and the coin float indexed by coin, each of which
+// grows to the highest index seen
+public class MachineState {
+
+    private int[] inventory;
+    private int[] change;
+
+    public MachineState() {
+        this(new int[0], new int[0]);
+    }
+
+    MachineState(int[] inventory, int[] change) {
+        this.inventory = inventory;
+        this.change = change;
+    }
+
+    public int[] inventory() {
+        return inventory.clone();
+    }
+
+    public int[] change() {
+        return change.clone();
+    }
+
+    public void restoreInto(VendingMachine vendingMachine) {
+        vendingMachine.loadItems(inventory);
+        vendingMachine.loadChange(change);
+    }
+
+    MachineState copy() {
+        return new MachineState(inventory.clone(), change.clone());
+    }
+
+    void loadItems(int item, int count) {
+        if (item >= inventory.length) {
+            inventory = Arrays.copyOf(inventory, item + 1);
+        }
+        inventory[item] += count;
+    }
+
+    void loadChange(int coin, int count) {
+        if (coin >= change.length) {
+            change = Arrays.copyOf(change, coin + 1);
+        }
+        change[coin] += count;
+    }
+
+    int[] rawInventory() {
+        return inventory;
+    }
+
+    void setInventory(int[] inventory) {
+        this.inventory = inventory;
+    }
+
+    int[] rawChange() {
+        return change;
+    }
+
+    void setChange(int[] change) {
+        this.change = change;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof MachineState)) {
+            return false;
+        }
+        MachineState that = (MachineState) other;
+        return Arrays.equals(inventory, that.inventory) && Arrays.equals(change, that.change);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(inventory) + Arrays.hashCode(change);
+    }
+
+    @Override
+    public String toString() {
+        return "MachineState{inventory=" + Arrays.toString(inventory) + ", change=" + Arrays.toString(change) + "}";
+    }
+}
@@ -0,0 +1,93 @@
+package com.vendingmachine.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+// walks the records of one segment, stopping at the zeroed tail or at the first torn or corrupt record
+final class RecordDecoder {
+
+    private final ByteBuffer buffer;
+    private final CRC32C checksum = new CRC32C();
+    private byte[] machineIdBytes = new byte[64];
+    private long sequence;
+    private EventType type;
+    private String machineId;
+    private int nextRecord;
+
+    RecordDecoder(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.nextRecord = buffer.position();
+    }
+
+    boolean next() {
+        int limit = buffer.limit();
+        int start = nextRecord;
+        if (limit - start < RecordEncoder.HEADER_BYTES) {
+            return false;
+        }
+        int length = buffer.getInt(start);
+        int expectedChecksum = buffer.getInt(start + Integer.BYTES);
+        int bodyStart = start + RecordEncoder.HEADER_BYTES;
+        if (length <= Long.BYTES || length > limit - bodyStart) {
+            return false;
+        }
+        buffer.position(bodyStart).limit(bodyStart + length);
+        checksum.reset();
+        checksum.update(buffer);
+        buffer.limit(limit);
+        if ((int) checksum.getValue() != expectedChecksum) {
+            return false;
+        }
+        nextRecord = bodyStart + length;
+        buffer.position(bodyStart);
+        sequence = buffer.getLong();
+        type = EventType.of(buffer.get());
+        if (type == null) {
+            return false;
+        }
+        int idLength = readVarInt();
+        if (idLength > machineIdBytes.length) {
+            machineIdBytes = new byte[idLength];
+        }
+        buffer.get(machineIdBytes, 0, idLength);
+        machineId = new String(machineIdBytes, 0, idLength, StandardCharsets.UTF_8);
+        return true;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    EventType type() {
+        return type;
+    }
+
+    String machineId() {
+        return machineId;
+    }
+
+    int readCount() {
+        return readVarInt();
+    }
+
+    int readZigZag() {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    long readVarLong() {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    int readVarInt() {
+        return (int) readVarLong();
+    }
+}
@@ -0,0 +1,87 @@
+package com.vendingmachine.journal;
+
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+// builds one record in a reusable buffer:
+// [int length][int crc32c][long sequence][byte type][varint id length][id][varint payload...]
+// where length and the checksum cover everything from the sequence onwards
+final class RecordEncoder {
+
+    static final int HEADER_BYTES = 8;
+    private static final int SEQUENCE_OFFSET = HEADER_BYTES;
+
+    private final CRC32C checksum = new CRC32C();
+    private byte[] buffer = new byte[256];
+    private int position;
+
+    RecordEncoder begin(EventType type, byte[] machineId) {
+        position = SEQUENCE_OFFSET + Long.BYTES;
+        writeByte(type.ordinal());
+        writeVarInt(machineId.length);
+        ensureCapacity(machineId.length);
+        System.arraycopy(machineId, 0, buffer, position, machineId.length);
+        position += machineId.length;
+        return this;
+    }
+
+    RecordEncoder writeCounts(int[] counts) {
+        writeVarInt(counts.length);
+        for (int count : counts) {
+            writeVarInt((count << 1) ^ (count >> 31));
+        }
+        return this;
+    }
+
+    RecordEncoder writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    RecordEncoder writeVarInt(int value) {
+        return writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    RecordEncoder writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    int length() {
+        return position;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    // stamps the sequence and checksum once the record's place in the journal is known
+    void seal(long sequence) {
+        putInt(0, position - HEADER_BYTES);
+        for (int i = 0; i < Long.BYTES; i++) {
+            buffer[SEQUENCE_OFFSET + i] = (byte) (sequence >>> (56 - 8 * i));
+        }
+        checksum.reset();
+        checksum.update(buffer, HEADER_BYTES, position - HEADER_BYTES);
+        putInt(Integer.BYTES, (int) checksum.getValue());
+    }
+
+    private void putInt(int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.vendingmachine.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// a snapshot holds every machine's state as of one journal sequence, so recovery only replays later records
+final class Snapshots {
+
+    private static final int MAGIC = 0x564D534E;
+    private static final int VERSION = 1;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snapshot";
+
+    private Snapshots() {
+    }
+
+    static void write(Path directory, long sequence, Map<String, MachineState> machines) throws IOException {
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            out.writeInt(machines.size());
+            for (Map.Entry<String, MachineState> machine : machines.entrySet()) {
+                out.writeUTF(machine.getKey());
+                writeCounts(out, machine.getValue().rawInventory());
+                writeCounts(out, machine.getValue().rawChange());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        for (Path older : list(directory)) {
+            if (sequenceOf(older) < sequence) {
+                Files.deleteIfExists(older);
+            }
+        }
+    }
+
+    static long readLatest(Path directory, Map<String, MachineState> machines) throws IOException {
+        List<Path> snapshots = list(directory);
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        Path latest = snapshots.get(snapshots.size() - 1);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(latest), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a vending machine snapshot: " + latest);
+            }
+            long sequence = in.readLong();
+            int count = in.readInt();
+            Map<String, MachineState> loaded = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String machineId = in.readUTF();
+                MachineState state = new MachineState();
+                state.setInventory(readCounts(in));
+                state.setChange(readCounts(in));
+                loaded.put(machineId, state);
+            }
+            machines.putAll(loaded);
+            return sequence;
+        }
+    }
+
+    static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void writeCounts(DataOutputStream out, int[] counts) throws IOException {
+        if (counts.length > 0xFFFF) {
+            throw new IOException("Cannot snapshot " + counts.length + " counts.");
+        }
+        out.writeShort(counts.length);
+        for (int count : counts) {
+            out.writeInt(count);
+        }
+    }
+
+    private static int[] readCounts(DataInputStream in) throws IOException {
+        int[] counts = new int[in.readUnsignedShort()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = in.readInt();
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,48 @@
+package com.vendingmachine.metrics;
+
+import com.vendingmachine.change.ChangeStrategy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long change computation takes. Reading the clock twice costs about as much as the
+ * computation itself, so only one call in {@link #SAMPLE_RATE} is timed. That keeps the shape of the
+ * histogram, while exact purchase counts come from {@link VendingMetrics}.
+ */
+public class TimedChangeStrategy implements ChangeStrategy {
+
+    public static final int SAMPLE_RATE = 256;
+
+    private final ChangeStrategy delegate;
+    private final Timer timer;
+
+    public TimedChangeStrategy(ChangeStrategy delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.timer = Timer.builder("vending.change.computation")
+                .description("Time taken to work out the change for a purchase, sampled 1 in " + SAMPLE_RATE)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean makeChange(int amount, int[] available, int[] breakdown) {
+        // a per-thread random draw, because a shared countdown would bounce between cores on every purchase
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) {
+            return delegate.makeChange(amount, available, breakdown);
+        }
+        return timedMakeChange(amount, available, breakdown);
+    }
+
+    // kept out of line so the unsampled path stays small enough to inline into the purchase
+    private boolean timedMakeChange(int amount, int[] available, int[] breakdown) {
+        long start = System.nanoTime();
+        try {
+            return delegate.makeChange(amount, available, breakdown);
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
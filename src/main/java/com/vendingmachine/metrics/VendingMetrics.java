@@ -0,0 +1,256 @@
+package com.vendingmachine.metrics;
+
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.service.MachineSnapshot;
+import com.vendingmachine.service.PurchaseResult;
+import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.service.VendingMachineListener;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Counts purchase outcomes per SKU across every bound machine, and publishes the fleet's stock and coin
+ * floats as totals. Completed purchases, stock and floats are worked out from the machines themselves
+ * when the registry is scraped, so a successful purchase costs nothing extra; failures are counted in
+ * {@link LongAdder}s indexed by SKU id. A catalog can run to tens of thousands of SKUs, so a SKU only
+ * gets meters once it is loaded into a machine or turned away.
+ *
+ * <p>A fleet can run to a hundred thousand machines, so only the machines a site picks get meters tagged
+ * with their id. The totals are worked out in one pass over the fleet, which a scrape's gauges share.
+ */
+public class VendingMetrics {
+
+    static final String COMPLETED = "completed";
+    static final String INSUFFICIENT_FUNDS = "insufficient_funds";
+    static final String INSUFFICIENT_CHANGE = "insufficient_change";
+    static final String ITEM_NOT_AVAILABLE = "item_not_available";
+
+    // indexed by PurchaseResult.Status.ordinal()
+    private static final String[] OUTCOMES = {COMPLETED, INSUFFICIENT_FUNDS, INSUFFICIENT_CHANGE, ITEM_NOT_AVAILABLE};
+
+    // a scrape reads every total within this long of the first, so they are all taken from one pass
+    private static final long TOTALS_MAX_AGE = TimeUnit.SECONDS.toNanos(1);
+
+    private final MeterRegistry meterRegistry;
+    private final Catalog catalog;
+    private final Predicate<String> machineMeters;
+    // indexed by id * OUTCOMES.length + outcome and filled in on first use; the completed slots stay empty
+    private final AtomicReferenceArray<LongAdder> failures;
+    // set once a SKU has its fleet stock gauge and completed counter
+    private final AtomicIntegerArray itemMeters;
+    private final Map<String, VendingMachine> machines = new ConcurrentHashMap<>();
+    private final Map<String, Currency> currencies = new ConcurrentHashMap<>();
+    private volatile FleetTotals totals;
+
+    // every machine gets meters of its own, which suits a handful of them
+    public VendingMetrics(MeterRegistry meterRegistry) {
+        this(meterRegistry, Catalog.DEFAULT);
+    }
+
+    public VendingMetrics(MeterRegistry meterRegistry, Catalog catalog) {
+        this(meterRegistry, catalog, machineId -> true);
+    }
+
+    // only the machines machineMeters accepts get meters tagged with their id
+    public VendingMetrics(MeterRegistry meterRegistry, Catalog catalog, Predicate<String> machineMeters) {
+        this.meterRegistry = meterRegistry;
+        this.catalog = catalog;
+        this.machineMeters = machineMeters;
+        this.failures = new AtomicReferenceArray<>(catalog.size() * OUTCOMES.length);
+        this.itemMeters = new AtomicIntegerArray(catalog.size());
+    }
+
+    /**
+     * Adds a machine to the fleet totals, publishes its own float and stock if it is one of the machines
+     * with meters, and returns the listener that counts its purchases and adds stock gauges for each SKU
+     * as it is first loaded.
+     */
+    public VendingMachineListener bind(String machineId, VendingMachine vendingMachine) {
+        machines.put(machineId, vendingMachine);
+        Currency currency = vendingMachine.getCurrency();
+        if (currencies.putIfAbsent(currency.code(), currency) == null) {
+            floatTotals(currency);
+        }
+        boolean tagged = machineMeters.test(machineId);
+        if (tagged) {
+            machineFloat(machineId, vendingMachine);
+        }
+        MachineMetrics machineMetrics = new MachineMetrics(machineId, vendingMachine, tagged);
+        for (int id : vendingMachine.carriedItems()) {
+            machineMetrics.track(id);
+        }
+        return machineMetrics;
+    }
+
+    private void floatTotals(Currency currency) {
+        String code = currency.code();
+        for (int i = 0; i < currency.size(); i++) {
+            int coin = i;
+            Gauge.builder("vending.fleet.float.coins", this, metrics -> metrics.totals().coinCount(code, coin))
+                    .description("Coins available to pay out as change across the fleet")
+                    .tag("currency", code)
+                    .tag("denomination", currency.coin(coin))
+                    .register(meterRegistry);
+        }
+        Gauge.builder("vending.fleet.float.value", this, metrics -> metrics.totals().floatValue(code))
+                .description("Total value of the fleet's coin floats, in the currency's minor unit")
+                .tag("currency", code)
+                .register(meterRegistry);
+    }
+
+    private void machineFloat(String machineId, VendingMachine vendingMachine) {
+        Currency currency = vendingMachine.getCurrency();
+        for (int i = 0; i < currency.size(); i++) {
+            int coin = i;
+            Gauge.builder("vending.float.coins", vendingMachine, machine -> machine.getCoinCount(coin))
+                    .description("Coins available to pay out as change")
+                    .tag("machine", machineId)
+                    .tag("currency", currency.code())
+                    .tag("denomination", currency.coin(coin))
+                    .register(meterRegistry);
+        }
+        Gauge.builder("vending.float.value", vendingMachine, VendingMachine::getChange)
+                .description("Total value of the coin float, in the currency's minor unit")
+                .tag("machine", machineId)
+                .tag("currency", currency.code())
+                .register(meterRegistry);
+    }
+
+    private void trackItem(int id) {
+        if (itemMeters.compareAndSet(id, 0, 1)) {
+            Gauge.builder("vending.fleet.stock", this, metrics -> metrics.totals().stock[id])
+                    .description("Items left across the fleet")
+                    .tag("item", catalog.code(id))
+                    .register(meterRegistry);
+            purchaseCounter(id, COMPLETED, this, metrics -> metrics.totals().sold[id]);
+        }
+    }
+
+    private LongAdder failures(int id, PurchaseResult.Status status) {
+        int index = id * OUTCOMES.length + status.ordinal();
+        LongAdder counter = failures.get(index);
+        if (counter == null) {
+            LongAdder created = new LongAdder();
+            if (failures.compareAndSet(index, null, created)) {
+                purchaseCounter(id, OUTCOMES[status.ordinal()], created, LongAdder::sum);
+            }
+            counter = failures.get(index);
+        }
+        return counter;
+    }
+
+    private <T> void purchaseCounter(int id, String outcome, T source, ToDoubleFunction<T> count) {
+        FunctionCounter.builder("vending.purchases", source, count)
+                .description("Purchase attempts by item and outcome")
+                .tag("item", catalog.code(id))
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private FleetTotals totals() {
+        FleetTotals current = totals;
+        if (current == null || System.nanoTime() - current.takenAt > TOTALS_MAX_AGE) {
+            synchronized (this) {
+                current = totals;
+                if (current == null || System.nanoTime() - current.takenAt > TOTALS_MAX_AGE) {
+                    current = new FleetTotals();
+                    totals = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // stock, sales and floats summed over every machine in one pass, each machine's taken from one snapshot
+    // of the SKUs it carries
+    private final class FleetTotals {
+
+        private final long takenAt;
+        private final long[] stock = new long[catalog.size()];
+        private final long[] sold = new long[catalog.size()];
+        private final Map<String, long[]> coins = new HashMap<>();
+        private final Map<String, Long> floatValues = new HashMap<>();
+
+        private FleetTotals() {
+            for (VendingMachine machine : machines.values()) {
+                MachineSnapshot snapshot = machine.snapshot();
+                for (int index = 0; index < snapshot.getItemCount(); index++) {
+                    int id = snapshot.getItemId(index);
+                    stock[id] += snapshot.getStockAt(index);
+                    sold[id] += snapshot.getItemsSoldAt(index);
+                }
+                Currency currency = snapshot.getCurrency();
+                String code = currency.code();
+                long[] counts = coins.computeIfAbsent(code, unused -> new long[currency.size()]);
+                for (int coin = 0; coin < counts.length; coin++) {
+                    counts[coin] += snapshot.getCoinCount(coin);
+                }
+                floatValues.merge(code, (long) snapshot.getChange(), Long::sum);
+            }
+            // taken at the end, so a pass that takes longer than the age limit is still shared
+            takenAt = System.nanoTime();
+        }
+
+        // zero for a currency whose first machine was bound after these totals were taken
+        private long coinCount(String code, int coin) {
+            long[] counts = coins.get(code);
+            return counts == null ? 0 : counts[coin];
+        }
+
+        private long floatValue(String code) {
+            return floatValues.getOrDefault(code, 0L);
+        }
+    }
+
+    private final class MachineMetrics implements VendingMachineListener {
+
+        private final String machineId;
+        private final VendingMachine vendingMachine;
+        // the SKUs with a gauge so far, only kept for the machines with meters of their own
+        private final Set<Integer> stockGauges;
+
+        private MachineMetrics(String machineId, VendingMachine vendingMachine, boolean tagged) {
+            this.machineId = machineId;
+            this.vendingMachine = vendingMachine;
+            this.stockGauges = tagged ? ConcurrentHashMap.newKeySet() : null;
+        }
+
+        @Override
+        public void itemsLoaded(int[] items) {
+            for (int id = 0; id < items.length && id < catalog.size(); id++) {
+                if (items[id] != 0) {
+                    track(id);
+                }
+            }
+        }
+
+        @Override
+        public void purchaseFailed(long sessionToken, int item, int[] coinsOffered, PurchaseResult result) {
+            failures(item, result.getStatus()).increment();
+        }
+
+        private void track(int id) {
+            trackItem(id);
+            if (stockGauges != null && stockGauges.add(id)) {
+                Gauge.builder("vending.stock", vendingMachine, machine -> machine.getStock(id))
+                        .description("Items left in the machine")
+                        .tag("machine", machineId)
+                        .tag("item", catalog.code(id))
+                        .register(meterRegistry);
+            }
+        }
+    }
+}
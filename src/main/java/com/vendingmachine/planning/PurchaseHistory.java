@@ -0,0 +1,99 @@
+package com.vendingmachine.planning;
+
+import com.vendingmachine.service.PurchaseResult;
+import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.service.VendingMachineListener;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The last purchases a machine completed or turned away for want of stock or change, each as the SKU
+ * asked for and the coins paid or offered for it, in a fixed ring that overwrites the oldest. A customer
+ * turned away still wanted the SKU, so leaving them out would plan for the demand the machine could
+ * already meet rather than the demand it saw. Attempts that were short of money are not demand yet, and
+ * are left out. Every slot has a stamp that is odd while it is being written, so a
+ * reader skips the slots that change under it instead of holding up a purchase.
+ */
+final class PurchaseHistory implements VendingMachineListener {
+
+    private final VendingMachine vendingMachine;
+    private final int capacity;
+    // SKU id, then one count per coin of the machine's currency
+    private final int stride;
+    private final AtomicIntegerArray purchases;
+    private final AtomicLongArray stamps;
+    private final AtomicLong recorded = new AtomicLong();
+
+    PurchaseHistory(VendingMachine vendingMachine, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("A purchase history needs room for at least one purchase.");
+        }
+        this.vendingMachine = vendingMachine;
+        this.capacity = capacity;
+        this.stride = 1 + vendingMachine.getCurrency().size();
+        this.purchases = new AtomicIntegerArray(capacity * stride);
+        this.stamps = new AtomicLongArray(capacity);
+    }
+
+    VendingMachine vendingMachine() {
+        return vendingMachine;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void purchaseCompleted(long sessionToken, int item, int[] coinsPaid, int[] changePaid) {
+        record(item, coinsPaid);
+    }
+
+    @Override
+    public void purchaseFailed(long sessionToken, int item, int[] coinsOffered, PurchaseResult result) {
+        // stock is checked before money, so a sold-out attempt may not have covered the price, and replaying
+        // one of those would only be turned away again for want of money
+        PurchaseResult.Status status = result.getStatus();
+        if (status == PurchaseResult.Status.INSUFFICIENT_CHANGE || status == PurchaseResult.Status.ITEM_NOT_AVAILABLE
+                && vendingMachine.getCurrency().total(coinsOffered) >= vendingMachine.getPrice(item)) {
+            record(item, coinsOffered);
+        }
+    }
+
+    private void record(int item, int[] coins) {
+        long sequence = recorded.getAndIncrement();
+        int slot = (int) (sequence % capacity);
+        stamps.set(slot, 2 * sequence + 1);
+        int offset = slot * stride;
+        purchases.set(offset, item);
+        for (int coin = 1; coin < stride; coin++) {
+            purchases.set(offset + coin, coins[coin - 1]);
+        }
+        stamps.set(slot, 2 * sequence + 2);
+    }
+
+    // oldest first, one row per attempt: the SKU id, then the coins paid or offered
+    int[][] snapshot() {
+        long end = recorded.get();
+        long start = Math.max(0, end - capacity);
+        int[][] rows = new int[(int) (end - start)][];
+        int count = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence % capacity);
+            long stamp = stamps.get(slot);
+            if (stamp != 2 * sequence + 2) {
+                continue;
+            }
+            int[] row = new int[stride];
+            for (int i = 0; i < stride; i++) {
+                row[i] = purchases.get(slot * stride + i);
+            }
+            if (stamps.get(slot) == stamp) {
+                rows[count++] = row;
+            }
+        }
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+}
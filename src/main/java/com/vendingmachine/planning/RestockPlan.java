@@ -0,0 +1,60 @@
+package com.vendingmachine.planning;
+
+import java.util.Map;
+
+/**
+ * The stock and float to fill a machine up to at each restock, and the share of simulated purchase
+ * attempts that still failed with them, as fractions of every attempt. Only the SKUs that appear in the
+ * purchase history are planned for.
+ */
+public class RestockPlan {
+
+    private final Map<String, Integer> items;
+    private final Map<String, Integer> coins;
+    private final int floatValue;
+    private final double soldOutRate;
+    private final double insufficientChangeRate;
+    private final int trials;
+    private final int purchases;
+
+    RestockPlan(Map<String, Integer> items, Map<String, Integer> coins, int floatValue, double soldOutRate,
+                double insufficientChangeRate, int trials, int purchases) {
+        this.items = items;
+        this.coins = coins;
+        this.floatValue = floatValue;
+        this.soldOutRate = soldOutRate;
+        this.insufficientChangeRate = insufficientChangeRate;
+        this.trials = trials;
+        this.purchases = purchases;
+    }
+
+    public Map<String, Integer> getItems() {
+        return items;
+    }
+
+    public Map<String, Integer> getCoins() {
+        return coins;
+    }
+
+    public int getFloatValue() {
+        return floatValue;
+    }
+
+    public double getSoldOutRate() {
+        return soldOutRate;
+    }
+
+    public double getInsufficientChangeRate() {
+        return insufficientChangeRate;
+    }
+
+    // how many restock periods were simulated for each candidate
+    public int getTrials() {
+        return trials;
+    }
+
+    // how many purchase attempts each simulated period had
+    public int getPurchases() {
+        return purchases;
+    }
+}
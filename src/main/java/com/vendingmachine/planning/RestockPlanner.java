@@ -0,0 +1,234 @@
+package com.vendingmachine.planning;
+
+import com.google.common.collect.ImmutableMap;
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.exception.MachineNotFoundException;
+import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.service.VendingMachineListener;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Works out how much stock and change to load a machine with, from the purchases it recently completed
+ * and the ones it recently turned away for want of stock or change.
+ *
+ * <p>A restock period is simulated by drawing purchases at random from the history, with replacement,
+ * and putting them through a fresh {@link VendingMachine} with the real machine's prices, currency and
+ * change strategy. First each period is run with more stock and change than it could use, to see how
+ * much of each SKU it sells and how far each coin count falls. A candidate load is then the same
+ * quantile of those amounts for every SKU, or for every coin. The lowest quantile whose periods keep
+ * sold-out attempts under the target is found by bisection, with change to spare. The same is then done
+ * for the float, with the chosen stock. Every candidate is run against the same draws, which are not
+ * the ones its amounts came from, so candidates are compared on equal terms and the rates are not
+ * flattered. Periods are split across a fork-join pool, so planning gets faster with more cores.
+ */
+public class RestockPlanner implements AutoCloseable {
+
+    // a period is at most this many times the history long, so one request cannot tie up the pool for hours
+    public static final int MAX_PERIOD_HISTORIES = 16;
+
+    private static final int BISECTIONS = 10;
+    private static final long SAMPLING_SEED = 0x5DEECE66DL;
+    private static final long TESTING_SEED = 0x9E3779B97F4A7C15L;
+
+    private final ForkJoinPool pool;
+    private final int trials;
+    private final int historySize;
+    private final Map<String, PurchaseHistory> histories = new ConcurrentHashMap<>();
+
+    public RestockPlanner(int parallelism, int trials, int historySize) {
+        if (trials <= 0) {
+            throw new IllegalArgumentException("Planning needs at least one trial.");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.trials = trials;
+        this.historySize = historySize;
+    }
+
+    // starts recording the machine's purchases and returns the listener that records them
+    public VendingMachineListener bind(String machineId, VendingMachine vendingMachine) {
+        PurchaseHistory history = new PurchaseHistory(vendingMachine, historySize);
+        histories.put(machineId, history);
+        return history;
+    }
+
+    /**
+     * Plans from the machine's recorded purchases, for periods of the given number of purchase attempts,
+     * or of as many as are recorded when that is 0, and at most {@link #MAX_PERIOD_HISTORIES} times as
+     * many as the history holds.
+     */
+    public CompletableFuture<RestockPlan> plan(String machineId, double target, int purchases) {
+        checkTarget(target);
+        PurchaseHistory history = histories.get(machineId);
+        if (history == null) {
+            return CompletableFuture.failedFuture(new MachineNotFoundException(machineId));
+        }
+        if (purchases < 0) {
+            throw new IllegalArgumentException("A restock period needs at least one purchase.");
+        }
+        if (purchases > (long) MAX_PERIOD_HISTORIES * history.capacity()) {
+            throw new IllegalArgumentException("A restock period can have at most "
+                    + (long) MAX_PERIOD_HISTORIES * history.capacity() + " purchases.");
+        }
+        int[][] recorded = history.snapshot();
+        VendingMachine vendingMachine = history.vendingMachine();
+        return CompletableFuture.supplyAsync(() -> plan(vendingMachine.getPrices(), vendingMachine.getCurrency(),
+                recorded, purchases == 0 ? recorded.length : purchases, target), pool);
+    }
+
+    /**
+     * Plans from the given purchases, each a SKU id followed by the coins paid in the given currency. Runs
+     * in the caller's thread, and splits the simulations across the planner's pool.
+     */
+    public RestockPlan plan(PriceList prices, Currency currency, int[][] history, int purchases, double target) {
+        checkTarget(target);
+        if (purchases <= 0 && history.length > 0) {
+            throw new IllegalArgumentException("A restock period needs at least one purchase.");
+        }
+        Catalog catalog = prices.catalog();
+        if (history.length == 0) {
+            return new RestockPlan(ImmutableMap.of(), ImmutableMap.of(), 0, 0, 0, trials, 0);
+        }
+        Simulation simulation = new Simulation(prices, currency, history, purchases);
+        int items = simulation.items.length;
+        int coins = currency.size();
+
+        // what each period uses when it never runs short, one column per SKU and then one per coin
+        int[][] used = new int[items + coins][trials];
+        run(simulation, (machine, trial) -> machine.measure(new SplittableRandom(SAMPLING_SEED + trial), used, trial));
+        for (int[] column : used) {
+            Arrays.sort(column);
+        }
+
+        double low = 0;
+        double high = 1;
+        for (int i = 0; i < BISECTIONS; i++) {
+            double quantile = (low + high) / 2;
+            Outcome outcome = test(simulation, quantile(used, 0, items, quantile), simulation.ampleFloat);
+            if (outcome.soldOutRate() <= target) {
+                high = quantile;
+            } else {
+                low = quantile;
+            }
+        }
+        int[] stock = quantile(used, 0, items, high);
+
+        low = 0;
+        high = 1;
+        for (int i = 0; i < BISECTIONS; i++) {
+            double quantile = (low + high) / 2;
+            Outcome outcome = test(simulation, stock, quantile(used, items, coins, quantile));
+            if (outcome.insufficientChangeRate() <= target) {
+                high = quantile;
+            } else {
+                low = quantile;
+            }
+        }
+        int[] coinFloat = quantile(used, items, coins, high);
+        Outcome outcome = test(simulation, stock, coinFloat);
+
+        ImmutableMap.Builder<String, Integer> itemsByCode = ImmutableMap.builder();
+        for (int i = 0; i < items; i++) {
+            itemsByCode.put(catalog.code(simulation.items[i]), stock[i]);
+        }
+        return new RestockPlan(itemsByCode.build(), currency.toMap(coinFloat), currency.total(coinFloat),
+                outcome.soldOutRate(), outcome.insufficientChangeRate(), trials, purchases);
+    }
+
+    private static void checkTarget(double target) {
+        if (!(target > 0 && target < 1)) {
+            throw new IllegalArgumentException("The target rate must be between 0 and 1.");
+        }
+    }
+
+    private Outcome test(Simulation simulation, int[] stock, int[] coinFloat) {
+        long[] soldOut = new long[trials];
+        long[] noChange = new long[trials];
+        run(simulation, (machine, trial) -> machine.test(new SplittableRandom(TESTING_SEED + trial), stock, coinFloat, soldOut, noChange, trial));
+        return new Outcome(Arrays.stream(soldOut).sum(), Arrays.stream(noChange).sum(), (long) trials * simulation.purchases);
+    }
+
+    // the given quantile of each of count columns from the first, where quantile 0 is none at all
+    private int[] quantile(int[][] used, int first, int count, double quantile) {
+        int rank = (int) Math.ceil(quantile * trials) - 1;
+        int[] amounts = new int[count];
+        for (int i = 0; i < count; i++) {
+            amounts[i] = rank < 0 ? 0 : used[first + i][Math.min(rank, trials - 1)];
+        }
+        return amounts;
+    }
+
+    private void run(Simulation simulation, Trial trial) {
+        pool.invoke(new Trials(simulation, trial, 0, trials, Math.max(1, trials / (pool.getParallelism() * 4))));
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private interface Trial {
+
+        void run(Simulation.Simulator machine, int trial);
+    }
+
+    // splits a range of trials until each part is small enough, then runs a part on one reused machine
+    private static final class Trials extends RecursiveAction {
+
+        private final Simulation simulation;
+        private final Trial trial;
+        private final int from;
+        private final int to;
+        private final int batch;
+
+        Trials(Simulation simulation, Trial trial, int from, int to, int batch) {
+            this.simulation = simulation;
+            this.trial = trial;
+            this.from = from;
+            this.to = to;
+            this.batch = batch;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > batch) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Trials(simulation, trial, from, middle, batch), new Trials(simulation, trial, middle, to, batch));
+                return;
+            }
+            Simulation.Simulator machine = simulation.simulator();
+            for (int i = from; i < to; i++) {
+                trial.run(machine, i);
+            }
+        }
+    }
+
+    private static final class Outcome {
+
+        private final long soldOut;
+        private final long noChange;
+        private final long attempts;
+
+        Outcome(long soldOut, long noChange, long attempts) {
+            this.soldOut = soldOut;
+            this.noChange = noChange;
+            this.attempts = attempts;
+        }
+
+        double soldOutRate() {
+            return (double) soldOut / attempts;
+        }
+
+        double insufficientChangeRate() {
+            return (double) noChange / attempts;
+        }
+    }
+}
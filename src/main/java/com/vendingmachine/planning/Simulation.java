@@ -0,0 +1,141 @@
+package com.vendingmachine.planning;
+
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.service.PurchaseResult;
+import com.vendingmachine.service.VendingMachine;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Restock periods drawn from one purchase history. SKUs are numbered by where they first appear in the
+ * history, so loads and results only have a slot for the SKUs that were actually bought.
+ */
+final class Simulation {
+
+    final int[] items;
+    final int purchases;
+    final int[] ampleStock;
+    final int[] ampleFloat;
+
+    private final PriceList prices;
+    private final Currency currency;
+    private final int[][] history;
+    // the position in items of each history row's SKU
+    private final int[] rowItems;
+    private final int maxItem;
+
+    Simulation(PriceList prices, Currency currency, int[][] history, int purchases) {
+        this.prices = prices;
+        this.currency = currency;
+        this.history = history;
+        this.purchases = purchases;
+        int[] positions = new int[prices.catalog().size()];
+        Arrays.fill(positions, -1);
+        int[] seen = new int[history.length];
+        int distinct = 0;
+        int maxPaid = 0;
+        this.rowItems = new int[history.length];
+        for (int row = 0; row < history.length; row++) {
+            int item = history[row][0];
+            if (positions[item] < 0) {
+                positions[item] = distinct;
+                seen[distinct++] = item;
+            }
+            rowItems[row] = positions[item];
+            maxPaid = Math.max(maxPaid, currency.total(paid(history[row])));
+        }
+        this.items = Arrays.copyOf(seen, distinct);
+        this.maxItem = Arrays.stream(items).max().orElse(-1);
+        this.ampleStock = new int[distinct];
+        Arrays.fill(ampleStock, purchases);
+        // enough of every coin to pay all of every purchase's money back in it, as far as the float's int value allows
+        this.ampleFloat = new int[currency.size()];
+        long cap = Integer.MAX_VALUE / 2 / currency.size();
+        for (int coin = 0; coin < ampleFloat.length; coin++) {
+            int faceValue = currency.faceValue(coin);
+            ampleFloat[coin] = (int) Math.min((long) purchases * ((maxPaid + faceValue - 1) / faceValue), cap / faceValue);
+        }
+    }
+
+    Simulator simulator() {
+        return new Simulator();
+    }
+
+    private static int[] paid(int[] row) {
+        return Arrays.copyOfRange(row, 1, row.length);
+    }
+
+    // one machine, refilled to the loads under test before every period, so a batch of periods allocates once
+    final class Simulator {
+
+        private final VendingMachine machine = new VendingMachine(prices, currency, currency.changeStrategy());
+        private final int[][] coinsPaid = new int[history.length][];
+        private final int[] stockDeltas = new int[maxItem + 1];
+        private final int[] floatDeltas = new int[currency.size()];
+        private final int[] change = new int[currency.size()];
+        private final int[] lowest = new int[currency.size()];
+        private final int[] sold = new int[items.length];
+
+        Simulator() {
+            for (int row = 0; row < history.length; row++) {
+                coinsPaid[row] = paid(history[row]);
+            }
+        }
+
+        // how much of each SKU the period sells, and how far each coin count falls, when it has plenty of both
+        void measure(SplittableRandom random, int[][] used, int trial) {
+            fill(ampleStock, ampleFloat);
+            Arrays.fill(sold, 0);
+            System.arraycopy(ampleFloat, 0, lowest, 0, lowest.length);
+            for (int i = 0; i < purchases; i++) {
+                int row = random.nextInt(history.length);
+                if (buy(row).isCompleted()) {
+                    sold[rowItems[row]]++;
+                }
+                for (int coin = 0; coin < lowest.length; coin++) {
+                    lowest[coin] = Math.min(lowest[coin], machine.getCoinCount(coin));
+                }
+            }
+            for (int item = 0; item < sold.length; item++) {
+                used[item][trial] = sold[item];
+            }
+            for (int coin = 0; coin < lowest.length; coin++) {
+                used[sold.length + coin][trial] = ampleFloat[coin] - lowest[coin];
+            }
+        }
+
+        // how many of the period's purchases find their SKU sold out, and how many cannot be given change
+        void test(SplittableRandom random, int[] stock, int[] coinFloat, long[] soldOut, long[] noChange, int trial) {
+            fill(stock, coinFloat);
+            for (int i = 0; i < purchases; i++) {
+                PurchaseResult.Status status = buy(random.nextInt(history.length)).getStatus();
+                if (status == PurchaseResult.Status.ITEM_NOT_AVAILABLE) {
+                    soldOut[trial]++;
+                } else if (status == PurchaseResult.Status.INSUFFICIENT_CHANGE) {
+                    noChange[trial]++;
+                }
+            }
+        }
+
+        private PurchaseResult buy(int row) {
+            PurchaseResult result = machine.tryBuyItem(VendingMachine.DEFAULT_SESSION, history[row][0], coinsPaid[row], change);
+            if (!result.isCompleted()) {
+                machine.returnCoins(VendingMachine.DEFAULT_SESSION, change);
+            }
+            return result;
+        }
+
+        private void fill(int[] stock, int[] coinFloat) {
+            for (int item = 0; item < items.length; item++) {
+                stockDeltas[items[item]] = stock[item] - machine.getStock(items[item]);
+            }
+            machine.loadItems(stockDeltas);
+            for (int coin = 0; coin < floatDeltas.length; coin++) {
+                floatDeltas[coin] = coinFloat[coin] - machine.getCoinCount(coin);
+            }
+            machine.loadChange(floatDeltas);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.admission.AdmissionControl;
+import com.vendingmachine.admission.ConcurrencyLimit;
+import com.vendingmachine.exception.MachineOverloadedException;
+import com.vendingmachine.service.MachineRegistry;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * Admission control in front of the machine routes in the servlet mode, before the request body is read.
+ * The root machine's routes run on the request thread rather than on a shard, so a flood of them would
+ * otherwise hold on to every servlet thread; a request is let in on its first dispatch and its room is
+ * freed when it completes, after the async dispatch of a streamed batch if there is one. Machines under
+ * {@code /machines/{machineId}} are limited as their operations are submitted to the registry, so here
+ * a request for one that is already full is only turned away early, without its batch being parsed.
+ */
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String ADMITTED = AdmissionInterceptor.class.getName() + ".admitted";
+
+    private final AdmissionControl admissionControl;
+    private final MachineRegistry machineRegistry;
+    private final String rootMachineId;
+
+    public AdmissionInterceptor(AdmissionControl admissionControl, MachineRegistry machineRegistry, String rootMachineId) {
+        this.admissionControl = admissionControl;
+        this.machineRegistry = machineRegistry;
+        this.rootMachineId = rootMachineId;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws MachineOverloadedException {
+        if (request.getDispatcherType() != DispatcherType.REQUEST || !(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        Class<?> controller = ((HandlerMethod) handler).getBeanType();
+        if (controller != VendingMachineController.class && controller != MachineRegistryController.class && controller != BatchController.class) {
+            return true;
+        }
+        Map<?, ?> pathVariables = (Map<?, ?>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        Object machineId = pathVariables == null ? null : pathVariables.get("machineId");
+        if (machineId != null) {
+            // only registered machines get a limit, so made-up ids cannot add meters
+            if (machineRegistry.contains((String) machineId) && admissionControl.limitFor((String) machineId).rejectIfFull()) {
+                throw new MachineOverloadedException((String) machineId, admissionControl.retryAfter());
+            }
+            return true;
+        }
+        if (controller == MachineRegistryController.class) {
+            return true;
+        }
+        long admitted = admissionControl.limitFor(rootMachineId).tryAcquire();
+        if (admitted == ConcurrencyLimit.REJECTED) {
+            throw new MachineOverloadedException(rootMachineId, admissionControl.retryAfter());
+        }
+        request.setAttribute(ADMITTED, admitted);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object admitted = request.getAttribute(ADMITTED);
+        if (admitted != null) {
+            request.removeAttribute(ADMITTED);
+            admissionControl.limitFor(rootMachineId).release((Long) admitted);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.analytics.SalesAnalytics;
+import com.vendingmachine.analytics.SalesSummary;
+import com.vendingmachine.analytics.SalesWindows;
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.exception.ItemNotFoundException;
+import com.vendingmachine.exception.MachineNotFoundException;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+// sales over a window ending now (sliding) or over consecutive aligned windows (tumbling), for a machine or one of its SKUs
+@RestController
+public class AnalyticsController {
+
+    private final SalesAnalytics salesAnalytics;
+    private final Catalog catalog;
+    // the machine behind the unprefixed routes
+    private final String rootMachineId;
+
+    public AnalyticsController(SalesAnalytics salesAnalytics, Catalog catalog, String rootMachineId) {
+        this.salesAnalytics = salesAnalytics;
+        this.catalog = catalog;
+        this.rootMachineId = rootMachineId;
+    }
+
+    @GetMapping(value = "/analytics", produces = "application/json")
+    public SalesSummary getSales(@RequestParam(required = false) String window, @RequestParam(required = false) String item) throws MachineNotFoundException, ItemNotFoundException {
+        return sliding(salesAnalytics.get(rootMachineId), window, item);
+    }
+
+    @GetMapping(value = "/analytics/windows", produces = "application/json")
+    public List<SalesSummary> getSalesWindows(@RequestParam(required = false) String window, @RequestParam(required = false) Integer count, @RequestParam(required = false) String item) throws MachineNotFoundException, ItemNotFoundException {
+        return tumbling(salesAnalytics.get(rootMachineId), window, count, item);
+    }
+
+    @GetMapping(value = "/machines/{machineId}/analytics", produces = "application/json")
+    public SalesSummary getSales(@PathVariable String machineId, @RequestParam(required = false) String window, @RequestParam(required = false) String item) throws MachineNotFoundException, ItemNotFoundException {
+        return sliding(salesAnalytics.get(machineId), window, item);
+    }
+
+    @GetMapping(value = "/machines/{machineId}/analytics/windows", produces = "application/json")
+    public List<SalesSummary> getSalesWindows(@PathVariable String machineId, @RequestParam(required = false) String window, @RequestParam(required = false) Integer count, @RequestParam(required = false) String item) throws MachineNotFoundException, ItemNotFoundException {
+        return tumbling(salesAnalytics.get(machineId), window, count, item);
+    }
+
+    // the whole span unless a window is given
+    private SalesSummary sliding(SalesWindows windows, String window, String item) throws ItemNotFoundException {
+        int id = item == null ? -1 : catalog.require(item);
+        try {
+            return windows.sliding(window == null ? windows.spanMillis() : millis(window), id);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    // one window per bucket, and as many as the span holds, unless told otherwise
+    private List<SalesSummary> tumbling(SalesWindows windows, String window, Integer count, String item) throws ItemNotFoundException {
+        int id = item == null ? -1 : catalog.require(item);
+        try {
+            long windowMillis = window == null ? windows.resolutionMillis() : millis(window);
+            return windows.tumbling(windowMillis, count == null ? (int) (windows.spanMillis() / windowMillis) : count, id);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    // 90s, 15m and PT15M all work
+    private static long millis(String window) {
+        return DurationStyle.detectAndParse(window).toMillis();
+    }
+}
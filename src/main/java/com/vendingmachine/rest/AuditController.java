@@ -0,0 +1,36 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.service.MachineRegistry;
+import com.vendingmachine.service.VendingMachine;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// the whole fleet's stock, sales and float as newline-delimited JSON, one machine per line starting with the
+// root machine; each machine's snapshot is taken as the stream reaches it, so a slow reader holds nothing up
+// and memory does not grow with the fleet, but the lines are not a cut of the fleet at one instant: each is
+// consistent on its own, and a machine's version says how many writes it had had when its line was taken
+@RestController
+public class AuditController {
+
+    private final VendingMachine vendingMachine;
+    private final MachineRegistry machineRegistry;
+    private final String rootMachineId;
+
+    public AuditController(VendingMachine vendingMachine, MachineRegistry machineRegistry, String rootMachineId) {
+        this.vendingMachine = vendingMachine;
+        this.machineRegistry = machineRegistry;
+        this.rootMachineId = rootMachineId;
+    }
+
+    @GetMapping(value = "/audit", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MachineAudit> audit() {
+        return Flux.concat(
+                Mono.fromSupplier(() -> new MachineAudit(rootMachineId, vendingMachine.snapshot())),
+                // machines are never unregistered, so every id listed has a snapshot
+                Flux.defer(() -> Flux.fromIterable(machineRegistry.machineIds()))
+                        .map(machineId -> new MachineAudit(machineId, machineRegistry.snapshot(machineId))));
+    }
+}
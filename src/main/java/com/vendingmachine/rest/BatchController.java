@@ -0,0 +1,35 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.service.MachineRegistry;
+import com.vendingmachine.service.VendingMachine;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+public class BatchController {
+
+    private final VendingMachine vendingMachine;
+    private final MachineRegistry machineRegistry;
+
+    public BatchController(VendingMachine vendingMachine, MachineRegistry machineRegistry) {
+        this.vendingMachine = vendingMachine;
+        this.machineRegistry = machineRegistry;
+    }
+
+    // the whole batch is applied before the first result is written, as it is on a machine's shard
+    @PostMapping(value = "/batch", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<StreamingResponseBody> applyBatch(@RequestBody List<BatchOperation> operations) {
+        return BatchResult.streaming(BatchOperation.applyAll(vendingMachine, operations));
+    }
+
+    // the whole batch runs as one task on the machine's shard, then the results are written off the shard
+    @PostMapping(value = "/machines/{machineId}/batch", consumes = "application/json", produces = "application/json")
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> applyBatch(@PathVariable String machineId, @RequestBody List<BatchOperation> operations) {
+        return machineRegistry.submit(machineId, vendingMachine -> BatchOperation.applyAll(vendingMachine, operations))
+                .thenApply(BatchResult::streaming);
+    }
+}
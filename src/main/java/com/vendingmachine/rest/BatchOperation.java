@@ -0,0 +1,186 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.exception.ItemNotFoundException;
+import com.vendingmachine.exception.TooManySessionsException;
+import com.vendingmachine.exception.UnknownCoinException;
+import com.vendingmachine.service.PurchaseResult;
+import com.vendingmachine.service.VendingMachine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One entry of a {@code /batch} request. Each purchase runs in a session of its own, so a purchase that
+ * fails hands its coins straight back instead of leaving them for the next entry.
+ */
+public class BatchOperation {
+
+    public enum Type {
+        BUY,
+        LOAD_ITEMS,
+        LOAD_CHANGE,
+        GET_ITEMS,
+        GET_PRICE,
+        GET_CHANGE
+    }
+
+    private Type type;
+    private String item;
+    private Map<String, Integer> coins;
+    private Map<String, Integer> items;
+
+    public BatchOperation() {
+    }
+
+    public BatchOperation(Type type, String item, Map<String, Integer> coins, Map<String, Integer> items) {
+        this.type = type;
+        this.item = item;
+        this.coins = coins;
+        this.items = items;
+    }
+
+    public static List<BatchResult> applyAll(VendingMachine vendingMachine, List<BatchOperation> operations) {
+        List<BatchResult> results = new ArrayList<>(operations.size());
+        for (BatchOperation operation : operations) {
+            results.add(operation.applyTo(vendingMachine));
+        }
+        return results;
+    }
+
+    public BatchResult applyTo(VendingMachine vendingMachine) {
+        if (type == null) {
+            return BatchResult.invalid("Missing operation type.");
+        }
+        switch (type) {
+            case BUY:
+                if (item == null || coins == null) {
+                    return BatchResult.invalid("BUY needs an item and coins.");
+                }
+                if (hasNullCount(coins)) {
+                    return nullCount();
+                }
+                return buy(vendingMachine);
+            case LOAD_ITEMS:
+                if (items == null) {
+                    return BatchResult.invalid("LOAD_ITEMS needs items.");
+                }
+                if (hasNullCount(items)) {
+                    return nullCount();
+                }
+                int[] counts = new int[vendingMachine.getCatalog().size()];
+                for (Map.Entry<String, Integer> entry : items.entrySet()) {
+                    int id = vendingMachine.getCatalog().id(entry.getKey());
+                    if (id < 0) {
+                        return unknownItem(entry.getKey());
+                    }
+                    counts[id] += entry.getValue();
+                }
+                vendingMachine.loadItems(counts);
+                return BatchResult.ok();
+            case LOAD_CHANGE:
+                if (coins == null) {
+                    return BatchResult.invalid("LOAD_CHANGE needs coins.");
+                }
+                if (hasNullCount(coins)) {
+                    return nullCount();
+                }
+                try {
+                    vendingMachine.loadChange(vendingMachine.getCurrency().toCounts(coins));
+                } catch (UnknownCoinException e) {
+                    return BatchResult.invalid(e.getMessage());
+                }
+                return BatchResult.ok();
+            case GET_ITEMS:
+                return BatchResult.value(vendingMachine.inStock().codes());
+            case GET_PRICE:
+                if (item == null) {
+                    return BatchResult.invalid("GET_PRICE needs an item.");
+                }
+                int id = vendingMachine.getCatalog().id(item);
+                return id < 0 ? unknownItem(item) : BatchResult.value(vendingMachine.getPrice(id));
+            case GET_CHANGE:
+                return BatchResult.value(vendingMachine.getChange());
+            default:
+                return BatchResult.invalid("Unsupported operation type " + type + ".");
+        }
+    }
+
+    private BatchResult buy(VendingMachine vendingMachine) {
+        int id = vendingMachine.getCatalog().id(item);
+        if (id < 0) {
+            return unknownItem(item);
+        }
+        Currency currency = vendingMachine.getCurrency();
+        int[] paid;
+        try {
+            paid = currency.toCounts(coins);
+        } catch (UnknownCoinException e) {
+            return BatchResult.invalid(e.getMessage());
+        }
+        long sessionToken;
+        try {
+            sessionToken = vendingMachine.newSessionToken();
+        } catch (TooManySessionsException e) {
+            return BatchResult.unavailable(e.getMessage());
+        }
+        int[] change = new int[currency.size()];
+        PurchaseResult result = vendingMachine.tryBuyItem(sessionToken, id, paid, change);
+        if (result.isCompleted()) {
+            return BatchResult.change(currency, change);
+        }
+        vendingMachine.returnCoins(sessionToken, change);
+        return BatchResult.rejected(result.getMessage(), currency, change);
+    }
+
+    // checked before anything is applied, since unboxing a null count would fail part way through the batch
+    private static boolean hasNullCount(Map<String, Integer> counts) {
+        for (Integer count : counts.values()) {
+            if (count == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static BatchResult nullCount() {
+        return BatchResult.invalid("Counts must be numbers, not null.");
+    }
+
+    private static BatchResult unknownItem(String code) {
+        return BatchResult.notFound(ItemNotFoundException.message(code));
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getItem() {
+        return item;
+    }
+
+    public void setItem(String item) {
+        this.item = item;
+    }
+
+    public Map<String, Integer> getCoins() {
+        return coins;
+    }
+
+    public void setCoins(Map<String, Integer> coins) {
+        this.coins = coins;
+    }
+
+    public Map<String, Integer> getItems() {
+        return items;
+    }
+
+    public void setItems(Map<String, Integer> items) {
+        this.items = items;
+    }
+}
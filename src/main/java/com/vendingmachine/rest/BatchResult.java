@@ -0,0 +1,137 @@
+package com.vendingmachine.rest;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.vendingmachine.currency.Currency;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of one {@link BatchOperation}: an HTTP-style status, the coins handed back (change after
+ * a purchase, or the refund when it was rejected), an error message, or the value a read produced.
+ * The servlet routes write results with {@link #streaming}; the reactive routes let Jackson use the getters.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+
+    // the servlet container owns the response stream, so the generator must not close it
+    private static final JsonFactory JSON = JsonFactory.builder().disable(StreamWriteFeature.AUTO_CLOSE_TARGET).build();
+    private static final BatchResult OK = new BatchResult(HttpStatus.OK.value(), null, null, null, null);
+
+    private final int status;
+    private final Currency currency;
+    private final int[] coins;
+    private final String error;
+    private final Object value;
+
+    private BatchResult(int status, Currency currency, int[] coins, String error, Object value) {
+        this.status = status;
+        this.currency = currency;
+        this.coins = coins;
+        this.error = error;
+        this.value = value;
+    }
+
+    static BatchResult ok() {
+        return OK;
+    }
+
+    static BatchResult change(Currency currency, int[] change) {
+        return new BatchResult(HttpStatus.OK.value(), currency, change, null, null);
+    }
+
+    static BatchResult rejected(String error, Currency currency, int[] refund) {
+        return new BatchResult(HttpStatus.BAD_REQUEST.value(), currency, refund, error, null);
+    }
+
+    static BatchResult invalid(String error) {
+        return new BatchResult(HttpStatus.BAD_REQUEST.value(), null, null, error, null);
+    }
+
+    static BatchResult unavailable(String error) {
+        return new BatchResult(HttpStatus.SERVICE_UNAVAILABLE.value(), null, null, error, null);
+    }
+
+    static BatchResult notFound(String error) {
+        return new BatchResult(HttpStatus.NOT_FOUND.value(), null, null, error, null);
+    }
+
+    static BatchResult value(Object value) {
+        return new BatchResult(HttpStatus.OK.value(), null, null, null, value);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public Map<String, Integer> getChange() {
+        return coins == null ? null : currency.toMap(coins);
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    // results of a batch that has already been applied in full, so a client that goes away part way through
+    // the response can still rely on every operation having run
+    static ResponseEntity<StreamingResponseBody> streaming(List<BatchResult> results) {
+        return json(out -> write(out, results.iterator()));
+    }
+
+    private static ResponseEntity<StreamingResponseBody> json(StreamingResponseBody body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private static void write(OutputStream out, Iterator<BatchResult> results) throws IOException {
+        try (JsonGenerator json = JSON.createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartArray();
+            while (results.hasNext()) {
+                results.next().writeTo(json);
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private void writeTo(JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("status", status);
+        if (coins != null) {
+            json.writeObjectFieldStart("change");
+            for (int i = 0; i < coins.length; i++) {
+                if (coins[i] != 0) {
+                    json.writeNumberField(currency.coin(i), coins[i]);
+                }
+            }
+            json.writeEndObject();
+        }
+        if (error != null) {
+            json.writeStringField("error", error);
+        }
+        if (value instanceof Collection) {
+            json.writeArrayFieldStart("value");
+            for (Object element : (Collection<?>) value) {
+                json.writeString(element.toString());
+            }
+            json.writeEndArray();
+        } else if (value instanceof Number) {
+            json.writeNumberField("value", ((Number) value).intValue());
+        }
+        json.writeEndObject();
+    }
+}
@@ -0,0 +1,48 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.capture.TrafficCapture;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Records every call to {@code VendingMachineController} in the servlet mode, with its body as the
+ * controller read it, to a {@link TrafficCapture}. The body is kept as it streams past rather than read
+ * ahead, and calls that turn out to be for any other controller are passed through without being written.
+ * The root machine's routes all answer on the request thread, so the status is final once the chain returns.
+ */
+public class CaptureFilter extends OncePerRequestFilter {
+
+    private final TrafficCapture trafficCapture;
+
+    public CaptureFilter(TrafficCapture trafficCapture) {
+        this.trafficCapture = trafficCapture;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        ContentCachingRequestWrapper cachingRequest = new ContentCachingRequestWrapper(request);
+        long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(cachingRequest, response);
+            failed = false;
+        } finally {
+            Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+            if (handler instanceof HandlerMethod && ((HandlerMethod) handler).getBeanType() == VendingMachineController.class) {
+                // an exception that got past the exception handler becomes a 500 once it leaves the filter
+                trafficCapture.record(startNanos, System.nanoTime(), request.getMethod(), request.getRequestURI(), request.getContentType(),
+                        request.getHeader(VendingMachineController.IDEMPOTENCY_KEY_HEADER), cachingRequest.getContentAsByteArray(),
+                        failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus(),
+                        response.getHeader(VendingMachineController.SESSION_TOKEN_HEADER));
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.exception.ItemNotFoundException;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+// site-wide prices, which apply to every machine that has not overridden them
+@RestController
+@RequestMapping(path = "/catalog")
+public class CatalogController {
+
+    private final PriceList sitePrices;
+
+    public CatalogController(PriceList sitePrices) {
+        this.sitePrices = sitePrices;
+    }
+
+    @GetMapping("/items/{item}/price")
+    public int getItemPrice(@PathVariable String item) throws ItemNotFoundException {
+        return sitePrices.price(sitePrices.catalog().require(item));
+    }
+
+    @PutMapping(value = "/prices", consumes = "application/json")
+    public void setPrices(@RequestBody Map<String, Integer> prices) throws ItemNotFoundException {
+        sitePrices.update(prices);
+    }
+}
@@ -0,0 +1,52 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.events.ChangeEvent;
+import com.vendingmachine.events.ChangeFeeds;
+import com.vendingmachine.exception.MachineNotFoundException;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+// the /events routes, which stream a machine's stock and float as server-sent events or newline-delimited JSON
+@RestController
+public class EventStreamController {
+
+    private final ChangeFeeds changeFeeds;
+    // the machine behind the unprefixed routes
+    private final String rootMachineId;
+
+    public EventStreamController(ChangeFeeds changeFeeds, String rootMachineId) {
+        this.changeFeeds = changeFeeds;
+        this.rootMachineId = rootMachineId;
+    }
+
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamEvents() throws MachineNotFoundException {
+        return serverSentEvents(changeFeeds.events(rootMachineId));
+    }
+
+    @GetMapping(value = "/events", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ChangeEvent> streamJson() throws MachineNotFoundException {
+        return changeFeeds.events(rootMachineId);
+    }
+
+    @GetMapping(value = "/machines/{machineId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamEvents(@PathVariable String machineId) throws MachineNotFoundException {
+        return serverSentEvents(changeFeeds.events(machineId));
+    }
+
+    @GetMapping(value = "/machines/{machineId}/events", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ChangeEvent> streamJson(@PathVariable String machineId) throws MachineNotFoundException {
+        return changeFeeds.events(machineId);
+    }
+
+    private static Flux<ServerSentEvent<String>> serverSentEvents(Flux<ChangeEvent> events) {
+        return events.map(event -> ServerSentEvent.builder(event.getJson())
+                .id(Long.toString(event.getSequence()))
+                .event(event.getType() == ChangeEvent.Type.SNAPSHOT ? "snapshot" : "delta")
+                .build());
+    }
+}
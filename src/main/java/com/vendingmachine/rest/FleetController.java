@@ -0,0 +1,51 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.exception.ItemNotFoundException;
+import com.vendingmachine.fleet.MachineMatches;
+import com.vendingmachine.fleet.StockIndex;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+// the registered machines with an item in stock, or that are or are not low on change, answered from the stock index
+@RestController
+public class FleetController {
+
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final StockIndex stockIndex;
+    private final Catalog catalog;
+
+    public FleetController(StockIndex stockIndex, Catalog catalog) {
+        this.stockIndex = stockIndex;
+        this.catalog = catalog;
+    }
+
+    @GetMapping(value = "/machines", produces = "application/json")
+    public MachineMatches findMachines(@RequestParam(required = false) String item, @RequestParam(required = false) String change,
+                                       @RequestParam(required = false) Integer limit) throws ItemNotFoundException {
+        int id = item == null ? -1 : catalog.require(item);
+        try {
+            return stockIndex.find(id, lowOnChange(change), limit == null ? DEFAULT_LIMIT : limit);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    private static Boolean lowOnChange(String change) {
+        if (change == null) {
+            return null;
+        }
+        switch (change) {
+            case "low":
+                return true;
+            case "ok":
+                return false;
+            default:
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "change must be low or ok.");
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.service.MachineSnapshot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// one line of the audit: a machine's snapshot, with the SKUs it carries and its coins by code in catalog and
+// currency order
+public class MachineAudit {
+
+    private final String machine;
+    private final long version;
+    private final Map<String, Integer> stock;
+    private final Map<String, Long> sold;
+    private final Map<String, Integer> coins;
+    private final int change;
+
+    MachineAudit(String machine, MachineSnapshot snapshot) {
+        this.machine = machine;
+        this.version = snapshot.getVersion();
+        Catalog catalog = snapshot.getCatalog();
+        this.stock = new LinkedHashMap<>();
+        this.sold = new LinkedHashMap<>();
+        for (int index = 0; index < snapshot.getItemCount(); index++) {
+            String code = catalog.code(snapshot.getItemId(index));
+            stock.put(code, snapshot.getStockAt(index));
+            sold.put(code, snapshot.getItemsSoldAt(index));
+        }
+        Currency currency = snapshot.getCurrency();
+        this.coins = new LinkedHashMap<>();
+        for (int coin = 0; coin < currency.size(); coin++) {
+            coins.put(currency.coin(coin), snapshot.getCoinCount(coin));
+        }
+        this.change = snapshot.getChange();
+    }
+
+    public String getMachine() {
+        return machine;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<String, Integer> getStock() {
+        return stock;
+    }
+
+    public Map<String, Long> getSold() {
+        return sold;
+    }
+
+    public Map<String, Integer> getCoins() {
+        return coins;
+    }
+
+    // the value of the coins, named as in the change stream
+    public int getFloat() {
+        return change;
+    }
+}
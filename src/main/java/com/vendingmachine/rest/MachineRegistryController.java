@@ -0,0 +1,142 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.idempotency.IdempotencyCache;
+import com.vendingmachine.service.MachineRegistry;
+import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.wire.CoinFrames;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@RequestMapping(path = "/machines")
+public class MachineRegistryController {
+
+    private final MachineRegistry machineRegistry;
+    private final IdempotencyCache<ResponseEntity<Object>> idempotencyCache;
+
+    public MachineRegistryController(MachineRegistry machineRegistry, IdempotencyCache<ResponseEntity<Object>> idempotencyCache) {
+        this.machineRegistry = machineRegistry;
+        this.idempotencyCache = idempotencyCache;
+    }
+
+    @GetMapping(value = "/count")
+    public int getMachineCount() {
+        return machineRegistry.size();
+    }
+
+    @PutMapping(value = "/{machineId}")
+    public void registerMachine(@PathVariable String machineId) {
+        machineRegistry.register(machineId);
+    }
+
+    @GetMapping(value = "/{machineId}/items", produces = "application/json")
+    public CompletableFuture<byte[]> getAvailableItems(@PathVariable String machineId) {
+        return machineRegistry.submit(machineId, vendingMachine -> vendingMachine.inStock().json());
+    }
+
+    @GetMapping("/{machineId}/items/{item}/price")
+    public CompletableFuture<Integer> getItemPrice(@PathVariable String machineId, @PathVariable String item) {
+        return machineRegistry.submit(machineId, vendingMachine -> vendingMachine.getPrice(vendingMachine.getCatalog().require(item)));
+    }
+
+    @PostMapping(value = "/{machineId}/items/{item}", consumes = "application/json", produces = "application/json")
+    public CompletableFuture<ResponseEntity<Object>> buyItem(@PathVariable String machineId, @PathVariable String item, @RequestBody Map<String, Integer> coins,
+                                                             @RequestHeader(value = VendingMachineController.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return VendingMachineController.idempotent(idempotencyCache, machineId, idempotencyKey, List.of("/items/" + item, coins),
+                () -> machineRegistry.submit(machineId, vendingMachine -> VendingMachineController.buyItem(vendingMachine, VendingMachine.DEFAULT_SESSION, item, coins, HttpHeaders.EMPTY)));
+    }
+
+    @PostMapping(value = "/{machineId}/coins", consumes = "application/json", produces = "application/json")
+    public CompletableFuture<ResponseEntity<Object>> addCoins(@PathVariable String machineId, @RequestBody Map<String, Integer> coins,
+                                                              @RequestHeader(value = VendingMachineController.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return VendingMachineController.idempotent(idempotencyCache, machineId, idempotencyKey, List.of("/coins", coins),
+                () -> machineRegistry.submit(machineId, vendingMachine -> VendingMachineController.addCoins(vendingMachine, VendingMachine.DEFAULT_SESSION, coins)));
+    }
+
+    @DeleteMapping(value = "/{machineId}/coins", produces = "application/json")
+    public CompletableFuture<Map<String, Integer>> returnCoins(@PathVariable String machineId) {
+        return machineRegistry.submit(machineId, vendingMachine -> VendingMachineController.returnCoins(vendingMachine, VendingMachine.DEFAULT_SESSION));
+    }
+
+    @PostMapping(value = "/{machineId}/sessions/items/{item}", consumes = "application/json", produces = "application/json")
+    public CompletableFuture<ResponseEntity<Object>> buyItemInSession(@PathVariable String machineId, @PathVariable String item, @RequestBody Map<String, Integer> coins,
+                                                                      @RequestHeader(value = VendingMachineController.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return VendingMachineController.idempotent(idempotencyCache, machineId, idempotencyKey, List.of("/sessions/items/" + item, coins),
+                () -> machineRegistry.submit(machineId, vendingMachine -> VendingMachineController.buyItemInSession(vendingMachine, item, coins)));
+    }
+
+    @PostMapping(value = "/{machineId}/sessions/{sessionToken}/coins", consumes = "application/json", produces = "application/json")
+    public CompletableFuture<ResponseEntity<Object>> addCoins(@PathVariable String machineId, @PathVariable long sessionToken, @RequestBody Map<String, Integer> coins,
+                                                              @RequestHeader(value = VendingMachineController.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return VendingMachineController.idempotent(idempotencyCache, machineId, idempotencyKey, List.of("/sessions/" + sessionToken + "/coins", coins),
+                () -> machineRegistry.submit(machineId, vendingMachine -> VendingMachineController.addCoins(vendingMachine, sessionToken, coins)));
+    }
+
+    @DeleteMapping(value = "/{machineId}/sessions/{sessionToken}/coins", produces = "application/json")
+    public CompletableFuture<Map<String, Integer>> returnCoins(@PathVariable String machineId, @PathVariable long sessionToken) {
+        return machineRegistry.submit(machineId, vendingMachine -> VendingMachineController.returnCoins(vendingMachine, sessionToken));
+    }
+
+    @PostMapping(value = "/{machineId}/items/{item}", consumes = CoinFrames.MEDIA_TYPE, produces = CoinFrames.MEDIA_TYPE)
+    public CompletableFuture<ResponseEntity<Object>> buyItem(@PathVariable String machineId, @PathVariable String item, @RequestBody byte[] coins,
+                                                             @RequestHeader(value = VendingMachineController.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return VendingMachineController.idempotent(idempotencyCache, machineId, idempotencyKey, List.of("/items/" + item, ByteBuffer.wrap(coins)),
+                () -> machineRegistry.submit(machineId, vendingMachine -> VendingMachineController.buyItem(vendingMachine, VendingMachine.DEFAULT_SESSION, item, coins, HttpHeaders.EMPTY)));
+    }
+
+    @PostMapping(value = "/{machineId}/coins", consumes = CoinFrames.MEDIA_TYPE, produces = CoinFrames.MEDIA_TYPE)
+    public CompletableFuture<ResponseEntity<Object>> addCoins(@PathVariable String machineId, @RequestBody byte[] coins,
+                                                              @RequestHeader(value = VendingMachineController.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return VendingMachineController.idempotent(idempotencyCache, machineId, idempotencyKey, List.of("/coins", ByteBuffer.wrap(coins)),
+                () -> machineRegistry.submit(machineId, vendingMachine -> VendingMachineController.addCoins(vendingMachine, VendingMachine.DEFAULT_SESSION, coins)));
+    }
+
+    @PostMapping(value = "/{machineId}/sessions/items/{item}", consumes = CoinFrames.MEDIA_TYPE, produces = CoinFrames.MEDIA_TYPE)
+    public CompletableFuture<ResponseEntity<Object>> buyItemInSession(@PathVariable String machineId, @PathVariable String item, @RequestBody byte[] coins,
+                                                                      @RequestHeader(value = VendingMachineController.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return VendingMachineController.idempotent(idempotencyCache, machineId, idempotencyKey, List.of("/sessions/items/" + item, ByteBuffer.wrap(coins)),
+                () -> machineRegistry.submit(machineId, vendingMachine -> VendingMachineController.buyItemInSession(vendingMachine, item, coins)));
+    }
+
+    @PostMapping(value = "/{machineId}/sessions/{sessionToken}/coins", consumes = CoinFrames.MEDIA_TYPE, produces = CoinFrames.MEDIA_TYPE)
+    public CompletableFuture<ResponseEntity<Object>> addCoins(@PathVariable String machineId, @PathVariable long sessionToken, @RequestBody byte[] coins,
+                                                              @RequestHeader(value = VendingMachineController.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return VendingMachineController.idempotent(idempotencyCache, machineId, idempotencyKey, List.of("/sessions/" + sessionToken + "/coins", ByteBuffer.wrap(coins)),
+                () -> machineRegistry.submit(machineId, vendingMachine -> VendingMachineController.addCoins(vendingMachine, sessionToken, coins)));
+    }
+
+    @PostMapping(value = "/{machineId}/change", consumes = "application/json")
+    public CompletableFuture<Void> loadChange(@PathVariable String machineId, @RequestBody Map<String, Integer> change) {
+        return machineRegistry.submit(machineId, vendingMachine -> {
+            vendingMachine.loadChange(vendingMachine.getCurrency().toCounts(change));
+            return null;
+        });
+    }
+
+    @GetMapping(value = "/{machineId}/change")
+    public CompletableFuture<Integer> getChange(@PathVariable String machineId) {
+        return machineRegistry.submit(machineId, VendingMachine::getChange);
+    }
+
+    @PostMapping(value = "/{machineId}/items", consumes = "application/json")
+    public CompletableFuture<Void> loadItems(@PathVariable String machineId, @RequestBody Map<String, Integer> items) {
+        return machineRegistry.submit(machineId, vendingMachine -> {
+            vendingMachine.loadItems(vendingMachine.getCatalog().toCounts(items));
+            return null;
+        });
+    }
+
+    @PutMapping(value = "/{machineId}/prices", consumes = "application/json")
+    public CompletableFuture<Void> setPrices(@PathVariable String machineId, @RequestBody Map<String, Integer> prices) {
+        return machineRegistry.submit(machineId, vendingMachine -> {
+            vendingMachine.getPrices().update(prices);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.service.MachineRegistry;
+import com.vendingmachine.service.VendingMachine;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// the /batch routes for the reactive mode, where a batch is applied once it has been read in full, so a
+// client that cancels part way through the response still has every operation applied
+@RestController
+public class ReactiveBatchController {
+
+    private final VendingMachine vendingMachine;
+    private final MachineRegistry machineRegistry;
+
+    public ReactiveBatchController(VendingMachine vendingMachine, MachineRegistry machineRegistry) {
+        this.vendingMachine = vendingMachine;
+        this.machineRegistry = machineRegistry;
+    }
+
+    @PostMapping(value = "/batch", consumes = "application/json", produces = "application/json")
+    public Flux<BatchResult> applyBatch(@RequestBody Flux<BatchOperation> operations) {
+        return operations.collectList()
+                .map(batch -> BatchOperation.applyAll(vendingMachine, batch))
+                .flatMapIterable(results -> results);
+    }
+
+    @PostMapping(value = "/machines/{machineId}/batch", consumes = "application/json", produces = "application/json")
+    public Flux<BatchResult> applyBatch(@PathVariable String machineId, @RequestBody Flux<BatchOperation> operations) {
+        return operations.collectList()
+                .flatMap(batch -> Mono.fromFuture(machineRegistry.submit(machineId, machine -> BatchOperation.applyAll(machine, batch))))
+                .flatMapIterable(results -> results);
+    }
+}
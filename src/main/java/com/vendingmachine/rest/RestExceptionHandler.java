@@ -0,0 +1,48 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.exception.IdempotencyKeyConflictException;
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientFundsException;
+import com.vendingmachine.exception.ItemNotAvailableException;
+import com.vendingmachine.exception.ItemNotFoundException;
+import com.vendingmachine.exception.MachineNotFoundException;
+import com.vendingmachine.exception.MachineOverloadedException;
+import com.vendingmachine.exception.TooManySessionsException;
+import com.vendingmachine.exception.UnknownCoinException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class RestExceptionHandler {
+
+    @ExceptionHandler({InsufficientFundsException.class, InsufficientChangeException.class, ItemNotAvailableException.class, UnknownCoinException.class})
+    public ResponseEntity<Object> handleException(Exception exception) {
+        return new ResponseEntity<>(exception.getMessage(), new HttpHeaders(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler({MachineNotFoundException.class, ItemNotFoundException.class})
+    public ResponseEntity<Object> handleNotFound(Exception exception) {
+        return new ResponseEntity<>(exception.getMessage(), new HttpHeaders(), HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(IdempotencyKeyConflictException.class)
+    public ResponseEntity<Object> handleConflict(Exception exception) {
+        return new ResponseEntity<>(exception.getMessage(), new HttpHeaders(), HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(TooManySessionsException.class)
+    public ResponseEntity<Object> handleUnavailable(Exception exception) {
+        return new ResponseEntity<>(exception.getMessage(), new HttpHeaders(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    // Retry-After is in whole seconds, so anything shorter is rounded up to one
+    @ExceptionHandler(MachineOverloadedException.class)
+    public ResponseEntity<Object> handleOverloaded(MachineOverloadedException exception) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, (exception.getRetryAfter().toMillis() + 999) / 1000)));
+        return new ResponseEntity<>(exception.getMessage(), headers, HttpStatus.TOO_MANY_REQUESTS);
+    }
+}
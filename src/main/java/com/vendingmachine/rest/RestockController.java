@@ -0,0 +1,41 @@
+package com.vendingmachine.rest;
+
+import com.vendingmachine.planning.RestockPlan;
+import com.vendingmachine.planning.RestockPlanner;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.CompletableFuture;
+
+// restock plans worked out from each machine's recent purchases; a plan takes a while, so it is computed off the request thread
+@RestController
+public class RestockController {
+
+    private final RestockPlanner restockPlanner;
+    // the machine behind the unprefixed routes
+    private final String rootMachineId;
+
+    public RestockController(RestockPlanner restockPlanner, String rootMachineId) {
+        this.restockPlanner = restockPlanner;
+        this.rootMachineId = rootMachineId;
+    }
+
+    @GetMapping(value = "/restock-plan", produces = "application/json")
+    public CompletableFuture<RestockPlan> getRestockPlan(@RequestParam(defaultValue = "0.01") double target, @RequestParam(defaultValue = "0") int purchases) {
+        return plan(rootMachineId, target, purchases);
+    }
+
+    @GetMapping(value = "/machines/{machineId}/restock-plan", produces = "application/json")
+    public CompletableFuture<RestockPlan> getRestockPlan(@PathVariable String machineId, @RequestParam(defaultValue = "0.01") double target, @RequestParam(defaultValue = "0") int purchases) {
+        return plan(machineId, target, purchases);
+    }
+
+    private CompletableFuture<RestockPlan> plan(String machineId, double target, int purchases) {
+        try {
+            return restockPlanner.plan(machineId, target, purchases);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+}
@@ -1,63 +1,256 @@
 package com.vendingmachine.rest;
 
-import com.vendingmachine.domain.Denomination;
-import com.vendingmachine.domain.ItemType;
-import com.vendingmachine.exception.InsufficientChangeException;
-import com.vendingmachine.exception.InsufficientFundsException;
-import com.vendingmachine.exception.ItemNotAvailableException;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.exception.IdempotencyKeyConflictException;
+import com.vendingmachine.exception.ItemNotFoundException;
+import com.vendingmachine.exception.TooManySessionsException;
+import com.vendingmachine.exception.UnknownCoinException;
+import com.vendingmachine.idempotency.IdempotencyCache;
+import com.vendingmachine.service.PurchaseResult;
 import com.vendingmachine.service.VendingMachine;
+import com.vendingmachine.wire.CoinFrames;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
-
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping(path = "/")
 public class VendingMachineController {
 
+    public static final String SESSION_TOKEN_HEADER = "Session-Token";
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
     private final VendingMachine vendingMachine;
+    private final IdempotencyCache<ResponseEntity<Object>> idempotencyCache;
+    private final String rootMachineId;
 
-    public VendingMachineController(VendingMachine vendingMachine) {
+    public VendingMachineController(VendingMachine vendingMachine, IdempotencyCache<ResponseEntity<Object>> idempotencyCache, String rootMachineId) {
         this.vendingMachine = vendingMachine;
-    }
-
-    @ExceptionHandler({InsufficientFundsException.class, InsufficientChangeException.class, ItemNotAvailableException.class})
-    public ResponseEntity<Object> handleException(Exception exception) {
-        return new ResponseEntity<>(exception.getMessage(), new HttpHeaders(), HttpStatus.BAD_REQUEST);
+        this.idempotencyCache = idempotencyCache;
+        this.rootMachineId = rootMachineId;
     }
 
     @GetMapping(value = "/items", produces = "application/json")
-    public Set<ItemType> getAvailableItems() {
-        return vendingMachine.availableItems();
+    public byte[] getAvailableItems() {
+        return vendingMachine.inStock().json();
     }
 
-    @GetMapping("/items/{itemType}/price")
-    public int getItemPrice(@PathVariable ItemType itemType) {
-        return vendingMachine.getPrice(itemType);
+    @GetMapping("/items/{item}/price")
+    public int getItemPrice(@PathVariable String item) throws ItemNotFoundException {
+        return vendingMachine.getPrice(vendingMachine.getCatalog().require(item));
     }
 
-    @PostMapping(value = "/items/{itemType}", consumes = "application/json", produces = "application/json")
-    public Map<Denomination, Integer> buyItem(@PathVariable ItemType itemType, @RequestBody Map<Denomination, Integer> coins) throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException {
-        return vendingMachine.buyItem(itemType, coins);
+    @PostMapping(value = "/items/{item}", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<Object> buyItem(@PathVariable String item, @RequestBody Map<String, Integer> coins,
+                                          @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws ItemNotFoundException, UnknownCoinException, IdempotencyKeyConflictException, TooManySessionsException {
+        return idempotent(idempotencyKey, List.of("/items/" + item, coins),
+                () -> buyItem(vendingMachine, VendingMachine.DEFAULT_SESSION, item, coins, HttpHeaders.EMPTY));
     }
 
     @PostMapping(value = "/coins", consumes = "application/json", produces = "application/json")
-    public Map<Denomination, Integer> addCoins(@RequestBody Map<Denomination, Integer> coins) throws InsufficientFundsException, InsufficientChangeException, ItemNotAvailableException {
-        return vendingMachine.addCoins(coins);
+    public ResponseEntity<Object> addCoins(@RequestBody Map<String, Integer> coins,
+                                           @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws ItemNotFoundException, UnknownCoinException, IdempotencyKeyConflictException, TooManySessionsException {
+        return idempotent(idempotencyKey, List.of("/coins", coins), () -> addCoins(vendingMachine, VendingMachine.DEFAULT_SESSION, coins));
     }
 
     @DeleteMapping(value = "/coins", produces = "application/json")
-    public Map<Denomination, Integer> returnCoins() {
-        return vendingMachine.returnCoins();
+    public Map<String, Integer> returnCoins() {
+        return returnCoins(vendingMachine, VendingMachine.DEFAULT_SESSION);
+    }
+
+    @PostMapping(value = "/sessions/items/{item}", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<Object> buyItemInSession(@PathVariable String item, @RequestBody Map<String, Integer> coins,
+                                                   @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws ItemNotFoundException, UnknownCoinException, IdempotencyKeyConflictException, TooManySessionsException {
+        return idempotent(idempotencyKey, List.of("/sessions/items/" + item, coins), () -> buyItemInSession(vendingMachine, item, coins));
+    }
+
+    // the token goes out with a rejection too, because the customer needs it to add coins or get them back
+    static ResponseEntity<Object> buyItemInSession(VendingMachine vendingMachine, String item, Map<String, Integer> coins) throws ItemNotFoundException, UnknownCoinException, TooManySessionsException {
+        int id = vendingMachine.getCatalog().require(item);
+        long sessionToken = vendingMachine.newSessionToken();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(SESSION_TOKEN_HEADER, Long.toString(sessionToken));
+        return buyItem(vendingMachine, sessionToken, id, coins, headers);
+    }
+
+    static ResponseEntity<Object> buyItem(VendingMachine vendingMachine, long sessionToken, String item, Map<String, Integer> coins, HttpHeaders headers) throws ItemNotFoundException, UnknownCoinException {
+        return buyItem(vendingMachine, sessionToken, vendingMachine.getCatalog().require(item), coins, headers);
+    }
+
+    private static ResponseEntity<Object> buyItem(VendingMachine vendingMachine, long sessionToken, int id, Map<String, Integer> coins, HttpHeaders headers) throws UnknownCoinException {
+        Currency currency = vendingMachine.getCurrency();
+        int[] changeToPay = new int[currency.size()];
+        return purchaseResponse(currency, vendingMachine.tryBuyItem(sessionToken, id, currency.toCounts(coins), changeToPay), changeToPay, headers);
+    }
+
+    static ResponseEntity<Object> addCoins(VendingMachine vendingMachine, long sessionToken, Map<String, Integer> coins) throws UnknownCoinException {
+        Currency currency = vendingMachine.getCurrency();
+        int[] changeToPay = new int[currency.size()];
+        return purchaseResponse(currency, vendingMachine.tryAddCoins(sessionToken, currency.toCounts(coins), changeToPay), changeToPay, HttpHeaders.EMPTY);
+    }
+
+    static Map<String, Integer> returnCoins(VendingMachine vendingMachine, long sessionToken) {
+        int[] returnedCoins = new int[vendingMachine.getCurrency().size()];
+        vendingMachine.returnCoins(sessionToken, returnedCoins);
+        return vendingMachine.getCurrency().toMap(returnedCoins);
+    }
+
+    // a retry with the key of an earlier request gets that request's response, rejections included, since a
+    // rejected purchase leaves its coins in the machine and running it again would add them a second time
+    private ResponseEntity<Object> idempotent(String idempotencyKey, Object request, Purchase purchase) throws ItemNotFoundException, UnknownCoinException, IdempotencyKeyConflictException, TooManySessionsException {
+        if (idempotencyKey == null) {
+            return purchase.run();
+        }
+        ResponseEntity<Object> stored = claim(idempotencyCache, rootMachineId, idempotencyKey, request);
+        if (stored != null) {
+            return replayed(stored);
+        }
+        ResponseEntity<Object> response = null;
+        try {
+            response = purchase.run();
+            return response;
+        } finally {
+            if (response == null) {
+                idempotencyCache.release(rootMachineId, idempotencyKey);
+            } else {
+                idempotencyCache.complete(rootMachineId, idempotencyKey, response);
+            }
+        }
+    }
+
+    // the same for a purchase run on a machine's shard, where the key is completed once the purchase has run
+    static CompletableFuture<ResponseEntity<Object>> idempotent(IdempotencyCache<ResponseEntity<Object>> idempotencyCache, String machineId, String idempotencyKey,
+                                                                Object request, Supplier<CompletableFuture<ResponseEntity<Object>>> purchase) {
+        if (idempotencyKey == null) {
+            return purchase.get();
+        }
+        ResponseEntity<Object> stored;
+        try {
+            stored = claim(idempotencyCache, machineId, idempotencyKey, request);
+        } catch (IdempotencyKeyConflictException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (stored != null) {
+            return CompletableFuture.completedFuture(replayed(stored));
+        }
+        return purchase.get().whenComplete((response, failure) -> {
+            if (failure == null) {
+                idempotencyCache.complete(machineId, idempotencyKey, response);
+            } else {
+                idempotencyCache.release(machineId, idempotencyKey);
+            }
+        });
+    }
+
+    private static ResponseEntity<Object> claim(IdempotencyCache<ResponseEntity<Object>> idempotencyCache, String machineId, String idempotencyKey, Object request) throws IdempotencyKeyConflictException {
+        try {
+            return idempotencyCache.claim(machineId, idempotencyKey, request);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private static ResponseEntity<Object> replayed(ResponseEntity<Object> stored) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(stored.getHeaders());
+        headers.set(IDEMPOTENT_REPLAYED_HEADER, "true");
+        return new ResponseEntity<>(stored.getBody(), headers, stored.getStatusCode());
+    }
+
+    // the purchase path reports rejections as results, and they become a 400 here without any exception being thrown
+    private static ResponseEntity<Object> purchaseResponse(Currency currency, PurchaseResult result, int[] changeToPay, HttpHeaders headers) {
+        if (result.isCompleted()) {
+            return new ResponseEntity<>(currency.toMap(changeToPay), headers, HttpStatus.OK);
+        }
+        return new ResponseEntity<>(result.getMessage(), headers, HttpStatus.BAD_REQUEST);
+    }
+
+    @PostMapping(value = "/sessions/{sessionToken}/coins", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<Object> addCoins(@PathVariable long sessionToken, @RequestBody Map<String, Integer> coins,
+                                           @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws ItemNotFoundException, UnknownCoinException, IdempotencyKeyConflictException, TooManySessionsException {
+        return idempotent(idempotencyKey, List.of("/sessions/" + sessionToken + "/coins", coins), () -> addCoins(vendingMachine, sessionToken, coins));
+    }
+
+    @DeleteMapping(value = "/sessions/{sessionToken}/coins", produces = "application/json")
+    public Map<String, Integer> returnCoins(@PathVariable long sessionToken) {
+        return returnCoins(vendingMachine, sessionToken);
+    }
+
+    // the purchase routes again for bodies in the binary coin frames of CoinFrames, answered in frames too
+    @PostMapping(value = "/items/{item}", consumes = CoinFrames.MEDIA_TYPE, produces = CoinFrames.MEDIA_TYPE)
+    public ResponseEntity<Object> buyItem(@PathVariable String item, @RequestBody byte[] coins,
+                                          @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws ItemNotFoundException, UnknownCoinException, IdempotencyKeyConflictException, TooManySessionsException {
+        return idempotent(idempotencyKey, List.of("/items/" + item, ByteBuffer.wrap(coins)),
+                () -> buyItem(vendingMachine, VendingMachine.DEFAULT_SESSION, item, coins, HttpHeaders.EMPTY));
+    }
+
+    @PostMapping(value = "/coins", consumes = CoinFrames.MEDIA_TYPE, produces = CoinFrames.MEDIA_TYPE)
+    public ResponseEntity<Object> addCoins(@RequestBody byte[] coins,
+                                           @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws ItemNotFoundException, UnknownCoinException, IdempotencyKeyConflictException, TooManySessionsException {
+        return idempotent(idempotencyKey, List.of("/coins", ByteBuffer.wrap(coins)), () -> addCoins(vendingMachine, VendingMachine.DEFAULT_SESSION, coins));
+    }
+
+    @PostMapping(value = "/sessions/items/{item}", consumes = CoinFrames.MEDIA_TYPE, produces = CoinFrames.MEDIA_TYPE)
+    public ResponseEntity<Object> buyItemInSession(@PathVariable String item, @RequestBody byte[] coins,
+                                                   @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws ItemNotFoundException, UnknownCoinException, IdempotencyKeyConflictException, TooManySessionsException {
+        return idempotent(idempotencyKey, List.of("/sessions/items/" + item, ByteBuffer.wrap(coins)), () -> buyItemInSession(vendingMachine, item, coins));
+    }
+
+    @PostMapping(value = "/sessions/{sessionToken}/coins", consumes = CoinFrames.MEDIA_TYPE, produces = CoinFrames.MEDIA_TYPE)
+    public ResponseEntity<Object> addCoins(@PathVariable long sessionToken, @RequestBody byte[] coins,
+                                           @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws ItemNotFoundException, UnknownCoinException, IdempotencyKeyConflictException, TooManySessionsException {
+        return idempotent(idempotencyKey, List.of("/sessions/" + sessionToken + "/coins", ByteBuffer.wrap(coins)), () -> addCoins(vendingMachine, sessionToken, coins));
+    }
+
+    static ResponseEntity<Object> buyItemInSession(VendingMachine vendingMachine, String item, byte[] coins) throws ItemNotFoundException, TooManySessionsException {
+        int id = vendingMachine.getCatalog().require(item);
+        int[] counts = decode(vendingMachine, coins);
+        long sessionToken = vendingMachine.newSessionToken();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(SESSION_TOKEN_HEADER, Long.toString(sessionToken));
+        int[] changeToPay = new int[counts.length];
+        return frameResponse(vendingMachine.tryBuyItem(sessionToken, id, counts, changeToPay), changeToPay, headers);
+    }
+
+    static ResponseEntity<Object> buyItem(VendingMachine vendingMachine, long sessionToken, String item, byte[] coins, HttpHeaders headers) throws ItemNotFoundException {
+        int id = vendingMachine.getCatalog().require(item);
+        int[] counts = decode(vendingMachine, coins);
+        int[] changeToPay = new int[counts.length];
+        return frameResponse(vendingMachine.tryBuyItem(sessionToken, id, counts, changeToPay), changeToPay, headers);
+    }
+
+    static ResponseEntity<Object> addCoins(VendingMachine vendingMachine, long sessionToken, byte[] coins) {
+        int[] counts = decode(vendingMachine, coins);
+        int[] changeToPay = new int[counts.length];
+        return frameResponse(vendingMachine.tryAddCoins(sessionToken, counts, changeToPay), changeToPay, HttpHeaders.EMPTY);
+    }
+
+    private static int[] decode(VendingMachine vendingMachine, byte[] coins) {
+        int[] counts = new int[vendingMachine.getCurrency().size()];
+        try {
+            CoinFrames.decode(coins, counts);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return counts;
+    }
+
+    private static ResponseEntity<Object> frameResponse(PurchaseResult result, int[] changeToPay, HttpHeaders headers) {
+        return new ResponseEntity<>(CoinFrames.encode(result, changeToPay), headers, result.isCompleted() ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
     }
 
     @PostMapping(value = "/change", consumes = "application/json")
-    public void loadChange(@RequestBody Map<Denomination, Integer> change) {
-        vendingMachine.loadChange(change);
+    public void loadChange(@RequestBody Map<String, Integer> change) throws UnknownCoinException {
+        vendingMachine.loadChange(vendingMachine.getCurrency().toCounts(change));
     }
 
     @GetMapping(value = "/change")
@@ -66,7 +259,19 @@ public class VendingMachineController {
     }
 
     @PostMapping(value = "/items", consumes = "application/json")
-    public void loadItems(@RequestBody Map<ItemType, Integer> items) {
-        vendingMachine.loadItems(items);
+    public void loadItems(@RequestBody Map<String, Integer> items) throws ItemNotFoundException {
+        vendingMachine.loadItems(vendingMachine.getCatalog().toCounts(items));
+    }
+
+    // this machine's own prices; a null price drops the override and the site's price applies again
+    @PutMapping(value = "/prices", consumes = "application/json")
+    public void setPrices(@RequestBody Map<String, Integer> prices) throws ItemNotFoundException {
+        vendingMachine.getPrices().update(prices);
+    }
+
+    @FunctionalInterface
+    private interface Purchase {
+
+        ResponseEntity<Object> run() throws ItemNotFoundException, UnknownCoinException, TooManySessionsException;
     }
 }
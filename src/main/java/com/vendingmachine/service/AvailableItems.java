@@ -0,0 +1,70 @@
+package com.vendingmachine.service;
+
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.domain.ItemType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of the SKUs a machine has in stock, taken when one sells out or comes back into
+ * stock and handed out unchanged until the next time. The JSON that {@code GET /items} returns is
+ * rendered once per snapshot, since that route is polled far more often than stock crosses zero.
+ */
+public final class AvailableItems {
+
+    private final int version;
+    private final int[] ids;
+    private final List<String> codes;
+    private final Set<ItemType> itemTypes;
+    private final byte[] json;
+
+    AvailableItems(Catalog catalog, int version, int[] ids) {
+        this.version = version;
+        this.ids = ids;
+        String[] codes = new String[ids.length];
+        Set<ItemType> itemTypes = EnumSet.noneOf(ItemType.class);
+        StringBuilder json = new StringBuilder(ids.length * 16 + 2).append('[');
+        for (int i = 0; i < ids.length; i++) {
+            codes[i] = catalog.code(ids[i]);
+            ItemType itemType = catalog.itemType(ids[i]);
+            if (itemType != null) {
+                itemTypes.add(itemType);
+            }
+            // catalog codes never need escaping
+            json.append(i == 0 ? "\"" : ",\"").append(codes[i]).append('"');
+        }
+        this.codes = List.of(codes);
+        this.itemTypes = Collections.unmodifiableSet(itemTypes);
+        this.json = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    int version() {
+        return version;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int id(int index) {
+        return ids[index];
+    }
+
+    public List<String> codes() {
+        return codes;
+    }
+
+    // the built-in items among them
+    public Set<ItemType> itemTypes() {
+        return itemTypes;
+    }
+
+    // the response body for GET /items, which callers must not modify
+    public byte[] json() {
+        return json;
+    }
+}
@@ -0,0 +1,116 @@
+package com.vendingmachine.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The coins a machine holds to pay out as change, one compare-and-set counter per coin. A purchase
+ * reserves the coins its change needs before anything else about it is settled. A reservation either
+ * takes every coin it asks for or none of them, and no count ever goes below zero, so two purchases can
+ * never plan to pay out the same coin. The purchase then commits, which adds the customer's coins, or
+ * rolls back, which puts the reserved coins back, and either way the float ends up as if the other
+ * outcome had never been tried. Purchases only contend on the coins they both need.
+ */
+final class CoinFloat {
+
+    private final int[] faceValues;
+    private final AtomicIntegerArray counts;
+    // the value of the coins in the counts, moved along with every reservation, commit and rollback
+    private final AtomicInteger value = new AtomicInteger();
+
+    CoinFloat(int[] faceValues) {
+        this.faceValues = faceValues;
+        this.counts = new AtomicIntegerArray(faceValues.length);
+    }
+
+    int count(int coin) {
+        return counts.get(coin);
+    }
+
+    int value() {
+        return value.get();
+    }
+
+    // a shorter array leaves the coins past its end alone
+    void load(int[] extra) {
+        int extraValue = 0;
+        int coins = Math.min(extra.length, faceValues.length);
+        for (int i = 0; i < coins; i++) {
+            if (extra[i] != 0) {
+                counts.addAndGet(i, extra[i]);
+                extraValue += extra[i] * faceValues[i];
+            }
+        }
+        value.addAndGet(extraValue);
+    }
+
+    // what the float could pay out if the customer's coins joined it
+    void available(int[] inserted, int[] available) {
+        for (int i = 0; i < faceValues.length; i++) {
+            available[i] = inserted[i] + counts.get(i);
+        }
+    }
+
+    /**
+     * Takes out the coins of {@code change} that the customer's own coins cannot cover. Returns false,
+     * having put back whatever it took, when another purchase got to one of those coins first.
+     */
+    boolean reserve(int[] inserted, int[] change) {
+        int reserved = 0;
+        for (int i = 0; i < faceValues.length; i++) {
+            int shortfall = change[i] - inserted[i];
+            if (shortfall > 0) {
+                if (!decrementIfEnough(i, shortfall)) {
+                    release(inserted, change, i);
+                    return false;
+                }
+                reserved += shortfall * faceValues[i];
+            }
+        }
+        value.addAndGet(-reserved);
+        return true;
+    }
+
+    // settles a reservation: the customer's coins that are not handed back as change join the float
+    void commit(int[] inserted, int[] change) {
+        int added = 0;
+        for (int i = 0; i < faceValues.length; i++) {
+            int surplus = inserted[i] - change[i];
+            if (surplus > 0) {
+                counts.addAndGet(i, surplus);
+                added += surplus * faceValues[i];
+            }
+        }
+        value.addAndGet(added);
+    }
+
+    // cancels a reservation, putting back every coin it took
+    void rollback(int[] inserted, int[] change) {
+        int returned = release(inserted, change, faceValues.length);
+        value.addAndGet(returned);
+    }
+
+    private int release(int[] inserted, int[] change, int coins) {
+        int released = 0;
+        for (int i = 0; i < coins; i++) {
+            int shortfall = change[i] - inserted[i];
+            if (shortfall > 0) {
+                counts.addAndGet(i, shortfall);
+                released += shortfall * faceValues[i];
+            }
+        }
+        return released;
+    }
+
+    private boolean decrementIfEnough(int coin, int amount) {
+        while (true) {
+            int current = counts.get(coin);
+            if (current < amount) {
+                return false;
+            }
+            if (counts.compareAndSet(coin, current, current - amount)) {
+                return true;
+            }
+        }
+    }
+}
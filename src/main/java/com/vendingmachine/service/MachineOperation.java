@@ -0,0 +1,7 @@
+package com.vendingmachine.service;
+
+@FunctionalInterface
+public interface MachineOperation<T> {
+
+    T apply(VendingMachine vendingMachine) throws Exception;
+}
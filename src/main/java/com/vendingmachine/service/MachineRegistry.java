@@ -0,0 +1,103 @@
+package com.vendingmachine.service;
+
+import com.vendingmachine.admission.AdmissionControl;
+import com.vendingmachine.exception.MachineNotFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+public class MachineRegistry implements AutoCloseable {
+
+    private final MachineShard[] shards;
+    private final Function<String, VendingMachine> machineFactory;
+    private final AdmissionControl admissionControl;
+
+    public MachineRegistry(int shardCount, Function<String, VendingMachine> machineFactory) {
+        this(shardCount, machineFactory, null);
+    }
+
+    // with admission control, each machine may only have so many operations waiting on its shard
+    public MachineRegistry(int shardCount, Function<String, VendingMachine> machineFactory, AdmissionControl admissionControl) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = new MachineShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new MachineShard(i);
+        }
+        this.machineFactory = machineFactory;
+        this.admissionControl = admissionControl;
+    }
+
+    public boolean register(String machineId) {
+        return shardFor(machineId).register(machineId, machineFactory);
+    }
+
+    public boolean register(String machineId, VendingMachine vendingMachine) {
+        return shardFor(machineId).register(machineId, vendingMachine);
+    }
+
+    public boolean contains(String machineId) {
+        return shardFor(machineId).get(machineId) != null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (MachineShard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    // a copy of the ids registered so far, shard by shard
+    public List<String> machineIds() {
+        List<String> machineIds = new ArrayList<>(size());
+        for (MachineShard shard : shards) {
+            machineIds.addAll(shard.machineIds());
+        }
+        return machineIds;
+    }
+
+    /**
+     * The machine's snapshot, taken on the caller's thread rather than queued on the machine's shard, so
+     * reading a whole fleet neither waits behind its purchases nor holds them up. Null for an unknown id.
+     */
+    public MachineSnapshot snapshot(String machineId) {
+        VendingMachine vendingMachine = shardFor(machineId).get(machineId);
+        return vendingMachine == null ? null : vendingMachine.snapshot();
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public <T> CompletableFuture<T> submit(String machineId, MachineOperation<T> operation) {
+        MachineShard shard = shardFor(machineId);
+        VendingMachine vendingMachine = shard.get(machineId);
+        if (vendingMachine == null) {
+            return CompletableFuture.failedFuture(new MachineNotFoundException(machineId));
+        }
+        if (admissionControl != null) {
+            return admissionControl.submit(machineId, () -> shard.submit(vendingMachine, operation));
+        }
+        return shard.submit(vendingMachine, operation);
+    }
+
+    int shardIndex(String machineId) {
+        int hash = machineId.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    private MachineShard shardFor(String machineId) {
+        return shards[shardIndex(machineId)];
+    }
+
+    @Override
+    public void close() {
+        for (MachineShard shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.vendingmachine.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+class MachineShard {
+
+    private final Map<String, VendingMachine> machines = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    MachineShard(int index) {
+        // a single thread per shard orders each machine's writes; reads still run on other threads, so
+        // machines stay thread safe and rely on their atomic counts and WriteSequence for consistent snapshots
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "machine-shard-" + index);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    VendingMachine get(String machineId) {
+        return machines.get(machineId);
+    }
+
+    boolean register(String machineId, VendingMachine vendingMachine) {
+        return machines.putIfAbsent(machineId, vendingMachine) == null;
+    }
+
+    boolean register(String machineId, Function<String, VendingMachine> machineFactory) {
+        if (machines.containsKey(machineId)) {
+            return false;
+        }
+        // only build the machine if the id is free, since building it may have side effects such as journaling
+        VendingMachine[] created = new VendingMachine[1];
+        machines.computeIfAbsent(machineId, id -> created[0] = machineFactory.apply(id));
+        return created[0] != null;
+    }
+
+    int size() {
+        return machines.size();
+    }
+
+    Set<String> machineIds() {
+        return machines.keySet();
+    }
+
+    <T> CompletableFuture<T> submit(VendingMachine vendingMachine, MachineOperation<T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                result.complete(operation.apply(vendingMachine));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
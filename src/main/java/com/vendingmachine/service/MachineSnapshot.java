@@ -0,0 +1,84 @@
+package com.vendingmachine.service;
+
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.currency.Currency;
+
+import java.util.Arrays;
+
+/**
+ * A machine's stock, sales and float as they stood between two of its writes, so the float always matches
+ * the sales that paid into it and no purchase is seen half done. The version counts the writes before it,
+ * and two snapshots of the same machine with the same version hold the same counts. Coins inserted for a
+ * purchase that has not gone through yet belong to their session rather than the float, and are not here.
+ *
+ * <p>Only the SKUs the machine carries are held, in id order, and can be walked by their index here.
+ */
+public final class MachineSnapshot {
+
+    private final Catalog catalog;
+    private final Currency currency;
+    private final long version;
+    private final int[] ids;
+    private final int[] stock;
+    private final long[] loaded;
+    private final int[] coins;
+    private final int change;
+
+    MachineSnapshot(Catalog catalog, Currency currency, long version, int[] ids, int[] stock, long[] loaded,
+            int[] coins, int change) {
+        this.catalog = catalog;
+        this.currency = currency;
+        this.version = version;
+        this.ids = ids;
+        this.stock = stock;
+        this.loaded = loaded;
+        this.coins = coins;
+        this.change = change;
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getItemCount() {
+        return ids.length;
+    }
+
+    public int getItemId(int index) {
+        return ids[index];
+    }
+
+    public int getStockAt(int index) {
+        return stock[index];
+    }
+
+    public long getItemsSoldAt(int index) {
+        return loaded[index] - stock[index];
+    }
+
+    public int getStock(int id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index < 0 ? 0 : stock[index];
+    }
+
+    public long getItemsSold(int id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index < 0 ? 0 : loaded[index] - stock[index];
+    }
+
+    public int getCoinCount(int index) {
+        return coins[index];
+    }
+
+    public int getChange() {
+        return change;
+    }
+}
@@ -0,0 +1,89 @@
+package com.vendingmachine.service;
+
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientFundsException;
+import com.vendingmachine.exception.ItemNotAvailableException;
+
+/**
+ * How an attempt to buy an item ended. The purchase path returns one of these rather than throwing, so a
+ * sold-out rush costs no more than a sale; every outcome is a shared constant but a shortfall of more
+ * than 1,024 cents, which only an item dearer than that can leave.
+ * {@link #throwIfFailed()} turns a failure back into the matching exception for callers that want one.
+ */
+public final class PurchaseResult {
+
+    public enum Status {
+        COMPLETED,
+        INSUFFICIENT_FUNDS,
+        INSUFFICIENT_CHANGE,
+        ITEM_NOT_AVAILABLE
+    }
+
+    public static final PurchaseResult COMPLETED = new PurchaseResult(Status.COMPLETED, 0);
+    public static final PurchaseResult INSUFFICIENT_CHANGE = new PurchaseResult(Status.INSUFFICIENT_CHANGE, 0);
+    public static final PurchaseResult ITEM_NOT_AVAILABLE = new PurchaseResult(Status.ITEM_NOT_AVAILABLE, 0);
+
+    static final int SHARED_DEFICITS = 1024;
+    private static final PurchaseResult[] SHORT_BY = new PurchaseResult[SHARED_DEFICITS + 1];
+
+    static {
+        for (int deficit = 0; deficit <= SHARED_DEFICITS; deficit++) {
+            SHORT_BY[deficit] = new PurchaseResult(Status.INSUFFICIENT_FUNDS, deficit);
+        }
+    }
+
+    private final Status status;
+    private final int deficit;
+
+    private PurchaseResult(Status status, int deficit) {
+        this.status = status;
+        this.deficit = deficit;
+    }
+
+    public static PurchaseResult insufficientFunds(int deficit) {
+        return deficit >= 0 && deficit <= SHARED_DEFICITS ? SHORT_BY[deficit] : new PurchaseResult(Status.INSUFFICIENT_FUNDS, deficit);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isCompleted() {
+        return status == Status.COMPLETED;
+    }
+
+    // the cents still to be paid when the status is INSUFFICIENT_FUNDS, and zero otherwise
+    public int getDeficit() {
+        return deficit;
+    }
+
+    public String getMessage() {
+        switch (status) {
+            case INSUFFICIENT_FUNDS:
+                return InsufficientFundsException.message(deficit);
+            case INSUFFICIENT_CHANGE:
+                return InsufficientChangeException.MESSAGE;
+            case ITEM_NOT_AVAILABLE:
+                return ItemNotAvailableException.MESSAGE;
+            default:
+                return null;
+        }
+    }
+
+    public void throwIfFailed() throws InsufficientFundsException, InsufficientChangeException, ItemNotAvailableException {
+        switch (status) {
+            case INSUFFICIENT_FUNDS:
+                throw new InsufficientFundsException(deficit);
+            case INSUFFICIENT_CHANGE:
+                throw new InsufficientChangeException();
+            case ITEM_NOT_AVAILABLE:
+                throw new ItemNotAvailableException();
+            default:
+        }
+    }
+
+    @Override
+    public String toString() {
+        return status == Status.INSUFFICIENT_FUNDS ? status + "(" + deficit + ")" : status.name();
+    }
+}
@@ -0,0 +1,91 @@
+package com.vendingmachine.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The SKUs a machine carries, sorted by id, and the counters for each of them at its position in that
+ * list: how many are in stock, how many were ever loaded, and a bit that is set while it is in stock. A
+ * machine carries a few hundred SKUs out of a catalog that can run to tens of thousands, so nothing here
+ * is sized to the catalog. A machine that takes on a new SKU swaps in a larger copy while no write is in
+ * progress, so the counters in one of these are never written once it has been replaced.
+ */
+final class Stock {
+
+    static final int NOT_CARRIED = -1;
+    static final Stock EMPTY = new Stock(new int[0]);
+
+    private final int[] ids;
+    // ids are 0 to size - 1, as in a machine carrying the whole of a small catalog, so no search is needed
+    private final boolean dense;
+    final AtomicIntegerArray counts;
+    final AtomicLongArray loaded;
+    // bit slot % 64 of word slot / 64 is set while that SKU is in stock, and only rewritten when a count
+    // crosses zero
+    final AtomicLongArray inStock;
+
+    private Stock(int[] ids) {
+        this.ids = ids;
+        this.dense = ids.length == 0 || ids[ids.length - 1] == ids.length - 1;
+        this.counts = new AtomicIntegerArray(ids.length);
+        this.loaded = new AtomicLongArray(ids.length);
+        this.inStock = new AtomicLongArray((ids.length + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    int id(int slot) {
+        return ids[slot];
+    }
+
+    // shared with snapshots, which must not modify it
+    int[] ids() {
+        return ids;
+    }
+
+    int slot(int id) {
+        if (dense) {
+            return id >= 0 && id < ids.length ? id : NOT_CARRIED;
+        }
+        int slot = Arrays.binarySearch(ids, id);
+        return slot < 0 ? NOT_CARRIED : slot;
+    }
+
+    /**
+     * A copy that also carries every SKU with a non-zero count among the first {@code items} of
+     * {@code extraItems}, which is indexed by id. Only valid while nothing else writes to this one.
+     */
+    Stock carrying(int[] extraItems, int items) {
+        int[] merged = Arrays.copyOf(ids, ids.length + countMissing(extraItems, items));
+        int size = ids.length;
+        for (int id = 0; id < items; id++) {
+            if (extraItems[id] != 0 && slot(id) == NOT_CARRIED) {
+                merged[size++] = id;
+            }
+        }
+        Arrays.sort(merged);
+        Stock copy = new Stock(merged);
+        for (int slot = 0; slot < ids.length; slot++) {
+            int to = copy.slot(ids[slot]);
+            copy.counts.set(to, counts.get(slot));
+            copy.loaded.set(to, loaded.get(slot));
+            if (counts.get(slot) > 0) {
+                copy.inStock.set(to / Long.SIZE, copy.inStock.get(to / Long.SIZE) | 1L << to);
+            }
+        }
+        return copy;
+    }
+
+    int countMissing(int[] extraItems, int items) {
+        int missing = 0;
+        for (int id = 0; id < items; id++) {
+            if (extraItems[id] != 0 && slot(id) == NOT_CARRIED) {
+                missing++;
+            }
+        }
+        return missing;
+    }
+}
@@ -1,142 +1,664 @@
 package com.vendingmachine.service;
 
 import com.google.common.collect.ImmutableMap;
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.change.ChangeStrategy;
+import com.vendingmachine.domain.Coins;
 import com.vendingmachine.domain.Denomination;
 import com.vendingmachine.domain.ItemType;
 import com.vendingmachine.exception.InsufficientChangeException;
 import com.vendingmachine.exception.InsufficientFundsException;
 import com.vendingmachine.exception.ItemNotAvailableException;
+import com.vendingmachine.exception.TooManySessionsException;
 
-import java.util.HashMap;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 public class VendingMachine {
 
-    private final Map<ItemType, Integer> itemInventory;
-    private final Map<Denomination, Integer> change;
-    private final Map<Denomination, Integer> coinsForCurrentTransaction = new HashMap<>();
-    private Optional<ItemType> pendingItem = Optional.empty();
+    public static final long DEFAULT_SESSION = 0;
+    public static final Duration DEFAULT_SESSION_IDLE_TIMEOUT = Duration.ofMinutes(5);
+    public static final int DEFAULT_MAX_SESSIONS = 1024;
+
+    private static final int NO_ITEM = -1;
+    // a token is all it takes to add to a session's coins or take them back, so tokens must not be guessable
+    private static final SecureRandom SESSION_TOKENS = new SecureRandom();
+
+    private final Catalog catalog;
+    private final PriceList prices;
+    private final Currency currency;
+    private final int[] faceValues;
+    // only the SKUs this machine has been loaded with, so the purchase path never boxes and a machine
+    // costs what it carries rather than what the catalog holds; replaced by a larger copy, with writes
+    // held off, when a SKU is first loaded, so a write must read it after it begins
+    private volatile Stock stock = Stock.EMPTY;
+    private final CoinFloat coinFloat;
+    // brackets every change to the stock and float, so a snapshot can see them all at one point in between
+    private final WriteSequence writes = new WriteSequence();
+    // moves on after every rewrite of the in-stock bits, so the snapshot below can tell it is stale
+    private final AtomicInteger inStockVersion = new AtomicInteger();
+    private volatile AvailableItems inStockSnapshot;
+    private final PurchaseSession defaultSession;
+    private final Map<Long, PurchaseSession> sessions = new ConcurrentHashMap<>();
+    // held in a field because a lambda that captures the machine would be allocated on every purchase
+    private final Function<Long, PurchaseSession> newSession;
+    // a session left alone for this long is reclaimed and its coins handed back, so abandoned purchases
+    // cannot pile up, and once this many are open no more are opened until one ends or goes idle; a live
+    // session is never pushed out, or a flood of new ones could take its customer's coins out of reach
+    private volatile long sessionIdleNanos = DEFAULT_SESSION_IDLE_TIMEOUT.toNanos();
+    private volatile int maxSessions = DEFAULT_MAX_SESSIONS;
+    private volatile LongSupplier nanoClock = System::nanoTime;
+    private final AtomicLong nextSessionSweep = new AtomicLong(System.nanoTime());
+    private final ChangeStrategy changeStrategy;
+    private volatile VendingMachineListener listener = VendingMachineListener.NONE;
 
     public VendingMachine(Map<ItemType, Integer> initialInventory, Map<Denomination, Integer> initialChange) {
-        this.itemInventory = initialInventory;
-        this.change = initialChange;
+        this(initialInventory, initialChange, Currency.DEFAULT.changeStrategy());
+    }
+
+    public VendingMachine(Map<ItemType, Integer> initialInventory, Map<Denomination, Integer> initialChange, ChangeStrategy changeStrategy) {
+        this(PriceList.of(Catalog.DEFAULT), changeStrategy);
+        loadItems(initialInventory);
+        loadChange(initialChange);
+    }
+
+    public VendingMachine(PriceList prices, ChangeStrategy changeStrategy) {
+        this(prices, Currency.DEFAULT, changeStrategy);
+    }
+
+    // an empty machine selling from the catalog behind the given prices, which are usually this machine's
+    // overrides of its site's price list, and making change with a strategy built for its currency
+    public VendingMachine(PriceList prices, Currency currency, ChangeStrategy changeStrategy) {
+        this.catalog = prices.catalog();
+        this.prices = prices;
+        this.currency = currency;
+        this.faceValues = currency.faceValues();
+        this.changeStrategy = changeStrategy;
+        this.coinFloat = new CoinFloat(faceValues);
+        this.defaultSession = new PurchaseSession(DEFAULT_SESSION, faceValues.length, 0);
+        this.newSession = token -> new PurchaseSession(token, faceValues.length, nanoClock.getAsLong());
+        this.inStockSnapshot = new AvailableItems(catalog, 0, new int[0]);
+    }
+
+    public void setListener(VendingMachineListener listener) {
+        this.listener = listener;
+    }
+
+    public void setSessionLimits(Duration idleTimeout, int maxSessions) {
+        setSessionLimits(idleTimeout, maxSessions, System::nanoTime);
+    }
+
+    void setSessionLimits(Duration idleTimeout, int maxSessions, LongSupplier nanoClock) {
+        if (idleTimeout.isNegative() || idleTimeout.isZero() || maxSessions < 1) {
+            throw new IllegalArgumentException("Sessions need a positive idle timeout and room for at least one.");
+        }
+        this.sessionIdleNanos = idleTimeout.toNanos();
+        this.maxSessions = maxSessions;
+        this.nanoClock = nanoClock;
+        this.nextSessionSweep.set(nanoClock.getAsLong());
+    }
+
+    public int openSessions() {
+        return sessions.size();
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    public PriceList getPrices() {
+        return prices;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    // the ids of the SKUs this machine carries, in order; every other SKU has no stock and has never sold
+    public int[] carriedItems() {
+        return stock.ids().clone();
+    }
+
+    public int carriedItemCount() {
+        return stock.size();
+    }
+
+    /**
+     * The SKUs in stock. The snapshot is rebuilt from the in-stock bits only after an item sells out or
+     * comes back into stock, so between those reads neither scan the stock nor allocate.
+     */
+    public AvailableItems inStock() {
+        AvailableItems snapshot = inStockSnapshot;
+        int version = inStockVersion.get();
+        if (snapshot.version() == version) {
+            return snapshot;
+        }
+        // the version is read before the bits, so a change that lands part way through is picked up next time
+        Stock carried = stock;
+        int[] ids = new int[carried.size()];
+        int count = 0;
+        for (int word = 0; word < carried.inStock.length(); word++) {
+            long bits = carried.inStock.get(word);
+            while (bits != 0) {
+                ids[count++] = carried.id(word * Long.SIZE + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        snapshot = new AvailableItems(catalog, version, Arrays.copyOf(ids, count));
+        inStockSnapshot = snapshot;
+        return snapshot;
     }
 
+    // the built-in items in stock
     public Set<ItemType> availableItems() {
-        return itemInventory.entrySet().stream()
-                .filter(item -> item.getValue() > 0)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toSet());
+        return inStock().itemTypes();
     }
 
     public int getChange() {
-        return calculateTotal(change);
+        return coinFloat.value();
+    }
+
+    /**
+     * The stock, sales and float at one point between writes, read without a lock while purchases go on.
+     * The single-count reads above are each up to date on their own, but two of them taken during a
+     * purchase can disagree about whether it has happened.
+     */
+    public MachineSnapshot snapshot() {
+        SnapshotCopy copy = new SnapshotCopy();
+        long version = writes.read(copy);
+        return new MachineSnapshot(catalog, currency, version, copy.carried.ids(), copy.stock, copy.loaded,
+                copy.coins, copy.change);
+    }
+
+    public int getStock(ItemType itemType) {
+        int id = catalog.id(itemType);
+        return id == NO_ITEM ? 0 : getStock(id);
+    }
+
+    public int getStock(int id) {
+        Stock carried = stock;
+        int slot = carried.slot(id);
+        return slot == Stock.NOT_CARRIED ? 0 : carried.counts.get(slot);
+    }
+
+    public long getItemsSold(ItemType itemType) {
+        int id = catalog.id(itemType);
+        return id == NO_ITEM ? 0 : getItemsSold(id);
+    }
+
+    // read loaded before stock, and loadItems writes them the other way round, so a concurrent restock
+    // can only make this lag behind rather than overshoot
+    public long getItemsSold(int id) {
+        Stock carried = stock;
+        int slot = carried.slot(id);
+        if (slot == Stock.NOT_CARRIED) {
+            return 0;
+        }
+        long loaded = carried.loaded.get(slot);
+        return loaded - carried.counts.get(slot);
+    }
+
+    public int getCoinCount(Denomination denomination) {
+        int index = currency.index(denomination.name());
+        return index < 0 ? 0 : getCoinCount(index);
+    }
+
+    public int getCoinCount(int index) {
+        return coinFloat.count(index);
     }
 
     public int getPrice(ItemType itemType) {
-        return itemType.price;
+        int id = catalog.id(itemType);
+        return id == NO_ITEM ? itemType.price : getPrice(id);
+    }
+
+    public int getPrice(int id) {
+        return prices.price(id);
+    }
+
+    /**
+     * Opens a session under a new random token, which is not one already open. Sessions left idle are
+     * reclaimed first, and if the machine still has as many open as it allows, none is opened.
+     */
+    public long newSessionToken() throws TooManySessionsException {
+        if (!makeRoomForSession()) {
+            throw new TooManySessionsException();
+        }
+        long now = nanoClock.getAsLong();
+        while (true) {
+            long token = SESSION_TOKENS.nextLong();
+            if (token != DEFAULT_SESSION && sessions.putIfAbsent(token, new PurchaseSession(token, faceValues.length, now)) == null) {
+                return token;
+            }
+        }
     }
 
     public Map<Denomination, Integer> buyItem(ItemType itemType, Map<Denomination, Integer> coins) throws InsufficientFundsException, InsufficientChangeException, ItemNotAvailableException {
-        if (pendingItem.isPresent()) {
-            returnCoins();
+        return buyItem(DEFAULT_SESSION, itemType, coins);
+    }
+
+    public Map<Denomination, Integer> buyItem(long sessionToken, ItemType itemType, Map<Denomination, Integer> coins) throws InsufficientFundsException, InsufficientChangeException, ItemNotAvailableException {
+        int[] changeToPay = new int[faceValues.length];
+        buyItem(sessionToken, itemType, toCounts(coins), changeToPay);
+        return toDenominations(changeToPay);
+    }
+
+    public void buyItem(ItemType itemType, int[] coins, int[] changeToPay) throws InsufficientFundsException, InsufficientChangeException, ItemNotAvailableException {
+        buyItem(DEFAULT_SESSION, itemType, coins, changeToPay);
+    }
+
+    public void buyItem(long sessionToken, ItemType itemType, int[] coins, int[] changeToPay) throws InsufficientFundsException, InsufficientChangeException, ItemNotAvailableException {
+        tryBuyItem(sessionToken, catalog.id(itemType), coins, changeToPay).throwIfFailed();
+    }
+
+    public PurchaseResult tryBuyItem(long sessionToken, ItemType itemType, int[] coins, int[] changeToPay) {
+        return tryBuyItem(sessionToken, catalog.id(itemType), coins, changeToPay);
+    }
+
+    public PurchaseResult tryBuyItem(long sessionToken, int id, int[] coins, int[] changeToPay) {
+        if (id < 0 || id >= catalog.size()) {
+            return PurchaseResult.ITEM_NOT_AVAILABLE;
+        }
+        while (true) {
+            PurchaseSession session = sessionToken == DEFAULT_SESSION
+                    ? defaultSession
+                    : openSession(sessionToken);
+            if (session == null) {
+                // the machine is full, and the customer's coins were never taken
+                return PurchaseResult.ITEM_NOT_AVAILABLE;
+            }
+            synchronized (session) {
+                // a purchase that completed while this one waited for the lock has ended the session, and
+                // coins left in it would be out of reach of returnCoins, so look the token up again; an idle
+                // session hands its coins back first, and the purchase starts afresh in a new one
+                if (session != defaultSession && (sessions.get(sessionToken) != session || reclaimIfIdle(session))) {
+                    continue;
+                }
+                if (session.pendingItem != NO_ITEM) {
+                    // the session stays registered, since the coins inserted now belong in it
+                    listener.coinsReturned(session.token, session.coins);
+                    session.clear();
+                }
+                session.addCoins(coins);
+                session.pendingItem = id;
+                session.lastUsed = nanoClock.getAsLong();
+                listener.coinsInserted(session.token, id, coins);
+                return buyItem(session, changeToPay);
+            }
         }
-        loadCoinsForCurrentTransaction(coins);
-        pendingItem = Optional.of(itemType);
-        return buyItem();
     }
 
-    private Map<Denomination, Integer> buyItem() throws InsufficientFundsException, InsufficientChangeException, ItemNotAvailableException {
-        ItemType itemType = pendingItem.orElseThrow();
-        if (itemInventory.getOrDefault(itemType, 0) == 0) {
-            throw new ItemNotAvailableException();
+    private PurchaseResult buyItem(PurchaseSession session, int[] changeToPay) {
+        int id = session.pendingItem;
+        if (getStock(id) <= 0) {
+            return rejected(session, PurchaseResult.ITEM_NOT_AVAILABLE);
+        }
+        int price = prices.price(id);
+        int totalPaid = session.total;
+        if (totalPaid < price) {
+            return rejected(session, PurchaseResult.insufficientFunds(price - totalPaid));
         }
-        int totalPaid = calculateTotal(coinsForCurrentTransaction);
-        if (totalPaid < itemType.price) {
-            throw new InsufficientFundsException(itemType.price - totalPaid);
-        } else {
-            int changeOwed = totalPaid - itemType.price;
-            int availableChange = calculateTotal(change);
-            if (availableChange < changeOwed) {
-                throw new InsufficientChangeException();
+        // the change is set aside before the item, so a purchase that falls through leaves the float as it found it
+        if (!reserveChange(session, totalPaid - price, changeToPay)) {
+            return rejected(session, PurchaseResult.INSUFFICIENT_CHANGE);
+        }
+        boolean released;
+        try {
+            released = releaseItem(id);
+            if (released) {
+                coinFloat.commit(session.coins, changeToPay);
+            } else {
+                coinFloat.rollback(session.coins, changeToPay);
             }
-            Map<Denomination, Integer> changeToPay = calculateChange(changeOwed);
-            releaseItem(itemType);
-            return changeToPay;
+        } finally {
+            writes.endWrite();
+        }
+        if (!released) {
+            return rejected(session, PurchaseResult.ITEM_NOT_AVAILABLE);
         }
+        listener.purchaseCompleted(session.token, id, session.coins, changeToPay);
+        endSession(session);
+        return PurchaseResult.COMPLETED;
+    }
+
+    private PurchaseResult rejected(PurchaseSession session, PurchaseResult result) {
+        listener.purchaseFailed(session.token, session.pendingItem, session.coins, result);
+        return result;
     }
 
     public Map<Denomination, Integer> addCoins(Map<Denomination, Integer> additionalCoins) throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException {
-        if (pendingItem.isEmpty()) {
-            throw new ItemNotAvailableException();
-        }
-        loadCoinsForCurrentTransaction(additionalCoins);
-        return buyItem();
+        return addCoins(DEFAULT_SESSION, additionalCoins);
     }
 
-    private void loadCoinsForCurrentTransaction(Map<Denomination, Integer> coins) {
-        coins.forEach((coin, count) -> {
-            coinsForCurrentTransaction.putIfAbsent(coin, 0);
-            coinsForCurrentTransaction.put(coin, coinsForCurrentTransaction.get(coin) + count);
-        });
-        loadChange(coins);
+    public Map<Denomination, Integer> addCoins(long sessionToken, Map<Denomination, Integer> additionalCoins) throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException {
+        int[] changeToPay = new int[faceValues.length];
+        addCoins(sessionToken, toCounts(additionalCoins), changeToPay);
+        return toDenominations(changeToPay);
+    }
+
+    public void addCoins(int[] additionalCoins, int[] changeToPay) throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException {
+        addCoins(DEFAULT_SESSION, additionalCoins, changeToPay);
+    }
+
+    public void addCoins(long sessionToken, int[] additionalCoins, int[] changeToPay) throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException {
+        tryAddCoins(sessionToken, additionalCoins, changeToPay).throwIfFailed();
+    }
+
+    public PurchaseResult tryAddCoins(long sessionToken, int[] additionalCoins, int[] changeToPay) {
+        PurchaseSession session = session(sessionToken);
+        if (session == null) {
+            return PurchaseResult.ITEM_NOT_AVAILABLE;
+        }
+        synchronized (session) {
+            if (session.pendingItem == NO_ITEM || session != defaultSession && reclaimIfIdle(session)) {
+                return PurchaseResult.ITEM_NOT_AVAILABLE;
+            }
+            session.addCoins(additionalCoins);
+            session.lastUsed = nanoClock.getAsLong();
+            listener.coinsInserted(session.token, session.pendingItem, additionalCoins);
+            return buyItem(session, changeToPay);
+        }
     }
 
     public Map<Denomination, Integer> returnCoins() {
-        // assume this also returns coins to customer
-        Map<Denomination, Integer> returnedCoins = ImmutableMap.copyOf(coinsForCurrentTransaction);
-        coinsForCurrentTransaction.forEach((denomination, count) -> {
-            change.put(denomination, change.get(denomination) - count);
-        });
-        coinsForCurrentTransaction.clear();
-        pendingItem = Optional.empty();
-        return returnedCoins;
+        return returnCoins(DEFAULT_SESSION);
+    }
+
+    public Map<Denomination, Integer> returnCoins(long sessionToken) {
+        int[] returnedCoins = new int[faceValues.length];
+        returnCoins(sessionToken, returnedCoins);
+        return toDenominations(returnedCoins);
+    }
+
+    public void returnCoins(long sessionToken, int[] returnedCoins) {
+        PurchaseSession session = session(sessionToken);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            // assume this also returns coins to customer
+            System.arraycopy(session.coins, 0, returnedCoins, 0, faceValues.length);
+            listener.coinsReturned(session.token, returnedCoins);
+            endSession(session);
+        }
     }
 
     public void loadChange(Map<Denomination, Integer> extraChange) {
-        extraChange.forEach((denomination, count) -> {
-            change.putIfAbsent(denomination, 0);
-            change.put(denomination, change.get(denomination) + count);
-        });
+        loadChange(toCounts(extraChange));
+    }
+
+    // counts indexed by coin; a shorter array leaves the coins past its end alone
+    public void loadChange(int[] extraChange) {
+        writes.beginWrite();
+        try {
+            coinFloat.load(extraChange);
+        } finally {
+            writes.endWrite();
+        }
+        listener.changeLoaded(extraChange);
     }
 
     public void loadItems(Map<ItemType, Integer> extraItems) {
+        int[] counts = new int[catalog.size()];
         extraItems.forEach((itemType, count) -> {
-            itemInventory.putIfAbsent(itemType, 0);
-            itemInventory.put(itemType, itemInventory.get(itemType) + count);
+            int id = catalog.id(itemType);
+            if (id == NO_ITEM) {
+                throw new IllegalArgumentException(itemType + " is not in the catalog.");
+            }
+            counts[id] += count;
+        });
+        loadItems(counts);
+    }
+
+    // counts indexed by SKU id; a shorter array leaves the SKUs past its end alone, and a SKU the machine
+    // does not carry yet is taken on
+    public void loadItems(int[] extraItems) {
+        int items = Math.min(extraItems.length, catalog.size());
+        if (stock.countMissing(extraItems, items) > 0) {
+            // no SKU is ever dropped, so once these are carried they still are when the write below begins
+            writes.writeAlone(() -> stock = stock.carrying(extraItems, items));
+            inStockVersion.incrementAndGet();
+        }
+        writes.beginWrite();
+        try {
+            Stock carried = stock;
+            for (int i = 0; i < items; i++) {
+                if (extraItems[i] != 0) {
+                    int slot = carried.slot(i);
+                    int count = carried.counts.addAndGet(slot, extraItems[i]);
+                    carried.loaded.addAndGet(slot, extraItems[i]);
+                    if (count > 0 != count - extraItems[i] > 0) {
+                        refreshInStock(carried, slot);
+                    }
+                }
+            }
+        } finally {
+            writes.endWrite();
+        }
+        listener.itemsLoaded(extraItems);
+    }
+
+    // the Denomination forms of the API predate currencies, and only work for a currency with the same coin names
+    private int[] toCounts(Map<Denomination, Integer> coins) {
+        if (currency == Currency.DEFAULT) {
+            return Coins.toCounts(coins);
+        }
+        int[] counts = new int[faceValues.length];
+        coins.forEach((denomination, count) -> {
+            int index = currency.index(denomination.name());
+            if (index < 0) {
+                throw new IllegalArgumentException(currency.code() + " has no coin called " + denomination + ".");
+            }
+            counts[index] += count;
         });
+        return counts;
+    }
+
+    private Map<Denomination, Integer> toDenominations(int[] counts) {
+        if (currency == Currency.DEFAULT) {
+            return Coins.toMap(counts);
+        }
+        ImmutableMap.Builder<Denomination, Integer> coins = ImmutableMap.builder();
+        for (int i = 0; i < faceValues.length; i++) {
+            if (counts[i] != 0) {
+                coins.put(Denomination.valueOf(currency.coin(i)), counts[i]);
+            }
+        }
+        return coins.build();
     }
 
-    private void releaseItem(ItemType itemType) {
+    private PurchaseSession session(long sessionToken) {
+        return sessionToken == DEFAULT_SESSION ? defaultSession : sessions.get(sessionToken);
+    }
+
+    private void endSession(PurchaseSession session) {
+        session.clear();
+        if (session.token != DEFAULT_SESSION) {
+            sessions.remove(session.token, session);
+        }
+    }
+
+    // the session for a token, opened again if a purchase has ended it, or null when the machine is full
+    private PurchaseSession openSession(long sessionToken) {
+        PurchaseSession session = sessions.get(sessionToken);
+        if (session != null || !makeRoomForSession()) {
+            return session;
+        }
+        return sessions.computeIfAbsent(sessionToken, newSession);
+    }
+
+    // idle sessions are swept at most every quarter of the idle timeout, or whenever the machine is full;
+    // the cap can be overshot by as many threads as open sessions at once, since they check and then add
+    // theirs without holding one another up
+    private boolean makeRoomForSession() {
+        long now = nanoClock.getAsLong();
+        long sweep = nextSessionSweep.get();
+        boolean full = sessions.size() >= maxSessions;
+        if (full || now - sweep >= 0 && nextSessionSweep.compareAndSet(sweep, now + sessionIdleNanos / 4)) {
+            sweepSessions();
+        }
+        return sessions.size() < maxSessions;
+    }
+
+    private void sweepSessions() {
+        for (PurchaseSession session : sessions.values()) {
+            synchronized (session) {
+                if (sessions.get(session.token) == session) {
+                    reclaimIfIdle(session);
+                }
+            }
+        }
+    }
+
+    // with the session's lock held
+    private boolean reclaimIfIdle(PurchaseSession session) {
+        if (nanoClock.getAsLong() - session.lastUsed < sessionIdleNanos) {
+            return false;
+        }
+        reclaim(session);
+        return true;
+    }
+
+    // the customer has walked away, so their coins go back out of the return slot as returnCoins would send them
+    private void reclaim(PurchaseSession session) {
+        listener.coinsReturned(session.token, session.coins);
+        endSession(session);
+    }
+
+    // inside a write, so the SKU is still where the check before it found it
+    private boolean releaseItem(int id) {
         // assume this also releases item to customer
-        itemInventory.put(itemType, itemInventory.get(itemType) - 1);
+        Stock carried = stock;
+        int slot = carried.slot(id);
+        if (!decrementIfPositive(carried.counts, slot, 1)) {
+            return false;
+        }
+        if (carried.counts.get(slot) == 0) {
+            refreshInStock(carried, slot);
+        }
+        return true;
     }
 
-    private int calculateTotal(Map<Denomination, Integer> coins) {
-        return coins.entrySet().stream()
-                .map(coin -> coin.getKey().totalCents * coin.getValue())
-                .reduce(0, Integer::sum);
+    // called inside a write after every count that crosses zero; if another crossing lands between reading
+    // the count and writing the bit, the count no longer matches what was written and this goes round again
+    private void refreshInStock(Stock carried, int slot) {
+        int word = slot / Long.SIZE;
+        long bit = 1L << slot;
+        while (true) {
+            long bits = carried.inStock.get(word);
+            boolean available = carried.counts.get(slot) > 0;
+            long updated = available ? bits | bit : bits & ~bit;
+            boolean written = updated == bits || carried.inStock.compareAndSet(word, bits, updated);
+            if (written && updated != bits) {
+                inStockVersion.incrementAndGet();
+            }
+            if (written && carried.counts.get(slot) > 0 == available) {
+                return;
+            }
+        }
     }
 
-    private Map<Denomination, Integer> calculateChange(int changeOwed) throws InsufficientChangeException {
-        return calculateChange(new HashMap<>(), changeOwed);
+    // returns true inside a write, which the caller ends once the purchase has committed or rolled back;
+    // the change is planned outside it, so snapshots only wait for the counts to be moved
+    private boolean reserveChange(PurchaseSession session, int changeOwed, int[] changeToPay) {
+        int[] inserted = session.coins;
+        int[] available = session.available;
+        while (true) {
+            // the customer's coins only join the float once the purchase commits
+            coinFloat.available(inserted, available);
+            if (!changeStrategy.makeChange(changeOwed, available, changeToPay)) {
+                return false;
+            }
+            writes.beginWrite();
+            if (coinFloat.reserve(inserted, changeToPay)) {
+                return true;
+            }
+            writes.endWrite();
+            // another purchase reserved the coins we planned to pay out, so plan again
+        }
     }
 
-    private Map<Denomination, Integer> calculateChange(Map<Denomination, Integer> changeBreakdown, int changeOwed) throws InsufficientChangeException {
-        if (changeOwed == calculateTotal(changeBreakdown)) {
-            return changeBreakdown;
+    private static boolean decrementIfPositive(AtomicIntegerArray counters, int index, int amount) {
+        while (true) {
+            int current = counters.get(index);
+            if (current < amount) {
+                return false;
+            }
+            if (counters.compareAndSet(index, current, current - amount)) {
+                return true;
+            }
+        }
+    }
+
+    // the arrays are sized once the read has the stock in hand, and again if a retry finds it has grown
+    private class SnapshotCopy implements Runnable {
+
+        private Stock carried;
+        private int[] stock;
+        private long[] loaded;
+        private final int[] coins = new int[faceValues.length];
+        private int change;
+
+        @Override
+        public void run() {
+            Stock current = VendingMachine.this.stock;
+            if (current != carried) {
+                carried = current;
+                stock = new int[current.size()];
+                loaded = new long[current.size()];
+            }
+            for (int slot = 0; slot < stock.length; slot++) {
+                loaded[slot] = current.loaded.get(slot);
+                stock[slot] = current.counts.get(slot);
+            }
+            for (int coin = 0; coin < coins.length; coin++) {
+                coins[coin] = coinFloat.count(coin);
+            }
+            change = coinFloat.value();
+        }
+    }
+
+    private class PurchaseSession {
+
+        private final long token;
+        private final int[] coins;
+        private final int[] available;
+        private int total;
+        private int pendingItem = NO_ITEM;
+        // written under the session's lock, and read by sweeps comparing sessions they do not hold
+        private volatile long lastUsed;
+
+        private PurchaseSession(long token, int coinCount, long lastUsed) {
+            this.token = token;
+            this.coins = new int[coinCount];
+            this.available = new int[coinCount];
+            this.lastUsed = lastUsed;
+        }
+
+        private void addCoins(int[] additionalCoins) {
+            for (int i = 0; i < coins.length; i++) {
+                coins[i] += additionalCoins[i];
+                total += additionalCoins[i] * faceValues[i];
+            }
+        }
+
+        private void clear() {
+            for (int i = 0; i < coins.length; i++) {
+                coins[i] = 0;
+            }
+            total = 0;
+            pendingItem = NO_ITEM;
         }
-        Denomination coinAvailable = Denomination.ordered().stream()
-                .filter(denomination -> denomination.totalCents <= changeOwed)
-                .filter(denomination -> change.getOrDefault(denomination, 0) > 0)
-                .findFirst()
-                .orElseThrow(InsufficientChangeException::new);
-        change.put(coinAvailable, change.get(coinAvailable) - 1);
-        changeBreakdown.putIfAbsent(coinAvailable, 0);
-        changeBreakdown.put(coinAvailable, changeBreakdown.get(coinAvailable) + 1);
-        return calculateChange(changeBreakdown, changeOwed);
     }
 }
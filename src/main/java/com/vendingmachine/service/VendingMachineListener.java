@@ -0,0 +1,76 @@
+package com.vendingmachine.service;
+
+// called after each change to a machine's state; items are SKU ids, coin and item counts are indexed by
+// ordinal and id, and the arrays are only valid for the duration of the call
+public interface VendingMachineListener {
+
+    VendingMachineListener NONE = new VendingMachineListener() {
+    };
+
+    default void itemsLoaded(int[] items) {
+    }
+
+    default void changeLoaded(int[] coins) {
+    }
+
+    default void coinsInserted(long sessionToken, int item, int[] coins) {
+    }
+
+    default void purchaseCompleted(long sessionToken, int item, int[] coinsPaid, int[] changePaid) {
+    }
+
+    // the coins offered are all those in the session, which stay there for the customer to add to or take back
+    default void purchaseFailed(long sessionToken, int item, int[] coinsOffered, PurchaseResult result) {
+    }
+
+    default void coinsReturned(long sessionToken, int[] coins) {
+    }
+
+    default VendingMachineListener andThen(VendingMachineListener next) {
+        if (this == NONE) {
+            return next;
+        }
+        if (next == NONE) {
+            return this;
+        }
+        VendingMachineListener first = this;
+        return new VendingMachineListener() {
+
+            @Override
+            public void itemsLoaded(int[] items) {
+                first.itemsLoaded(items);
+                next.itemsLoaded(items);
+            }
+
+            @Override
+            public void changeLoaded(int[] coins) {
+                first.changeLoaded(coins);
+                next.changeLoaded(coins);
+            }
+
+            @Override
+            public void coinsInserted(long sessionToken, int item, int[] coins) {
+                first.coinsInserted(sessionToken, item, coins);
+                next.coinsInserted(sessionToken, item, coins);
+            }
+
+            @Override
+            public void purchaseCompleted(long sessionToken, int item, int[] coinsPaid, int[] changePaid) {
+                first.purchaseCompleted(sessionToken, item, coinsPaid, changePaid);
+                next.purchaseCompleted(sessionToken, item, coinsPaid, changePaid);
+            }
+
+            @Override
+            public void purchaseFailed(long sessionToken, int item, int[] coinsOffered, PurchaseResult result) {
+                first.purchaseFailed(sessionToken, item, coinsOffered, result);
+                next.purchaseFailed(sessionToken, item, coinsOffered, result);
+            }
+
+            @Override
+            public void coinsReturned(long sessionToken, int[] coins) {
+                first.coinsReturned(sessionToken, coins);
+                next.coinsReturned(sessionToken, coins);
+            }
+        };
+    }
+}
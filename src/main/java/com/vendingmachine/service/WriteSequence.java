@@ -0,0 +1,90 @@
+package com.vendingmachine.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A seqlock that any number of writers can be inside at once, so purchases never wait for each other to
+ * take a snapshot's worth of state consistent. One word holds the number of writes in progress and the
+ * number finished. A reader copies whatever it needs while no write is in progress, and keeps the copy if
+ * the word has not moved since. A reader that keeps losing to writers, which only happens when writes
+ * overlap without a gap, raises a flag that holds new writes at the door until the writes already in
+ * progress have finished and it has taken its copy, so it always gets one. Writers only ever wait that
+ * long, and only for a reader that could not get in otherwise.
+ */
+final class WriteSequence {
+
+    private static final long WRITER = 1;
+    private static final long DRAINING = 1L << 31;
+    private static final long WRITERS = DRAINING - 1;
+    private static final long FINISHED = 1L << 32;
+    private static final int OPTIMISTIC_READS = 64;
+
+    // [finished writes: 32][draining: 1][writes in progress: 31]
+    private final AtomicLong state = new AtomicLong();
+    // held by a reader that has fallen back on draining, so only one holds writers back at a time
+    private final Object drain = new Object();
+
+    void beginWrite() {
+        while (true) {
+            long current = state.get();
+            if ((current & DRAINING) != 0) {
+                Thread.yield();
+            } else if (state.compareAndSet(current, current + WRITER)) {
+                return;
+            }
+        }
+    }
+
+    void endWrite() {
+        state.getAndAdd(FINISHED - WRITER);
+    }
+
+    /**
+     * Runs {@code change} with no write in progress and none let in until it is done, for a change that
+     * moves the state other writes work on. It is not counted as a write, so it must leave every value a
+     * reader copies as it was; a reader that runs across it copies the same values from either place.
+     */
+    void writeAlone(Runnable change) {
+        synchronized (drain) {
+            state.getAndAdd(DRAINING);
+            try {
+                while ((state.get() & WRITERS) != 0) {
+                    Thread.yield();
+                }
+                change.run();
+            } finally {
+                state.getAndAdd(-DRAINING);
+            }
+        }
+    }
+
+    /**
+     * Runs {@code copy} until it has run with no write in progress from start to finish, and returns the
+     * number of writes finished before it, which only wraps after four billion of them.
+     */
+    long read(Runnable copy) {
+        for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+            long before = state.get();
+            if ((before & (WRITERS | DRAINING)) == 0) {
+                copy.run();
+                if (state.get() == before) {
+                    return before >>> 32;
+                }
+            }
+            Thread.onSpinWait();
+        }
+        synchronized (drain) {
+            state.getAndAdd(DRAINING);
+            try {
+                long current;
+                while (((current = state.get()) & WRITERS) != 0) {
+                    Thread.yield();
+                }
+                copy.run();
+                return current >>> 32;
+            } finally {
+                state.getAndAdd(-DRAINING);
+            }
+        }
+    }
+}
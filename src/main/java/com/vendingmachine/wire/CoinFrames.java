@@ -0,0 +1,122 @@
+package com.vendingmachine.wire;
+
+import com.vendingmachine.service.PurchaseResult;
+
+/**
+ * A binary form of the purchase routes' bodies, for machines that would rather not build and parse JSON.
+ * A coin frame is the number of counts that follow and then the counts themselves, in the order of the
+ * machine's currency, smallest coin first, each as an unsigned LEB128 varint. Coins past the last count
+ * are taken to be zero, so paying with a dollar is {@code 06 00 00 00 00 00 01} in US coins. A response
+ * frame starts with the {@link PurchaseResult.Status} ordinal. A completed purchase is followed by its
+ * change as a coin frame, and a purchase short of funds by the amount still owed as a varint.
+ */
+public final class CoinFrames {
+
+    public static final String MEDIA_TYPE = "application/x-vending-coins";
+
+    // five groups of seven bits hold any int
+    private static final int MAX_VARINT_BYTES = 5;
+
+    private CoinFrames() {
+    }
+
+    /**
+     * Reads a coin frame into {@code counts}, one slot per coin of the currency, without allocating.
+     * Throws {@link IllegalArgumentException} when the frame is cut short, has more counts than the
+     * currency has coins, holds a count too large for an int, or carries bytes past its end.
+     */
+    public static void decode(byte[] frame, int[] counts) {
+        long header = readVarint(frame, 0);
+        int size = (int) header;
+        int position = (int) (header >>> 32);
+        if (size > counts.length) {
+            throw new IllegalArgumentException("The frame has " + size + " coin counts, but the currency only has " + counts.length + " coins.");
+        }
+        for (int i = 0; i < size; i++) {
+            long count = readVarint(frame, position);
+            counts[i] = (int) count;
+            position = (int) (count >>> 32);
+        }
+        for (int i = size; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        if (position != frame.length) {
+            throw new IllegalArgumentException("The frame has " + (frame.length - position) + " bytes past its last coin count.");
+        }
+    }
+
+    public static byte[] encode(int[] counts) {
+        byte[] frame = new byte[varintSize(counts.length) + countsSize(counts)];
+        writeCounts(counts, frame, 0);
+        return frame;
+    }
+
+    public static byte[] encode(PurchaseResult result, int[] change) {
+        switch (result.getStatus()) {
+            case COMPLETED: {
+                byte[] frame = new byte[1 + varintSize(change.length) + countsSize(change)];
+                frame[0] = (byte) PurchaseResult.Status.COMPLETED.ordinal();
+                writeCounts(change, frame, 1);
+                return frame;
+            }
+            case INSUFFICIENT_FUNDS: {
+                byte[] frame = new byte[1 + varintSize(result.getDeficit())];
+                frame[0] = (byte) PurchaseResult.Status.INSUFFICIENT_FUNDS.ordinal();
+                writeVarint(result.getDeficit(), frame, 1);
+                return frame;
+            }
+            default:
+                return new byte[]{(byte) result.getStatus().ordinal()};
+        }
+    }
+
+    private static int countsSize(int[] counts) {
+        int size = 0;
+        for (int count : counts) {
+            if (count < 0) {
+                throw new IllegalArgumentException("Coin counts cannot be negative.");
+            }
+            size += varintSize(count);
+        }
+        return size;
+    }
+
+    private static void writeCounts(int[] counts, byte[] frame, int position) {
+        position = writeVarint(counts.length, frame, position);
+        for (int count : counts) {
+            position = writeVarint(count, frame, position);
+        }
+    }
+
+    private static int varintSize(int value) {
+        return value == 0 ? 1 : (Integer.SIZE - Integer.numberOfLeadingZeros(value) + 6) / 7;
+    }
+
+    private static int writeVarint(int value, byte[] frame, int position) {
+        while ((value & ~0x7F) != 0) {
+            frame[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        frame[position++] = (byte) value;
+        return position;
+    }
+
+    // the value in the low half and the position after it in the high half, so nothing is allocated to return both
+    private static long readVarint(byte[] frame, int position) {
+        long value = 0;
+        for (int shift = 0, i = 0; i < MAX_VARINT_BYTES; shift += 7, i++) {
+            if (position == frame.length) {
+                throw new IllegalArgumentException("The frame ends part way through a coin count.");
+            }
+            byte b = frame[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value > Integer.MAX_VALUE) {
+                    break;
+                }
+                return (long) position << 32 | value;
+            }
+        }
+        throw new IllegalArgumentException("A coin count in the frame is too large.");
+    }
+}
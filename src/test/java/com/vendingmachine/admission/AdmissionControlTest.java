@@ -0,0 +1,77 @@
+package com.vendingmachine.admission;
+
+import com.vendingmachine.exception.MachineOverloadedException;
+import com.vendingmachine.service.MachineRegistry;
+import com.vendingmachine.service.VendingMachine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AdmissionControlTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void testLimitAdaptsToLatency() {
+        AdmissionControl admissionControl = new AdmissionControl(10, 2, 12, Duration.ofMillis(50), Duration.ofSeconds(1), meterRegistry, clock::get);
+        ConcurrencyLimit limit = admissionControl.limitFor("hot");
+
+        long[] admitted = new long[10];
+        for (int i = 0; i < admitted.length; i++) {
+            admitted[i] = limit.tryAcquire();
+        }
+        assertThat(limit.tryAcquire(), is(ConcurrencyLimit.REJECTED));
+
+        // a backlog cuts the limit once per target interval, not once per slow request
+        clock.addAndGet(Duration.ofMillis(80).toNanos());
+        limit.release(admitted[0]);
+        limit.release(admitted[1]);
+        assertThat(limit.limit(), is(9));
+        assertThat(limit.inFlight(), is(8));
+
+        // fast requests while the limit is well used let it grow back, up to the max
+        for (int i = 0; i < 100; i++) {
+            limit.release(limit.tryAcquire());
+        }
+        assertThat(limit.limit(), is(12));
+        assertThat(meterRegistry.get("vending.admission.rejected").tag("machine", "hot").functionCounter().count() > 0, is(true));
+        assertThat(meterRegistry.get("vending.admission.limit").tag("machine", "hot").gauge().value(), is(12.0));
+    }
+
+    @Test
+    public void testBusyMachineDoesNotHoldUpItsShard() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(1, 1, 1, Duration.ofSeconds(10), Duration.ofSeconds(1), meterRegistry, "hot"::equals);
+        try (MachineRegistry machineRegistry = new MachineRegistry(1, machineId -> new VendingMachine(Map.of(), Map.of()), admissionControl)) {
+            machineRegistry.register("hot");
+            machineRegistry.register("cold");
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Boolean> running = machineRegistry.submit("hot", vendingMachine -> release.await(10, TimeUnit.SECONDS));
+
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> machineRegistry.submit("hot", VendingMachine::getChange).get());
+            assertThat(exception.getCause(), instanceOf(MachineOverloadedException.class));
+            CompletableFuture<Integer> cold = machineRegistry.submit("cold", VendingMachine::getChange);
+
+            release.countDown();
+            assertThat(running.get(), is(true));
+            assertThat(cold.get(), is(0));
+            assertThat(machineRegistry.submit("hot", VendingMachine::getChange).get(), is(0));
+        }
+        assertThat(meterRegistry.get("vending.fleet.admission.rejected").functionCounter().count(), is(1.0));
+        assertThat(meterRegistry.get("vending.admission.rejected").tag("machine", "hot").functionCounter().count(), is(1.0));
+        assertThat(meterRegistry.find("vending.admission.limit").tag("machine", "cold").gauge(), is(nullValue()));
+    }
+}
@@ -0,0 +1,154 @@
+package com.vendingmachine.analytics;
+
+import com.google.common.collect.ImmutableMap;
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.service.VendingMachine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SalesWindowsTest {
+
+    private static final long SECOND = 1000;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000 * SECOND);
+    private VendingMachine vendingMachine;
+    private SalesWindows windows;
+
+    @BeforeEach
+    public void setUp() {
+        vendingMachine = new VendingMachine(ImmutableMap.of(ItemType.CRISPS, 100, ItemType.MARS_BAR, 100),
+                ImmutableMap.of(Denomination.TWENTY_FIVE_CENTS, 100, Denomination.FIFTY_CENTS, 100));
+        windows = new SalesWindows(vendingMachine, SECOND, 10, 8, clock::get);
+        vendingMachine.setListener(windows);
+    }
+
+    @Test
+    public void testAggregatesSalesPerItemAndMachine() throws Exception {
+        vendingMachine.buyItem(ItemType.CRISPS, ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+        clock.addAndGet(SECOND);
+        vendingMachine.buyItem(ItemType.MARS_BAR, ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+        vendingMachine.tryBuyItem(vendingMachine.newSessionToken(), ItemType.MARS_BAR, new int[]{0, 0, 1, 0, 0, 0}, new int[6]);
+
+        SalesSummary machine = windows.sliding(2 * SECOND, -1);
+        assertThat(machine.getUnits(), is(2L));
+        assertThat(machine.getRevenue(), is(125L));
+        assertThat(machine.getChange(), is(75L));
+        assertThat(machine.getFailures().get("insufficient_funds"), is(1L));
+        assertThat(machine.getTo() - machine.getFrom(), is(2 * SECOND));
+
+        SalesSummary marsBars = windows.sliding(SECOND, vendingMachine.getCatalog().id(ItemType.MARS_BAR));
+        assertThat(marsBars.getUnits(), is(1L));
+        assertThat(marsBars.getRevenue(), is(75L));
+        assertThat(marsBars.getFailures().get("insufficient_funds"), is(1L));
+        assertThat(windows.sliding(SECOND, vendingMachine.getCatalog().id(ItemType.CRISPS)).getUnits(), is(0L));
+
+        List<SalesSummary> tumbling = windows.tumbling(SECOND, 3, -1);
+        assertThat(tumbling.stream().map(SalesSummary::getUnits).collect(Collectors.toList()), contains(0L, 1L, 1L));
+    }
+
+    @Test
+    public void testForgetsSalesOlderThanTheSpan() throws Exception {
+        vendingMachine.buyItem(ItemType.CRISPS, ImmutableMap.of(Denomination.FIFTY_CENTS, 1));
+        assertThat(windows.sliding(10 * SECOND, -1).getUnits(), is(1L));
+
+        // the same bucket comes round again and is cleared before it is reused
+        clock.addAndGet(10 * SECOND);
+        vendingMachine.buyItem(ItemType.CRISPS, ImmutableMap.of(Denomination.FIFTY_CENTS, 1));
+        assertThat(windows.sliding(10 * SECOND, -1).getUnits(), is(1L));
+        clock.addAndGet(9 * SECOND);
+        assertThat(windows.sliding(10 * SECOND, -1).getUnits(), is(1L));
+        clock.addAndGet(SECOND);
+        assertThat(windows.sliding(10 * SECOND, -1).getUnits(), is(0L));
+
+        assertThrows(IllegalArgumentException.class, () -> windows.sliding(11 * SECOND, -1));
+        assertThrows(IllegalArgumentException.class, () -> windows.sliding(1500, -1));
+        assertThrows(IllegalArgumentException.class, () -> windows.tumbling(5 * SECOND, 3, -1));
+    }
+
+    @Test
+    public void testCountsItemsPastTheTableInTheMachineTotals() throws Exception {
+        Map<String, Integer> prices = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            prices.put("SKU-" + i, 10 + i);
+        }
+        VendingMachine large = new VendingMachine(PriceList.of(Catalog.of(prices)), Currency.DEFAULT, Currency.DEFAULT.changeStrategy());
+        int[] stock = new int[100];
+        Arrays.fill(stock, 1);
+        large.loadItems(stock);
+        SalesWindows largeWindows = new SalesWindows(large, SECOND, 10, 4, clock::get);
+        large.setListener(largeWindows);
+
+        for (int id = 0; id < 100; id++) {
+            assertThat(large.tryBuyItem(large.newSessionToken(), id, new int[]{200, 0, 0, 0, 0, 0}, new int[6]).isCompleted(), is(true));
+        }
+
+        SalesSummary machine = largeWindows.sliding(SECOND, -1);
+        assertThat(machine.getUnits(), is(100L));
+        assertThat(machine.getRevenue(), is(100 * 10 + 99 * 100 / 2L));
+        int median = machine.getBasketValue().get("p50");
+        assertThat((double) median, closeTo(60, 3));
+        long attributed = 0;
+        for (int id = 0; id < 100; id++) {
+            attributed += largeWindows.sliding(SECOND, id).getUnits();
+        }
+        assertThat(attributed, is(8L));
+    }
+
+    @Test
+    public void testSizesEachBucketToTheMachinesAssortment() throws Exception {
+        Map<String, Integer> prices = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            prices.put("SKU-" + i, 10);
+        }
+        VendingMachine sparse = new VendingMachine(PriceList.of(Catalog.of(prices)), Currency.DEFAULT, Currency.DEFAULT.changeStrategy());
+        SalesWindows sparseWindows = new SalesWindows(sparse, SECOND, 10, 64, clock::get);
+        sparse.setListener(sparseWindows);
+        assertThat(sparseWindows.sliding(SECOND, -1).getUnits(), is(0L));
+
+        int[] stock = new int[100];
+        stock[40] = 2;
+        sparse.loadItems(stock);
+        assertThat(sparse.tryBuyItem(sparse.newSessionToken(), 40, new int[]{10, 0, 0, 0, 0, 0}, new int[6]).isCompleted(), is(true));
+        // the bucket was cleared with room for two SKUs, so the rest of this second's new ones only reach the totals
+        Arrays.fill(stock, 60, 80, 2);
+        sparse.loadItems(stock);
+        for (int id = 60; id < 80; id++) {
+            sparse.tryBuyItem(sparse.newSessionToken(), id, new int[]{10, 0, 0, 0, 0, 0}, new int[6]);
+        }
+        assertThat(sparseWindows.sliding(SECOND, -1).getUnits(), is(21L));
+        assertThat(sparseWindows.sliding(SECOND, 40).getUnits(), is(1L));
+        assertThat(attributed(sparseWindows, 60, 80), is(1L));
+
+        // the next bucket is cleared once the machine carries 21 SKUs, so it has room for all of them
+        clock.addAndGet(SECOND);
+        for (int id = 60; id < 80; id++) {
+            sparse.tryBuyItem(sparse.newSessionToken(), id, new int[]{10, 0, 0, 0, 0, 0}, new int[6]);
+        }
+        assertThat(attributed(sparseWindows, 60, 80), is(20L));
+    }
+
+    private static long attributed(SalesWindows windows, int from, int to) {
+        long units = 0;
+        for (int id = from; id < to; id++) {
+            units += windows.sliding(SECOND, id).getUnits();
+        }
+        return units;
+    }
+}
@@ -0,0 +1,103 @@
+package com.vendingmachine.capture;
+
+import com.vendingmachine.config.Application;
+import com.vendingmachine.wire.CoinFrames;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class TrafficCaptureTest {
+
+    private static Path captureFile;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TrafficCapture trafficCapture;
+
+    @DynamicPropertySource
+    static void captureFile(DynamicPropertyRegistry registry) throws IOException {
+        captureFile = Files.createTempDirectory("capture").resolve("capture.bin");
+        registry.add("vending.capture.file", captureFile::toString);
+    }
+
+    @Test
+    public void testCaptureAndReplay() throws Exception {
+        RestAssured.given().port(port).get("/items").then().statusCode(HttpStatus.OK.value());
+        RestAssured.given().port(port).contentType(ContentType.JSON).body("{\"FIFTY_CENTS\": 1}")
+                .post("/items/CRISPS").then().statusCode(HttpStatus.OK.value());
+        RestAssured.given().port(port).contentType(ContentType.JSON).body("{\"FIFTY_CENTS\": 1}")
+                .post("/items/COCA_COLA").then().statusCode(HttpStatus.BAD_REQUEST.value());
+        RestAssured.given().port(port).delete("/coins").then().statusCode(HttpStatus.OK.value());
+        String sessionToken = RestAssured.given().port(port).contentType(CoinFrames.MEDIA_TYPE).body(new byte[]{3, 0, 0, 2})
+                .post("/sessions/items/CRISPS").then().statusCode(HttpStatus.BAD_REQUEST.value())
+                .extract().header("Session-Token");
+        RestAssured.given().port(port).contentType(CoinFrames.MEDIA_TYPE).body(new byte[]{3, 0, 0, 3})
+                .post("/sessions/" + sessionToken + "/coins").then().statusCode(HttpStatus.OK.value());
+        // only the root machine's calls are captured
+        RestAssured.given().port(port).put("/machines/capture-1").then().statusCode(HttpStatus.OK.value());
+        trafficCapture.flush();
+
+        List<CaptureRecord> records = TrafficCapture.read(captureFile);
+        assertEquals(6, records.size());
+        CaptureRecord purchase = records.get(1);
+        assertEquals("POST", purchase.getMethod());
+        assertEquals("/items/CRISPS", purchase.getPath());
+        assertEquals("{\"FIFTY_CENTS\": 1}", new String(purchase.getBody(), StandardCharsets.UTF_8));
+        assertEquals(200, purchase.getStatus());
+        assertNull(purchase.getSessionToken());
+        assertEquals(400, records.get(2).getStatus());
+        assertEquals(sessionToken, records.get(4).getSessionToken());
+        assertArrayEquals(new byte[]{3, 0, 0, 3}, records.get(5).getBody());
+        assertTrue(records.get(5).getContentType().startsWith(CoinFrames.MEDIA_TYPE));
+        for (int i = 1; i < records.size(); i++) {
+            assertTrue(records.get(i).getOffsetMicros() >= records.get(i - 1).getOffsetMicros());
+        }
+
+        // on two fresh machines every call ends as it did, and each session gets a token of its own
+        ReplayReport report = TrafficReplay.replay(records, URI.create("http://localhost:" + port), TrafficReplay.parseSpeed("max"), 2, 4);
+        assertEquals(12, report.getRequests());
+        assertEquals(8, report.getCount(ReplayReport.Outcome.OK));
+        assertEquals(4, report.getCount(ReplayReport.Outcome.INSUFFICIENT_FUNDS));
+        assertEquals(report.getCapturedStatuses(), report.getStatuses());
+        assertNotNull(report.toString());
+    }
+
+    @Test
+    public void testReadStopsAtTruncatedRecord() throws IOException {
+        Path file = Files.createTempFile("capture", ".bin");
+        try (TrafficCapture capture = TrafficCapture.open(file)) {
+            capture.record(0, 1_000, "POST", "/coins", "application/json", "key-1", "{}".getBytes(StandardCharsets.UTF_8), 200, null);
+            capture.record(5_000, 8_000, "DELETE", "/coins", null, null, new byte[0], 200, null);
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        List<CaptureRecord> records = TrafficCapture.read(file);
+        assertEquals(1, records.size());
+        assertEquals("key-1", records.get(0).getIdempotencyKey());
+        assertEquals(1, records.get(0).getLatencyMicros());
+    }
+}
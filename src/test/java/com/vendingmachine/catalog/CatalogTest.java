@@ -0,0 +1,105 @@
+package com.vendingmachine.catalog;
+
+import com.google.common.collect.ImmutableMap;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.exception.ItemNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CatalogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testLoadsCatalogFile() throws Exception {
+        Path file = Files.writeString(directory.resolve("catalog.csv"),
+                "# code,price\n"
+                        + "CRISPS,50\r\n"
+                        + "\n"
+                        + "sku-0001,125\n"
+                        + "sku.0002,0");
+        Catalog catalog = Catalog.load(file);
+
+        assertThat(catalog.size(), is(3));
+        assertThat(catalog.id("sku-0001"), is(1));
+        assertThat(catalog.id("missing"), is(-1));
+        assertThat(catalog.code(2), is("sku.0002"));
+        assertThat(catalog.price(1), is(125));
+        assertThat(catalog.id(ItemType.CRISPS), is(0));
+        assertThat(catalog.id(ItemType.MARS_BAR), is(-1));
+        assertThat(catalog.itemType(0), is(ItemType.CRISPS));
+        assertThat(catalog.itemType(1), is(nullValue()));
+        assertThrows(ItemNotFoundException.class, () -> catalog.require("missing"));
+    }
+
+    @Test
+    public void testRejectsInvalidCatalogFiles() throws Exception {
+        assertThat(loadError("A,1\nB\n"), containsString(":2: expected code,price"));
+        assertThat(loadError("A,1\nB,-3\n"), containsString(":2: Invalid price -3."));
+        assertThat(loadError("A B,1\n"), containsString(":1: Invalid SKU code A B."));
+        assertThat(loadError("A,1\nA,2\n"), containsString("Duplicate SKU code A."));
+    }
+
+    @Test
+    public void testDefaultCatalogMatchesItemTypes() {
+        for (ItemType itemType : ItemType.values()) {
+            assertThat(Catalog.DEFAULT.id(itemType), is(itemType.ordinal()));
+            assertThat(Catalog.DEFAULT.price(itemType.ordinal()), is(itemType.price));
+        }
+    }
+
+    @Test
+    public void testOverridesInheritUntilSet() throws Exception {
+        Catalog catalog = Catalog.of(ImmutableMap.of("A", 100, "B", 200));
+        PriceList site = PriceList.of(catalog);
+        PriceList machine = site.overrides();
+
+        machine.update(ImmutableMap.of("A", 90));
+        site.update(ImmutableMap.of("A", 110, "B", 210));
+        assertThat(machine.price(catalog.id("A")), is(90));
+        assertThat(machine.price(catalog.id("B")), is(210));
+
+        Map<String, Integer> clear = new HashMap<>();
+        clear.put("A", null);
+        machine.update(clear);
+        assertThat(machine.price(catalog.id("A")), is(110));
+        assertThrows(IllegalArgumentException.class, () -> site.update(clear));
+        assertThrows(ItemNotFoundException.class, () -> site.update(Collections.singletonMap("C", 1)));
+        assertThat(site.price(catalog.id("A")), is(110));
+    }
+
+    @Test
+    public void testAssortmentsDefaultToSmallCatalogsInFull() {
+        Catalog catalog = Catalog.of(ImmutableMap.of("A", 100, "B", 200, "C", 300));
+        Assortments assortments = Assortments.load(catalog, null, ImmutableMap.of("m1", "C, A"));
+        assertThat(assortments.forMachine("m0"), is(new int[] {0, 1, 2}));
+        assertThat(assortments.forMachine("m1"), is(new int[] {0, 2}));
+        assertThat(Assortments.load(catalog, "B", Map.of()).forMachine("m0"), is(new int[] {1}));
+        assertThrows(IllegalArgumentException.class, () -> Assortments.load(catalog, "D", Map.of()));
+
+        Map<String, Integer> skus = new HashMap<>();
+        for (int i = 0; i <= Assortments.FULL_CATALOG_LIMIT; i++) {
+            skus.put("sku-" + i, 100);
+        }
+        assertThat(Assortments.load(Catalog.of(skus), null, Map.of()).forMachine("m0").length, is(0));
+    }
+
+    private String loadError(String contents) throws IOException {
+        Path file = Files.writeString(directory.resolve("invalid.csv"), contents);
+        return assertThrows(IOException.class, () -> Catalog.load(file)).getMessage();
+    }
+}
@@ -0,0 +1,152 @@
+package com.vendingmachine.change;
+
+import com.vendingmachine.domain.Denomination;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class ChangeStrategyTest {
+
+    private static final int[][] COIN_SYSTEMS = {
+            Denomination.faceValues(),
+            {1, 3, 4},
+            {1, 10, 25},
+            {2, 5, 10, 20, 50},
+            {1, 2, 5, 10, 20, 50, 100, 200},
+            {5, 12, 40}
+    };
+
+    @Test
+    public void testCanonicalCoinSystems() {
+        assertThat(new OptimalChangeStrategy(Denomination.faceValues()).isCanonical(), is(true));
+        assertThat(new OptimalChangeStrategy(new int[]{1, 2, 5, 10, 20, 50, 100, 200}).isCanonical(), is(true));
+        assertThat(new OptimalChangeStrategy(new int[]{1, 3, 4}).isCanonical(), is(false));
+        assertThat(new OptimalChangeStrategy(new int[]{1, 10, 25}).isCanonical(), is(false));
+    }
+
+    @Test
+    public void testFindsChangeGreedyMisses() {
+        int[] available = {0, 0, 3, 1, 0, 0};
+        int[] breakdown = new int[6];
+        assertThat(new GreedyChangeStrategy(Denomination.faceValues()).makeChange(30, available, breakdown), is(false));
+        assertThat(new OptimalChangeStrategy(Denomination.faceValues()).makeChange(30, available, breakdown), is(true));
+        assertThat(breakdown, is(new int[]{0, 0, 3, 0, 0, 0}));
+    }
+
+    @Test
+    public void testPaysFewestCoinsFromLimitedSupply() {
+        int[] available = {15, 0, 4, 1, 0, 0};
+        int[] breakdown = new int[6];
+        assertThat(new OptimalChangeStrategy(Denomination.faceValues()).makeChange(40, available, breakdown), is(true));
+        assertThat(breakdown, is(new int[]{0, 0, 4, 0, 0, 0}));
+    }
+
+    @Test
+    public void testChangeTableHandlesNonCanonicalSystems() {
+        OptimalChangeStrategy strategy = new OptimalChangeStrategy(new int[]{1, 3, 4});
+        int[] breakdown = new int[3];
+        assertThat(strategy.makeChange(6, new int[]{9, 9, 9}, breakdown), is(true));
+        assertThat(breakdown, is(new int[]{0, 2, 0}));
+        // the table's breakdown needs two 3s, so the supply sends it to the bounded search
+        assertThat(strategy.makeChange(6, new int[]{9, 1, 9}, breakdown), is(true));
+        assertThat(breakdown, is(new int[]{2, 0, 1}));
+        assertThat(new OptimalChangeStrategy(new int[]{5, 12, 40}).makeChange(7, new int[]{9, 9, 9}, breakdown), is(false));
+    }
+
+    @Test
+    public void testBoundsTheSearchByTheFloatAndTheCeiling() {
+        int[] breakdown = new int[6];
+        OptimalChangeStrategy strategy = new OptimalChangeStrategy(Denomination.faceValues(), 1_000);
+        // an overpayment the float cannot cover is turned away without a search the size of the amount
+        assertThat(strategy.makeChange(1_999_999_950, new int[]{0, 0, 3, 1, 0, 100}, breakdown), is(false));
+        // greedy fails and the search would pay 30 in dimes, but the amount is over the ceiling
+        assertThat(strategy.makeChange(1_030, new int[]{0, 0, 3, 1, 0, 10}, breakdown), is(false));
+        assertThat(new OptimalChangeStrategy(Denomination.faceValues()).makeChange(1_030, new int[]{0, 0, 3, 1, 0, 10}, breakdown), is(true));
+        assertThat(breakdown, is(new int[]{0, 0, 3, 0, 0, 10}));
+    }
+
+    @Test
+    public void testNeverWorseThanGreedy() {
+        Random random = new Random(42);
+        for (int[] faceValues : COIN_SYSTEMS) {
+            ChangeStrategy greedy = new GreedyChangeStrategy(faceValues);
+            ChangeStrategy optimal = new OptimalChangeStrategy(faceValues);
+            int[] available = new int[faceValues.length];
+            int[] greedyBreakdown = new int[faceValues.length];
+            int[] optimalBreakdown = new int[faceValues.length];
+            for (int run = 0; run < 5000; run++) {
+                for (int i = 0; i < available.length; i++) {
+                    available[i] = random.nextInt(8);
+                }
+                int amount = random.nextInt(600);
+                boolean greedyPaid = greedy.makeChange(amount, available, greedyBreakdown);
+                boolean optimalPaid = optimal.makeChange(amount, available, optimalBreakdown);
+                if (greedyPaid) {
+                    assertThat(optimalPaid, is(true));
+                    assertThat(coins(optimalBreakdown), lessThanOrEqualTo(coins(greedyBreakdown)));
+                }
+                if (optimalPaid) {
+                    assertValid(faceValues, amount, available, optimalBreakdown);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesExhaustiveSearch() {
+        Random random = new Random(7);
+        for (int[] faceValues : COIN_SYSTEMS) {
+            ChangeStrategy optimal = new OptimalChangeStrategy(faceValues);
+            int[] available = new int[faceValues.length];
+            int[] breakdown = new int[faceValues.length];
+            for (int run = 0; run < 500; run++) {
+                for (int i = 0; i < available.length; i++) {
+                    available[i] = random.nextInt(4);
+                }
+                int amount = random.nextInt(200);
+                int fewest = fewestCoins(faceValues, available, amount, faceValues.length - 1);
+                assertThat(Arrays.toString(faceValues) + " " + Arrays.toString(available) + " " + amount,
+                        optimal.makeChange(amount, available, breakdown), is(fewest != Integer.MAX_VALUE));
+                if (fewest != Integer.MAX_VALUE) {
+                    assertThat(coins(breakdown), is(fewest));
+                    assertValid(faceValues, amount, available, breakdown);
+                }
+            }
+        }
+    }
+
+    private static void assertValid(int[] faceValues, int amount, int[] available, int[] breakdown) {
+        int total = 0;
+        for (int i = 0; i < faceValues.length; i++) {
+            assertThat(breakdown[i], lessThanOrEqualTo(available[i]));
+            total += breakdown[i] * faceValues[i];
+        }
+        assertThat(total, is(amount));
+    }
+
+    private static int coins(int[] breakdown) {
+        return Arrays.stream(breakdown).sum();
+    }
+
+    private static int fewestCoins(int[] faceValues, int[] available, int amount, int coin) {
+        if (amount == 0) {
+            return 0;
+        }
+        if (coin < 0) {
+            return Integer.MAX_VALUE;
+        }
+        int fewest = Integer.MAX_VALUE;
+        for (int count = 0; count <= available[coin] && count * faceValues[coin] <= amount; count++) {
+            int rest = fewestCoins(faceValues, available, amount - count * faceValues[coin], coin - 1);
+            if (rest != Integer.MAX_VALUE) {
+                fewest = Math.min(fewest, rest + count);
+            }
+        }
+        return fewest;
+    }
+}
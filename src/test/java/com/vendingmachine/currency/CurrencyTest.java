@@ -0,0 +1,63 @@
+package com.vendingmachine.currency;
+
+import com.google.common.collect.ImmutableMap;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.exception.UnknownCoinException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CurrencyTest {
+
+    private static final String EUR = "TWO_EUROS:200, CENT:1, TWENTY_CENTS:20, TWO_CENTS:2, EURO:100, FIVE_CENTS:5, TEN_CENTS:10, FIFTY_CENTS:50";
+
+    @Test
+    public void testSortsCoinsByFaceValue() throws Exception {
+        Currency currency = Currency.parse("EUR", EUR);
+
+        assertThat(currency.size(), is(8));
+        assertThat(currency.faceValues(), is(new int[]{1, 2, 5, 10, 20, 50, 100, 200}));
+        assertThat(currency.coin(0), is("CENT"));
+        assertThat(currency.index("TWO_EUROS"), is(7));
+        assertThat(currency.index("ONE_DOLLAR"), is(-1));
+        assertThat(currency.changeStrategy().isCanonical(), is(true));
+
+        int[] counts = currency.toCounts(ImmutableMap.of("EURO", 2, "CENT", 3));
+        assertThat(currency.total(counts), is(203));
+        assertThat(currency.toMap(counts), is(ImmutableMap.of("CENT", 3, "EURO", 2)));
+        assertThrows(UnknownCoinException.class, () -> currency.toCounts(ImmutableMap.of("ONE_DOLLAR", 1)));
+    }
+
+    @Test
+    public void testDefaultCurrencyMatchesDenominations() {
+        for (Denomination denomination : Denomination.values()) {
+            assertThat(Currency.DEFAULT.index(denomination.name()), is(denomination.ordinal()));
+            assertThat(Currency.DEFAULT.faceValue(denomination.ordinal()), is(denomination.totalCents));
+        }
+    }
+
+    @Test
+    public void testRejectsInvalidDefinitions() {
+        assertThrows(IllegalArgumentException.class, () -> Currency.parse("X", "A:1,B"));
+        assertThrows(IllegalArgumentException.class, () -> Currency.parse("X", "A:1,B:x"));
+        assertThrows(IllegalArgumentException.class, () -> Currency.parse("X", "A:1,A:2"));
+        assertThrows(IllegalArgumentException.class, () -> Currency.parse("X", "A:1,B:1"));
+        assertThrows(IllegalArgumentException.class, () -> Currency.parse("X", "A:0,B:1"));
+    }
+
+    @Test
+    public void testBindsMachinesToCurrencies() {
+        Currencies currencies = Currencies.load(Map.of("EUR", EUR), "USD", Map.of("machine-2", "EUR"));
+
+        assertThat(currencies.siteCurrency(), is(sameInstance(Currency.DEFAULT)));
+        assertThat(currencies.forMachine("machine-1"), is(sameInstance(Currency.DEFAULT)));
+        assertThat(currencies.forMachine("machine-2"), is(sameInstance(currencies.get("EUR"))));
+        assertThrows(IllegalArgumentException.class, () -> Currencies.load(Map.of(), "USD", Map.of("machine-2", "GBP")));
+        assertThrows(IllegalArgumentException.class, () -> Currencies.load(Map.of(), "GBP", Map.of()));
+    }
+}
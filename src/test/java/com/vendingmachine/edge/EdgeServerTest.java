@@ -0,0 +1,128 @@
+package com.vendingmachine.edge;
+
+import com.google.common.collect.ImmutableSet;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.exception.InsufficientFundsException;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class EdgeServerTest {
+
+    private EdgeServer edgeServer;
+
+    @BeforeEach
+    public void start() throws IOException {
+        edgeServer = EdgeServer.start(Map.of("server.port", "0"));
+    }
+
+    @AfterEach
+    public void stop() {
+        edgeServer.close();
+    }
+
+    @Test
+    public void testGetItemsAndPrice() {
+        assertThat(RestAssured.given()
+                .port(edgeServer.port())
+                .get("/items")
+                .then()
+                .contentType(ContentType.JSON)
+                .extract()
+                .as(Set.class), Matchers.is(ImmutableSet.of(ItemType.COCA_COLA.name(), ItemType.CRISPS.name(), ItemType.MARS_BAR.name())));
+        assertThat(RestAssured.given()
+                .port(edgeServer.port())
+                .get("/items/COCA_COLA/price")
+                .then()
+                .extract()
+                .as(Integer.class), Matchers.is(ItemType.COCA_COLA.price));
+        RestAssured.given()
+                .port(edgeServer.port())
+                .get("/items/SANDWICH/price")
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void testBuyItemAndReturnCoins() {
+        RestAssured.given()
+                .port(edgeServer.port())
+                .contentType(ContentType.JSON)
+                .body("{\"FIFTY_CENTS\": 2}")
+                .post("/items/CRISPS")
+                .then()
+                .contentType(ContentType.JSON)
+                .body("FIFTY_CENTS", Matchers.is(1));
+        assertThat(edgeServer.vendingMachine().getStock(edgeServer.vendingMachine().getCatalog().id(ItemType.CRISPS)), Matchers.is(9));
+
+        String token = RestAssured.given()
+                .port(edgeServer.port())
+                .contentType(ContentType.JSON)
+                .body("{\"TEN_CENTS\": 2}")
+                .post("/sessions/items/CRISPS")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .contentType("text/plain;charset=UTF-8")
+                .body(Matchers.is(InsufficientFundsException.message(30)))
+                .extract()
+                .header(VendingMachineHandler.SESSION_TOKEN_HEADER);
+        RestAssured.given()
+                .port(edgeServer.port())
+                .delete("/sessions/" + token + "/coins")
+                .then()
+                .body("TEN_CENTS", Matchers.is(2));
+    }
+
+    @Test
+    public void testRejectsBadRequests() {
+        RestAssured.given()
+                .port(edgeServer.port())
+                .contentType(ContentType.JSON)
+                .body("{\"EURO\": 1}")
+                .post("/coins")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+        RestAssured.given()
+                .port(edgeServer.port())
+                .contentType(ContentType.JSON)
+                .body("{\"FIFTY_CENTS\": \"two\"}")
+                .post("/items/CRISPS")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .body("path", Matchers.is("/items/CRISPS"));
+        RestAssured.given()
+                .port(edgeServer.port())
+                .get("/machines")
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void testRetriedPurchaseIsReplayed() {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            RestAssured.given()
+                    .port(edgeServer.port())
+                    .contentType(ContentType.JSON)
+                    .header(VendingMachineHandler.IDEMPOTENCY_KEY_HEADER, "purchase-1")
+                    .body("{\"ONE_DOLLAR\": 1}")
+                    .post("/items/CRISPS")
+                    .then()
+                    .statusCode(HttpStatus.OK.value())
+                    .header(VendingMachineHandler.IDEMPOTENT_REPLAYED_HEADER, attempt == 0 ? Matchers.nullValue() : Matchers.is("true"))
+                    .body("FIFTY_CENTS", Matchers.is(1));
+        }
+        assertThat(edgeServer.vendingMachine().getChange(), Matchers.is(1910 + 100 - 50));
+        assertThat(EdgeServer.duration("250ms").toMillis(), Matchers.is(250L));
+        assertThat(EdgeServer.duration("PT10M").toMinutes(), Matchers.is(10L));
+    }
+}
@@ -0,0 +1,83 @@
+package com.vendingmachine.events;
+
+import com.google.common.collect.ImmutableMap;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.service.VendingMachine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ChangeFeedTest {
+
+    private VendingMachine vendingMachine;
+    private ChangeFeed feed;
+
+    @BeforeEach
+    public void setUp() {
+        vendingMachine = new VendingMachine(ImmutableMap.of(), ImmutableMap.of());
+        feed = new ChangeFeed(vendingMachine);
+        vendingMachine.setListener(feed);
+    }
+
+    @Test
+    public void testStartsWithASnapshot() {
+        vendingMachine.loadItems(ImmutableMap.of(ItemType.CRISPS, 2));
+        vendingMachine.loadChange(ImmutableMap.of(Denomination.TEN_CENTS, 3));
+
+        ChangeEvent snapshot = feed.cursor().snapshot();
+
+        assertThat(snapshot.getType(), is(ChangeEvent.Type.SNAPSHOT));
+        // nothing is written down before the first subscriber, whose snapshot already has it all
+        assertThat(snapshot.getSequence(), is(0L));
+        assertThat(snapshot.getJson(), containsString("\"items\":{\"CRISPS\":2}"));
+        assertThat(snapshot.getJson(), containsString("\"TEN_CENTS\":3"));
+        assertThat(snapshot.getJson(), containsString("\"float\":30"));
+    }
+
+    @Test
+    public void testCoalescesChangesSinceTheLastEvent() throws Exception {
+        ChangeFeed.Cursor cursor = feed.cursor();
+        cursor.snapshot();
+        assertThat(cursor.poll(), is(nullValue()));
+
+        vendingMachine.loadItems(ImmutableMap.of(ItemType.CRISPS, 5));
+        vendingMachine.buyItem(ItemType.CRISPS, ImmutableMap.of(Denomination.FIFTY_CENTS, 1));
+        vendingMachine.buyItem(ItemType.CRISPS, ImmutableMap.of(Denomination.FIFTY_CENTS, 1));
+
+        ChangeEvent delta = cursor.poll();
+        assertThat(delta.getType(), is(ChangeEvent.Type.DELTA));
+        assertThat(delta.getSequence(), is(5L));
+        assertThat(delta.getJson(), is("{\"type\":\"delta\",\"seq\":5,\"items\":{\"CRISPS\":3},"
+                + "\"coins\":{\"ONE_CENT\":0,\"FIVE_CENTS\":0,\"TEN_CENTS\":0,\"TWENTY_FIVE_CENTS\":0,\"FIFTY_CENTS\":2,\"ONE_DOLLAR\":0},"
+                + "\"float\":100}"));
+        assertThat(cursor.poll(), is(nullValue()));
+
+        vendingMachine.loadItems(ImmutableMap.of(ItemType.MARS_BAR, 1));
+        assertThat(cursor.poll().getJson(), is("{\"type\":\"delta\",\"seq\":6,\"items\":{\"MARS_BAR\":1}}"));
+    }
+
+    @Test
+    public void testSendsASnapshotToSubscribersThatFallARingBehind() {
+        ChangeFeed.Cursor cursor = feed.cursor();
+        cursor.snapshot();
+
+        Map<ItemType, Integer> oneCrisps = ImmutableMap.of(ItemType.CRISPS, 1);
+        for (int i = 0; i <= ChangeFeed.CAPACITY; i++) {
+            vendingMachine.loadItems(oneCrisps);
+        }
+
+        ChangeEvent event = cursor.poll();
+        assertThat(event.getType(), is(ChangeEvent.Type.SNAPSHOT));
+        assertThat(event.getSequence(), is((long) ChangeFeed.CAPACITY + 1));
+        assertThat(event.getJson(), not(containsString("MARS_BAR")));
+        assertThat(cursor.poll(), is(nullValue()));
+    }
+}
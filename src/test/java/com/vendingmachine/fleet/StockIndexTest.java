@@ -0,0 +1,94 @@
+package com.vendingmachine.fleet;
+
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientFundsException;
+import com.vendingmachine.exception.ItemNotAvailableException;
+import com.vendingmachine.service.VendingMachine;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class StockIndexTest {
+
+    private final StockIndex stockIndex = new StockIndex(Catalog.DEFAULT, 5);
+
+    @Test
+    public void testIndexFollowsStockAcrossZero() throws InsufficientFundsException, InsufficientChangeException, ItemNotAvailableException {
+        VendingMachine first = machine("first", 1);
+        machine("second", 0);
+        VendingMachine third = machine("third", 2);
+        int crisps = Catalog.DEFAULT.id(ItemType.CRISPS);
+
+        assertThat(stockIndex.find(crisps, null, 10).getMachines(), contains("first", "third"));
+
+        first.buyItem(ItemType.CRISPS, Map.of(Denomination.FIFTY_CENTS, 1));
+        MachineMatches matches = stockIndex.find(crisps, null, 10);
+        assertThat(matches.getCount(), is(1));
+        assertThat(matches.getMachines(), contains("third"));
+
+        // the first bit of a SKU nobody stocked yet, and a restock that leaves the bit as it was
+        first.loadItems(Map.of(ItemType.CRISPS, 3, ItemType.MARS_BAR, 1));
+        third.loadItems(Map.of(ItemType.CRISPS, 1));
+        assertThat(stockIndex.find(crisps, null, 10).getMachines(), contains("first", "third"));
+        assertThat(stockIndex.find(Catalog.DEFAULT.id(ItemType.MARS_BAR), null, 10).getMachines(), contains("first"));
+        assertThat(stockIndex.find(Catalog.DEFAULT.id(ItemType.COCA_COLA), null, 10).getCount(), is(0));
+
+        // the count covers every match, however few are listed
+        assertThat(stockIndex.find(-1, null, 1).getCount(), is(3));
+        assertThat(stockIndex.find(-1, null, 1).getMachines(), contains("first"));
+    }
+
+    @Test
+    public void testLowOnChange() throws InsufficientFundsException, InsufficientChangeException, ItemNotAvailableException {
+        VendingMachine machine = null;
+        // enough machines to fill more than one word of each bitmap
+        for (int i = 0; i < 130; i++) {
+            machine = machine("machine-" + i, 10);
+        }
+        assertThat(stockIndex.find(-1, true, 10).getMachines(), is(empty()));
+        assertThat(stockIndex.find(-1, false, 10).getCount(), is(130));
+
+        // each purchase pays out a fifty, leaving four
+        for (int i = 0; i < 6; i++) {
+            machine.buyItem(ItemType.CRISPS, Map.of(Denomination.ONE_DOLLAR, 1));
+        }
+        assertThat(stockIndex.find(Catalog.DEFAULT.id(ItemType.CRISPS), true, 10).getMachines(), contains("machine-129"));
+        assertThat(stockIndex.find(-1, false, 200).getCount(), is(129));
+
+        machine.loadChange(Map.of(Denomination.FIFTY_CENTS, 1));
+        assertThat(stockIndex.find(-1, true, 10).getMachines(), is(empty()));
+    }
+
+    @Test
+    public void testBitmapPagesAreAllocatedOnFirstSet() {
+        MachineBitmap bitmap = new MachineBitmap();
+        int slot = 3 * MachineBitmap.PAGE_WORDS * Long.SIZE + 5;
+        assertThat(bitmap.set(slot, false), is(false));
+        assertThat(bitmap.set(slot, true), is(true));
+        assertThat(bitmap.set(slot, true), is(false));
+        assertThat(bitmap.get(slot), is(true));
+        assertThat(bitmap.get(5), is(false));
+        assertThat(bitmap.word(slot / Long.SIZE), is(1L << 5));
+        assertThat(bitmap.set(slot, false), is(true));
+        assertThat(bitmap.word(slot / Long.SIZE), is(0L));
+    }
+
+    private VendingMachine machine(String machineId, int crisps) {
+        VendingMachine vendingMachine = new VendingMachine(Map.of(), Map.of());
+        vendingMachine.setListener(stockIndex.bind(machineId, vendingMachine));
+        vendingMachine.loadItems(Map.of(ItemType.CRISPS, crisps));
+        int[] change = new int[Denomination.values().length];
+        Arrays.fill(change, 10);
+        vendingMachine.loadChange(change);
+        return vendingMachine;
+    }
+}
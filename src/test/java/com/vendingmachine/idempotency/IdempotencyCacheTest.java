@@ -0,0 +1,74 @@
+package com.vendingmachine.idempotency;
+
+import com.vendingmachine.exception.IdempotencyKeyConflictException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class IdempotencyCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testReplaysTheFirstResponse() throws Exception {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(4, Duration.ofMinutes(1), 1, clock::get);
+
+        assertThat(cache.claim("/", "a", "buy"), is(nullValue()));
+        assertThrows(IdempotencyKeyConflictException.class, () -> cache.claim("/", "a", "buy"));
+        cache.complete("/", "a", "sold");
+
+        assertThat(cache.claim("/", "a", "buy"), is("sold"));
+        assertThrows(IdempotencyKeyConflictException.class, () -> cache.claim("/", "a", "add coins"));
+        // the same key on another machine is another request
+        assertThat(cache.claim("machine-1", "a", "add coins"), is(nullValue()));
+
+        // a request that failed without a response runs again when it is retried
+        assertThat(cache.claim("/", "b", "buy"), is(nullValue()));
+        cache.release("/", "b");
+        assertThat(cache.claim("/", "b", "buy"), is(nullValue()));
+    }
+
+    @Test
+    public void testEvictsTheOldestKeyAndExpiredResponses() throws Exception {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(3, Duration.ofSeconds(10), 1, clock::get);
+        for (String key : new String[]{"a", "b", "c", "d"}) {
+            assertThat(cache.claim("/", key, "buy"), is(nullValue()));
+            cache.complete("/", key, key.toUpperCase());
+        }
+
+        assertThat(cache.claim("/", "b", "buy"), is("B"));
+        assertThat(cache.claim("/", "d", "buy"), is("D"));
+        assertThat(cache.claim("/", "a", "buy"), is(nullValue()));
+
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+        assertThat(cache.claim("/", "c", "buy"), is(nullValue()));
+        assertThrows(IllegalArgumentException.class, () -> cache.claim("/", "", "buy"));
+    }
+
+    @Test
+    public void testKeepsEveryKeyUpToCapacity() throws Exception {
+        IdempotencyCache<Integer> cache = new IdempotencyCache<>(1_000, Duration.ofMinutes(1));
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 2_000; i++) {
+                String key = "key-" + i;
+                if (cache.claim("/", key, "buy") == null) {
+                    cache.complete("/", key, i);
+                }
+            }
+        }
+        // the most recent keys are all still there, whichever stripes they went to
+        int replayed = 0;
+        for (int i = 1_900; i < 2_000; i++) {
+            if (cache.claim("/", "key-" + i, "buy") != null) {
+                replayed++;
+            }
+        }
+        assertThat(replayed, is(100));
+    }
+}
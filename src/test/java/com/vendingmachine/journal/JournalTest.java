@@ -0,0 +1,114 @@
+package com.vendingmachine.journal;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.exception.InsufficientFundsException;
+import com.vendingmachine.service.VendingMachine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRecoversMachinesAfterReopen() throws Exception {
+        try (Journal journal = Journal.open(directory)) {
+            VendingMachine vendingMachine = journaledMachine(journal, "machine-1");
+            vendingMachine.buyItem(ItemType.CRISPS, ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+            assertThrows(InsufficientFundsException.class, () -> vendingMachine.buyItem(ItemType.COCA_COLA, ImmutableMap.of(Denomination.FIFTY_CENTS, 1)));
+            vendingMachine.addCoins(ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+            long sessionToken = vendingMachine.newSessionToken();
+            assertThrows(InsufficientFundsException.class, () -> vendingMachine.buyItem(sessionToken, ItemType.COCA_COLA, ImmutableMap.of(Denomination.TEN_CENTS, 1)));
+            vendingMachine.returnCoins(sessionToken);
+        }
+
+        try (Journal journal = Journal.open(directory)) {
+            assertThat(journal.recoveredMachines().get("machine-1"), is(state(new int[]{2, 1, 0}, new int[]{0, 0, 5, 0, 2, 2})));
+            assertThat(journal.lastSequence(), is(9L));
+        }
+    }
+
+    @Test
+    public void testRotatedSegmentsAreFoldedIntoSnapshots() throws Exception {
+        try (Journal journal = Journal.open(directory, 4096, 1)) {
+            VendingMachine vendingMachine = journaledMachine(journal, "machine-1");
+            for (int i = 0; i < 5_000; i++) {
+                vendingMachine.loadItems(ImmutableMap.of(ItemType.CRISPS, 1));
+                vendingMachine.buyItem(ItemType.CRISPS, ImmutableMap.of(Denomination.FIFTY_CENTS, 1));
+            }
+        }
+        assertThat(files("snapshot-"), hasSize(1));
+
+        try (Journal journal = Journal.open(directory, 4096, 1)) {
+            assertThat(journal.recoveredMachines().get("machine-1"), is(state(new int[]{3, 2, 0}, new int[]{0, 0, 5, 0, 5_002, 0})));
+            assertThat(journal.lastSequence(), is(15_002L));
+        }
+        assertThat(JournalSegment.list(directory), hasSize(1));
+    }
+
+    @Test
+    public void testIgnoresTornTail() throws Exception {
+        try (Journal journal = Journal.open(directory)) {
+            VendingMachine vendingMachine = journaledMachine(journal, "machine-1");
+            vendingMachine.loadItems(ImmutableMap.of(ItemType.CRISPS, 5));
+        }
+        // flip the last byte written, as if the process died half way through the last record
+        Path segment = JournalSegment.list(directory).get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        int last = bytes.length - 1;
+        while (bytes[last] == 0) {
+            last--;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(last);
+            file.write(bytes[last] ^ 0xFF);
+        }
+
+        try (Journal journal = Journal.open(directory)) {
+            assertThat(journal.recoveredMachines().get("machine-1"), is(state(new int[]{3, 2, 0}, new int[]{0, 0, 5, 0, 2, 0})));
+            assertThat(journal.lastSequence(), is(2L));
+        }
+    }
+
+    @Test
+    public void testEmptyDirectoryRecoversNothing() throws Exception {
+        try (Journal journal = Journal.open(directory)) {
+            assertThat(journal.recoveredMachines().isEmpty(), is(true));
+            assertThat(journal.lastSequence(), is(0L));
+        }
+    }
+
+    private static VendingMachine journaledMachine(Journal journal, String machineId) {
+        VendingMachine vendingMachine = new VendingMachine(Maps.newHashMap(), Maps.newHashMap());
+        vendingMachine.setListener(journal.listenerFor(machineId));
+        vendingMachine.loadItems(ImmutableMap.of(ItemType.CRISPS, 3, ItemType.COCA_COLA, 2));
+        vendingMachine.loadChange(ImmutableMap.of(Denomination.FIFTY_CENTS, 2, Denomination.TEN_CENTS, 5));
+        return vendingMachine;
+    }
+
+    private static MachineState state(int[] inventory, int[] change) {
+        return new MachineState(inventory, change);
+    }
+
+    private List<Path> files(String prefix) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.vendingmachine.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.change.OptimalChangeStrategy;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientFundsException;
+import com.vendingmachine.exception.ItemNotAvailableException;
+import com.vendingmachine.service.VendingMachine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class VendingMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final VendingMetrics vendingMetrics = new VendingMetrics(meterRegistry);
+
+    @Test
+    public void testCountsPurchaseOutcomesPerItem() throws Exception {
+        VendingMachine vendingMachine = new VendingMachine(Maps.newHashMap(
+                ImmutableMap.of(
+                        ItemType.CRISPS, 1,
+                        ItemType.COCA_COLA, 1
+                )), Maps.newHashMap());
+        vendingMachine.setListener(vendingMetrics.bind("machine-1", vendingMachine));
+
+        assertThrows(InsufficientFundsException.class, () -> vendingMachine.buyItem(ItemType.COCA_COLA, ImmutableMap.of(Denomination.FIFTY_CENTS, 1)));
+        assertThrows(InsufficientChangeException.class, () -> vendingMachine.buyItem(ItemType.COCA_COLA, ImmutableMap.of(Denomination.ONE_DOLLAR, 2)));
+        vendingMachine.buyItem(ItemType.CRISPS, ImmutableMap.of(Denomination.FIFTY_CENTS, 1));
+        assertThrows(ItemNotAvailableException.class, () -> vendingMachine.buyItem(ItemType.CRISPS, ImmutableMap.of(Denomination.FIFTY_CENTS, 1)));
+
+        assertThat(purchases(ItemType.CRISPS, VendingMetrics.COMPLETED), is(1.0));
+        assertThat(purchases(ItemType.CRISPS, VendingMetrics.ITEM_NOT_AVAILABLE), is(1.0));
+        assertThat(purchases(ItemType.COCA_COLA, VendingMetrics.INSUFFICIENT_FUNDS), is(1.0));
+        assertThat(purchases(ItemType.COCA_COLA, VendingMetrics.INSUFFICIENT_CHANGE), is(1.0));
+        assertThat(purchases(ItemType.COCA_COLA, VendingMetrics.COMPLETED), is(0.0));
+    }
+
+    @Test
+    public void testPublishesStockAndFloatGauges() throws Exception {
+        VendingMachine vendingMachine = new VendingMachine(Maps.newHashMap(
+                ImmutableMap.of(
+                        ItemType.MARS_BAR, 3
+                )), Maps.newHashMap(
+                ImmutableMap.of(
+                        Denomination.TWENTY_FIVE_CENTS, 4
+                )));
+        vendingMachine.setListener(vendingMetrics.bind("machine-1", vendingMachine));
+
+        vendingMachine.buyItem(ItemType.MARS_BAR, ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+
+        assertThat(meterRegistry.get("vending.stock").tag("machine", "machine-1").tag("item", "MARS_BAR").gauge().value(), is(2.0));
+        assertThat(meterRegistry.get("vending.float.coins").tag("machine", "machine-1").tag("denomination", "TWENTY_FIVE_CENTS").gauge().value(), is(3.0));
+        assertThat(meterRegistry.get("vending.float.value").tag("machine", "machine-1").gauge().value(), is(175.0));
+    }
+
+    @Test
+    public void testPublishesFleetTotalsAndOnlyListedMachines() throws Exception {
+        VendingMetrics fleetMetrics = new VendingMetrics(meterRegistry, Catalog.DEFAULT, "listed"::equals);
+        VendingMachine listed = new VendingMachine(ImmutableMap.of(ItemType.MARS_BAR, 3), ImmutableMap.of(Denomination.TWENTY_FIVE_CENTS, 4));
+        VendingMachine other = new VendingMachine(ImmutableMap.of(ItemType.MARS_BAR, 2), ImmutableMap.of(Denomination.TWENTY_FIVE_CENTS, 1));
+        listed.setListener(fleetMetrics.bind("listed", listed));
+        other.setListener(fleetMetrics.bind("other", other));
+
+        listed.buyItem(ItemType.MARS_BAR, ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+        other.buyItem(ItemType.MARS_BAR, ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+
+        assertThat(meterRegistry.get("vending.fleet.stock").tag("item", "MARS_BAR").gauge().value(), is(3.0));
+        assertThat(meterRegistry.get("vending.fleet.float.coins").tag("denomination", "TWENTY_FIVE_CENTS").gauge().value(), is(3.0));
+        assertThat(meterRegistry.get("vending.fleet.float.value").tag("currency", "USD").gauge().value(), is(275.0));
+        assertThat(purchases(ItemType.MARS_BAR, VendingMetrics.COMPLETED), is(2.0));
+        assertThat(meterRegistry.get("vending.stock").tag("machine", "listed").gauge().value(), is(2.0));
+        assertThat(meterRegistry.find("vending.stock").tag("machine", "other").gauge(), is(nullValue()));
+        assertThat(meterRegistry.find("vending.float.value").tag("machine", "other").gauge(), is(nullValue()));
+    }
+
+    @Test
+    public void testTimedChangeStrategySamplesWithoutChangingResults() {
+        int[] faceValues = Denomination.faceValues();
+        OptimalChangeStrategy optimal = new OptimalChangeStrategy(faceValues);
+        TimedChangeStrategy timed = new TimedChangeStrategy(optimal, meterRegistry);
+        int[] available = {5, 5, 5, 5, 5, 5};
+        int[] expected = new int[faceValues.length];
+        int[] actual = new int[faceValues.length];
+
+        for (int amount = 0; amount < 10 * TimedChangeStrategy.SAMPLE_RATE; amount++) {
+            assertThat(timed.makeChange(amount, available, actual), is(optimal.makeChange(amount, available, expected)));
+            assertThat(actual, is(expected));
+        }
+        assertThat(meterRegistry.get("vending.change.computation").timer().count(), greaterThan(0L));
+    }
+
+    private double purchases(ItemType itemType, String outcome) {
+        return meterRegistry.get("vending.purchases").tag("item", itemType.name()).tag("outcome", outcome).functionCounter().count();
+    }
+}
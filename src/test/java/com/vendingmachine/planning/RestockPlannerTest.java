@@ -0,0 +1,100 @@
+package com.vendingmachine.planning;
+
+import com.google.common.collect.ImmutableMap;
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.service.VendingMachine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RestockPlannerTest {
+
+    private final RestockPlanner planner = new RestockPlanner(4, 200, 16);
+
+    @AfterEach
+    public void tearDown() {
+        planner.close();
+    }
+
+    @Test
+    public void testPlansTheSmallestLoadThatMeetsTheTarget() {
+        // three bags of crisps paid for with a dollar for every Mars bar paid for with three quarters
+        int crisps = Catalog.DEFAULT.id(ItemType.CRISPS);
+        int marsBar = Catalog.DEFAULT.id(ItemType.MARS_BAR);
+        int[][] history = {
+                purchase(crisps, Denomination.ONE_DOLLAR, 1),
+                purchase(crisps, Denomination.ONE_DOLLAR, 1),
+                purchase(crisps, Denomination.ONE_DOLLAR, 1),
+                purchase(marsBar, Denomination.TWENTY_FIVE_CENTS, 3)};
+
+        RestockPlan plan = planner.plan(PriceList.of(Catalog.DEFAULT), Currency.DEFAULT, history, 40, 0.05);
+
+        assertThat(plan.getSoldOutRate(), lessThanOrEqualTo(0.05));
+        assertThat(plan.getInsufficientChangeRate(), lessThanOrEqualTo(0.05));
+        // 30 bags and 10 bars are sold on average, so a little less than the peak demand is enough
+        assertThat(plan.getItems().get(ItemType.CRISPS.name()), allOf(greaterThan(24), lessThan(36)));
+        assertThat(plan.getItems().get(ItemType.MARS_BAR.name()), allOf(greaterThan(5), lessThan(16)));
+        assertThat(plan.getItems().containsKey(ItemType.COCA_COLA.name()), is(false));
+        // each bag of crisps takes fifty cents of change, some of which comes from the quarters paid for bars
+        assertThat(plan.getFloatValue(), allOf(greaterThan(500), lessThan(1500)));
+        assertThat(plan.getTrials(), is(200));
+        assertThat(plan.getPurchases(), is(40));
+    }
+
+    @Test
+    public void testPlansFromRecordedPurchases() throws Exception {
+        VendingMachine vendingMachine = new VendingMachine(ImmutableMap.of(ItemType.CRISPS, 100),
+                ImmutableMap.of(Denomination.FIFTY_CENTS, 100));
+        vendingMachine.setListener(planner.bind("machine-1", vendingMachine));
+        for (int i = 0; i < 20; i++) {
+            vendingMachine.buyItem(ItemType.CRISPS, ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+        }
+
+        // only the last 16 purchases are kept, so periods default to 16 purchases
+        RestockPlan plan = planner.plan("machine-1", 0.01, 0).get();
+        assertThat(plan.getPurchases(), is(16));
+        assertThat(plan.getItems(), is(ImmutableMap.of(ItemType.CRISPS.name(), 16)));
+        assertThat(plan.getCoins(), is(ImmutableMap.of(Denomination.FIFTY_CENTS.name(), 16)));
+        assertThat(plan.getSoldOutRate(), is(0.0));
+
+        assertThrows(IllegalArgumentException.class, () -> planner.plan("machine-1", 1.5, 0));
+        assertThrows(IllegalArgumentException.class, () -> planner.plan("machine-1", 0.01, 16 * RestockPlanner.MAX_PERIOD_HISTORIES + 1));
+        assertThat(planner.plan("machine-2", 0.01, 0).isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void testPlansForPurchasesTurnedAway() throws Exception {
+        VendingMachine vendingMachine = new VendingMachine(ImmutableMap.of(ItemType.CRISPS, 4),
+                ImmutableMap.of(Denomination.FIFTY_CENTS, 100));
+        vendingMachine.setListener(planner.bind("machine-3", vendingMachine));
+        for (int i = 0; i < 8; i++) {
+            vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, ItemType.CRISPS, new int[]{0, 0, 0, 0, 0, 1}, new int[6]);
+        }
+        // not enough money is not demand the machine failed to meet
+        vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, ItemType.MARS_BAR, new int[]{0, 0, 0, 0, 1, 0}, new int[6]);
+        vendingMachine.returnCoins();
+
+        // four sold and four turned away, so every period wants eight bags
+        RestockPlan plan = planner.plan("machine-3", 0.01, 0).get();
+        assertThat(plan.getPurchases(), is(8));
+        assertThat(plan.getItems(), is(ImmutableMap.of(ItemType.CRISPS.name(), 8)));
+    }
+
+    private static int[] purchase(int item, Denomination coin, int count) {
+        int[] row = new int[1 + Currency.DEFAULT.size()];
+        row[0] = item;
+        row[1 + coin.ordinal()] = count;
+        return row;
+    }
+}
@@ -0,0 +1,425 @@
+package com.vendingmachine.service;
+
+import com.vendingmachine.config.Application;
+import com.vendingmachine.config.Config;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.rest.VendingMachineController;
+import com.vendingmachine.wire.CoinFrames;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "vending.currencies.EUR=CENT:1,TWO_CENTS:2,FIVE_CENTS:5,TEN_CENTS:10,TWENTY_CENTS:20,FIFTY_CENTS:50,EURO:100,TWO_EUROS:200",
+        "vending.machine-currencies.euro-1=EUR",
+        "vending.machine-assortments.audit-2=MARS_BAR, CRISPS",
+        "vending.planning.trials=100"
+})
+public class MachineRegistryControllerIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    public void testBuyItemFromRegisteredMachine() {
+        RestAssured.given()
+                .port(port)
+                .put("/machines/fleet-1")
+                .then()
+                .statusCode(HttpStatus.OK.value());
+
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"FIFTY_CENTS\": 2}")
+                .post("/machines/fleet-1/items/CRISPS")
+                .then()
+                .contentType(ContentType.JSON)
+                .body("FIFTY_CENTS", Matchers.is(1));
+    }
+
+    @Test
+    public void testInsufficientFundsOnRegisteredMachine() {
+        RestAssured.given()
+                .port(port)
+                .put("/machines/fleet-2");
+
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"TEN_CENTS\": 2}")
+                .post("/machines/fleet-2/items/CRISPS")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    public void testMachineInItsOwnCurrency() {
+        RestAssured.given()
+                .port(port)
+                .put("/machines/euro-1");
+
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"TWO_EUROS\": 1}")
+                .post("/machines/euro-1/items/CRISPS")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("EURO", Matchers.is(1))
+                .body("FIFTY_CENTS", Matchers.is(1));
+
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"ONE_DOLLAR\": 1}")
+                .post("/machines/euro-1/items/CRISPS")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .body(Matchers.is("EUR has no coin called ONE_DOLLAR."));
+    }
+
+    @Test
+    public void testUnknownMachine() {
+        RestAssured.given()
+                .port(port)
+                .get("/machines/unknown/items")
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void testBuyItemInSessionAndReturnCoins() {
+        RestAssured.given()
+                .port(port)
+                .put("/machines/fleet-3");
+
+        String sessionToken = RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"TEN_CENTS\": 2}")
+                .post("/machines/fleet-3/sessions/items/CRISPS")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .extract()
+                .header("Session-Token");
+
+        RestAssured.given()
+                .port(port)
+                .delete("/machines/fleet-3/sessions/" + sessionToken + "/coins")
+                .then()
+                .body("TEN_CENTS", Matchers.is(2));
+    }
+
+    @Test
+    public void testBatchOnRegisteredMachine() {
+        RestAssured.given()
+                .port(port)
+                .put("/machines/fleet-4");
+
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("[{\"type\": \"LOAD_ITEMS\", \"items\": {\"MARS_BAR\": 5}},"
+                        + " {\"type\": \"BUY\", \"item\": \"MARS_BAR\", \"coins\": {\"ONE_DOLLAR\": 1}},"
+                        + " {\"type\": \"BUY\", \"item\": \"COCA_COLA\", \"coins\": {\"TEN_CENTS\": 2}},"
+                        + " {\"type\": \"GET_CHANGE\"}]")
+                .post("/machines/fleet-4/batch")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .contentType(ContentType.JSON)
+                .body("status", Matchers.contains(200, 200, 400, 200))
+                .body("[1].change.TWENTY_FIVE_CENTS", Matchers.is(1))
+                .body("[2].change.TEN_CENTS", Matchers.is(2))
+                .body("[3].value", Matchers.is(1985));
+    }
+
+    @Test
+    public void testBatchOnUnknownMachine() {
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("[{\"type\": \"GET_CHANGE\"}]")
+                .post("/machines/unknown/batch")
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void testSalesAnalytics() {
+        RestAssured.given()
+                .port(port)
+                .put("/machines/fleet-5");
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("[{\"type\": \"BUY\", \"item\": \"CRISPS\", \"coins\": {\"ONE_DOLLAR\": 1}},"
+                        + " {\"type\": \"BUY\", \"item\": \"COCA_COLA\", \"coins\": {\"TEN_CENTS\": 2}}]")
+                .post("/machines/fleet-5/batch")
+                .then()
+                .statusCode(HttpStatus.OK.value());
+
+        RestAssured.given()
+                .port(port)
+                .get("/machines/fleet-5/analytics?window=15m")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("units", Matchers.is(1))
+                .body("revenue", Matchers.is(ItemType.CRISPS.price))
+                .body("change", Matchers.is(50))
+                .body("failures.insufficient_funds", Matchers.is(1))
+                .body("basketValue.p50", Matchers.allOf(Matchers.greaterThan(47), Matchers.lessThan(53)));
+        RestAssured.given()
+                .port(port)
+                .get("/machines/fleet-5/analytics?item=COCA_COLA")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("units", Matchers.is(0))
+                .body("failures.insufficient_funds", Matchers.is(1))
+                .body("basketValue", Matchers.nullValue());
+        RestAssured.given()
+                .port(port)
+                .get("/machines/fleet-5/analytics/windows?window=20m")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("size()", Matchers.is(3))
+                .body("units.sum()", Matchers.is(1));
+        RestAssured.given()
+                .port(port)
+                .get("/machines/fleet-5/analytics?window=90s")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+        RestAssured.given()
+                .port(port)
+                .get("/machines/unknown/analytics")
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void testRestockPlan() {
+        RestAssured.given()
+                .port(port)
+                .put("/machines/fleet-6");
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("[{\"type\": \"BUY\", \"item\": \"CRISPS\", \"coins\": {\"ONE_DOLLAR\": 1}},"
+                        + " {\"type\": \"BUY\", \"item\": \"MARS_BAR\", \"coins\": {\"ONE_DOLLAR\": 1}}]")
+                .post("/machines/fleet-6/batch")
+                .then()
+                .statusCode(HttpStatus.OK.value());
+
+        RestAssured.given()
+                .port(port)
+                .get("/machines/fleet-6/restock-plan?target=0.05")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("purchases", Matchers.is(2))
+                .body("items.keySet()", Matchers.containsInAnyOrder(ItemType.CRISPS.name(), ItemType.MARS_BAR.name()))
+                .body("insufficientChangeRate", Matchers.lessThanOrEqualTo(0.05f));
+        RestAssured.given()
+                .port(port)
+                .get("/machines/fleet-6/restock-plan?target=2")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+        RestAssured.given()
+                .port(port)
+                .get("/machines/fleet-6/restock-plan?purchases=100000000")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+        RestAssured.given()
+                .port(port)
+                .get("/machines/unknown/restock-plan")
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void testRetriedPurchaseIsReplayed() {
+        RestAssured.given()
+                .port(port)
+                .put("/machines/fleet-7");
+        for (int attempt = 0; attempt < 2; attempt++) {
+            RestAssured.given()
+                    .port(port)
+                    .contentType(ContentType.JSON)
+                    .header(VendingMachineController.IDEMPOTENCY_KEY_HEADER, "fleet-7-purchase-1")
+                    .body("{\"ONE_DOLLAR\": 1}")
+                    .post("/machines/fleet-7/items/CRISPS")
+                    .then()
+                    .statusCode(HttpStatus.OK.value())
+                    .header(VendingMachineController.IDEMPOTENT_REPLAYED_HEADER, attempt == 0 ? Matchers.nullValue() : Matchers.is("true"))
+                    .body("FIFTY_CENTS", Matchers.is(1));
+        }
+        // ten of every coin, one dollar in and fifty cents out, once
+        assertThat(RestAssured.given()
+                .port(port)
+                .get("/machines/fleet-7/change")
+                .then()
+                .extract()
+                .as(Integer.class), Matchers.is(1910 + 100 - 50));
+
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .header(VendingMachineController.IDEMPOTENCY_KEY_HEADER, "fleet-7-purchase-1")
+                .body("{\"ONE_DOLLAR\": 1}")
+                .post("/machines/fleet-7/items/MARS_BAR")
+                .then()
+                .statusCode(HttpStatus.CONFLICT.value());
+    }
+
+    @Test
+    public void testFindMachinesByStockAndChange() {
+        RestAssured.given()
+                .port(port)
+                .put("/machines/fleet-8");
+
+        // sells out of coca cola with exact money, then pays out six of its ten fifties as change
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 10; i++) {
+            batch.append("{\"type\": \"BUY\", \"item\": \"COCA_COLA\", \"coins\": {\"ONE_DOLLAR\": 1, \"TWENTY_FIVE_CENTS\": 2}}, ");
+        }
+        for (int i = 0; i < 6; i++) {
+            batch.append(i == 0 ? "" : ", ").append("{\"type\": \"BUY\", \"item\": \"CRISPS\", \"coins\": {\"ONE_DOLLAR\": 1}}");
+        }
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body(batch.append(']').toString())
+                .post("/machines/fleet-8/batch")
+                .then()
+                .statusCode(HttpStatus.OK.value());
+
+        RestAssured.given()
+                .port(port)
+                .queryParam("item", "COCA_COLA")
+                .queryParam("limit", 1000)
+                .get("/machines")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .contentType(ContentType.JSON)
+                .body("machines", Matchers.not(Matchers.hasItem("fleet-8")))
+                .body("machines", Matchers.not(Matchers.hasItem(Config.ROOT_MACHINE_ID)));
+
+        RestAssured.given()
+                .port(port)
+                .queryParam("item", "CRISPS")
+                .queryParam("change", "low")
+                .queryParam("limit", 1000)
+                .get("/machines")
+                .then()
+                .body("machines", Matchers.hasItem("fleet-8"));
+
+        RestAssured.given()
+                .port(port)
+                .queryParam("change", "ok")
+                .queryParam("limit", 1000)
+                .get("/machines")
+                .then()
+                .body("machines", Matchers.not(Matchers.hasItem("fleet-8")))
+                .body("count", Matchers.greaterThan(0));
+
+        RestAssured.given()
+                .port(port)
+                .queryParam("change", "empty")
+                .get("/machines")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    public void testBuyItemWithCoinFrames() {
+        RestAssured.given()
+                .port(port)
+                .put("/machines/fleet-9");
+
+        // a dollar for crisps, and fifty cents back
+        byte[] change = RestAssured.given()
+                .port(port)
+                .contentType(CoinFrames.MEDIA_TYPE)
+                .accept(CoinFrames.MEDIA_TYPE)
+                .body(new byte[]{6, 0, 0, 0, 0, 0, 1})
+                .post("/machines/fleet-9/items/CRISPS")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .contentType(CoinFrames.MEDIA_TYPE)
+                .extract().asByteArray();
+        assertThat(change, Matchers.is(new byte[]{0, 6, 0, 0, 0, 0, 1, 0}));
+
+        byte[] shortfall = RestAssured.given()
+                .port(port)
+                .contentType(CoinFrames.MEDIA_TYPE)
+                .body(new byte[]{6, 0, 0, 0, 0, 0, 1})
+                .post("/machines/fleet-9/sessions/items/COCA_COLA")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .extract().asByteArray();
+        assertThat(shortfall, Matchers.is(new byte[]{1, 50}));
+
+        RestAssured.given()
+                .port(port)
+                .contentType(CoinFrames.MEDIA_TYPE)
+                .body(new byte[]{7, 0, 0, 0, 0, 0, 0, 1})
+                .post("/machines/fleet-9/coins")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    public void testAuditStreamsEveryMachine() {
+        RestAssured.given()
+                .port(port)
+                .put("/machines/audit-1");
+        RestAssured.given()
+                .port(port)
+                .put("/machines/audit-2");
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"ONE_DOLLAR\": 1}")
+                .post("/machines/audit-1/items/CRISPS")
+                .then()
+                .statusCode(HttpStatus.OK.value());
+
+        String[] lines = RestAssured.given()
+                .port(port)
+                .accept("application/x-ndjson")
+                .get("/audit")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract()
+                .asString()
+                .split("\n");
+
+        assertThat(JsonPath.from(lines[0]).getString("machine"), Matchers.is(Config.ROOT_MACHINE_ID));
+        JsonPath machine = null;
+        JsonPath sparse = null;
+        for (String line : lines) {
+            if (JsonPath.from(line).getString("machine").equals("audit-1")) {
+                machine = JsonPath.from(line);
+            } else if (JsonPath.from(line).getString("machine").equals("audit-2")) {
+                sparse = JsonPath.from(line);
+            }
+        }
+        // only the SKUs a machine carries are listed
+        assertThat(sparse.getMap("stock"), Matchers.is(Map.of(ItemType.CRISPS.name(), 10, ItemType.MARS_BAR.name(), 10)));
+        assertThat(machine.getInt("stock.CRISPS"), Matchers.is(9));
+        assertThat(machine.getInt("sold.CRISPS"), Matchers.is(1));
+        assertThat(machine.getInt("coins.ONE_DOLLAR"), Matchers.is(11));
+        assertThat(machine.getInt("coins.FIFTY_CENTS"), Matchers.is(9));
+        // the two initial loads and the purchase
+        assertThat(machine.getInt("version"), Matchers.is(3));
+        assertThat(machine.getInt("float"), Matchers.is(10 * (1 + 5 + 10 + 25 + 50 + 100) + 50));
+    }
+}
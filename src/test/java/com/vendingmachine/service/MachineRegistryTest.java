@@ -0,0 +1,65 @@
+package com.vendingmachine.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.exception.MachineNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MachineRegistryTest {
+
+    private final MachineRegistry machineRegistry = new MachineRegistry(4, machineId -> new VendingMachine(Maps.newHashMap(
+            ImmutableMap.of(
+                    ItemType.COCA_COLA, 2,
+                    ItemType.CRISPS, 1
+            )), Maps.newHashMap()));
+
+    @AfterEach
+    public void tearDown() {
+        machineRegistry.close();
+    }
+
+    @Test
+    public void testRegisterMachine() {
+        assertThat(machineRegistry.register("machine-1"), is(true));
+        assertThat(machineRegistry.register("machine-1"), is(false));
+        assertThat(machineRegistry.contains("machine-1"), is(true));
+        assertThat(machineRegistry.size(), is(1));
+    }
+
+    @Test
+    public void testMachinesAreIndependent() throws ExecutionException, InterruptedException {
+        machineRegistry.register("machine-1");
+        machineRegistry.register("machine-2");
+        machineRegistry.submit("machine-1", vendingMachine -> vendingMachine.buyItem(ItemType.CRISPS, ImmutableMap.of(Denomination.FIFTY_CENTS, 1))).get();
+        assertThat(machineRegistry.submit("machine-1", VendingMachine::availableItems).get(), is(ImmutableSet.of(ItemType.COCA_COLA)));
+        assertThat(machineRegistry.submit("machine-2", VendingMachine::availableItems).get(), is(ImmutableSet.of(ItemType.COCA_COLA, ItemType.CRISPS)));
+    }
+
+    @Test
+    public void testUnknownMachine() {
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> machineRegistry.submit("missing", VendingMachine::getChange).get());
+        assertThat(exception.getCause(), instanceOf(MachineNotFoundException.class));
+    }
+
+    @Test
+    public void testMachinesSpreadAcrossShards() {
+        int[] machinesPerShard = new int[machineRegistry.shardCount()];
+        for (int i = 0; i < 1000; i++) {
+            machinesPerShard[machineRegistry.shardIndex("machine-" + i)]++;
+        }
+        for (int count : machinesPerShard) {
+            assertThat(count > 150, is(true));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.vendingmachine.service;
+
+import com.google.common.collect.ImmutableSet;
+import com.vendingmachine.config.Application;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.wire.CoinFrames;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.main.web-application-type=reactive", "vending.events.interval=20ms"})
+public class ReactiveModeIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    public void testGetItems() {
+        assertThat(RestAssured.given()
+                .port(port)
+                .get("/items")
+                .then()
+                .contentType(ContentType.JSON)
+                .extract()
+                .as(Set.class), Matchers.is(ImmutableSet.of(ItemType.COCA_COLA.name(), ItemType.CRISPS.name(), ItemType.MARS_BAR.name())));
+    }
+
+    @Test
+    public void testBuyItemInSessionAndAddCoins() {
+        String sessionToken = RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"TEN_CENTS\": 2}")
+                .post("/sessions/items/CRISPS")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .extract()
+                .header("Session-Token");
+
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"TEN_CENTS\": 4}")
+                .post("/sessions/" + sessionToken + "/coins")
+                .then()
+                .body("TEN_CENTS", Matchers.is(1));
+    }
+
+    @Test
+    public void testBuyItemInSessionWithCoinFrames() {
+        // two dimes towards crisps, then four more, and a dime back
+        String sessionToken = RestAssured.given()
+                .port(port)
+                .contentType(CoinFrames.MEDIA_TYPE)
+                .body(new byte[]{3, 0, 0, 2})
+                .post("/sessions/items/CRISPS")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .extract()
+                .header("Session-Token");
+
+        byte[] change = RestAssured.given()
+                .port(port)
+                .contentType(CoinFrames.MEDIA_TYPE)
+                .body(new byte[]{3, 0, 0, 4})
+                .post("/sessions/" + sessionToken + "/coins")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract()
+                .asByteArray();
+        assertThat(change, Matchers.is(new byte[]{0, 6, 0, 0, 1, 0, 0, 0}));
+    }
+
+    @Test
+    public void testMachineNotFound() {
+        RestAssured.given()
+                .port(port)
+                .get("/machines/missing/items")
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void testBatch() {
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("[{\"type\": \"LOAD_CHANGE\", \"coins\": {\"FIFTY_CENTS\": 1}},"
+                        + " {\"type\": \"BUY\", \"item\": \"CRISPS\", \"coins\": {\"ONE_DOLLAR\": 1}},"
+                        + " {\"type\": \"GET_PRICE\", \"item\": \"COCA_COLA\"},"
+                        + " {\"type\": \"BUY\"}]")
+                .post("/batch")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .contentType(ContentType.JSON)
+                .body("status", Matchers.contains(200, 200, 200, 400))
+                .body("[1].change.FIFTY_CENTS", Matchers.is(1))
+                .body("[2].value", Matchers.is(ItemType.COCA_COLA.price))
+                .body("[3].error", Matchers.is("BUY needs an item and coins."));
+    }
+
+    @Test
+    public void testStreamsChanges() {
+        RestAssured.given().port(port).put("/machines/events-1").then().statusCode(HttpStatus.OK.value());
+
+        // buys once the snapshot is in, off the event loop the client and server share
+        List<String> events = WebClient.create("http://localhost:" + port)
+                .get()
+                .uri("/machines/events-1/events")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(String.class)
+                .publishOn(Schedulers.boundedElastic())
+                .index((index, event) -> {
+                    if (index == 0) {
+                        RestAssured.given()
+                                .port(port)
+                                .contentType(ContentType.JSON)
+                                .body("{\"FIFTY_CENTS\": 1}")
+                                .post("/machines/events-1/items/CRISPS")
+                                .then()
+                                .statusCode(HttpStatus.OK.value());
+                    }
+                    return event;
+                })
+                .take(2)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(events.get(0), Matchers.startsWith("{\"type\":\"snapshot\",\"seq\":0,\"items\":{\"CRISPS\":10,"));
+        assertThat(events.get(1), Matchers.startsWith("{\"type\":\"delta\",\"seq\":2,\"items\":{\"CRISPS\":9},"));
+        assertThat(events.get(1), Matchers.containsString("\"FIFTY_CENTS\":11"));
+    }
+
+    @Test
+    public void testStreamOfUnknownMachine() {
+        RestAssured.given()
+                .port(port)
+                .accept("text/event-stream")
+                .get("/machines/missing/events")
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+}
@@ -0,0 +1,95 @@
+package com.vendingmachine.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.vendingmachine.domain.Coins;
+import com.vendingmachine.domain.Denomination;
+import com.vendingmachine.domain.ItemType;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class VendingMachineAllocationTest {
+
+    private static final int PURCHASES = 100_000;
+
+    private final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void testPurchasePathDoesNotAllocate() throws Exception {
+        VendingMachine vendingMachine = new VendingMachine(Maps.newHashMap(), Maps.newHashMap(
+                ImmutableMap.of(
+                        Denomination.FIFTY_CENTS, 10
+                )));
+        int[] restock = new int[ItemType.values().length];
+        restock[ItemType.CRISPS.ordinal()] = PURCHASES;
+        int[] oneDollar = Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+        int[] twoFifties = Coins.toCounts(ImmutableMap.of(Denomination.FIFTY_CENTS, 2));
+        int[] changeToPay = new int[Coins.DENOMINATION_COUNT];
+
+        // warm up so class loading, thread locals and JIT compilation are out of the way
+        vendingMachine.loadItems(restock);
+        runPurchases(vendingMachine, oneDollar, twoFifties, changeToPay);
+
+        vendingMachine.loadItems(restock);
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        runPurchases(vendingMachine, oneDollar, twoFifties, changeToPay);
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        // each pair of purchases takes in a dollar and gives back nothing but a fifty, so only dollars pile up
+        assertThat(vendingMachine.getChange(), is(500 + 2 * (PURCHASES / 2) * 100));
+        assertThat(vendingMachine.getCoinCount(Denomination.FIFTY_CENTS), is(10));
+        assertThat(vendingMachine.getCoinCount(Denomination.ONE_DOLLAR), is(2 * (PURCHASES / 2)));
+        // a handful of bytes may come from the measurement itself, but nothing per purchase
+        assertThat(allocated, lessThan((long) PURCHASES));
+    }
+
+    @Test
+    public void testPayingInInstalmentsDoesNotAllocate() throws Exception {
+        VendingMachine vendingMachine = new VendingMachine(Maps.newHashMap(), Maps.newHashMap());
+        int[] restock = new int[ItemType.values().length];
+        restock[ItemType.CRISPS.ordinal()] = PURCHASES;
+        int[] quarter = Coins.toCounts(ImmutableMap.of(Denomination.TWENTY_FIVE_CENTS, 1));
+        int[] changeToPay = new int[Coins.DENOMINATION_COUNT];
+        int[] returnedCoins = new int[Coins.DENOMINATION_COUNT];
+
+        vendingMachine.loadItems(restock);
+        payInInstalments(vendingMachine, quarter, changeToPay, returnedCoins);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        payInInstalments(vendingMachine, quarter, changeToPay, returnedCoins);
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        // every other purchase is paid off with a second quarter and the rest hand their first one back
+        assertThat(vendingMachine.getChange(), is(2 * (PURCHASES / 2) * 50));
+        assertThat(vendingMachine.getCoinCount(Denomination.TWENTY_FIVE_CENTS), is(2 * (PURCHASES / 2) * 2));
+        assertThat(returnedCoins[Denomination.TWENTY_FIVE_CENTS.ordinal()], is(1));
+        assertThat(allocated, lessThan((long) PURCHASES));
+    }
+
+    private static void runPurchases(VendingMachine vendingMachine, int[] oneDollar, int[] twoFifties, int[] changeToPay) throws Exception {
+        for (int i = 0; i < PURCHASES / 2; i++) {
+            // paying out a fifty and then taking two keeps the float topped up
+            vendingMachine.buyItem(ItemType.CRISPS, oneDollar, changeToPay);
+            vendingMachine.buyItem(ItemType.CRISPS, twoFifties, changeToPay);
+        }
+    }
+
+    // the default session, since a session under a token of its own is a new object each time it opens
+    private static void payInInstalments(VendingMachine vendingMachine, int[] quarter, int[] changeToPay, int[] returnedCoins) {
+        for (int i = 0; i < PURCHASES / 2; i++) {
+            vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, ItemType.CRISPS, quarter, changeToPay);
+            if (!vendingMachine.tryAddCoins(VendingMachine.DEFAULT_SESSION, quarter, changeToPay).isCompleted()) {
+                throw new AssertionError("two quarters did not pay for the crisps");
+            }
+            vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, ItemType.CRISPS, quarter, changeToPay);
+            vendingMachine.returnCoins(VendingMachine.DEFAULT_SESSION, returnedCoins);
+        }
+    }
+}
@@ -3,12 +3,14 @@ package com.vendingmachine.service;
 import com.google.common.collect.ImmutableSet;
 import com.vendingmachine.config.Application;
 import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.rest.VendingMachineController;
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
 import io.restassured.internal.mapping.GsonMapper;
 import io.restassured.mapper.ObjectMapper;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.http.HttpStatus;
@@ -18,6 +20,7 @@ import java.util.Set;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 
+@AutoConfigureMetrics
 @SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 public class VendingMachineControllerIntegrationTest {
 
@@ -45,6 +48,46 @@ public class VendingMachineControllerIntegrationTest {
                 .as(Integer.class), Matchers.is(ItemType.COCA_COLA.price));
     }
 
+    @Test
+    public void testUnknownItem() {
+        RestAssured.given()
+                .port(port)
+                .get("/items/SANDWICH/price")
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void testOverridePrice() {
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"MARS_BAR\": 10}")
+                .put("/prices")
+                .then()
+                .statusCode(HttpStatus.OK.value());
+        assertThat(RestAssured.given()
+                .port(port)
+                .get("/items/MARS_BAR/price")
+                .then()
+                .extract()
+                .as(Integer.class), Matchers.is(10));
+
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"MARS_BAR\": null}")
+                .put("/prices")
+                .then()
+                .statusCode(HttpStatus.OK.value());
+        assertThat(RestAssured.given()
+                .port(port)
+                .get("/items/MARS_BAR/price")
+                .then()
+                .extract()
+                .as(Integer.class), Matchers.is(ItemType.MARS_BAR.price));
+    }
+
     @Test
     public void testBuyItem() {
         RestAssured.given()
@@ -128,4 +171,107 @@ public class VendingMachineControllerIntegrationTest {
                 .then()
                 .statusCode(HttpStatus.OK.value());
     }
+
+    @Test
+    public void testBuyItemInSessionAndAddCoins() {
+        String sessionToken = RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"TEN_CENTS\": 2}")
+                .post("/sessions/items/CRISPS")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .extract()
+                .header("Session-Token");
+
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"TEN_CENTS\": 4}")
+                .post("/sessions/" + sessionToken + "/coins")
+                .then()
+                .body("TEN_CENTS", Matchers.is(1));
+    }
+
+    @Test
+    public void testPrometheusEndpointPublishesPurchaseMetrics() {
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("{\"FIFTY_CENTS\": 1}")
+                .post("/items/CRISPS");
+
+        RestAssured.given()
+                .port(port)
+                .get("/actuator/prometheus")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body(Matchers.containsString("vending_purchases_total{item=\"CRISPS\",outcome=\"completed\",}"))
+                .body(Matchers.containsString("vending_stock{item=\"CRISPS\",machine=\"/\",}"))
+                .body(Matchers.containsString("vending_change_computation_seconds_bucket"))
+                .body(Matchers.containsString("http_server_requests_seconds_bucket"));
+    }
+
+    @Test
+    public void testBatch() {
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("[{\"type\": \"LOAD_CHANGE\", \"coins\": {\"FIFTY_CENTS\": 1}},"
+                        + " {\"type\": \"BUY\", \"item\": \"CRISPS\", \"coins\": {\"ONE_DOLLAR\": 1}},"
+                        + " {\"type\": \"GET_PRICE\", \"item\": \"COCA_COLA\"},"
+                        + " {\"type\": \"BUY\"}]")
+                .post("/batch")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .contentType(ContentType.JSON)
+                .body("status", Matchers.contains(200, 200, 200, 400))
+                .body("[1].change.FIFTY_CENTS", Matchers.is(1))
+                .body("[2].value", Matchers.is(ItemType.COCA_COLA.price))
+                .body("[3].error", Matchers.is("BUY needs an item and coins."));
+    }
+
+    @Test
+    public void testBatchWithNullCountFailsOnlyThatOperation() {
+        RestAssured.given()
+                .port(port)
+                .contentType(ContentType.JSON)
+                .body("[{\"type\": \"LOAD_ITEMS\", \"items\": {\"CRISPS\": 1}},"
+                        + " {\"type\": \"LOAD_ITEMS\", \"items\": {\"CRISPS\": 1, \"COCA_COLA\": null}},"
+                        + " {\"type\": \"BUY\", \"item\": \"CRISPS\", \"coins\": {\"FIFTY_CENTS\": null}},"
+                        + " {\"type\": \"BUY\", \"item\": \"CRISPS\", \"coins\": {\"FIFTY_CENTS\": 1}}]")
+                .post("/batch")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .contentType(ContentType.JSON)
+                .body("status", Matchers.contains(200, 400, 400, 200))
+                .body("[1].error", Matchers.is("Counts must be numbers, not null."))
+                .body("[2].error", Matchers.is("Counts must be numbers, not null."));
+    }
+
+    @Test
+    public void testRetriedRejectionIsReplayed() {
+        String sessionToken = null;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            String token = RestAssured.given()
+                    .port(port)
+                    .contentType(ContentType.JSON)
+                    .header(VendingMachineController.IDEMPOTENCY_KEY_HEADER, "session-purchase-1")
+                    .body("{\"TEN_CENTS\": 2}")
+                    .post("/sessions/items/CRISPS")
+                    .then()
+                    .statusCode(HttpStatus.BAD_REQUEST.value())
+                    .extract()
+                    .header(VendingMachineController.SESSION_TOKEN_HEADER);
+            assertThat(token, Matchers.is(sessionToken == null ? token : sessionToken));
+            sessionToken = token;
+        }
+
+        // the retry neither opened another session nor added its coins again
+        RestAssured.given()
+                .port(port)
+                .delete("/sessions/" + sessionToken + "/coins")
+                .then()
+                .body("TEN_CENTS", Matchers.is(2));
+    }
 }
@@ -0,0 +1,384 @@
+package com.vendingmachine.service;
+
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.change.GreedyChangeStrategy;
+import com.vendingmachine.change.OptimalChangeStrategy;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.domain.ItemType;
+import com.vendingmachine.exception.TooManySessionsException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Runs purchases, top-ups, returns and restocks against one machine from many threads at once, with each
+ * thread's choices drawn at random from its own seed, and then checks that no coin or item was made or
+ * lost. Private sessions are checked as they go: a completed purchase paid the price less its change, and
+ * a returned session gave back exactly what went in. A few session tokens are shared by every thread, so
+ * purchases also race on the same pending item. A ledger listener records what the machine says went
+ * in and out, and the callers' own view of change and sales must agree with it. Each run reports its
+ * throughput. {@code -Dvending.stress.seconds} and {@code -Dvending.stress.threads} make runs longer or
+ * wider than the default two seconds on twice as many threads as cores.
+ */
+public class VendingMachineStressTest {
+
+    private static final Duration DURATION = Duration.ofSeconds(Long.getLong("vending.stress.seconds", 2));
+    private static final int THREADS = Integer.getInteger("vending.stress.threads", Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+    private static final int SHARED_SESSIONS = 4;
+
+    @Test
+    public void testMixedWorkloadConservesCoinsAndItems() throws InterruptedException, TooManySessionsException {
+        VendingMachine vendingMachine = new VendingMachine(PriceList.of(Catalog.DEFAULT), new GreedyChangeStrategy(Currency.DEFAULT.faceValues()));
+        stress("greedy change, ample float", vendingMachine, 100, 20);
+    }
+
+    @Test
+    public void testScarceChangeConservesCoins() throws InterruptedException, TooManySessionsException {
+        VendingMachine vendingMachine = new VendingMachine(PriceList.of(Catalog.DEFAULT), new OptimalChangeStrategy(Currency.DEFAULT.faceValues()));
+        // purchases mostly contend for the last few coins, and many are turned away for want of change
+        stress("optimal change, scarce float", vendingMachine, 100, 2);
+    }
+
+    private static void stress(String name, VendingMachine vendingMachine, int initialStock, int initialCoins) throws InterruptedException, TooManySessionsException {
+        Catalog catalog = vendingMachine.getCatalog();
+        int[] stock = new int[catalog.size()];
+        Arrays.fill(stock, initialStock);
+        int[] coins = new int[vendingMachine.getCurrency().size()];
+        Arrays.fill(coins, initialCoins);
+        vendingMachine.loadItems(stock);
+        vendingMachine.loadChange(coins);
+        Ledger ledger = new Ledger(catalog.size(), coins.length);
+        vendingMachine.setListener(ledger);
+
+        long[] sharedSessions = new long[SHARED_SESSIONS + 1];
+        for (int i = 1; i < sharedSessions.length; i++) {
+            sharedSessions[i] = vendingMachine.newSessionToken();
+        }
+        Queue<String> violations = new ConcurrentLinkedQueue<>();
+        long deadline = System.nanoTime() + DURATION.toNanos();
+        Worker[] workers = new Worker[THREADS];
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            workers[i] = new Worker(vendingMachine, sharedSessions, new Random(31L * i + 7), deadline, violations);
+            threads[i] = new Thread(workers[i], "stress-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // whatever is left in the shared sessions goes back to its customers
+        int[] returned = new int[coins.length];
+        for (long sessionToken : sharedSessions) {
+            vendingMachine.returnCoins(sessionToken, returned);
+        }
+
+        Worker total = new Worker(vendingMachine, sharedSessions, null, 0, violations);
+        for (Worker worker : workers) {
+            total.add(worker);
+        }
+        int[] faceValues = vendingMachine.getCurrency().faceValues();
+        long floatValue = 0;
+        for (int coin = 0; coin < coins.length; coin++) {
+            long expected = initialCoins + total.loadedCoins[coin] + ledger.paid.get(coin) - ledger.change.get(coin);
+            check(violations, vendingMachine.getCoinCount(coin) == expected,
+                    "coin %d: %d in the float, but %d loaded and taken in less paid out", coin, vendingMachine.getCoinCount(coin), expected);
+            check(violations, ledger.inserted.get(coin) == ledger.paid.get(coin) + ledger.returned.get(coin),
+                    "coin %d: %d inserted, but %d kept and %d returned", coin, ledger.inserted.get(coin), ledger.paid.get(coin), ledger.returned.get(coin));
+            check(violations, total.changeSeen[coin] == ledger.change.get(coin),
+                    "coin %d: callers were given %d in change, but the machine paid out %d", coin, total.changeSeen[coin], ledger.change.get(coin));
+            floatValue += (long) vendingMachine.getCoinCount(coin) * faceValues[coin];
+        }
+        check(violations, vendingMachine.getChange() == floatValue, "the float is worth %d, but is valued at %d", floatValue, vendingMachine.getChange());
+        Set<ItemType> inStock = EnumSet.noneOf(ItemType.class);
+        long sold = 0;
+        for (int id = 0; id < catalog.size(); id++) {
+            long expected = initialStock + total.loadedItems[id] - ledger.vended.get(id);
+            check(violations, vendingMachine.getStock(id) == expected,
+                    "item %d: %d in stock, but %d loaded less sold", id, vendingMachine.getStock(id), expected);
+            check(violations, vendingMachine.getItemsSold(id) == ledger.vended.get(id),
+                    "item %d: %d counted as sold, but the machine sold %d", id, vendingMachine.getItemsSold(id), ledger.vended.get(id));
+            check(violations, total.vended[id] <= ledger.vended.get(id),
+                    "item %d: callers bought %d, but the machine sold %d", id, total.vended[id], ledger.vended.get(id));
+            sold += ledger.vended.get(id);
+            if (vendingMachine.getStock(id) > 0) {
+                inStock.add(catalog.itemType(id));
+            }
+        }
+        long bought = Arrays.stream(total.vended).sum() + total.unknownSales;
+        check(violations, bought == sold, "callers completed %d purchases, but the machine sold %d items", bought, sold);
+        check(violations, vendingMachine.availableItems().equals(inStock), "%s listed in stock, but %s are", vendingMachine.availableItems(), inStock);
+
+        long operations = total.operations();
+        double seconds = DURATION.toNanos() / 1e9;
+        System.out.printf("%s: %d threads, %.1f s, %,d operations (%,.0f/s), %,d purchases (%,.0f/s); "
+                        + "private %,d, shared buys %,d, shared top-ups %,d, shared returns %,d, loads %,d, reads %,d%n",
+                name, THREADS, seconds, operations, operations / seconds, sold, sold / seconds,
+                total.counts[PRIVATE], total.counts[SHARED_BUY], total.counts[SHARED_TOP_UP], total.counts[SHARED_RETURN],
+                total.counts[LOAD_CHANGE] + total.counts[LOAD_ITEMS], total.counts[READ]);
+        assertThat(new ArrayList<>(violations), is(empty()));
+    }
+
+    private static void check(Queue<String> violations, boolean holds, String format, Object... args) {
+        // only the first few, since a broken invariant tends to break on every operation
+        if (!holds && violations.size() < 20) {
+            violations.add(String.format(format, args));
+        }
+    }
+
+    private static final int PRIVATE = 0;
+    private static final int SHARED_BUY = 1;
+    private static final int SHARED_TOP_UP = 2;
+    private static final int SHARED_RETURN = 3;
+    private static final int LOAD_CHANGE = 4;
+    private static final int LOAD_ITEMS = 5;
+    private static final int READ = 6;
+    // out of 100, in the order above
+    private static final int[] WEIGHTS = {45, 10, 10, 10, 5, 5, 15};
+
+    private static final class Worker implements Runnable {
+
+        private final VendingMachine vendingMachine;
+        private final long[] sharedSessions;
+        private final Random random;
+        private final long deadline;
+        private final Queue<String> violations;
+        private final int[] faceValues;
+        private final int itemCount;
+        private final long[] counts = new long[WEIGHTS.length];
+        private final long[] loadedCoins;
+        private final long[] changeSeen;
+        private final long[] loadedItems;
+        private final long[] vended;
+        // completed by top-ups to a shared session, for whichever item another thread left pending there
+        private long unknownSales;
+
+        private Worker(VendingMachine vendingMachine, long[] sharedSessions, Random random, long deadline, Queue<String> violations) {
+            this.vendingMachine = vendingMachine;
+            this.sharedSessions = sharedSessions;
+            this.random = random;
+            this.deadline = deadline;
+            this.violations = violations;
+            this.faceValues = vendingMachine.getCurrency().faceValues();
+            this.itemCount = vendingMachine.getCatalog().size();
+            this.loadedCoins = new long[faceValues.length];
+            this.changeSeen = new long[faceValues.length];
+            this.loadedItems = new long[itemCount];
+            this.vended = new long[itemCount];
+        }
+
+        @Override
+        public void run() {
+            int[] inserted = new int[faceValues.length];
+            int[] more = new int[faceValues.length];
+            int[] change = new int[faceValues.length];
+            int[] returned = new int[faceValues.length];
+            int[] items = new int[itemCount];
+            while (System.nanoTime() < deadline) {
+                int operation = pick();
+                counts[operation]++;
+                int id = random.nextInt(itemCount);
+                long sessionToken = sharedSessions[random.nextInt(sharedSessions.length)];
+                switch (operation) {
+                    case PRIVATE:
+                        privatePurchase(id, inserted, more, change, returned);
+                        break;
+                    case SHARED_BUY:
+                        pay(vendingMachine.getPrice(id), inserted);
+                        completed(vendingMachine.tryBuyItem(sessionToken, id, inserted, change), id, change);
+                        break;
+                    case SHARED_TOP_UP:
+                        pay(random.nextInt(100), inserted);
+                        // which item is pending is up to whichever thread last bought in this session
+                        PurchaseResult result = vendingMachine.tryAddCoins(sessionToken, inserted, change);
+                        if (result.isCompleted()) {
+                            add(changeSeen, change);
+                            unknownSales++;
+                        }
+                        break;
+                    case SHARED_RETURN:
+                        vendingMachine.returnCoins(sessionToken, returned);
+                        break;
+                    case LOAD_CHANGE:
+                        Arrays.fill(more, 0);
+                        more[random.nextInt(more.length)] = 1 + random.nextInt(10);
+                        vendingMachine.loadChange(more);
+                        add(loadedCoins, more);
+                        break;
+                    case LOAD_ITEMS:
+                        Arrays.fill(items, 0);
+                        items[id] = 1 + random.nextInt(20);
+                        vendingMachine.loadItems(items);
+                        loadedItems[id] += items[id];
+                        break;
+                    default:
+                        int coin = random.nextInt(faceValues.length);
+                        check(violations, vendingMachine.getStock(id) >= 0, "item %d: stock went negative", id);
+                        check(violations, vendingMachine.getCoinCount(coin) >= 0, "coin %d: count went negative", coin);
+                        check(violations, vendingMachine.getChange() >= 0, "the float's value went negative");
+                        break;
+                }
+                if (random.nextInt(64) == 0) {
+                    // moves the interleaving along, so each run tries orders a tight loop would not
+                    Thread.yield();
+                }
+            }
+        }
+
+        // a session of its own, which must end with a sale at the right price or every coin handed back
+        private void privatePurchase(int id, int[] inserted, int[] more, int[] change, int[] returned) {
+            long sessionToken;
+            try {
+                sessionToken = vendingMachine.newSessionToken();
+            } catch (TooManySessionsException e) {
+                // every session here ends before its worker moves on, so the machine can only fill up if one leaks
+                check(violations, false, "turned away with %d sessions open", vendingMachine.openSessions());
+                return;
+            }
+            int price = vendingMachine.getPrice(id);
+            pay(random.nextInt(5) == 0 ? random.nextInt(price) : price, inserted);
+            PurchaseResult result = vendingMachine.tryBuyItem(sessionToken, id, inserted, change);
+            if (result.getStatus() == PurchaseResult.Status.INSUFFICIENT_FUNDS) {
+                check(violations, result.getDeficit() == price - value(inserted), "item %d: short by %d, but %d was paid towards %d", id, result.getDeficit(), value(inserted), price);
+                if (random.nextBoolean()) {
+                    pay(result.getDeficit(), more);
+                    add(inserted, more);
+                    result = vendingMachine.tryAddCoins(sessionToken, more, change);
+                }
+            }
+            if (completed(result, id, change)) {
+                check(violations, value(inserted) - value(change) == price, "item %d: paid %d and given %d back, for %d", id, value(inserted), value(change), price);
+                return;
+            }
+            vendingMachine.returnCoins(sessionToken, returned);
+            check(violations, Arrays.equals(returned, inserted), "%s returned, but %s went in", Arrays.toString(returned), Arrays.toString(inserted));
+        }
+
+        private boolean completed(PurchaseResult result, int id, int[] change) {
+            if (!result.isCompleted()) {
+                return false;
+            }
+            vended[id]++;
+            add(changeSeen, change);
+            return true;
+        }
+
+        private int pick() {
+            int roll = random.nextInt(100);
+            for (int operation = 0; operation < WEIGHTS.length; operation++) {
+                roll -= WEIGHTS[operation];
+                if (roll < 0) {
+                    return operation;
+                }
+            }
+            return READ;
+        }
+
+        // random coins worth at least the amount, largest first so most payments need change
+        private void pay(int amount, int[] coins) {
+            Arrays.fill(coins, 0);
+            int paid = 0;
+            do {
+                int coin = random.nextInt(faceValues.length);
+                coins[coin]++;
+                paid += faceValues[coin];
+            } while (paid < amount);
+        }
+
+        private int value(int[] coins) {
+            int value = 0;
+            for (int coin = 0; coin < coins.length; coin++) {
+                value += coins[coin] * faceValues[coin];
+            }
+            return value;
+        }
+
+        private void add(Worker other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            add(loadedCoins, other.loadedCoins);
+            add(changeSeen, other.changeSeen);
+            add(loadedItems, other.loadedItems);
+            add(vended, other.vended);
+            unknownSales += other.unknownSales;
+        }
+
+        private long operations() {
+            return Arrays.stream(counts).sum();
+        }
+
+        private static void add(long[] total, long[] values) {
+            for (int i = 0; i < total.length; i++) {
+                total[i] += values[i];
+            }
+        }
+
+        private static void add(long[] total, int[] values) {
+            for (int i = 0; i < total.length; i++) {
+                total[i] += values[i];
+            }
+        }
+
+        private static void add(int[] total, int[] values) {
+            for (int i = 0; i < total.length; i++) {
+                total[i] += values[i];
+            }
+        }
+    }
+
+    // what the machine reports went in and out, summed over every thread
+    private static final class Ledger implements VendingMachineListener {
+
+        private final AtomicLongArray inserted;
+        private final AtomicLongArray paid;
+        private final AtomicLongArray change;
+        private final AtomicLongArray returned;
+        private final AtomicLongArray vended;
+
+        private Ledger(int items, int coins) {
+            this.inserted = new AtomicLongArray(coins);
+            this.paid = new AtomicLongArray(coins);
+            this.change = new AtomicLongArray(coins);
+            this.returned = new AtomicLongArray(coins);
+            this.vended = new AtomicLongArray(items);
+        }
+
+        @Override
+        public void coinsInserted(long sessionToken, int item, int[] coins) {
+            add(inserted, coins);
+        }
+
+        @Override
+        public void purchaseCompleted(long sessionToken, int item, int[] coinsPaid, int[] changePaid) {
+            add(paid, coinsPaid);
+            add(change, changePaid);
+            vended.incrementAndGet(item);
+        }
+
+        @Override
+        public void coinsReturned(long sessionToken, int[] coins) {
+            add(returned, coins);
+        }
+
+        private static void add(AtomicLongArray total, int[] coins) {
+            for (int i = 0; i < coins.length; i++) {
+                if (coins[i] != 0) {
+                    total.addAndGet(i, coins[i]);
+                }
+            }
+        }
+    }
+}
@@ -1,15 +1,27 @@
 package com.vendingmachine.service;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.vendingmachine.catalog.Catalog;
+import com.vendingmachine.catalog.PriceList;
+import com.vendingmachine.change.OptimalChangeStrategy;
+import com.vendingmachine.currency.Currency;
+import com.vendingmachine.domain.Coins;
 import com.vendingmachine.domain.Denomination;
 import com.vendingmachine.domain.ItemType;
 import com.vendingmachine.exception.InsufficientChangeException;
 import com.vendingmachine.exception.InsufficientFundsException;
 import com.vendingmachine.exception.ItemNotAvailableException;
+import com.vendingmachine.exception.TooManySessionsException;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -128,6 +140,20 @@ public class VendingMachineTest {
         assertThat(vendingMachine.availableItems(), is(ImmutableSet.of(ItemType.COCA_COLA)));
     }
 
+    @Test
+    public void testBuyItemWhenGreedyChangeWouldFail() throws InsufficientFundsException, ItemNotAvailableException, InsufficientChangeException {
+        vendingMachine = new VendingMachine(Maps.newHashMap(
+                ImmutableMap.of(
+                        ItemType.COCA_COLA, 1
+                )), Maps.newHashMap(
+                ImmutableMap.of(
+                        Denomination.TWENTY_FIVE_CENTS, 1,
+                        Denomination.TEN_CENTS, 5
+                )
+        ));
+        assertThat(vendingMachine.buyItem(ItemType.COCA_COLA, ImmutableMap.of(Denomination.ONE_DOLLAR, 2)), is(ImmutableMap.of(Denomination.TEN_CENTS, 5)));
+    }
+
     @Test
     public void testBuyItemWithInsufficientChangeThenLoadChange() throws ItemNotAvailableException, InsufficientFundsException, InsufficientChangeException {
         vendingMachine = new VendingMachine(Maps.newHashMap(
@@ -177,4 +203,403 @@ public class VendingMachineTest {
                 )));
         assertThat(vendingMachine.getChange(), is(250));
     }
+
+    @Test
+    public void testSessionsAreIndependent() throws InsufficientChangeException, ItemNotAvailableException, InsufficientFundsException, TooManySessionsException {
+        vendingMachine = new VendingMachine(Maps.newHashMap(
+                ImmutableMap.of(
+                        ItemType.COCA_COLA, 2,
+                        ItemType.CRISPS, 1
+                )), Maps.newHashMap());
+        long firstSession = vendingMachine.newSessionToken();
+        long secondSession = vendingMachine.newSessionToken();
+        assertThrows(InsufficientFundsException.class, () -> vendingMachine.buyItem(firstSession, ItemType.CRISPS, ImmutableMap.of(Denomination.TEN_CENTS, 1)));
+        assertThrows(InsufficientFundsException.class, () -> vendingMachine.buyItem(secondSession, ItemType.COCA_COLA, ImmutableMap.of(Denomination.ONE_DOLLAR, 1)));
+        assertThat(vendingMachine.returnCoins(firstSession), is(ImmutableMap.of(Denomination.TEN_CENTS, 1)));
+        assertThat(vendingMachine.addCoins(secondSession, ImmutableMap.of(Denomination.FIFTY_CENTS, 1)), is(ImmutableMap.of()));
+        assertThat(vendingMachine.getChange(), is(150));
+        assertThrows(ItemNotAvailableException.class, () -> vendingMachine.addCoins(firstSession, ImmutableMap.of(Denomination.FIFTY_CENTS, 1)));
+    }
+
+    @Test
+    public void testNewPurchaseInSessionKeepsItsCoinsReturnable() throws TooManySessionsException {
+        vendingMachine = new VendingMachine(Maps.newHashMap(
+                ImmutableMap.of(
+                        ItemType.COCA_COLA, 1
+                )), Maps.newHashMap());
+        long session = vendingMachine.newSessionToken();
+        assertThrows(InsufficientFundsException.class, () -> vendingMachine.buyItem(session, ItemType.COCA_COLA, ImmutableMap.of(Denomination.TEN_CENTS, 1)));
+        // the first purchase's coins are handed back, and the second's stay in the session
+        assertThrows(InsufficientFundsException.class, () -> vendingMachine.buyItem(session, ItemType.COCA_COLA, ImmutableMap.of(Denomination.FIFTY_CENTS, 1)));
+        assertThat(vendingMachine.returnCoins(session), is(ImmutableMap.of(Denomination.FIFTY_CENTS, 1)));
+        assertThat(vendingMachine.getChange(), is(0));
+    }
+
+    @Test
+    public void testAbandonedSessionsAreReclaimed() throws TooManySessionsException {
+        vendingMachine = new VendingMachine(Maps.newHashMap(
+                ImmutableMap.of(
+                        ItemType.COCA_COLA, 5
+                )), Maps.newHashMap());
+        long[] now = {0};
+        vendingMachine.setSessionLimits(Duration.ofMinutes(1), 2, () -> now[0]);
+        int[] returned = new int[Denomination.values().length];
+        vendingMachine.setListener(new VendingMachineListener() {
+            @Override
+            public void coinsReturned(long sessionToken, int[] coins) {
+                for (int i = 0; i < coins.length; i++) {
+                    returned[i] += coins[i];
+                }
+            }
+        });
+        long abandoned = vendingMachine.newSessionToken();
+        assertThat(vendingMachine.tryBuyItem(abandoned, ItemType.COCA_COLA, Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 1)), new int[6]).getStatus(),
+                is(PurchaseResult.Status.INSUFFICIENT_FUNDS));
+        assertThat(vendingMachine.openSessions(), is(1));
+
+        // the next session opened after the timeout sweeps the abandoned one, and its dollar goes back
+        now[0] += Duration.ofMinutes(1).toNanos();
+        long next = vendingMachine.newSessionToken();
+        vendingMachine.tryBuyItem(next, ItemType.COCA_COLA, Coins.toCounts(ImmutableMap.of(Denomination.TEN_CENTS, 1)), new int[6]);
+        assertThat(vendingMachine.openSessions(), is(1));
+        assertThat(returned[Denomination.ONE_DOLLAR.ordinal()], is(1));
+        assertThat(vendingMachine.tryAddCoins(abandoned, Coins.toCounts(ImmutableMap.of(Denomination.FIFTY_CENTS, 1)), new int[6]).getStatus(),
+                is(PurchaseResult.Status.ITEM_NOT_AVAILABLE));
+
+        // at the limit, new sessions are turned away and the live ones keep their coins
+        now[0] += 1;
+        long last = vendingMachine.newSessionToken();
+        vendingMachine.tryBuyItem(last, ItemType.COCA_COLA, Coins.toCounts(ImmutableMap.of(Denomination.TWENTY_FIVE_CENTS, 1)), new int[6]);
+        assertThrows(TooManySessionsException.class, () -> vendingMachine.newSessionToken());
+        assertThat(vendingMachine.openSessions(), is(2));
+        assertThat(returned[Denomination.TEN_CENTS.ordinal()], is(0));
+        assertThat(vendingMachine.returnCoins(next), is(ImmutableMap.of(Denomination.TEN_CENTS, 1)));
+        assertThat(vendingMachine.returnCoins(last), is(ImmutableMap.of(Denomination.TWENTY_FIVE_CENTS, 1)));
+        assertThat(vendingMachine.getChange(), is(0));
+    }
+
+    @Test
+    public void testSessionTokensCannotBeGuessed() throws TooManySessionsException {
+        vendingMachine = new VendingMachine(Maps.newHashMap(), Maps.newHashMap());
+        long first = vendingMachine.newSessionToken();
+        long second = vendingMachine.newSessionToken();
+        assertThat(Math.abs(second - first) > 1, is(true));
+        assertThat(second == VendingMachine.DEFAULT_SESSION, is(false));
+    }
+
+    @Test
+    public void testConcurrentPurchasesKeepInventoryAndFloatConsistent() throws InterruptedException {
+        vendingMachine = new VendingMachine(Maps.newHashMap(
+                ImmutableMap.of(
+                        ItemType.CRISPS, 1000
+                )), Maps.newHashMap(
+                ImmutableMap.of(
+                        Denomination.FIFTY_CENTS, 1000
+                )));
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    try {
+                        vendingMachine.buyItem(vendingMachine.newSessionToken(), ItemType.CRISPS, ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(failures.get(), is(0));
+        assertThat(vendingMachine.getChange(), is(1000 * 50 + 800 * 50));
+        assertThat(vendingMachine.availableItems(), is(ImmutableSet.of(ItemType.CRISPS)));
+    }
+
+    @Test
+    public void testSnapshotsSeeEachPurchaseWholeWhilePurchasesRun() throws InterruptedException {
+        vendingMachine = new VendingMachine(Maps.newHashMap(
+                ImmutableMap.of(
+                        ItemType.CRISPS, 40_000
+                )), Maps.newHashMap(
+                ImmutableMap.of(
+                        Denomination.FIFTY_CENTS, 40_000
+                )));
+        int dollar = Denomination.ONE_DOLLAR.ordinal();
+        int fifty = Denomination.FIFTY_CENTS.ordinal();
+        int crisps = vendingMachine.getCatalog().id(ItemType.CRISPS);
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[5];
+        for (int i = 0; i < threads.length; i++) {
+            boolean loader = i == 0;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 5_000; j++) {
+                    if (loader) {
+                        // restocks and pennies move the counts too, without touching what is checked below
+                        vendingMachine.loadItems(ImmutableMap.of(ItemType.CRISPS, 1));
+                        vendingMachine.loadChange(ImmutableMap.of(Denomination.ONE_CENT, 1));
+                    } else {
+                        try {
+                            if (vendingMachine.tryBuyItem(vendingMachine.newSessionToken(), crisps, Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 1)),
+                                    new int[vendingMachine.getCurrency().size()]) != PurchaseResult.COMPLETED) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (TooManySessionsException e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        // each purchase takes a dollar, pays out a fifty and sells a bag, and a snapshot must see all three or none
+        long snapshots = 0;
+        long lastVersion = -1;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+            MachineSnapshot snapshot = vendingMachine.snapshot();
+            long sold = snapshot.getItemsSold(crisps);
+            assertThat(snapshot.getCoinCount(dollar), is((int) sold));
+            assertThat(snapshot.getCoinCount(fifty), is(40_000 - (int) sold));
+            int value = 0;
+            for (int coin = 0; coin < snapshot.getCurrency().size(); coin++) {
+                value += snapshot.getCoinCount(coin) * snapshot.getCurrency().faceValue(coin);
+            }
+            assertThat(snapshot.getChange(), is(value));
+            assertThat(snapshot.getVersion() >= lastVersion, is(true));
+            lastVersion = snapshot.getVersion();
+            snapshots++;
+        }
+        assertThat(failures.get(), is(0));
+        assertThat(snapshots > 0, is(true));
+        MachineSnapshot last = vendingMachine.snapshot();
+        assertThat(last.getItemsSold(crisps), is(20_000L));
+        assertThat(last.getStock(crisps), is(40_000 + 5_000 - 20_000));
+        // two loads by the loader, and a purchase each by the others
+        assertThat(last.getVersion(), is(2L + 2 * 5_000 + 20_000));
+    }
+
+    @Test
+    public void testConcurrentPurchasesNeverSpendTheSameCoin() throws InterruptedException {
+        vendingMachine = new VendingMachine(Maps.newHashMap(
+                ImmutableMap.of(
+                        ItemType.CRISPS, 1000
+                )), Maps.newHashMap(
+                ImmutableMap.of(
+                        Denomination.FIFTY_CENTS, 100
+                )));
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger lowestCount = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                int[] oneDollar = Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+                int[] changeToPay = new int[Coins.DENOMINATION_COUNT];
+                for (int j = 0; j < 100; j++) {
+                    long sessionToken;
+                    try {
+                        sessionToken = vendingMachine.newSessionToken();
+                    } catch (TooManySessionsException e) {
+                        throw new AssertionError(e);
+                    }
+                    PurchaseResult result = vendingMachine.tryBuyItem(sessionToken, ItemType.CRISPS, oneDollar, changeToPay);
+                    if (result.isCompleted()) {
+                        completed.incrementAndGet();
+                    } else {
+                        assertThat(result, is(PurchaseResult.INSUFFICIENT_CHANGE));
+                        vendingMachine.returnCoins(sessionToken, changeToPay);
+                    }
+                    lowestCount.accumulateAndGet(vendingMachine.getCoinCount(Denomination.FIFTY_CENTS), Math::min);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // each purchase pays out one of the hundred 50s, and the dollars it takes in are no use as change
+        assertThat(completed.get(), is(100));
+        assertThat(lowestCount.get(), is(0));
+        assertThat(vendingMachine.getCoinCount(Denomination.FIFTY_CENTS), is(0));
+        assertThat(vendingMachine.getCoinCount(Denomination.ONE_DOLLAR), is(100));
+        assertThat(vendingMachine.getChange(), is(100 * 100));
+        assertThat(vendingMachine.getStock(ItemType.CRISPS), is(900));
+    }
+
+    @Test
+    public void testRejectedPurchaseLeavesFloatUnchanged() {
+        vendingMachine = new VendingMachine(Maps.newHashMap(
+                ImmutableMap.of(
+                        ItemType.COCA_COLA, 1
+                )), Maps.newHashMap(
+                ImmutableMap.of(
+                        Denomination.TWENTY_FIVE_CENTS, 1,
+                        Denomination.TEN_CENTS, 2
+                )));
+        int[] changeToPay = new int[Coins.DENOMINATION_COUNT];
+
+        // 50 in change cannot be made from 25 + 10 + 10, and crisps are sold out
+        assertThat(vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, ItemType.COCA_COLA, Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 2)), changeToPay),
+                is(PurchaseResult.INSUFFICIENT_CHANGE));
+        vendingMachine.returnCoins(VendingMachine.DEFAULT_SESSION, changeToPay);
+        assertThat(vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, ItemType.CRISPS, Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 1)), changeToPay),
+                is(PurchaseResult.ITEM_NOT_AVAILABLE));
+        vendingMachine.returnCoins(VendingMachine.DEFAULT_SESSION, changeToPay);
+
+        assertThat(vendingMachine.getCoinCount(Denomination.TWENTY_FIVE_CENTS), is(1));
+        assertThat(vendingMachine.getCoinCount(Denomination.TEN_CENTS), is(2));
+        assertThat(vendingMachine.getCoinCount(Denomination.ONE_DOLLAR), is(0));
+        assertThat(vendingMachine.getChange(), is(45));
+        assertThat(vendingMachine.getStock(ItemType.COCA_COLA), is(1));
+    }
+
+    @Test
+    public void testAggregatesFollowStockCrossingZeroConcurrently() throws InterruptedException {
+        vendingMachine = new VendingMachine(Maps.newHashMap(), Maps.newHashMap());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    vendingMachine.loadItems(ImmutableMap.of(ItemType.CRISPS, 1));
+                    try {
+                        vendingMachine.buyItem(vendingMachine.newSessionToken(), ItemType.CRISPS, ImmutableMap.of(Denomination.TWENTY_FIVE_CENTS, 2));
+                    } catch (Exception e) {
+                        fail(e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(vendingMachine.getStock(ItemType.CRISPS), is(0));
+        assertThat(vendingMachine.availableItems(), is(ImmutableSet.of()));
+        assertThat(vendingMachine.getChange(), is(threads.length * 10_000 * ItemType.CRISPS.price));
+
+        vendingMachine.loadItems(ImmutableMap.of(ItemType.MARS_BAR, 1));
+        assertThat(vendingMachine.availableItems(), is(ImmutableSet.of(ItemType.MARS_BAR)));
+        assertThat(vendingMachine.inStock().codes(), is(ImmutableList.of(ItemType.MARS_BAR.name())));
+    }
+
+    @Test
+    public void testTryBuyItemReportsOutcomesWithoutThrowing() {
+        vendingMachine = new VendingMachine(Maps.newHashMap(
+                ImmutableMap.of(
+                        ItemType.CRISPS, 1,
+                        ItemType.COCA_COLA, 1
+                )), Maps.newHashMap());
+        int[] changeToPay = new int[Denomination.values().length];
+
+        assertThat(vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, ItemType.MARS_BAR, Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 1)), changeToPay),
+                is(PurchaseResult.ITEM_NOT_AVAILABLE));
+        PurchaseResult underpaid = vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, ItemType.COCA_COLA, Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 1)), changeToPay);
+        assertThat(underpaid.getStatus(), is(PurchaseResult.Status.INSUFFICIENT_FUNDS));
+        assertThat(underpaid.getDeficit(), is(ItemType.COCA_COLA.price - 100));
+        assertThat(vendingMachine.tryAddCoins(VendingMachine.DEFAULT_SESSION, Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 1)), changeToPay),
+                is(PurchaseResult.INSUFFICIENT_CHANGE));
+        vendingMachine.returnCoins();
+        assertThat(vendingMachine.tryAddCoins(VendingMachine.DEFAULT_SESSION, Coins.toCounts(ImmutableMap.of(Denomination.FIFTY_CENTS, 1)), changeToPay),
+                is(PurchaseResult.ITEM_NOT_AVAILABLE));
+        assertThat(vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, ItemType.CRISPS, Coins.toCounts(ImmutableMap.of(Denomination.FIFTY_CENTS, 1)), changeToPay),
+                is(PurchaseResult.COMPLETED));
+
+        InsufficientFundsException exception = assertThrows(InsufficientFundsException.class, underpaid::throwIfFailed);
+        assertThat(exception.getMessage(), is(underpaid.getMessage()));
+        assertThat(exception.getStackTrace().length, is(0));
+    }
+
+    @Test
+    public void testSellsFromCustomCatalogAtCurrentPrices() throws Exception {
+        Map<String, Integer> skus = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            skus.put(String.format("sku-%04d", i), 100);
+        }
+        PriceList sitePrices = PriceList.of(Catalog.of(skus));
+        vendingMachine = new VendingMachine(sitePrices.overrides(), new OptimalChangeStrategy(Denomination.faceValues()));
+        int id = sitePrices.catalog().require("sku-0150");
+        int[] counts = new int[sitePrices.catalog().size()];
+        counts[id] = 2;
+        vendingMachine.loadItems(counts);
+        vendingMachine.loadChange(ImmutableMap.of(Denomination.TWENTY_FIVE_CENTS, 4));
+        assertThat(vendingMachine.inStock().codes(), is(ImmutableList.of("sku-0150")));
+        assertThat(vendingMachine.availableItems(), is(ImmutableSet.of()));
+
+        int[] changeToPay = new int[Denomination.values().length];
+        sitePrices.update(ImmutableMap.of("sku-0150", 75));
+        assertThat(vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, id, Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 1)), changeToPay),
+                is(PurchaseResult.COMPLETED));
+        assertThat(changeToPay[Denomination.TWENTY_FIVE_CENTS.ordinal()], is(1));
+
+        vendingMachine.getPrices().update(ImmutableMap.of("sku-0150", 100));
+        assertThat(vendingMachine.getPrice(id), is(100));
+        assertThat(sitePrices.price(id), is(75));
+        assertThat(vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, id, Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 1)), changeToPay),
+                is(PurchaseResult.COMPLETED));
+        assertThat(vendingMachine.inStock().codes(), is(ImmutableList.of()));
+        assertThat(vendingMachine.getItemsSold(id), is(2L));
+    }
+
+    @Test
+    public void testOnlyCarriesTheSkusItIsLoadedWith() {
+        Map<String, Integer> skus = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            skus.put(String.format("sku-%04d", i), 100);
+        }
+        Catalog catalog = Catalog.of(skus);
+        vendingMachine = new VendingMachine(PriceList.of(catalog).overrides(), new OptimalChangeStrategy(Denomination.faceValues()));
+        vendingMachine.loadChange(ImmutableMap.of(Denomination.TWENTY_FIVE_CENTS, 4));
+        int[] counts = new int[catalog.size()];
+        counts[150] = 2;
+        counts[70] = 1;
+        vendingMachine.loadItems(counts);
+        assertThat(vendingMachine.carriedItems(), is(new int[] {70, 150}));
+
+        int[] changeToPay = new int[Denomination.values().length];
+        int[] dollar = Coins.toCounts(ImmutableMap.of(Denomination.ONE_DOLLAR, 1));
+        assertThat(vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, 70, dollar, changeToPay), is(PurchaseResult.COMPLETED));
+        assertThat(vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, 90, dollar, changeToPay), is(PurchaseResult.ITEM_NOT_AVAILABLE));
+        vendingMachine.returnCoins();
+        assertThat(vendingMachine.getStock(90), is(0));
+        assertThat(vendingMachine.getItemsSold(90), is(0L));
+
+        // taking on SKUs either side of the ones already carried keeps their counts where they were
+        counts = new int[catalog.size()];
+        counts[10] = 3;
+        counts[199] = 4;
+        vendingMachine.loadItems(counts);
+        assertThat(vendingMachine.carriedItems(), is(new int[] {10, 70, 150, 199}));
+        assertThat(vendingMachine.getStock(150), is(2));
+        assertThat(vendingMachine.getItemsSold(70), is(1L));
+        assertThat(vendingMachine.inStock().codes(), is(ImmutableList.of("sku-0010", "sku-0150", "sku-0199")));
+
+        MachineSnapshot snapshot = vendingMachine.snapshot();
+        assertThat(snapshot.getItemCount(), is(4));
+        assertThat(snapshot.getItemId(3), is(199));
+        assertThat(snapshot.getStockAt(3), is(4));
+        assertThat(snapshot.getItemsSold(70), is(1L));
+        assertThat(snapshot.getStock(90), is(0));
+    }
+
+    @Test
+    public void testMakesChangeInItsOwnCurrency() {
+        // 30 is three 10s in this currency, where greedy would pay a 25 and five 1s
+        Currency currency = Currency.parse("XYZ", "ONE:1,TEN:10,TWENTY_FIVE:25");
+        vendingMachine = new VendingMachine(PriceList.of(Catalog.of(ImmutableMap.of("GUM", 70))), currency, currency.changeStrategy());
+        vendingMachine.loadItems(new int[]{1});
+        vendingMachine.loadChange(new int[]{5, 3, 0});
+        int[] changeToPay = new int[currency.size()];
+
+        assertThat(vendingMachine.tryBuyItem(VendingMachine.DEFAULT_SESSION, 0, new int[]{0, 0, 4}, changeToPay),
+                is(PurchaseResult.COMPLETED));
+        assertThat(changeToPay, is(new int[]{0, 3, 0}));
+        assertThat(vendingMachine.getChange(), is(5 + 30 + 70));
+        assertThat(vendingMachine.getCoinCount(2), is(4));
+    }
 }
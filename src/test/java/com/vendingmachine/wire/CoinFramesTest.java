@@ -0,0 +1,45 @@
+package com.vendingmachine.wire;
+
+import com.vendingmachine.service.PurchaseResult;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CoinFramesTest {
+
+    @Test
+    public void testRoundTrip() {
+        int[] counts = {0, 1, 127, 128, 300, Integer.MAX_VALUE};
+        byte[] frame = CoinFrames.encode(counts);
+        assertThat(frame.length, is(1 + 1 + 1 + 1 + 2 + 2 + 5));
+
+        int[] decoded = new int[counts.length];
+        CoinFrames.decode(frame, decoded);
+        assertThat(decoded, is(counts));
+
+        // coins past the last count are zero, whatever the array held before
+        int[] wider = {9, 9, 9, 9, 9, 9, 9, 9};
+        CoinFrames.decode(new byte[]{2, 0, 3}, wider);
+        assertThat(wider, is(new int[]{0, 3, 0, 0, 0, 0, 0, 0}));
+
+        assertThat(CoinFrames.encode(PurchaseResult.COMPLETED, new int[]{0, 2}), is(new byte[]{0, 2, 0, 2}));
+        assertThat(CoinFrames.encode(PurchaseResult.insufficientFunds(200), new int[2]), is(new byte[]{1, (byte) 0xC8, 1}));
+        assertThat(CoinFrames.encode(PurchaseResult.ITEM_NOT_AVAILABLE, new int[2]), is(new byte[]{3}));
+    }
+
+    @Test
+    public void testMalformedFramesAreRejected() {
+        int[] counts = new int[2];
+        assertThrows(IllegalArgumentException.class, () -> CoinFrames.decode(new byte[0], counts));
+        assertThrows(IllegalArgumentException.class, () -> CoinFrames.decode(new byte[]{3, 0, 0, 0}, counts));
+        assertThrows(IllegalArgumentException.class, () -> CoinFrames.decode(new byte[]{2, 1}, counts));
+        assertThrows(IllegalArgumentException.class, () -> CoinFrames.decode(new byte[]{1, 1, 1}, counts));
+        assertThrows(IllegalArgumentException.class, () -> CoinFrames.decode(new byte[]{1, (byte) 0x80}, counts));
+        // 2^31 and a varint longer than five bytes
+        assertThrows(IllegalArgumentException.class, () -> CoinFrames.decode(new byte[]{1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x08}, counts));
+        assertThrows(IllegalArgumentException.class, () -> CoinFrames.decode(new byte[]{1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0}, counts));
+        assertThrows(IllegalArgumentException.class, () -> CoinFrames.encode(new int[]{-1}));
+    }
+}